@@ -41,6 +41,11 @@ public abstract class AbstractAnalysisPmdSubcommand<C extends AbstractConfigurat
             description = "Database URI for sources. "
                           + "One of --dir, --file-list or --uri must be provided.")
     protected URI uri;
+
+    @Option(names = "--file-listing-cache",
+            description = "Path to a file in which the listings of the source directories are kept between runs. "
+                          + "Directories that were not modified since the previous run are not listed again.")
+    protected Path fileListingCache;
     
     @Option(names = "--no-fail-on-violation",
             description = "By default PMD exits with status 4 if violations or duplications are found. "
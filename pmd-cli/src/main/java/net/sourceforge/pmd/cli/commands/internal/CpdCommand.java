@@ -91,6 +91,28 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
     @Option(names = "--non-recursive", description = "Don't scan subdirectiories.")
     private boolean nonRecursive;
 
+    @Option(names = "--suffix-array",
+            description = "Find duplicates with a suffix array of the tokens. This is faster when many files share the same code, "
+                + "but the marks of longer duplicates are not repeated in the shorter duplicates that contain them.")
+    private boolean suffixArrayMatching;
+
+    @Option(names = "--cache",
+            description = "Specify the location of the cache file for incremental analysis. "
+                + "Only files that changed since the previous run are tokenized again.")
+    private Path cacheLocation;
+
+    private int threads;
+
+    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used to tokenize files. "
+                + "Set it to 0 to tokenize files on the main thread.",
+            defaultValue = "1")
+    public void setThreads(final int threads) {
+        if (threads < 0) {
+            throw new ParameterException(spec.commandLine(), "Thread count should be a positive number or zero, found " + threads + " instead.");
+        }
+        this.threads = threads;
+    }
+
 
     /**
      * Converts these parameters into a configuration.
@@ -109,6 +131,7 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
         configuration.setFailOnViolation(failOnViolation);
         configuration.setFailOnError(failOnError);
         configuration.setInputFilePath(fileListPath);
+        configuration.setFileListingCache(fileListingCache);
         if (inputPaths != null) {
             configuration.setInputPathList(new ArrayList<>(inputPaths));
         }
@@ -124,6 +147,9 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
         configuration.setRendererName(rendererName);
         configuration.setSkipBlocksPattern(skipBlocksPattern);
         configuration.setSkipDuplicates(skipDuplicates);
+        configuration.setSuffixArrayMatching(suffixArrayMatching);
+        configuration.setThreads(threads);
+        configuration.setCacheLocation(cacheLocation);
         configuration.setSourceEncoding(encoding.getEncoding());
         configuration.setInputUri(uri);
 
@@ -0,0 +1,216 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cli.commands.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclEntryPermission;
+import java.nio.file.attribute.AclEntryType;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cli.internal.CliExitCode;
+import net.sourceforge.pmd.internal.LogMessages;
+import net.sourceforge.pmd.util.log.internal.SimpleMessageReporter;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+
+@Command(name = "daemon", showDefaultValues = true,
+    description = "Runs PMD as a long-lived process that answers analysis requests. "
+        + "Each request is the list of arguments of a 'pmd check' command, one per line, followed by an empty line. "
+        + "The response is the report of the analysis, followed by a line 'exit: <exit code>'. "
+        + "The language processors, the auxclasspath and the rulesets are kept from one request to the next, "
+        + "as long as the auxclasspath, the rulesets and the language settings do not change. "
+        + "A line 'shutdown' stops the daemon. "
+        + "With --port, the first line of each connection must be the token written to the --token-file.")
+public class DaemonCommand extends AbstractPmdSubcommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DaemonCommand.class);
+
+    /** Time a client has to send the token once connected, so that it cannot block the daemon. */
+    static final int TOKEN_TIMEOUT_MILLIS = 10_000;
+
+    static final String SHUTDOWN = "shutdown";
+    static final String EXIT_PREFIX = "exit: ";
+
+    @Option(names = "--port",
+            description = "Port on the loopback interface on which to accept connections. "
+                + "By default, requests are read from the standard input, and responses are written to the standard output.")
+    private Integer port;
+
+    @Option(names = "--token-file",
+            description = "File in which a random token is written when the daemon listens on a port. "
+                + "Only the owner of the file may read it. The first line of each connection must be this token, "
+                + "otherwise the connection is closed. Required with --port.")
+    private Path tokenFile;
+
+    @Override
+    protected void validate() throws ParameterException {
+        super.validate();
+        if (port != null && tokenFile == null) {
+            throw new ParameterException(spec.commandLine(), "A --token-file is required with --port.");
+        } else if (port == null && tokenFile != null) {
+            throw new ParameterException(spec.commandLine(), "--token-file is only used with --port.");
+        }
+    }
+
+    @Override
+    protected CliExitCode execute() {
+        try (WarmAnalysisState state = new WarmAnalysisState()) {
+            if (port == null) {
+                serve(state, System.in, System.out);
+            } else {
+                serveOnPort(state, port, tokenFile);
+            }
+            return CliExitCode.OK;
+        } catch (final IOException e) {
+            final SimpleMessageReporter reporter = new SimpleMessageReporter(LOG);
+            reporter.error(e, LogMessages.errorDetectedMessage(1, "daemon"));
+            return CliExitCode.ERROR;
+        }
+    }
+
+    private static void serveOnPort(WarmAnalysisState state, int port, Path tokenFile) throws IOException {
+        // any local user may connect to the port, so only those who can read the file are served
+        final String token = newToken();
+        writeTokenFile(tokenFile, token);
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            LOG.info("PMD daemon listening on {}, token written to {}", server.getLocalSocketAddress(), tokenFile);
+            boolean shutdown = false;
+            while (!shutdown) {
+                try (Socket connection = server.accept()) {
+                    shutdown = serveConnection(state, token, connection, TOKEN_TIMEOUT_MILLIS);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    static String newToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Writes the token to a new file that only its owner may read.
+     */
+    static void writeTokenFile(Path file, String token) throws IOException {
+        Files.deleteIfExists(file);
+        if (Files.getFileStore(file.toAbsolutePath().getParent()).supportsFileAttributeView("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } else {
+            Files.createFile(file);
+            final AclFileAttributeView acl = Files.getFileAttributeView(file, AclFileAttributeView.class);
+            if (acl == null) {
+                Files.delete(file);
+                throw new IOException("Cannot restrict the access to the token file " + file);
+            }
+            acl.setAcl(Collections.singletonList(
+                AclEntry.newBuilder()
+                        .setType(AclEntryType.ALLOW)
+                        .setPrincipal(acl.getOwner())
+                        .setPermissions(EnumSet.of(AclEntryPermission.READ_DATA, AclEntryPermission.WRITE_DATA,
+                                                   AclEntryPermission.READ_ATTRIBUTES, AclEntryPermission.WRITE_ATTRIBUTES,
+                                                   AclEntryPermission.READ_ACL, AclEntryPermission.WRITE_ACL,
+                                                   AclEntryPermission.DELETE, AclEntryPermission.SYNCHRONIZE))
+                        .build()));
+        }
+        Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers the requests of a connection, if its first line is the token,
+     * received within the given timeout. Otherwise nothing is answered.
+     * Returns true if a shutdown was requested.
+     */
+    static boolean serveConnection(WarmAnalysisState state, String token, Socket connection, int tokenTimeoutMillis) throws IOException {
+        final BufferedReader requests = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        connection.setSoTimeout(tokenTimeoutMillis);
+        final String firstLine;
+        try {
+            firstLine = requests.readLine();
+        } catch (SocketTimeoutException e) {
+            LOG.warn("PMD daemon: rejected a connection that did not send the token in time");
+            return false;
+        }
+        if (firstLine == null
+            || !MessageDigest.isEqual(firstLine.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            LOG.warn("PMD daemon: rejected a connection with an invalid token");
+            return false;
+        }
+        // an authenticated client may take its time between requests
+        connection.setSoTimeout(0);
+        return serve(state, requests, connection.getOutputStream());
+    }
+
+    /**
+     * Answers the requests read from the input until it ends or a shutdown
+     * is requested. Returns true if a shutdown was requested.
+     */
+    static boolean serve(WarmAnalysisState state, InputStream input, OutputStream output) throws IOException {
+        return serve(state, new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), output);
+    }
+
+    private static boolean serve(WarmAnalysisState state, BufferedReader requests, OutputStream output) throws IOException {
+        final PrintWriter response = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        state.setOutput(output);
+
+        final List<String> args = new ArrayList<>();
+        String line;
+        while ((line = requests.readLine()) != null) {
+            if (!line.isEmpty()) {
+                if (args.isEmpty() && SHUTDOWN.equals(line.trim())) {
+                    return true;
+                }
+                args.add(line);
+            } else if (!args.isEmpty()) {
+                final int exitCode = analyze(state, args.toArray(new String[0]), response);
+                args.clear();
+                response.println(EXIT_PREFIX + exitCode);
+                response.flush();
+            }
+        }
+        return false;
+    }
+
+    private static int analyze(WarmAnalysisState state, String[] args, PrintWriter response) {
+        final PmdCommand command = new PmdCommand();
+        command.setWarmState(state);
+        return new CommandLine(command)
+            .setCaseInsensitiveEnumValuesAllowed(true)
+            .setOut(response)
+            .setErr(response)
+            .execute(args);
+    }
+}
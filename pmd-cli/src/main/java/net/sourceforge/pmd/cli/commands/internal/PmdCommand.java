@@ -82,8 +82,20 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private String format;
 
+    private static final String VIRTUAL_THREADS = "virtual";
+
     private int threads;
 
+    private boolean virtualThreads;
+
+    private boolean sizeAwareScheduling;
+
+    private boolean pipelinedAnalysis;
+
+    private boolean fusedRuleDispatch;
+
+    private int parallelRuleThreshold;
+
     private boolean benchmark;
 
     private boolean showSuppressed;
@@ -104,10 +116,16 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private Path cacheLocation;
 
+    private Path cacheDirectory;
+
+    private long cacheMaxSize;
+
     private boolean noCache;
 
     private boolean showProgressBar;
 
+    private WarmAnalysisState warmState;
+
     @Option(names = { "--rulesets", "-R" },
                description = "Path to a ruleset xml file. "
                              + "The path may reference a resource on the classpath of the application, be a local file system path, or a URL. "
@@ -220,19 +238,88 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.cacheLocation = cacheLocation;
     }
 
+    @Option(names = "--cache-dir",
+            description = "Specify a directory to use as cache for incremental analysis, instead of a cache file. "
+                    + "Cache entries are keyed by the contents of the analyzed files rather than by their path, "
+                    + "so the directory can be shared between checkouts in different locations and between concurrent runs, "
+                    + "e.g. on a shared mount or as a CI artifact. This option cannot be combined with --cache.")
+    public void setCacheDirectory(final Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Option(names = "--cache-max-size",
+            description = "Maximum size in megabytes of the cache directory given with --cache-dir. "
+                    + "When it grows larger, the least recently used entries are deleted. By default, the size is not limited.",
+            defaultValue = "0")
+    public void setCacheMaxSize(final long cacheMaxSize) {
+        if (cacheMaxSize < 0) {
+            throw new ParameterException(spec.commandLine(), "Cache size should be a positive number or zero, found " + cacheMaxSize + " instead.");
+        }
+        this.cacheMaxSize = cacheMaxSize;
+    }
+
     @Option(names = "--no-cache", description = "Explicitly disable incremental analysis. The '-cache' option is ignored if this switch is present in the command line.")
     public void setNoCache(final boolean noCache) {
         this.noCache = noCache;
     }
 
-    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used by PMD.",
+    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used by PMD. "
+                + "The value 'virtual' processes each file on a virtual thread (Java 21+), "
+                + "while parsing and rule application use at most one thread per available processor.",
             defaultValue = "1")
-    public void setThreads(final int threads) {
-        if (threads < 0) {
-            throw new ParameterException(spec.commandLine(), "Thread count should be a positive number or zero, found " + threads + " instead.");
+    public void setThreads(final String threads) {
+        if (VIRTUAL_THREADS.equalsIgnoreCase(threads)) {
+            this.virtualThreads = true;
+            this.threads = Runtime.getRuntime().availableProcessors();
+            return;
         }
-        
-        this.threads = threads;
+
+        final int threadCount;
+        try {
+            threadCount = Integer.parseInt(threads);
+        } catch (NumberFormatException e) {
+            throw new ParameterException(spec.commandLine(), "Thread count should be a number or '" + VIRTUAL_THREADS + "', found " + threads + " instead.");
+        }
+        if (threadCount < 0) {
+            throw new ParameterException(spec.commandLine(), "Thread count should be a positive number or zero, found " + threadCount + " instead.");
+        }
+
+        this.virtualThreads = false;
+        this.threads = threadCount;
+    }
+
+    @Option(names = "--size-aware-scheduling",
+            description = "Analyze the largest files first on a work-stealing thread pool. "
+                + "This reduces the wall-clock time when a few large files would otherwise be analyzed last. "
+                + "Ignored if --threads is 0.")
+    public void setSizeAwareScheduling(final boolean sizeAwareScheduling) {
+        this.sizeAwareScheduling = sizeAwareScheduling;
+    }
+
+    @Option(names = "--pipelined-analysis",
+            description = "Read, parse and analyze files in separate pipeline stages, each using the configured number of threads, "
+                + "so that disk IO overlaps with analysis. Ignored if --threads is 0 or 'virtual'.")
+    public void setPipelinedAnalysis(final boolean pipelinedAnalysis) {
+        this.pipelinedAnalysis = pipelinedAnalysis;
+    }
+
+    @Option(names = "--fused-rule-dispatch",
+            description = "Apply all rules in a single traversal of each file, instead of rule by rule. "
+                + "Rules still visit their target nodes in document order, but not type by type.")
+    public void setFusedRuleDispatch(final boolean fusedRuleDispatch) {
+        this.fusedRuleDispatch = fusedRuleDispatch;
+    }
+
+    @Option(names = "--parallel-rule-threshold",
+            description = "Apply the rules in parallel to files with at least this many AST nodes, "
+                + "so that very large files don't hold up the analysis. The rules use as many threads as --threads. "
+                + "Only languages whose AST can be read concurrently support it, currently PL/SQL. 0 disables it.",
+            defaultValue = "0")
+    public void setParallelRuleThreshold(final int parallelRuleThreshold) {
+        if (parallelRuleThreshold < 0) {
+            throw new ParameterException(spec.commandLine(), "Node count threshold should be a positive number or zero, found " + parallelRuleThreshold + " instead.");
+        }
+        this.parallelRuleThreshold = parallelRuleThreshold;
     }
 
     @Option(names = "--no-progress", negatable = true, defaultValue = "true",
@@ -241,6 +328,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.showProgressBar = showProgressBar;
     }
 
+    /**
+     * Reuses the given state across the analyses of a {@link DaemonCommand}.
+     */
+    void setWarmState(WarmAnalysisState warmState) {
+        this.warmState = warmState;
+    }
+
     /**
      * Converts these parameters into a configuration.
      *
@@ -255,6 +349,7 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
             configuration.setInputPathList(new ArrayList<>(inputPaths));
         }
         configuration.setInputFilePath(fileListPath);
+        configuration.setFileListingCache(fileListingCache);
         configuration.setIgnoreFilePath(ignoreListPath);
         configuration.setInputUri(uri);
         configuration.setReportFormat(format);
@@ -269,9 +364,21 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         configuration.setShowSuppressedViolations(showSuppressed);
         configuration.setSuppressMarker(suppressMarker);
         configuration.setThreads(threads);
+        configuration.setSizeAwareScheduling(sizeAwareScheduling);
+        configuration.setVirtualThreads(virtualThreads);
+        configuration.setPipelinedAnalysis(pipelinedAnalysis);
+        configuration.setFusedRuleDispatch(fusedRuleDispatch);
+        configuration.setParallelRuleThreshold(parallelRuleThreshold);
         configuration.setFailOnViolation(failOnViolation);
         configuration.setFailOnError(failOnError);
-        configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
+        if (cacheDirectory != null) {
+            if (cacheLocation != null) {
+                throw new ParameterException(spec.commandLine(), "The options --cache and --cache-dir cannot be combined.");
+            }
+            configuration.setAnalysisCacheDirectory(cacheDirectory.toString(), cacheMaxSize * 1024 * 1024);
+        } else {
+            configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
+        }
         configuration.setIgnoreIncrementalAnalysis(noCache);
 
         if (languageVersion != null) {
@@ -296,6 +403,16 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         return configuration;
     }
 
+    /** Identifies the analysis cache configured by the options, for the warm state. */
+    private String analysisCacheKey() {
+        if (noCache) {
+            return "none";
+        } else if (cacheDirectory != null) {
+            return "dir=" + cacheDirectory.toAbsolutePath() + " max-size=" + cacheMaxSize;
+        }
+        return cacheLocation != null ? "file=" + cacheLocation.toAbsolutePath() : "none";
+    }
+
     @Override
     @NonNull
     protected CliExitCode doExecute(PMDConfiguration configuration) {
@@ -309,7 +426,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
             PmdAnalysis pmd = null;
             try {
                 try {
+                    if (warmState != null) {
+                        warmState.prepare(configuration, analysisCacheKey());
+                    }
                     pmd = PmdAnalysis.create(configuration);
+                    if (warmState != null) {
+                        warmState.attach(pmd);
+                    }
                 } catch (final Exception e) {
                     pmdReporter.errorEx("Could not initialize analysis", e);
                     return CliExitCode.ERROR;
@@ -318,7 +441,7 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
                 LOG.debug("Runtime classpath:\n{}", System.getProperty("java.class.path"));
                 LOG.debug("Aux classpath: {}", configuration.getClassLoader());
 
-                if (showProgressBar) {
+                if (showProgressBar && warmState == null) {
                     if (reportFile == null) {
                         pmdReporter.warn("Progressbar rendering conflicts with reporting to STDOUT. "
                                 + "No progressbar will be shown. Try running with argument '-r <file>' to output the report to a file instead.");
@@ -0,0 +1,249 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cli.commands.internal;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.InternalApiBridge;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.renderers.Renderer;
+
+/**
+ * State of the {@link DaemonCommand} that is kept from one analysis to the
+ * next: the auxclasspath classloader, the started language processors,
+ * and the loaded rulesets. The state is identified by a key that covers
+ * the auxclasspath (including the size and modification time of its
+ * entries), the rulesets, and the language settings of the configuration.
+ * When the key of a request differs from the key of the state, the state
+ * is discarded and rebuilt for that request.
+ *
+ * <p>The analysis cache is also kept, as long as the cache options do not
+ * change, so that it is not read from disk again by each request. It
+ * checks itself whether the rulesets or the auxclasspath changed.
+ *
+ * <p>Requests are processed one at a time.
+ */
+final class WarmAnalysisState implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmAnalysisState.class);
+
+    private @Nullable String key;
+    private @Nullable ClasspathClassLoader classLoader;
+    private @Nullable LanguageProcessorRegistry processors;
+    private @Nullable List<RuleSet> ruleSets;
+    private @Nullable String analysisCacheKey;
+    private @Nullable AnalysisCache analysisCache;
+
+    // state of the current request
+    private OutputStream output = System.out;
+    private List<String> ruleSetPaths = Collections.emptyList();
+    private @Nullable Renderer renderer;
+
+    /**
+     * Sets the stream to which the report of the next requests is written,
+     * unless they have a report file. The stream is not closed.
+     */
+    void setOutput(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Prepares the configuration of a request before the analysis is
+     * created. The classloader of the configuration is replaced by the
+     * warm one if the state is still valid, otherwise the state is discarded.
+     * The rulesets and the renderer are removed from the configuration,
+     * they are added by {@link #attach(PmdAnalysis)}. The analysis cache of
+     * the configuration is replaced by the warm one if the given key, which
+     * identifies the cache options, did not change.
+     */
+    void prepare(PMDConfiguration configuration, String cacheKey) {
+        String newKey = computeKey(configuration);
+        if (newKey.equals(key)) {
+            if (configuration.getClassLoader() instanceof ClasspathClassLoader) {
+                IOUtil.tryCloseClassLoader(configuration.getClassLoader());
+            }
+            if (classLoader != null) {
+                configuration.setClassLoader(classLoader);
+            }
+        } else {
+            if (key != null) {
+                LOG.info("Auxclasspath, rulesets or language settings changed, discarding warm state");
+            }
+            discard();
+            key = newKey;
+            if (configuration.getClassLoader() instanceof ClasspathClassLoader) {
+                classLoader = (ClasspathClassLoader) configuration.getClassLoader();
+            }
+        }
+
+        if (cacheKey.equals(analysisCacheKey) && analysisCache != null) {
+            InternalApiBridge.setAnalysisCache(configuration, analysisCache);
+        } else {
+            analysisCacheKey = cacheKey;
+            analysisCache = InternalApiBridge.getAnalysisCache(configuration);
+        }
+
+        ruleSetPaths = configuration.getRuleSetPaths();
+        configuration.setRuleSets(Collections.emptyList());
+
+        renderer = null;
+        if (configuration.getReportFormat() != null && configuration.getReportFilePath() == null) {
+            renderer = configuration.createRenderer(false);
+            renderer.setWriter(new OutputStreamWriter(new FilterOutputStream(output) {
+                @Override
+                public void close() throws IOException {
+                    // the connection outlives the request
+                    flush();
+                }
+            }, StandardCharsets.UTF_8));
+            configuration.setReportFormat(null);
+        }
+    }
+
+    /**
+     * Adds the rulesets, the renderer and the language processors to the
+     * analysis of a request, after it was created from the configuration
+     * given to {@link #prepare(PMDConfiguration, String)}.
+     */
+    void attach(PmdAnalysis pmd) {
+        try {
+            if (ruleSets == null) {
+                ruleSets = pmd.newRuleSetLoader().loadFromResources(ruleSetPaths);
+            }
+            for (RuleSet ruleSet : ruleSets) {
+                // the analysis removes the rules that are misconfigured, keep the originals
+                pmd.addRuleSet(new RuleSet(ruleSet));
+            }
+            if (processors == null) {
+                processors = pmd.startLanguageProcessors();
+            }
+        } catch (RuntimeException e) {
+            // the analysis closes the classloader, as it has no shared processors
+            classLoader = null;
+            discard();
+            throw e;
+        }
+        pmd.setLanguageProcessors(processors);
+        if (renderer != null) {
+            pmd.addRenderer(renderer);
+            renderer = null;
+        }
+    }
+
+    private void discard() {
+        ruleSets = null;
+        if (processors != null) {
+            try {
+                processors.close();
+            } catch (LanguageProcessorRegistry.LanguageTerminationException e) {
+                LOG.warn("Error while closing language processors", e);
+            }
+            processors = null;
+        }
+        if (classLoader != null) {
+            IOUtil.tryCloseClassLoader(classLoader);
+            classLoader = null;
+        }
+        key = null;
+    }
+
+    @Override
+    public void close() {
+        discard();
+    }
+
+    private static String computeKey(PMDConfiguration configuration) {
+        StringBuilder key = new StringBuilder();
+        ClassLoader loader = configuration.getClassLoader();
+        if (loader instanceof ClasspathClassLoader) {
+            ClasspathClassLoader classpath = (ClasspathClassLoader) loader;
+            key.append("java-home=").append(classpath.getJavaHome()).append('\n');
+            for (URL url : classpath.getURLs()) {
+                key.append("classpath=").append(url).append(' ').append(stamp(url)).append('\n');
+            }
+        }
+        for (String ruleSetPath : configuration.getRuleSetPaths()) {
+            key.append("ruleset=").append(ruleSetPath).append(' ').append(stamp(ruleSetPath)).append('\n');
+        }
+        key.append("minimum-priority=").append(configuration.getMinimumPriority()).append('\n');
+        for (Language language : configuration.getLanguageRegistry()) {
+            LanguageVersion version = configuration.getLanguageVersionDiscoverer().getDefaultLanguageVersion(language);
+            key.append("language=").append(version.getTerseName()).append('\n');
+        }
+        key.append("force-language=").append(configuration.getForceLanguageVersion()).append('\n');
+        key.append("suppress-marker=").append(configuration.getSuppressMarker()).append('\n');
+        return key.toString();
+    }
+
+    /** Size and modification time of a ruleset file, empty for a classpath resource. */
+    private static String stamp(String ruleSetPath) {
+        try {
+            Path path = Paths.get(ruleSetPath);
+            return Files.isRegularFile(path) ? stamp(path) : "";
+        } catch (InvalidPathException e) {
+            return "";
+        }
+    }
+
+    private static String stamp(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return "";
+        }
+        try {
+            return stamp(new File(url.toURI()).toPath());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Size and modification time of a file. For a directory, the number of
+     * files it contains and their latest modification time, as a class file
+     * may be changed without changing the modification time of the directory.
+     */
+    private static String stamp(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isDirectory()) {
+                return attrs.size() + "@" + attrs.lastModifiedTime().toMillis();
+            }
+            List<Long> modified = new ArrayList<>();
+            try (Stream<Path> files = Files.walk(path)) {
+                files.forEach(file -> modified.add(file.toFile().lastModified()));
+            }
+            return modified.size() + "@" + modified.stream().mapToLong(Long::longValue).max().orElse(0);
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cli.commands.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class DaemonCommandTest {
+
+    private static final String RULESET_WITH_VIOLATIONS = "rulesets/dummy/basic.xml";
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testSeveralRequests() throws Exception {
+        Path source = Files.write(tempDir.resolve("someSource.dummy"), "dummy text".getBytes(StandardCharsets.UTF_8));
+        String request = "--dir\n" + source + "\n--rulesets\n" + RULESET_WITH_VIOLATIONS + "\n\n";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean shutdown;
+        try (WarmAnalysisState state = new WarmAnalysisState()) {
+            shutdown = DaemonCommand.serve(state, input(request + request), output);
+        }
+
+        assertFalse(shutdown);
+        String response = output.toString(StandardCharsets.UTF_8.name());
+        List<String> lines = Arrays.asList(response.split("\\R"));
+        assertEquals(2, lines.stream().filter(line -> line.startsWith(DaemonCommand.EXIT_PREFIX)).count(), response);
+        assertEquals(DaemonCommand.EXIT_PREFIX + "4", lines.get(lines.size() - 1));
+        assertEquals(2, lines.stream().filter(line -> line.contains("someSource.dummy")).count(), response);
+    }
+
+    @Test
+    void testUsageError() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (WarmAnalysisState state = new WarmAnalysisState()) {
+            DaemonCommand.serve(state, input("--rulesets\n" + RULESET_WITH_VIOLATIONS + "\n\n"), output);
+        }
+
+        String response = output.toString(StandardCharsets.UTF_8.name());
+        assertThat(response, containsString("Please provide a parameter for source root directory"));
+        assertTrue(response.endsWith(DaemonCommand.EXIT_PREFIX + "2" + System.lineSeparator()), response);
+    }
+
+    @Test
+    void testShutdown() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (WarmAnalysisState state = new WarmAnalysisState()) {
+            assertTrue(DaemonCommand.serve(state, input("shutdown\n--dir\nfoo\n\n"), output));
+        }
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    void testConnectionWithInvalidTokenIsRejected() throws Exception {
+        try (WarmAnalysisState state = new WarmAnalysisState();
+             ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket connection = server.accept()) {
+            client.getOutputStream().write("wrong\nshutdown\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(DaemonCommand.serveConnection(state, DaemonCommand.newToken(), connection, DaemonCommand.TOKEN_TIMEOUT_MILLIS));
+        }
+    }
+
+    @Test
+    void testConnectionWithTokenIsServed() throws Exception {
+        String token = DaemonCommand.newToken();
+        try (WarmAnalysisState state = new WarmAnalysisState();
+             ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket connection = server.accept()) {
+            client.getOutputStream().write((token + "\nshutdown\n").getBytes(StandardCharsets.UTF_8));
+            assertTrue(DaemonCommand.serveConnection(state, token, connection, DaemonCommand.TOKEN_TIMEOUT_MILLIS));
+        }
+    }
+
+    @Test
+    void testIdleConnectionIsRejected() throws Exception {
+        try (WarmAnalysisState state = new WarmAnalysisState();
+             ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             Socket connection = server.accept()) {
+            // the client never sends the token
+            assertFalse(DaemonCommand.serveConnection(state, DaemonCommand.newToken(), connection, 100));
+        }
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void testTokenFileIsOnlyReadableByOwner() throws Exception {
+        Path tokenFile = tempDir.resolve("daemon.token");
+        DaemonCommand.writeTokenFile(tokenFile, "secret");
+
+        assertEquals("secret", new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8));
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                     Files.getPosixFilePermissions(tokenFile));
+    }
+
+    private static ByteArrayInputStream input(String requests) {
+        return new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8));
+    }
+}
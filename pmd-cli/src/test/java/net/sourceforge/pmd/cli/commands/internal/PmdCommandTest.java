@@ -6,6 +6,9 @@ package net.sourceforge.pmd.cli.commands.internal;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -17,6 +20,8 @@ import net.sourceforge.pmd.lang.DummyLanguageModule;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.util.CollectionUtil;
 
+import picocli.CommandLine.ParameterException;
+
 class PmdCommandTest extends BaseCommandTest<PmdCommand> {
 
     @Test
@@ -28,6 +33,51 @@ class PmdCommandTest extends BaseCommandTest<PmdCommand> {
         assertEquals(DummyLanguageModule.getInstance().getVersion("1.2").toString(), dummyLatest.toString());
     }
 
+    @Test
+    void testSizeAwareScheduling() {
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml").toConfiguration().isSizeAwareScheduling());
+
+        final PmdCommand cmd = setupAndParse("--size-aware-scheduling", "-d", "a", "-R", "x.xml");
+        assertTrue(cmd.toConfiguration().isSizeAwareScheduling());
+    }
+
+    @Test
+    void testVirtualThreads() {
+        final PMDConfiguration platform = setupAndParse("-t", "3", "-d", "a", "-R", "x.xml").toConfiguration();
+        assertFalse(platform.isVirtualThreads());
+        assertEquals(3, platform.getThreads());
+
+        final PMDConfiguration virtual = setupAndParse("--threads", "virtual", "-d", "a", "-R", "x.xml").toConfiguration();
+        assertTrue(virtual.isVirtualThreads());
+        assertEquals(Runtime.getRuntime().availableProcessors(), virtual.getThreads());
+    }
+
+    @Test
+    void testPipelinedAnalysis() {
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml").toConfiguration().isPipelinedAnalysis());
+        assertTrue(setupAndParse("--pipelined-analysis", "-d", "a", "-R", "x.xml").toConfiguration().isPipelinedAnalysis());
+    }
+
+    @Test
+    void testFusedRuleDispatch() {
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml").toConfiguration().isFusedRuleDispatch());
+        assertTrue(setupAndParse("--fused-rule-dispatch", "-d", "a", "-R", "x.xml").toConfiguration().isFusedRuleDispatch());
+    }
+
+    @Test
+    void testParallelRuleThreshold() {
+        assertEquals(0, setupAndParse("-d", "a", "-R", "x.xml").toConfiguration().getParallelRuleThreshold());
+        assertEquals(5000, setupAndParse("--parallel-rule-threshold", "5000", "-d", "a", "-R", "x.xml").toConfiguration().getParallelRuleThreshold());
+    }
+
+    @Test
+    void testCacheDirCannotBeCombinedWithCacheFile() {
+        setupAndParse("--cache-dir", "cache", "--cache-max-size", "100", "-d", "a", "-R", "x.xml").toConfiguration();
+
+        final PmdCommand cmd = setupAndParse("--cache-dir", "cache", "--cache", "cache.bin", "-d", "a", "-R", "x.xml");
+        assertThrows(ParameterException.class, cmd::toConfiguration);
+    }
+
     @Test
     void testMultipleDirsAndRuleSets() {
         final PmdCommand cmd = setupAndParse(
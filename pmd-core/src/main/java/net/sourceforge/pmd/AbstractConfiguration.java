@@ -46,6 +46,7 @@ public abstract class AbstractConfiguration {
     private Path ignoreFilePath;
     private List<Path> excludes = new ArrayList<>();
     private boolean collectRecursive = true;
+    private Path fileListingCache;
     private boolean failOnViolation = true;
     private boolean failOnError = true;
 
@@ -380,6 +381,26 @@ public abstract class AbstractConfiguration {
         this.collectRecursive = collectRecursive;
     }
 
+    /**
+     * Returns the file in which the listings of the input directories
+     * are kept between runs. Null if directories are always listed.
+     */
+    public @Nullable Path getFileListingCache() {
+        return fileListingCache;
+    }
+
+    /**
+     * Sets the file in which the listings of the input directories are
+     * kept between runs. Directories that were not modified since the
+     * previous run are not listed again, which speeds up the collection
+     * of files in large source trees.
+     *
+     * @param fileListingCache path to the file, or null to always list directories
+     */
+    public void setFileListingCache(@Nullable Path fileListingCache) {
+        this.fileListingCache = fileListingCache;
+    }
+
     /**
      * Whether PMD should exit with status 4 (the default behavior, true) if
      * violations are found or just with 0 (to not break the build, e.g.).
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -18,6 +19,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.cache.internal.DirectoryAnalysisCache;
 import net.sourceforge.pmd.cache.internal.FileAnalysisCache;
 import net.sourceforge.pmd.cache.internal.NoopAnalysisCache;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
@@ -86,6 +88,12 @@ import net.sourceforge.pmd.util.log.internal.SimpleMessageReporter;
  * <ul>
  * <li>Use {@link #setThreads(int)} to control the parallelism of the analysis. Defaults
  * one thread per available processor. {@link #getThreads()}</li>
+ * <li>Use {@link #setSizeAwareScheduling(boolean)} to analyze the largest files first
+ * on a work-stealing thread pool.</li>
+ * <li>Use {@link #setVirtualThreads(boolean)} to process files on virtual threads (Java 21+).</li>
+ * <li>Use {@link #setPipelinedAnalysis(boolean)} to read, parse and analyze files in separate stages.</li>
+ * <li>Use {@link #setFusedRuleDispatch(boolean)} to apply all rules in a single traversal of each file.</li>
+ * <li>Use {@link #setParallelRuleThreshold(int)} to apply rules in parallel on very large files.</li>
  * </ul>
  */
 public class PMDConfiguration extends AbstractConfiguration {
@@ -98,6 +106,11 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = DEFAULT_SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean sizeAwareScheduling;
+    private boolean virtualThreads;
+    private boolean pipelinedAnalysis;
+    private boolean fusedRuleDispatch;
+    private int parallelRuleThreshold;
     private ClassLoader classLoader = getClass().getClassLoader();
 
     // Rule and source file options
@@ -160,6 +173,148 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Returns whether files are scheduled by decreasing size on a work-stealing
+     * thread pool, instead of in collection order on a fixed thread pool.
+     * This only has an effect if {@link #getThreads()} is greater than zero.
+     *
+     * @return Whether size-aware scheduling is enabled
+     *
+     * @see #setSizeAwareScheduling(boolean)
+     */
+    public boolean isSizeAwareScheduling() {
+        return sizeAwareScheduling;
+    }
+
+    /**
+     * Enables or disables size-aware scheduling. When enabled, the largest
+     * files are analyzed first, and idle threads steal work from busy ones.
+     * This avoids that a few large files picked up at the end of the analysis
+     * dominate the total wall-clock time. Disabled by default.
+     *
+     * @param sizeAwareScheduling Whether to enable size-aware scheduling
+     */
+    public void setSizeAwareScheduling(boolean sizeAwareScheduling) {
+        this.sizeAwareScheduling = sizeAwareScheduling;
+    }
+
+    /**
+     * Returns whether files are processed on virtual threads.
+     *
+     * @return Whether virtual threads are used
+     *
+     * @see #setVirtualThreads(boolean)
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Enables or disables processing files on virtual threads. When enabled,
+     * reading files and reporting violations does not block platform threads,
+     * while parsing and rule application are still limited to {@link #getThreads()}
+     * concurrent files. This requires Java 21 or later, on older JVMs a warning
+     * is logged and platform threads are used. This only has an effect if
+     * {@link #getThreads()} is greater than zero. Disabled by default.
+     *
+     * @param virtualThreads Whether to use virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Returns whether files are processed in a pipeline of separate
+     * reading, parsing and rule application stages.
+     *
+     * @return Whether pipelined analysis is enabled
+     *
+     * @see #setPipelinedAnalysis(boolean)
+     */
+    public boolean isPipelinedAnalysis() {
+        return pipelinedAnalysis;
+    }
+
+    /**
+     * Enables or disables pipelined analysis. When enabled, reading files,
+     * parsing them, and applying rules are performed by separate stages,
+     * each with {@link #getThreads()} threads, so that IO overlaps with
+     * CPU-bound work. The number of files in flight between the stages is
+     * bounded. This only has an effect if {@link #getThreads()} is greater
+     * than zero, and is ignored if {@linkplain #setVirtualThreads(boolean) virtual threads}
+     * are used. Disabled by default.
+     *
+     * @param pipelinedAnalysis Whether to enable pipelined analysis
+     */
+    public void setPipelinedAnalysis(boolean pipelinedAnalysis) {
+        this.pipelinedAnalysis = pipelinedAnalysis;
+    }
+
+    /**
+     * Returns whether all rules are applied in a single traversal of
+     * each tree.
+     *
+     * @return Whether fused rule dispatch is enabled
+     *
+     * @see #setFusedRuleDispatch(boolean)
+     */
+    public boolean isFusedRuleDispatch() {
+        return fusedRuleDispatch;
+    }
+
+    /**
+     * Enables or disables fused rule dispatch. By default, rules are
+     * applied one after the other, each iterating over the nodes it
+     * targets. When enabled, each tree is traversed once, and each node
+     * is dispatched to all the rules that target it. This improves
+     * locality with large rulesets. Each rule still visits its target
+     * nodes in document order, but the visits of different rules are
+     * interleaved, and nodes of different types are no longer visited
+     * type by type. Disabled by default.
+     *
+     * @param fusedRuleDispatch Whether to enable fused rule dispatch
+     */
+    public void setFusedRuleDispatch(boolean fusedRuleDispatch) {
+        this.fusedRuleDispatch = fusedRuleDispatch;
+    }
+
+    /**
+     * Returns the number of nodes from which the rules are applied to a
+     * file in parallel, or zero if this is disabled.
+     *
+     * @return The minimum number of nodes, or zero
+     *
+     * @see #setParallelRuleThreshold(int)
+     */
+    public int getParallelRuleThreshold() {
+        return parallelRuleThreshold;
+    }
+
+    /**
+     * Sets the number of nodes from which the rules are applied to a file
+     * in parallel. The rules are then distributed over a pool with
+     * {@linkplain #getThreads() as many threads} as the analysis, so that a
+     * single very large file, eg a generated one, doesn't hold up the analysis.
+     * Violations are reported in the same order as when the rules are applied
+     * one after the other. Rules must not modify the tree. Zero, the default,
+     * disables this.
+     *
+     * <p>This has no effect when the analysis runs on the main thread, or
+     * for languages whose AST is not {@linkplain net.sourceforge.pmd.lang.LanguageVersionHandler#isAstSafeForConcurrentReads() safe to read concurrently}.
+     * Of the languages of PMD, only PL/SQL supports it. Java for instance
+     * doesn't, as its rules store data in the nodes.
+     *
+     * @param parallelRuleThreshold The minimum number of nodes, or zero
+     *
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public void setParallelRuleThreshold(int parallelRuleThreshold) {
+        if (parallelRuleThreshold < 0) {
+            throw new IllegalArgumentException("Negative threshold: " + parallelRuleThreshold);
+        }
+        this.parallelRuleThreshold = parallelRuleThreshold;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
@@ -410,6 +565,26 @@ public class PMDConfiguration extends AbstractConfiguration {
                          : new FileAnalysisCache(new File(cacheLocation)));
     }
 
+    /**
+     * Sets a directory to use as analysis cache. Contrary to the cache
+     * file configured with {@link #setAnalysisCacheLocation(String)}, cache
+     * entries are keyed by the contents of the files and not by their path,
+     * so the directory may be shared between checkouts in different
+     * locations, and used by several analyses concurrently.
+     * If incremental analysis was explicitly disabled ({@link #isIgnoreIncrementalAnalysis()}),
+     * then this method is a noop.
+     *
+     * @param cacheDirectory The directory of the analysis cache, created if it doesn't exist.
+     *                       Use {@code null} to disable the cache.
+     * @param maxSizeInBytes The size of the directory over which least recently used
+     *                       entries are deleted. Zero or less means no limit.
+     */
+    public void setAnalysisCacheDirectory(final String cacheDirectory, final long maxSizeInBytes) {
+        setAnalysisCache(cacheDirectory == null
+                         ? new NoopAnalysisCache()
+                         : new DirectoryAnalysisCache(Paths.get(cacheDirectory), maxSizeInBytes));
+    }
+
 
     /**
      * Sets whether the user has explicitly disabled incremental analysis or not.
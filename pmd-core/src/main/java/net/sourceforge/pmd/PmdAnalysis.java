@@ -20,10 +20,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
+import net.sourceforge.pmd.annotation.Experimental;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
@@ -33,6 +35,7 @@ import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
 import net.sourceforge.pmd.internal.util.FileCollectionUtil;
 import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.internal.util.VirtualThreads;
 import net.sourceforge.pmd.lang.InternalApiBridge;
 import net.sourceforge.pmd.lang.JvmLanguagePropertyBundle;
 import net.sourceforge.pmd.lang.Language;
@@ -150,6 +153,8 @@ public final class PmdAnalysis implements AutoCloseable {
     private final Map<Language, LanguagePropertyBundle> langProperties = new HashMap<>();
     private boolean closed;
     private final ConfigurableFileNameRenderer fileNameRenderer = new ConfigurableFileNameRenderer();
+    /** Processors shared with other analyses, not owned by this instance. */
+    private @Nullable LanguageProcessorRegistry sharedProcessors;
 
     /**
      * Constructs a new instance. The files paths (input files, filelist,
@@ -345,6 +350,46 @@ public final class PmdAnalysis implements AutoCloseable {
         return fileNameRenderer;
     }
 
+    /**
+     * Starts the language processors of the languages that the current
+     * rulesets apply to, and of their dependencies, configured with the
+     * {@linkplain #getLanguageProperties(Language) language properties}
+     * of this instance. The processors may then be reused by several
+     * analyses, see {@link #setLanguageProcessors(LanguageProcessorRegistry)}.
+     * The caller is responsible for closing the returned registry.
+     *
+     * @since 7.7.0
+     */
+    @Experimental
+    public LanguageProcessorRegistry startLanguageProcessors() {
+        return LanguageProcessorRegistry.create(
+            new LanguageRegistry(getApplicableLanguages(true)),
+            langProperties,
+            reporter
+        );
+    }
+
+    /**
+     * Sets language processors that are already started, to be used by
+     * {@link #performAnalysis()} instead of starting new ones. This lets
+     * the state of the processors, like the type system of the Java
+     * processor, be reused across analyses. The processors are not closed
+     * by this instance, and neither is the {@linkplain PMDConfiguration#getClassLoader() classloader}
+     * of the configuration, which is assumed to be the one the processors
+     * were started with.
+     *
+     * <p>If the registry does not contain a processor for every applicable
+     * language, new processors are started for the analysis as usual.
+     *
+     * @param processors Started processors, or null to start new processors for each analysis
+     *
+     * @since 7.7.0
+     */
+    @Experimental
+    public void setLanguageProcessors(@Nullable LanguageProcessorRegistry processors) {
+        this.sharedProcessors = processors;
+    }
+
     /**
      * Run PMD with the current state of this instance. This will start
      * and finish the registered renderers, and close all
@@ -382,6 +427,8 @@ public final class PmdAnalysis implements AutoCloseable {
 
     void performAnalysisImpl(List<? extends GlobalReportBuilderListener> extraListeners, List<TextFile> textFiles) {
         RuleSets rulesets = new RuleSets(this.ruleSets);
+        rulesets.setFusedRuleDispatch(configuration.isFusedRuleDispatch());
+        rulesets.setParallelRuleThreshold(configuration.getParallelRuleThreshold());
 
         GlobalAnalysisListener listener;
         try {
@@ -416,12 +463,15 @@ public final class PmdAnalysis implements AutoCloseable {
 
             encourageToUseIncrementalAnalysis(configuration);
 
-            try (LanguageProcessorRegistry lpRegistry = LanguageProcessorRegistry.create(
+            Set<Language> applicableLanguages = getApplicableLanguages(true);
+            boolean shared = sharedProcessors != null
+                && sharedProcessors.getLanguages().getLanguages().containsAll(applicableLanguages);
+            @SuppressWarnings("PMD.CloseResource")
+            LanguageProcessorRegistry lpRegistry = shared
+                ? sharedProcessors
                 // only start the applicable languages (and dependencies)
-                new LanguageRegistry(getApplicableLanguages(true)),
-                langProperties,
-                reporter
-            )) {
+                : LanguageProcessorRegistry.create(new LanguageRegistry(applicableLanguages), langProperties, reporter);
+            try {
                 // Note the analysis task is shared: all processors see
                 // the same file list, which may contain files for other
                 // languages.
@@ -430,6 +480,9 @@ public final class PmdAnalysis implements AutoCloseable {
                     textFiles,
                     listener,
                     configuration.getThreads(),
+                    configuration.isSizeAwareScheduling(),
+                    useVirtualThreads(),
+                    configuration.isPipelinedAnalysis(),
                     configuration.getAnalysisCache(),
                     reporter,
                     lpRegistry
@@ -437,7 +490,7 @@ public final class PmdAnalysis implements AutoCloseable {
 
                 List<AutoCloseable> analyses = new ArrayList<>();
                 try {
-                    for (Language lang : lpRegistry.getLanguages()) {
+                    for (Language lang : applicableLanguages) {
                         analyses.add(lpRegistry.getProcessor(lang).launchAnalysis(analysisTask));
                     }
                 } finally {
@@ -447,8 +500,14 @@ public final class PmdAnalysis implements AutoCloseable {
                     }
                 }
 
-            } catch (LanguageTerminationException e) {
-                reporter.errorEx("Error while closing language processors", e);
+            } finally {
+                if (!shared) {
+                    try {
+                        lpRegistry.close();
+                    } catch (LanguageTerminationException e) {
+                        reporter.errorEx("Error while closing language processors", e);
+                    }
+                }
             }
         } finally {
             try {
@@ -462,6 +521,14 @@ public final class PmdAnalysis implements AutoCloseable {
     }
 
 
+    private boolean useVirtualThreads() {
+        if (configuration.isVirtualThreads() && configuration.getThreads() > 0 && !VirtualThreads.isSupported()) {
+            reporter.warn("Virtual threads are not supported by this JVM (they require Java 21 or later), using platform threads instead");
+            return false;
+        }
+        return configuration.isVirtualThreads();
+    }
+
     private GlobalAnalysisListener createComposedRendererListener(List<Renderer> renderers) throws Exception {
         if (renderers.isEmpty()) {
             return GlobalAnalysisListener.noop();
@@ -561,9 +628,10 @@ public final class PmdAnalysis implements AutoCloseable {
         /*
          * Make sure it's our own classloader before attempting to close it....
          * Maven + Jacoco provide us with a cloaseable classloader that if closed
-         * will throw a ClassNotFoundException.
+         * will throw a ClassNotFoundException. Shared processors keep
+         * using the classloader after this analysis.
          */
-        if (configuration.getClassLoader() instanceof ClasspathClassLoader) {
+        if (sharedProcessors == null && configuration.getClassLoader() instanceof ClasspathClassLoader) {
             IOUtil.tryCloseClassLoader(configuration.getClassLoader());
         }
     }
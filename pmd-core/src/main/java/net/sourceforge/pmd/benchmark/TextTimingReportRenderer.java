@@ -26,6 +26,7 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
 
     private static final String TIME_FORMAT = "{0,number,0.0000}";
     private static final String CUSTOM_COUNTER_FORMAT = "{0,number,###,###,###}";
+    private static final String PERCENT_FORMAT = "{0,number,0.0%}";
 
     private static final int LABEL_COLUMN_WIDTH = 50;
     private static final int TIME_COLUMN_WIDTH = 12;
@@ -63,6 +64,20 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         writer.write(StringUtils.leftPad(wallClockTime, TIME_COLUMN_WIDTH));
         writer.println();
 
+        if (!report.getThreadUtilization().isEmpty()) {
+            writer.write(StringUtils.rightPad("Average Thread Utilization", LABEL_COLUMN_WIDTH));
+            final String utilization = MessageFormat.format(PERCENT_FORMAT, report.getAverageThreadUtilization());
+            writer.write(StringUtils.leftPad(utilization, TIME_COLUMN_WIDTH));
+            writer.println();
+        }
+
+        if (!report.getLabeledMeasurements(TimedOperationCategory.REPORT_MERGE).isEmpty()) {
+            writer.write(StringUtils.rightPad("Report Merge Contention", LABEL_COLUMN_WIDTH));
+            final String contention = MessageFormat.format(PERCENT_FORMAT, report.getReportMergeContention());
+            writer.write(StringUtils.leftPad(contention, TIME_COLUMN_WIDTH));
+            writer.println();
+        }
+
         writer.flush();
     }
 
@@ -93,7 +108,10 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         renderHeader(category.displayName(), writer);
 
         final TimedResult grandTotal = new TimedResult();
-        final Set<Entry<String, TimedResult>> sortedKeySet = new TreeSet<>(Comparator.comparingLong(o -> o.getValue().selfTimeNanos.get()));
+        final Set<Entry<String, TimedResult>> sortedKeySet = new TreeSet<>(
+            Comparator.<Entry<String, TimedResult>>comparingLong(o -> o.getValue().selfTimeNanos.get())
+                      // measurements without time, eg counts, must not be merged
+                      .thenComparing(Entry::getKey));
         sortedKeySet.addAll(labeledMeasurements.entrySet());
 
         for (final Map.Entry<String, TimedResult> entry : sortedKeySet) {
@@ -130,6 +130,47 @@ public final class TimeTracker {
         return new TimedOperationImpl();
     }
 
+    /**
+     * Resumes tracking an operation that was started earlier, eg
+     * because it is interleaved with other operations. The time is
+     * accumulated like for {@link #startOperation(TimedOperationCategory, String)},
+     * but this is not counted as a separate call of the operation.
+     *
+     * @param category The category under which to track the operation.
+     * @param label A label to be added to the category.
+     * @return The current timed operation being tracked.
+     */
+    public static TimedOperation resumeOperation(final TimedOperationCategory category, final String label) {
+        if (!trackTime) {
+            return NOOP_TIMED_OPERATION;
+        }
+
+        TimerEntry entry = new TimerEntry(category, label);
+        entry.resumed = true;
+        TIMER_ENTRIES.get().add(entry);
+        return new TimedOperationImpl();
+    }
+
+    /**
+     * Counts a call of an operation whose time was tracked with
+     * {@link #resumeOperation(TimedOperationCategory, String)}, which
+     * does not count calls.
+     *
+     * @param category         The category under which the operation was tracked.
+     * @param label            The label of the operation.
+     * @param extraDataCounter An optional additional data counter, see {@link #finishOperation(long)}
+     */
+    public static void recordCall(final TimedOperationCategory category, final String label, final long extraDataCounter) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedOperationKey key = new TimedOperationKey(category, label);
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(key, k -> new TimedResult());
+        result.callCount.getAndIncrement();
+        result.extraDataCounter.getAndAdd(extraDataCounter);
+    }
+
     /**
      * Finishes tracking an operation.
      * @param extraDataCounter An optional additional data counter to track along the measurements.
@@ -158,6 +199,72 @@ public final class TimeTracker {
         }
     }
 
+    /**
+     * Records that an analysis thread spent the given amount of time
+     * busy processing a unit of work (eg a file). This is accumulated
+     * per thread label under {@link TimedOperationCategory#THREAD_UTILIZATION},
+     * so that the report can show how evenly work was spread across threads.
+     *
+     * @param threadLabel Name of the thread (or of the execution slot) that did the work
+     * @param busyNanos   Time spent on the unit of work, in nanoseconds
+     */
+    public static void recordThreadActivity(final String threadLabel, final long busyNanos) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedOperationKey key = new TimedOperationKey(TimedOperationCategory.THREAD_UTILIZATION, threadLabel);
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(key, k -> new TimedResult());
+        result.totalTimeNanos.getAndAdd(busyNanos);
+        result.selfTimeNanos.getAndAdd(busyNanos);
+        result.callCount.getAndIncrement();
+    }
+
+    /**
+     * Records that the report of a file was handed over to a report sink,
+     * eg a renderer. This is accumulated per sink under
+     * {@link TimedOperationCategory#REPORT_MERGE}. The counter of the
+     * result is the number of reports that found the sink busy with the
+     * report of another thread, which measures the contention on the sink.
+     *
+     * @param sinkLabel  Name of the report sink
+     * @param mergeNanos Time the thread spent merging reports into the sink, in nanoseconds
+     * @param contended  Whether the sink was busy with the report of another thread
+     */
+    public static void recordReportMerge(final String sinkLabel, final long mergeNanos, final boolean contended) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedOperationKey key = new TimedOperationKey(TimedOperationCategory.REPORT_MERGE, sinkLabel);
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(key, k -> new TimedResult());
+        result.totalTimeNanos.getAndAdd(mergeNanos);
+        result.selfTimeNanos.getAndAdd(mergeNanos);
+        result.callCount.getAndIncrement();
+        if (contended) {
+            result.extraDataCounter.getAndIncrement();
+        }
+    }
+
+    /**
+     * Records that an XPath rule evaluated its query on a node. This is
+     * counted per rule and evaluation path under {@link TimedOperationCategory#XPATH_EVALUATION},
+     * so that the report shows which rules use the compiled evaluation,
+     * and which use Saxon, possibly after falling back to it.
+     *
+     * @param ruleName Name of the rule
+     * @param compiled Whether the query was evaluated without Saxon
+     */
+    public static void recordXPathEvaluation(final String ruleName, final boolean compiled) {
+        if (!trackTime) {
+            return;
+        }
+
+        final String label = ruleName + (compiled ? " (compiled)" : " (Saxon)");
+        final TimedOperationKey key = new TimedOperationKey(TimedOperationCategory.XPATH_EVALUATION, label);
+        ACCUMULATED_RESULTS.computeIfAbsent(key, k -> new TimedResult()).callCount.getAndIncrement();
+    }
+
     public static void bench(String label, Runnable runnable) {
         try (TimedOperation ignored = startOperation(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, label)) {
             runnable.run();
@@ -177,6 +284,7 @@ public final class TimeTracker {
         /* package */ final TimedOperationKey operation;
         /* package */ final long start;
         /* package */ long inNestedOperationsNanos = 0;
+        /* package */ boolean resumed = false;
 
         /* package */ TimerEntry(final TimedOperationCategory category, final String label) {
             this.operation = new TimedOperationKey(category, label);
@@ -209,7 +317,9 @@ public final class TimeTracker {
 
             totalTimeNanos.getAndAdd(delta);
             selfTimeNanos.getAndAdd(delta - timerEntry.inNestedOperationsNanos);
-            callCount.getAndIncrement();
+            if (!timerEntry.resumed) {
+                callCount.getAndIncrement();
+            }
             extraDataCounter.getAndAdd(extraData);
 
             return delta;
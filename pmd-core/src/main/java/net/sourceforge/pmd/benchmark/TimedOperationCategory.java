@@ -27,6 +27,22 @@ public enum TimedOperationCategory {
     REPORTING,
     FILE_PROCESSING,
     ANALYSIS_CACHE,
+    /**
+     * Busy time of each analysis thread, labeled with the thread name.
+     * Not a timed operation, see {@link TimeTracker#recordThreadActivity(String, long)}.
+     */
+    THREAD_UTILIZATION,
+    /**
+     * Reports of files handed over to a report sink, labeled with the sink.
+     * Not a timed operation, see {@link TimeTracker#recordReportMerge(String, long, boolean)}.
+     */
+    REPORT_MERGE,
+    /**
+     * Evaluations of the queries of XPath rules, labeled with the rule and
+     * whether the query was evaluated by the compiled evaluator or by Saxon.
+     * Not a timed operation, see {@link TimeTracker#recordXPathEvaluation(String, boolean)}.
+     */
+    XPATH_EVALUATION,
     UNACCOUNTED;
 
     public String displayName() {
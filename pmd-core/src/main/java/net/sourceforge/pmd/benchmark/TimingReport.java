@@ -51,4 +51,46 @@ public class TimingReport {
     public long getWallClockMillis() {
         return wallClockMillis;
     }
+
+    /**
+     * Returns the busy time of each analysis thread, keyed by thread name.
+     * The call count of each result is the number of files the thread processed.
+     */
+    public Map<String, TimedResult> getThreadUtilization() {
+        return getLabeledMeasurements(TimedOperationCategory.THREAD_UTILIZATION);
+    }
+
+    /**
+     * Returns the average utilization of the analysis threads, that is, the
+     * ratio of the total busy time of all threads to the wall clock time
+     * multiplied by the number of threads. This is a number between 0 and 1,
+     * or 0 if no thread activity was recorded.
+     */
+    public double getAverageThreadUtilization() {
+        final Map<String, TimedResult> threads = getThreadUtilization();
+        if (threads.isEmpty() || wallClockMillis <= 0) {
+            return 0;
+        }
+        long busyNanos = 0;
+        for (final TimedResult result : threads.values()) {
+            busyNanos += result.totalTimeNanos.get();
+        }
+        return Math.min(1.0, busyNanos / (wallClockMillis * 1_000_000.0 * threads.size()));
+    }
+
+    /**
+     * Returns the ratio of the reports of files that found their report
+     * sink busy with the report of another thread, to all the reports
+     * handed over to a sink. This is a number between 0 and 1, or 0 if
+     * no report was recorded.
+     */
+    public double getReportMergeContention() {
+        long merges = 0;
+        long contended = 0;
+        for (final TimedResult result : getLabeledMeasurements(TimedOperationCategory.REPORT_MERGE).values()) {
+            merges += result.callCount.get();
+            contended += result.extraDataCounter.get();
+        }
+        return merges == 0 ? 0 : (double) contended / merges;
+    }
 }
@@ -14,11 +14,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -52,6 +58,29 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     protected long rulesetChecksum;
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    /**
+     * Checksums of the dependencies of the cached results, see {@link ClasspathDependencyRecorder}.
+     * Zero if the class or file was not found.
+     */
+    protected final ConcurrentMap<String, Long> classpathDependencyChecksums = new ConcurrentHashMap<>();
+    /** Size and modification time of the class files and files whose checksum is known. */
+    protected final ConcurrentMap<String, Long> classpathDependencyStamps = new ConcurrentHashMap<>();
+    /** The dependencies of each dependency, see {@link ClasspathDependencyRecorder#getDependencies(String)}. */
+    protected final ConcurrentMap<String, Set<String>> classpathDependencyGraph = new ConcurrentHashMap<>();
+    /** Dependencies that changed since the cache was persisted, or that depend on one that changed. */
+    private final Set<String> changedClasspathDependencies = ConcurrentHashMap.newKeySet();
+    /** Whether the fingerprint of the auxclasspath changed since the cache was persisted. */
+    private boolean auxClassPathChanged;
+    /** The checksum of the runtime of the auxclasspath, see {@link ClasspathDependencyRecorder#RUNTIME_CLASSES}. */
+    private long runtimeChecksum;
+    /** The files of the analysis, by dependency. */
+    private Map<String, TextFile> analyzedFiles = Collections.emptyMap();
+    /** Whether the persisted cache was loaded, and the results in memory match it. */
+    private boolean loaded;
+    /** Whether the results of the last analysis were persisted. */
+    private boolean resultsPersisted;
+    /** Used to compute the checksums of dependencies, null if there is no auxclasspath. */
+    private URLClassLoader auxClassPathClassLoader;
 
     /**
      * Creates a new empty cache
@@ -63,12 +92,13 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     @Override
     public boolean isUpToDate(final TextDocument document) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
-            final AnalysisResult cachedResult = fileResultsCache.get(document.getFileId());
+            final AnalysisResult cachedResult = getCachedResult(document);
             final AnalysisResult updatedResult;
 
             // is this a known file? has it changed?
-            final boolean upToDate = cachedResult != null
+            final boolean fileUpToDate = cachedResult != null
                 && cachedResult.getFileChecksum() == document.getCheckSum();
+            final boolean upToDate = fileUpToDate && areDependenciesUpToDate(cachedResult);
 
             if (upToDate) {
                 LOG.trace("Incremental Analysis cache HIT");
@@ -77,7 +107,8 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
                 updatedResult = cachedResult;
             } else {
                 LOG.trace("Incremental Analysis cache MISS - {}",
-                          cachedResult != null ? "file changed" : "no previous result found");
+                          cachedResult == null ? "no previous result found"
+                                               : fileUpToDate ? "dependency changed" : "file changed");
                 
                 // New file being analyzed, create new empty entry
                 updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>());
@@ -89,9 +120,119 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
         }
     }
 
+    private boolean areDependenciesUpToDate(AnalysisResult cachedResult) {
+        final Set<String> dependencies = cachedResult.getClasspathDependencies();
+        if (dependencies == null) {
+            // the language doesn't record what its results depend on
+            return !auxClassPathChanged;
+        }
+        for (String dependency : dependencies) {
+            if (changedClasspathDependencies.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void recordClasspathDependencies(TextDocument document, ClasspathDependencyRecorder recorder) {
+        final AnalysisResult result = updatedResultsCache.get(document.getFileId());
+        if (result == null) {
+            return;
+        }
+        final Set<String> dependencies = recorder.getDependencies();
+        result.setClasspathDependencies(dependencies);
+
+        // the graph is shared by all files, only the unknown part is requested
+        final Deque<String> toVisit = new ArrayDeque<>(dependencies);
+        while (!toVisit.isEmpty()) {
+            final String dependency = toVisit.pop();
+            if (!classpathDependencyGraph.containsKey(dependency)) {
+                final Set<String> next = recorder.getDependencies(dependency);
+                if (classpathDependencyGraph.putIfAbsent(dependency, next) == null) {
+                    toVisit.addAll(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the dependencies of the results that will be persisted,
+     * directly or not, and computes the checksums of those that are not
+     * known yet. The other dependencies are dropped.
+     */
+    protected Set<String> collectClasspathDependencies() {
+        final Set<String> live = new HashSet<>();
+        final Deque<String> toVisit = new ArrayDeque<>();
+        for (AnalysisResult result : updatedResultsCache.values()) {
+            final Set<String> dependencies = result.getClasspathDependencies();
+            if (dependencies != null) {
+                toVisit.addAll(dependencies);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            final String dependency = toVisit.pop();
+            if (live.add(dependency)) {
+                toVisit.addAll(classpathDependencyGraph.getOrDefault(dependency, Collections.emptySet()));
+            }
+        }
+
+        classpathDependencyChecksums.keySet().retainAll(live);
+        classpathDependencyStamps.keySet().retainAll(live);
+        classpathDependencyGraph.keySet().retainAll(live);
+        try (ClasspathDependencyChecker checker = newDependencyChecker()) {
+            live.parallelStream().forEach(dependency -> classpathDependencyChecksums.computeIfAbsent(dependency, checker::checksum));
+        }
+        return live;
+    }
+
+    private ClasspathDependencyChecker newDependencyChecker() {
+        return new ClasspathDependencyChecker(auxClassPathClassLoader, runtimeChecksum, analyzedFiles, classpathDependencyStamps);
+    }
+
+    /**
+     * Recomputes the checksums of the known dependencies, and records
+     * those that changed, and the ones that depend on them.
+     *
+     * @param checkClasses Whether the classes of the auxclasspath may have changed
+     */
+    private void findChangedClasspathDependencies(boolean checkClasses) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "dependency check");
+             ClasspathDependencyChecker checker = newDependencyChecker()) {
+            final Set<String> changed = ConcurrentHashMap.newKeySet();
+            classpathDependencyChecksums.entrySet().parallelStream()
+                .filter(entry -> checkClasses || !ClasspathDependencyChecker.isClass(entry.getKey()))
+                .forEach(entry -> {
+                    final long currentChecksum = checker.checksum(entry.getKey(), entry.getValue());
+                    if (currentChecksum != entry.getValue()) {
+                        changed.add(entry.getKey());
+                        entry.setValue(currentChecksum);
+                    }
+                });
+
+            final Map<String, List<String>> dependents = new HashMap<>();
+            classpathDependencyGraph.forEach((dependency, dependencies) -> {
+                for (String target : dependencies) {
+                    dependents.computeIfAbsent(target, k -> new ArrayList<>()).add(dependency);
+                }
+            });
+            final Deque<String> toVisit = new ArrayDeque<>(changed);
+            while (!toVisit.isEmpty()) {
+                final String dependency = toVisit.pop();
+                if (changedClasspathDependencies.add(dependency)) {
+                    toVisit.addAll(dependents.getOrDefault(dependency, Collections.emptyList()));
+                }
+            }
+            // their dependencies are requested again from the files that still use them
+            classpathDependencyGraph.keySet().removeAll(changedClasspathDependencies);
+            LOG.debug("{} of {} dependencies changed, {} are affected",
+                      changed.size(), classpathDependencyChecksums.size(), changedClasspathDependencies.size());
+        }
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(final TextDocument sourceFile) {
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getFileId());
+        final AnalysisResult analysisResult = getCachedResult(sourceFile);
 
         if (analysisResult == null) {
             // new file, avoid nulls
@@ -101,6 +242,30 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
         return analysisResult.getViolations();
     }
 
+    /**
+     * Returns the result of the previous analysis of the given file, or null
+     * if it is not in the cache. By default, results are looked up in
+     * {@link #fileResultsCache}, subclasses may load them lazily.
+     */
+    protected AnalysisResult getCachedResult(final TextDocument document) {
+        return fileResultsCache.get(document.getFileId());
+    }
+
+    /**
+     * Drops all results of previous analyses, because the cache is not valid
+     * for the current analysis.
+     */
+    protected void clearCachedResults() {
+        fileResultsCache.clear();
+        clearClasspathDependencies();
+    }
+
+    private void clearClasspathDependencies() {
+        classpathDependencyChecksums.clear();
+        classpathDependencyStamps.clear();
+        classpathDependencyGraph.clear();
+    }
+
     @Override
     public void analysisFailed(final TextDocument sourceFile) {
         updatedResultsCache.remove(sourceFile.getFileId());
@@ -114,8 +279,55 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     protected abstract boolean cacheExists();
 
 
+    /**
+     * Prepares the cache for the next analysis, if it is used by several
+     * analyses, eg by a long-lived process. If the previous analysis was
+     * persisted, its results are the ones of the persisted cache, so they
+     * are kept in memory instead of being read again. This is called before
+     * the validity of the cache is checked.
+     */
+    protected void resetAnalysisState() {
+        if (resultsPersisted) {
+            fileResultsCache.clear();
+            fileResultsCache.putAll(updatedResultsCache);
+            resultsPersisted = false;
+        } else if (!loaded) {
+            fileResultsCache.clear();
+            clearClasspathDependencies();
+        }
+        updatedResultsCache.clear();
+        changedClasspathDependencies.clear();
+        auxClassPathChanged = false;
+    }
+
+    /**
+     * Loads the persisted cache, if it is read eagerly. This is called
+     * before the validity of the cache is checked by the first analysis,
+     * and after a failure to persist the cache.
+     */
+    protected void loadPersistedCache() {
+        // results are loaded lazily by default
+    }
+
+    /**
+     * Records whether the results of the analysis were persisted. If they
+     * were not, the persisted cache is loaded again by the next analysis.
+     */
+    protected void onPersisted(boolean written) {
+        if (written) {
+            resultsPersisted = true;
+        } else {
+            loaded = false;
+        }
+    }
+
     @Override
     public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+        resetAnalysisState();
+        if (!loaded) {
+            loadPersistedCache();
+            loaded = true;
+        }
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
             boolean cacheIsValid = cacheExists();
 
@@ -124,18 +336,32 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
                 cacheIsValid = false;
             }
 
+            final Map<String, TextFile> currentFiles = new HashMap<>();
+            for (TextFile file : files) {
+                currentFiles.put(ClasspathDependencyRecorder.fileDependency(file.getFileId()), file);
+            }
+            analyzedFiles = currentFiles;
+
             final long currentAuxClassPathChecksum;
+            boolean checkClasses = false;
             if (auxclassPathClassLoader instanceof URLClassLoader) {
                 // we don't want to close our aux classpath loader - we still need it...
                 @SuppressWarnings("PMD.CloseResource") final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
-                currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(urlClassLoader.getURLs());
+                auxClassPathClassLoader = urlClassLoader;
+                final URL[] urls = urlClassLoader.getURLs();
+                currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(urls);
+                runtimeChecksum = FINGERPRINTER.fingerprint(getRuntimeEntries(urls));
 
                 if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
-                    // TODO some rules don't need that (in fact, some languages)
-                    LOG.debug("Analysis cache invalidated, auxclasspath changed.");
-                    cacheIsValid = false;
+                    // results that don't depend on a changed class are kept
+                    LOG.debug("Auxclasspath changed, checking the classes the cached results depend on.");
+                    auxClassPathChanged = true;
                 }
+                // directories are not fingerprinted, the classes they contain may have changed
+                checkClasses = auxClassPathChanged || hasDirectoryEntry(urls);
             } else {
+                auxClassPathClassLoader = null;
+                runtimeChecksum = 0;
                 currentAuxClassPathChecksum = 0;
             }
 
@@ -147,7 +373,9 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
 
             if (!cacheIsValid) {
                 // Clear the cache
-                fileResultsCache.clear();
+                clearCachedResults();
+            } else if (!classpathDependencyChecksums.isEmpty()) {
+                findChangedClasspathDependencies(checkClasses);
             }
 
             // Update the local checksums
@@ -158,6 +386,27 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
         }
     }
 
+    private static boolean hasDirectoryEntry(URL[] urls) {
+        for (URL url : urls) {
+            // by convention, URLClassLoader treats URLs ending with a slash as directories
+            if ("file".equals(url.getProtocol()) && url.getPath().endsWith("/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the entries that replace the Java runtime, see {@link net.sourceforge.pmd.internal.util.ClasspathClassLoader}. */
+    private static URL[] getRuntimeEntries(URL[] urls) {
+        final List<URL> runtime = new ArrayList<>();
+        for (URL url : urls) {
+            if (url.getPath().endsWith("/jrt-fs.jar")) {
+                runtime.add(url);
+            }
+        }
+        return runtime.toArray(new URL[0]);
+    }
+
     private static boolean isClassPathWildcard(String entry) {
         return entry.endsWith("/*") || entry.endsWith("\\*");
     }
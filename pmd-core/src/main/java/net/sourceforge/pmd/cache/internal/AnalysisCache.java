@@ -65,6 +65,18 @@ public interface AnalysisCache {
      */
     void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files);
 
+    /**
+     * Records the classes of the auxclasspath, and the other files of the
+     * analysis, the analysis of the given file depended on. When those are
+     * known, a change of the auxclasspath or of another file only invalidates
+     * the results of the files that depend on what changed.
+     * This must be called after {@link #isUpToDate(TextDocument)}.
+     *
+     * @param document     The analyzed file
+     * @param dependencies The recorder of the dependencies of the file
+     */
+    void recordClasspathDependencies(TextDocument document, ClasspathDependencyRecorder dependencies);
+
     /**
      * Returns a listener that will be used like in {@link GlobalAnalysisListener#startFileAnalysis(TextFile)}.
      * This should record violations, and call {@link #analysisFailed(TextDocument)}
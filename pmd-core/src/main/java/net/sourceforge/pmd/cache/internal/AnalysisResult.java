@@ -6,6 +6,7 @@ package net.sourceforge.pmd.cache.internal;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.pmd.reporting.RuleViolation;
 
@@ -17,6 +18,7 @@ public class AnalysisResult {
 
     private final long fileChecksum;
     private final List<RuleViolation> violations;
+    private Set<String> classpathDependencies;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
         this.fileChecksum = fileChecksum;
@@ -35,6 +37,18 @@ public class AnalysisResult {
         return violations;
     }
 
+    /**
+     * Returns what the analysis depended on, or null if it was not
+     * recorded, see {@link ClasspathDependencyRecorder#getDependencies()}.
+     */
+    public Set<String> getClasspathDependencies() {
+        return classpathDependencies;
+    }
+
+    public void setClasspathDependencies(final Set<String> classpathDependencies) {
+        this.classpathDependencies = classpathDependencies;
+    }
+
     public void addViolations(final List<RuleViolation> violations) {
         this.violations.addAll(violations);
     }
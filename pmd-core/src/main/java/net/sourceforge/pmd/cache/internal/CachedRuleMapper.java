@@ -6,6 +6,8 @@ package net.sourceforge.pmd.cache.internal;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
@@ -16,6 +18,7 @@ import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 class CachedRuleMapper {
 
     private final Map<String, Rule> cachedRulesInstances = new HashMap<>();
+    private final ConcurrentMap<String, String> internedStrings = new ConcurrentHashMap<>();
 
     /**
      * Finds a rule instance for the given rule class name, name and target language
@@ -38,6 +41,16 @@ class CachedRuleMapper {
         }
     }
 
+    /**
+     * Returns a canonical instance of the given string, so that the rule
+     * names, languages and messages of cached violations are shared by
+     * all files. Files may be loaded in parallel.
+     */
+    public String intern(final String string) {
+        final String previous = internedStrings.putIfAbsent(string, string);
+        return previous != null ? previous : string;
+    }
+
     private String getRuleKey(final String className, final String ruleName, final String languageName) {
         return className + "$$" + ruleName + "$$" + languageName;
     }
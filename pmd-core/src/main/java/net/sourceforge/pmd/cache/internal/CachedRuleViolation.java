@@ -7,10 +7,15 @@ package net.sourceforge.pmd.cache.internal;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -23,37 +28,39 @@ import net.sourceforge.pmd.util.StringUtil;
 
 /**
  * A {@link RuleViolation} implementation that is immutable, and therefore cache friendly.
+ *
+ * <p>The violations of a file are stored together, see {@link #storeToStream(DataOutputStream, List)}.
+ * Strings that repeat across violations, like the rule names, the languages
+ * and the messages, are written once in a string table, and are referenced
+ * by their index afterwards. When read back, the violations are kept in a
+ * flat representation, and a {@link CachedRuleViolation} is only created
+ * when the violation is requested.
  */
 final class CachedRuleViolation implements RuleViolation {
 
-    private final CachedRuleMapper mapper;
+    /** Number of ints per violation: rule id, description id, begin line, begin column, end line, end column. */
+    private static final int VIOLATION_STRIDE = 6;
 
+    private final CachedRuleMapper mapper;
+    private final CachedRule rule;
     private final String description;
-    private final String ruleClassName;
-    private final String ruleName;
-    private final String ruleTargetLanguage;
     private final Map<String, String> additionalInfo;
 
     private final FileLocation location;
 
-    private CachedRuleViolation(final CachedRuleMapper mapper, final String description,
-                                final FileId fileFileId, final String ruleClassName, final String ruleName,
-                                final String ruleTargetLanguage, final int beginLine, final int beginColumn,
-                                final int endLine, final int endColumn,
-                                final Map<String, String> additionalInfo) {
+    private CachedRuleViolation(final CachedRuleMapper mapper, final CachedRule rule, final String description,
+                                final FileLocation location, final Map<String, String> additionalInfo) {
         this.mapper = mapper;
+        this.rule = rule;
         this.description = description;
-        this.location = FileLocation.range(fileFileId, TextRange2d.range2d(beginLine, beginColumn, endLine, endColumn));
-        this.ruleClassName = ruleClassName;
-        this.ruleName = ruleName;
-        this.ruleTargetLanguage = ruleTargetLanguage;
+        this.location = location;
         this.additionalInfo = additionalInfo;
     }
-    
+
     @Override
     public Rule getRule() {
         // The mapper may be initialized after cache is loaded, so use it lazily
-        return mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage);
+        return rule.resolve(mapper);
     }
 
     @Override
@@ -72,33 +79,58 @@ final class CachedRuleViolation implements RuleViolation {
     }
 
     /**
-     * Helper method to load a {@link CachedRuleViolation} from an input stream.
+     * Helper method to load the violations of a file from an input stream.
+     * The returned list cannot be modified.
      *
-     * @param stream     The stream from which to load the violation.
-     * @param fileFileId The name of the file on which this rule was reported.
+     * @param stream     The stream from which to load the violations.
+     * @param fileFileId The name of the file on which the violations were reported.
      * @param mapper     The mapper to be used to obtain rule instances from the active rulesets.
      *
-     * @return The loaded rule violation.
+     * @return The loaded rule violations.
      */
     /* package */
-    static CachedRuleViolation loadFromStream(
+    static List<RuleViolation> loadFromStream(
         DataInputStream stream,
         FileId fileFileId, CachedRuleMapper mapper) throws IOException {
 
-        String description = stream.readUTF();
-        String ruleClassName = stream.readUTF();
-        String ruleName = stream.readUTF();
-        String ruleTargetLanguage = stream.readUTF();
-        int beginLine = stream.readInt();
-        int beginColumn = stream.readInt();
-        int endLine = stream.readInt();
-        int endColumn = stream.readInt();
-        Map<String, String> additionalInfo = readAdditionalInfo(stream);
-        return new CachedRuleViolation(mapper, description, fileFileId, ruleClassName, ruleName, ruleTargetLanguage,
-                                       beginLine, beginColumn, endLine, endColumn, additionalInfo);
+        final int countViolations = stream.readInt();
+        if (countViolations == 0) {
+            return Collections.emptyList();
+        }
+        final StringTableReader strings = new StringTableReader(stream, mapper);
+        final List<CachedRule> rules = new ArrayList<>();
+        final Map<CachedRule, Integer> ruleIds = new HashMap<>();
+        final int[] data = new int[countViolations * VIOLATION_STRIDE];
+        Map<Integer, Map<String, String>> additionalInfos = Collections.emptyMap();
+
+        for (int i = 0; i < countViolations; i++) {
+            final CachedRule rule = new CachedRule(strings.read(), strings.read(), strings.read());
+            Integer ruleId = ruleIds.get(rule);
+            if (ruleId == null) {
+                ruleId = rules.size();
+                rules.add(rule);
+                ruleIds.put(rule, ruleId);
+            }
+            final int offset = i * VIOLATION_STRIDE;
+            data[offset] = ruleId;
+            data[offset + 1] = strings.readId();
+            for (int j = 2; j < VIOLATION_STRIDE; j++) {
+                data[offset + j] = stream.readInt();
+            }
+
+            final Map<String, String> additionalInfo = readAdditionalInfo(stream, strings);
+            if (!additionalInfo.isEmpty()) {
+                if (additionalInfos.isEmpty()) {
+                    additionalInfos = new HashMap<>();
+                }
+                additionalInfos.put(i, additionalInfo);
+            }
+        }
+        return new CachedViolations(mapper, fileFileId, rules.toArray(new CachedRule[0]), strings.toArray(),
+                                    data, additionalInfos);
     }
 
-    private static @NonNull Map<String, String> readAdditionalInfo(DataInputStream stream) throws IOException {
+    private static @NonNull Map<String, String> readAdditionalInfo(DataInputStream stream, StringTableReader strings) throws IOException {
         int numAdditionalInfoKeyValuePairs = stream.readInt();
         if (numAdditionalInfoKeyValuePairs == 0) {
             return Collections.emptyMap();
@@ -106,7 +138,7 @@ final class CachedRuleViolation implements RuleViolation {
 
         Map<String, String> additionalInfo = new LinkedHashMap<>();
         while (numAdditionalInfoKeyValuePairs-- > 0) {
-            final String key = stream.readUTF();
+            final String key = strings.read();
             final String value = stream.readUTF();
             additionalInfo.put(key, value);
         }
@@ -114,30 +146,185 @@ final class CachedRuleViolation implements RuleViolation {
     }
 
     /**
-     * Helper method to store a {@link RuleViolation} in an output stream to be later
-     * retrieved as a {@link CachedRuleViolation}
+     * Helper method to store the violations of a file in an output stream
+     * to be later retrieved as {@link CachedRuleViolation}s.
      *
-     * @param stream    The stream on which to store the violation.
-     * @param violation The rule violation to cache.
+     * @param stream     The stream on which to store the violations.
+     * @param violations The rule violations to cache.
      */
     /* package */ static void storeToStream(final DataOutputStream stream,
-            final RuleViolation violation) throws IOException {
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getDescription()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getRuleClass()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getName()));
-        stream.writeUTF(StringUtil.nullToEmpty(violation.getRule().getLanguage().getId()));
-        FileLocation location = violation.getLocation();
-        stream.writeInt(location.getStartPos().getLine());
-        stream.writeInt(location.getStartPos().getColumn());
-        stream.writeInt(location.getEndPos().getLine());
-        stream.writeInt(location.getEndPos().getColumn());
-        Map<String, String> additionalInfo = violation.getAdditionalInfo();
-        stream.writeInt(additionalInfo.size());
-        for (Entry<String, String> entry : additionalInfo.entrySet()) {
-            stream.writeUTF(entry.getKey());
-            stream.writeUTF(StringUtil.nullToEmpty(entry.getValue()));
+            final List<RuleViolation> violations) throws IOException {
+        stream.writeInt(violations.size());
+        final StringTableWriter strings = new StringTableWriter(stream);
+        for (final RuleViolation violation : violations) {
+            strings.write(violation.getRule().getRuleClass());
+            strings.write(violation.getRule().getName());
+            strings.write(violation.getRule().getLanguage().getId());
+            strings.write(violation.getDescription());
+            FileLocation location = violation.getLocation();
+            stream.writeInt(location.getStartPos().getLine());
+            stream.writeInt(location.getStartPos().getColumn());
+            stream.writeInt(location.getEndPos().getLine());
+            stream.writeInt(location.getEndPos().getColumn());
+            Map<String, String> additionalInfo = violation.getAdditionalInfo();
+            stream.writeInt(additionalInfo.size());
+            for (Entry<String, String> entry : additionalInfo.entrySet()) {
+                strings.write(entry.getKey());
+                stream.writeUTF(StringUtil.nullToEmpty(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Writes each distinct string once. A string is referenced by its
+     * index in the table; the first time it is written, the index is the
+     * size of the table and is followed by the string itself.
+     */
+    private static final class StringTableWriter {
+
+        private final DataOutputStream stream;
+        private final Map<String, Integer> ids = new HashMap<>();
 
+        StringTableWriter(DataOutputStream stream) {
+            this.stream = stream;
+        }
+
+        void write(String string) throws IOException {
+            final String value = StringUtil.nullToEmpty(string);
+            final Integer id = ids.get(value);
+            if (id != null) {
+                stream.writeInt(id);
+            } else {
+                stream.writeInt(ids.size());
+                stream.writeUTF(value);
+                ids.put(value, ids.size());
+            }
         }
     }
 
+    /**
+     * Reads the strings written by a {@link StringTableWriter}. Strings
+     * are interned with the mapper, so that the strings of all files are
+     * shared.
+     */
+    private static final class StringTableReader {
+
+        private final DataInputStream stream;
+        private final CachedRuleMapper mapper;
+        private final List<String> strings = new ArrayList<>();
+
+        StringTableReader(DataInputStream stream, CachedRuleMapper mapper) {
+            this.stream = stream;
+            this.mapper = mapper;
+        }
+
+        int readId() throws IOException {
+            final int id = stream.readInt();
+            if (id == strings.size()) {
+                strings.add(mapper.intern(stream.readUTF()));
+            } else if (id < 0 || id > strings.size()) {
+                throw new IOException("Invalid string reference " + id);
+            }
+            return id;
+        }
+
+        String read() throws IOException {
+            return strings.get(readId());
+        }
+
+        String[] toArray() {
+            return strings.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * The rule that reported a violation, resolved with the mapper the
+     * first time it is requested.
+     */
+    private static final class CachedRule {
+
+        private final String ruleClassName;
+        private final String ruleName;
+        private final String ruleTargetLanguage;
+        private volatile Rule rule;
+
+        CachedRule(String ruleClassName, String ruleName, String ruleTargetLanguage) {
+            this.ruleClassName = ruleClassName;
+            this.ruleName = ruleName;
+            this.ruleTargetLanguage = ruleTargetLanguage;
+        }
+
+        Rule resolve(CachedRuleMapper mapper) {
+            Rule result = rule;
+            if (result == null) {
+                result = mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage);
+                rule = result;
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CachedRule that = (CachedRule) o;
+            return ruleClassName.equals(that.ruleClassName)
+                && ruleName.equals(that.ruleName)
+                && ruleTargetLanguage.equals(that.ruleTargetLanguage);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ruleClassName, ruleName, ruleTargetLanguage);
+        }
+    }
+
+    /**
+     * The violations of a file in a flat representation. Each violation is
+     * created the first time it is requested, and then reused.
+     */
+    private static final class CachedViolations extends AbstractList<RuleViolation> {
+
+        private final CachedRuleMapper mapper;
+        private final FileId fileId;
+        private final CachedRule[] rules;
+        private final String[] strings;
+        private final int[] data;
+        private final Map<Integer, Map<String, String>> additionalInfos;
+        private final RuleViolation[] violations;
+
+        CachedViolations(CachedRuleMapper mapper, FileId fileId, CachedRule[] rules, String[] strings,
+                         int[] data, Map<Integer, Map<String, String>> additionalInfos) {
+            this.mapper = mapper;
+            this.fileId = fileId;
+            this.rules = rules;
+            this.strings = strings;
+            this.data = data;
+            this.additionalInfos = additionalInfos;
+            this.violations = new RuleViolation[data.length / VIOLATION_STRIDE];
+        }
+
+        @Override
+        public RuleViolation get(int index) {
+            RuleViolation violation = violations[index];
+            if (violation == null) {
+                final int offset = index * VIOLATION_STRIDE;
+                final FileLocation location = FileLocation.range(fileId, TextRange2d.range2d(
+                    data[offset + 2], data[offset + 3], data[offset + 4], data[offset + 5]));
+                violation = new CachedRuleViolation(mapper, rules[data[offset]], strings[data[offset + 1]], location,
+                                                    additionalInfos.getOrDefault(index, Collections.emptyMap()));
+                violations[index] = violation;
+            }
+            return violation;
+        }
+
+        @Override
+        public int size() {
+            return violations.length;
+        }
+    }
 }
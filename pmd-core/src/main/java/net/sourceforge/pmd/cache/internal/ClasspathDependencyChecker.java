@@ -0,0 +1,238 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.lang.document.InternalApiBridge;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Computes the checksums of the dependencies recorded by a {@link ClasspathDependencyRecorder}.
+ * Zero means that the class or file was not found.
+ *
+ * <p>Classes of jars are not read, the checksum of their entry is stored
+ * in the central directory of the jar. Class files of directories and
+ * files of the analysis are only read when their size or modification
+ * time changed since their checksum was computed. Those are kept in the
+ * given stamps. Checksums may be computed concurrently.
+ */
+final class ClasspathDependencyChecker implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathDependencyChecker.class);
+
+    private final @Nullable ClassLoader auxClassPathClassLoader;
+    private final long runtimeChecksum;
+    private final Map<String, TextFile> analyzedFiles;
+    private final ConcurrentMap<String, Long> stamps;
+    private final ConcurrentMap<String, ZipFile> openJars = new ConcurrentHashMap<>();
+    /** Computed on first use, zero if not yet. */
+    private volatile long analyzedFilesChecksum;
+
+    /**
+     * @param auxClassPathClassLoader Loads the classes, null if there is no auxclasspath
+     * @param runtimeChecksum         The checksum of {@link ClasspathDependencyRecorder#RUNTIME_CLASSES}
+     * @param analyzedFiles           The files of the analysis, by {@linkplain ClasspathDependencyRecorder#fileDependency(net.sourceforge.pmd.lang.document.FileId) dependency}
+     * @param stamps                  Size and modification time of the files whose checksum is known, updated
+     */
+    ClasspathDependencyChecker(@Nullable ClassLoader auxClassPathClassLoader, long runtimeChecksum,
+                               Map<String, TextFile> analyzedFiles, ConcurrentMap<String, Long> stamps) {
+        this.auxClassPathClassLoader = auxClassPathClassLoader;
+        this.runtimeChecksum = runtimeChecksum;
+        this.analyzedFiles = analyzedFiles;
+        this.stamps = stamps;
+    }
+
+    /**
+     * Returns true if the dependency is a class of the auxclasspath, which
+     * can only change if the auxclasspath changed, or has directories.
+     */
+    static boolean isClass(String dependency) {
+        return dependency.indexOf(':') < 0 && !dependency.startsWith("<");
+    }
+
+    /** Returns the checksum of a dependency whose checksum is not known yet. */
+    long checksum(String dependency) {
+        return checksum(dependency, 0);
+    }
+
+    /**
+     * Returns the current checksum of a dependency. The previous checksum
+     * is returned if it is a file whose stamp did not change.
+     */
+    long checksum(String dependency, long previousChecksum) {
+        try {
+            if (ClasspathDependencyRecorder.RUNTIME_CLASSES.equals(dependency)) {
+                return runtimeChecksum;
+            } else if (ClasspathDependencyRecorder.ANALYZED_FILES.equals(dependency)) {
+                return analyzedFilesChecksum();
+            } else if (!isClass(dependency)) {
+                return analyzedFileChecksum(dependency, previousChecksum);
+            }
+            return classChecksum(dependency, previousChecksum);
+        } catch (IOException | UncheckedIOException | URISyntaxException | InvalidPathException e) {
+            LOG.debug("Could not read {} for the analysis cache: {}", dependency, e.getMessage());
+            stamps.remove(dependency);
+            return 0;
+        }
+    }
+
+    private long analyzedFilesChecksum() {
+        long checksum = analyzedFilesChecksum;
+        if (checksum == 0) {
+            final CRC32 crc = new CRC32();
+            for (String file : new TreeSet<>(analyzedFiles.keySet())) {
+                crc.update(file.getBytes(StandardCharsets.UTF_8));
+                crc.update(0);
+            }
+            checksum = nonZero(crc.getValue());
+            analyzedFilesChecksum = checksum;
+        }
+        return checksum;
+    }
+
+    private long analyzedFileChecksum(String dependency, long previousChecksum) throws IOException {
+        final TextFile file = analyzedFiles.get(dependency);
+        if (file == null) {
+            stamps.remove(dependency);
+            return 0;
+        }
+        Path path;
+        try {
+            path = Paths.get(file.getFileId().getAbsolutePath());
+        } catch (InvalidPathException e) {
+            path = null;
+        }
+        return stampedChecksum(dependency, path, previousChecksum, () -> {
+            // the file may have been closed once it was analyzed
+            final TextFile copy = InternalApiBridge.reopenTextFile(file);
+            if (copy == null) {
+                throw new IOException("Cannot read the file again");
+            }
+            try (TextDocument document = TextDocument.create(copy)) {
+                return document.getCheckSum();
+            }
+        });
+    }
+
+    private long classChecksum(String binaryName, long previousChecksum) throws IOException, URISyntaxException {
+        if (auxClassPathClassLoader == null) {
+            return 0;
+        }
+        final URL url = auxClassPathClassLoader.getResource(binaryName.replace('.', '/') + ".class");
+        if (url == null) {
+            stamps.remove(binaryName);
+            return 0;
+        }
+        switch (url.getProtocol()) {
+        case "jar":
+            return jarEntryChecksum(url);
+        case "file":
+            return stampedChecksum(binaryName, Paths.get(url.toURI()), previousChecksum, () -> contentChecksum(url));
+        case "jrt":
+            // see RUNTIME_CLASSES
+            return 1;
+        default:
+            return nonZero(contentChecksum(url));
+        }
+    }
+
+    /**
+     * Returns the checksum of a jar entry from the central directory of
+     * the jar. Jars are opened once per checker.
+     */
+    private long jarEntryChecksum(URL url) throws IOException, URISyntaxException {
+        final String spec = url.getFile();
+        final int separator = spec.indexOf("!/");
+        if (separator < 0) {
+            return nonZero(contentChecksum(url));
+        }
+        final Path jarPath = Paths.get(new URL(spec.substring(0, separator)).toURI());
+        final ZipFile jar = openJars.computeIfAbsent(jarPath.toString(), path -> {
+            try {
+                return new ZipFile(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        final ZipEntry entry = jar.getEntry(spec.substring(separator + 2));
+        if (entry == null || entry.getCrc() == -1) {
+            // eg a versioned entry of a multi-release jar
+            return nonZero(contentChecksum(url));
+        }
+        return nonZero(entry.getCrc());
+    }
+
+    private long stampedChecksum(String dependency, @Nullable Path path, long previousChecksum,
+                                 ChecksumReader reader) throws IOException {
+        if (path == null || !Files.isRegularFile(path)) {
+            stamps.remove(dependency);
+            return nonZero(reader.read());
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final long stamp = 31 * attributes.lastModifiedTime().toMillis() + attributes.size();
+        final Long previousStamp = stamps.put(dependency, stamp);
+        if (previousChecksum != 0 && previousStamp != null && previousStamp == stamp) {
+            return previousChecksum;
+        }
+        return nonZero(reader.read());
+    }
+
+    private static long contentChecksum(URL url) throws IOException {
+        final CRC32 checksum = new CRC32();
+        try (InputStream stream = url.openStream()) {
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                checksum.update(buffer, 0, count);
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private static long nonZero(long checksum) {
+        // zero means "not found"
+        return checksum == 0 ? 1 : checksum;
+    }
+
+    @Override
+    public void close() {
+        for (ZipFile jar : openJars.values()) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close {}: {}", jar.getName(), e.getMessage());
+            }
+        }
+        openJars.clear();
+    }
+
+    @FunctionalInterface
+    private interface ChecksumReader {
+        long read() throws IOException;
+    }
+}
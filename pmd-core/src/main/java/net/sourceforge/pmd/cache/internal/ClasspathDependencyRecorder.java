@@ -0,0 +1,69 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.util.DataMap;
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
+
+/**
+ * Records which classes of the auxclasspath, and which other files of
+ * the analysis, the analysis of a file depended on. Language modules
+ * that resolve types may store a recorder in the {@linkplain Node#getUserMap() user map}
+ * of the root node with the key {@link #KEY}.
+ *
+ * <p>Dependencies are the binary names of classes of the auxclasspath,
+ * including those that could not be found, {@linkplain #fileDependency(FileId) files}
+ * of the analysis, {@link #RUNTIME_CLASSES} and {@link #ANALYZED_FILES}.
+ * They form a graph: the file depends on the dependencies returned by
+ * {@link #getDependencies()}, which depend on the ones returned by
+ * {@link #getDependencies(String)}, eg a class on the types of its
+ * members. The analysis cache keeps that graph, and invalidates the
+ * results of the files that depend on a class or file that changed,
+ * directly or not.
+ */
+public interface ClasspathDependencyRecorder {
+
+    SimpleDataKey<ClasspathDependencyRecorder> KEY = DataMap.simpleDataKey("pmd.cache.classpathDependencies");
+
+    /**
+     * The classes of the Java runtime, eg {@code java.lang.Object}, which
+     * are not recorded one by one. They change when the runtime of the
+     * auxclasspath is replaced.
+     */
+    String RUNTIME_CLASSES = "<runtime>";
+
+    /**
+     * The set of files of the analysis. A class that was not found may
+     * be declared by a file that is added to the analysis.
+     */
+    String ANALYZED_FILES = "<files>";
+
+    /**
+     * Returns the dependency on a file of the analysis, eg that declares
+     * a class the analysis used.
+     */
+    static String fileDependency(FileId file) {
+        // binary names of classes don't contain colons
+        return file.getUriString();
+    }
+
+    /**
+     * Returns the dependencies of the file. This is called after all
+     * rules have been applied to the file.
+     */
+    Set<String> getDependencies();
+
+    /**
+     * Returns the dependencies of a dependency returned by this recorder,
+     * the classes and files whose changes may change it. They are only
+     * requested for the dependencies the analysis cache does not know yet.
+     * Classes that were not found have none.
+     */
+    Set<String> getDependencies(String dependency);
+}
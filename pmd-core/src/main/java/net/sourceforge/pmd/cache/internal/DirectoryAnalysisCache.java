@@ -0,0 +1,302 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * An analysis cache backed by a directory, that can be shared between
+ * machines and checkouts (e.g. on a shared mount, or restored as a CI
+ * artifact).
+ *
+ * <p>Each entry is a file that holds the violations found in one file.
+ * Entries are content-addressed: their name is a hash of the contents
+ * of the analyzed file, its name and language version, the PMD version,
+ * and the ruleset and classpath checksums. The absolute path of the file
+ * is not part of the key, so results are shared between checkouts in
+ * different directories. Since entries never change once written, there
+ * is nothing to invalidate when the rulesets or the classpath change:
+ * the keys just change.
+ *
+ * <p>Entries are written to a temporary file and atomically moved in
+ * place, so several processes may use the same directory concurrently.
+ * Entries are sharded into subdirectories by the first bytes of their key.
+ * The last modification time of an entry is updated when it is used, and
+ * the least recently used entries are deleted when the directory grows
+ * over the configured size.
+ */
+public class DirectoryAnalysisCache extends AbstractAnalysisCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    /** Temporary files older than that were left by a crashed process. */
+    private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /** When evicting, entries are deleted until the directory is under this ratio of the max size. */
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private final Path cacheDirectory;
+    private final long maxSizeInBytes;
+    /** Keys of the entries of the files that were looked up. */
+    private final ConcurrentMap<FileId, String> entryKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new cache backed by the given directory.
+     *
+     * @param cacheDirectory The directory in which to store the entries, created if needed
+     * @param maxSizeInBytes The size over which least recently used entries are deleted,
+     *                       zero or less for no limit
+     */
+    public DirectoryAnalysisCache(final Path cacheDirectory, final long maxSizeInBytes) {
+        super();
+        this.cacheDirectory = cacheDirectory;
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    @Override
+    protected void resetAnalysisState() {
+        super.resetAnalysisState();
+        // the files may have changed
+        entryKeys.clear();
+    }
+
+    @Override
+    protected AnalysisResult getCachedResult(TextDocument document) {
+        final FileId fileId = document.getFileId();
+        AnalysisResult result = fileResultsCache.get(fileId);
+        if (result != null) {
+            return result;
+        }
+
+        final String key = entryKeys.computeIfAbsent(fileId, id -> entryKey(document));
+        final Path entry = entryPath(key);
+        try {
+            final List<RuleViolation> violations = readEntry(Files.readAllBytes(entry), fileId);
+            // the key includes the contents, so the entry is up to date
+            result = new AnalysisResult(document.getCheckSum(), violations);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Could not read analysis cache entry {}: {}", entry, e.getMessage());
+            return null;
+        }
+
+        final AnalysisResult previous = fileResultsCache.putIfAbsent(fileId, result);
+        return previous != null ? previous : result;
+    }
+
+    private List<RuleViolation> readEntry(byte[] bytes, FileId fileId) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (inputStream.readInt() != FORMAT_VERSION) {
+                throw new IOException("unknown format");
+            }
+            return CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper);
+        }
+    }
+
+    private String entryKey(TextDocument document) {
+        final MessageDigest digest = newDigest();
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(document.getText())));
+        digest.update((byte) 0);
+        digest.update(document.getFileId().getFileName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(document.getLanguageVersion().getTerseName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(pmdVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        // those are set by checkValidity
+        for (long checksum : new long[] {rulesetChecksum, auxClassPathChecksum, executionClassPathChecksum}) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                digest.update((byte) (checksum >>> (i * 8)));
+            }
+        }
+
+        final StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16))
+               .append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return cacheDirectory.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    @Override
+    public void persist() {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
+            if (Files.exists(cacheDirectory) && !Files.isDirectory(cacheDirectory)) {
+                LOG.error("Cannot persist the cache, the given path is not a directory.");
+                return;
+            }
+
+            final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+            int written = 0;
+            for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
+                final String key = entryKeys.get(resultEntry.getKey());
+                if (key == null) {
+                    continue;
+                }
+                final Path entry = entryPath(key);
+                try {
+                    if (resultEntry.getValue() == fileResultsCache.get(resultEntry.getKey())) {
+                        // cache hit, mark the entry as recently used
+                        Files.setLastModifiedTime(entry, now);
+                    } else {
+                        writeEntry(entry, resultEntry.getValue().getViolations());
+                        written++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // evicted by another process in the meantime
+                    LOG.trace("Analysis cache entry {} was deleted concurrently", entry);
+                } catch (IOException e) {
+                    LOG.error("Could not persist analysis cache entry {}: {}", entry, e.getMessage());
+                }
+            }
+            LOG.debug("Analysis cache updated, {} entries written", written);
+
+            if (maxSizeInBytes > 0) {
+                evictLeastRecentlyUsed();
+            }
+        }
+    }
+
+    private static void writeEntry(Path entry, List<RuleViolation> violations) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeInt(FORMAT_VERSION);
+            CachedRuleViolation.storeToStream(outputStream, violations);
+        }
+
+        final Path shard = entry.getParent();
+        Files.createDirectories(shard);
+        final Path tempFile = Files.createTempFile(shard, entry.getFileName().toString(), TEMP_FILE_SUFFIX);
+        try {
+            Files.write(tempFile, bytes.toByteArray());
+            // Concurrent writers of the same entry write the same contents,
+            // so it doesn't matter which one wins
+            try {
+                Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries if the directory is over
+     * the max size, and temporary files left behind by crashed processes.
+     */
+    private void evictLeastRecentlyUsed() {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "eviction")) {
+            final List<Path> entries = new ArrayList<>();
+            final Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+            final long staleTempFileTime = System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+            long totalSize = 0;
+
+            try {
+                Files.walkFileTree(cacheDirectory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!file.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+                            entries.add(file);
+                            attributes.put(file, attrs);
+                        } else if (attrs.lastModifiedTime().toMillis() < staleTempFileTime) {
+                            Files.deleteIfExists(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // deleted concurrently
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LOG.error("Could not evict entries from the analysis cache: {}", e.getMessage());
+                return;
+            }
+
+            for (Path entry : entries) {
+                totalSize += attributes.get(entry).size();
+            }
+            if (totalSize <= maxSizeInBytes) {
+                return;
+            }
+
+            entries.sort(Comparator.comparing(entry -> attributes.get(entry).lastModifiedTime()));
+            final long targetSize = (long) (maxSizeInBytes * EVICTION_TARGET_RATIO);
+            int evicted = 0;
+            for (Path entry : entries) {
+                if (totalSize <= targetSize) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(entry);
+                    evicted++;
+                } catch (IOException e) {
+                    // may be in use by another process, try the next one
+                    LOG.trace("Could not evict analysis cache entry {}: {}", entry, e.getMessage());
+                    continue;
+                }
+                totalSize -= attributes.get(entry).size();
+            }
+            LOG.debug("Evicted {} entries from the analysis cache", evicted);
+        }
+    }
+
+    /**
+     * Entries are keyed by the checksums of the rulesets and classpath,
+     * so there are no previous results to invalidate.
+     */
+    @Override
+    protected boolean cacheExists() {
+        return false;
+    }
+}
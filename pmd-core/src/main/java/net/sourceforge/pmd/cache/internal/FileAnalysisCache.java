@@ -4,36 +4,87 @@
 
 package net.sourceforge.pmd.cache.internal;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
-import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.document.FileId;
-import net.sourceforge.pmd.lang.document.TextFile;
-import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.reporting.RuleViolation;
 
 /**
  * An analysis cache backed by a regular file.
+ *
+ * <p>The file is memory-mapped when the cache is loaded. It starts with a
+ * header, followed by one record per file (its path id, the classes and
+ * files it depends on, and its violations), and ends with an index sorted
+ * by a hash of the path id, and the dependency table. The table holds the
+ * checksum of each dependency, and the dependencies it depends on in turn.
+ * Only the header and the dependency table are read eagerly; a file is looked up in the index when it is analyzed, and its
+ * violations are decoded straight from the mapped file when they are
+ * requested.
+ *
+ * <p>When the cache is persisted, records of files that were not analyzed
+ * again are kept as is, records of changed files are appended, and a new
+ * index is written after them. Dependencies are referenced by their
+ * position in the dependency table, which is only ever appended to, so
+ * that records that are kept stay valid. Dependencies no result depends on
+ * anymore are marked as such. The file is compacted (rewritten with only
+ * the live records) when outdated records take up more space than the
+ * live ones.
+ *
+ * <p>The mapping is released before the file is written, as a mapped file
+ * cannot be replaced on Windows. The records that are kept are copied
+ * first, so that the results read from them stay usable.
+ *
+ * <p>When the cache is used by several analyses of the same process, the
+ * file is only read by the first one. Once persisted, the results of an
+ * analysis stay in memory for the next one, and the next persist rewrites
+ * the file from them.
  */
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    private static final int MAGIC = 0x504D4443; // "PMDC"
+    private static final int FORMAT_VERSION = 4;
+    /** Position of the index offset and size in the header, updated after appending. */
+    private static final int INDEX_POINTER_POSITION = 8;
+    /** Magic, format version, index offset, index size. */
+    private static final int FIXED_HEADER_SIZE = 16;
+    /** Path id hash, file checksum, record offset, record length. */
+    private static final int INDEX_ENTRY_SIZE = 24;
+    /** Outdated records may take this ratio of the file before it is compacted. */
+    private static final double MAX_OUTDATED_RATIO = 0.5;
+
     private final File cacheFile;
 
+    /** The loaded cache file, null if there was none, or it is not valid for this analysis. */
+    private volatile MappedCache mappedCache;
+
     /**
      * Creates a new cache backed by the given file.
      * @param cache The file on which to store analysis cache
@@ -44,64 +95,41 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     }
 
     @Override
-    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+    protected void loadPersistedCache() {
         // load cached data before checking for validity
-        loadFromFile(cacheFile, files);
-        super.checkValidity(ruleSets, auxclassPathClassLoader, files);
+        loadFromFile(cacheFile);
     }
 
     /**
-     * Loads cache data from the given file.
+     * Maps the given file and reads its header. Records are only read
+     * when they are looked up.
      *
      * @param cacheFile The file which backs the file analysis cache.
      */
-    private void loadFromFile(final File cacheFile, Collection<? extends TextFile> files) {
-        Map<String, FileId> idMap =
-            files.stream().map(TextFile::getFileId)
-                 .collect(Collectors.toMap(FileId::getUriString, id -> id));
-
+    private void loadFromFile(final File cacheFile) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "load")) {
             if (cacheExists()) {
-                try (
-                    DataInputStream inputStream = new DataInputStream(
-                        new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-                ) {
-                    final String cacheVersion = inputStream.readUTF();
-
-                    if (PMDVersion.VERSION.equals(cacheVersion)) {
-                        // Cache seems valid, load the rest
-
-                        // Get checksums
-                        rulesetChecksum = inputStream.readLong();
-                        auxClassPathChecksum = inputStream.readLong();
-                        executionClassPathChecksum = inputStream.readLong();
-
-                        // Cached results
-                        while (inputStream.available() > 0) {
-                            final String filePathId = inputStream.readUTF();
-                            FileId fileId = idMap.get(filePathId);
-                            if (fileId == null) {
-                                LOG.debug("File {} is in the cache but is not part of the analysis",
-                                          filePathId);
-                                fileId = FileId.fromURI(filePathId);
-                            }
-                            final long checksum = inputStream.readLong();
-
-                            final int countViolations = inputStream.readInt();
-                            final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                            for (int i = 0; i < countViolations; i++) {
-                                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
-                            }
-
-                            fileResultsCache.put(fileId, new AnalysisResult(checksum, violations));
-                        }
-
+                try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+                    if (channel.size() > Integer.MAX_VALUE) {
+                        LOG.warn("Cache file {} is too large, will not be used for current analysis", cacheFile.getPath());
+                        return;
+                    }
+                    // the mapping stays valid after the channel is closed
+                    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                    mappedCache = MappedCache.read(buffer);
+                    if (mappedCache == null) {
+                        LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile.getPath());
+                    } else if (pmdVersion.equals(mappedCache.pmdVersion)) {
+                        // Cache seems valid, get checksums
+                        rulesetChecksum = mappedCache.rulesetChecksum;
+                        auxClassPathChecksum = mappedCache.auxClassPathChecksum;
+                        executionClassPathChecksum = mappedCache.executionClassPathChecksum;
+                        mappedCache.loadDependencies(classpathDependencyChecksums, classpathDependencyStamps, classpathDependencyGraph);
                         LOG.debug("Analysis cache loaded from {}", cacheFile);
                     } else {
+                        mappedCache = null;
                         LOG.debug("Analysis cache invalidated, PMD version changed.");
                     }
-                } catch (final EOFException e) {
-                    LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile.getPath());
                 } catch (final IOException e) {
                     LOG.error("Could not load analysis cache from file: {}", e.getMessage());
                 }
@@ -111,6 +139,32 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    @Override
+    protected AnalysisResult getCachedResult(TextDocument document) {
+        final FileId fileId = document.getFileId();
+        AnalysisResult result = fileResultsCache.get(fileId);
+        if (result != null) {
+            return result;
+        }
+        MappedCache mapped = mappedCache;
+        if (mapped == null) {
+            return null;
+        }
+        result = mapped.lookup(fileId, ruleMapper);
+        if (result == null) {
+            return null;
+        }
+        // concurrent lookups of the same file must agree on the instance
+        AnalysisResult previous = fileResultsCache.putIfAbsent(fileId, result);
+        return previous != null ? previous : result;
+    }
+
+    @Override
+    protected void clearCachedResults() {
+        super.clearCachedResults();
+        mappedCache = null;
+    }
+
     @Override
     public void persist() {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
@@ -127,42 +181,611 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 if (parentFile != null && !parentFile.exists()) {
                     parentFile.mkdirs();
                 }
+            } else if (!cacheFile.canWrite()) {
+                LOG.error("Could not persist analysis cache to file: {} is not writable", cacheFile);
+                return;
             }
 
-            try (
-                DataOutputStream outputStream = new DataOutputStream(
-                    new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
-            ) {
-                outputStream.writeUTF(pmdVersion);
-
-                outputStream.writeLong(rulesetChecksum);
-                outputStream.writeLong(auxClassPathChecksum);
-                outputStream.writeLong(executionClassPathChecksum);
+            try {
+                final MappedCache mapped = mappedCache;
+                final Set<String> liveDependencies = collectClasspathDependencies();
+                // kept records refer to the positions in the previous table
+                final List<String> dependencyTable = new ArrayList<>();
+                if (mapped != null) {
+                    dependencyTable.addAll(mapped.dependencyNames);
+                }
+                final Map<String, Integer> dependencyIds = new HashMap<>();
+                for (int i = 0; i < dependencyTable.size(); i++) {
+                    dependencyIds.put(dependencyTable.get(i), i);
+                }
+                for (String dependency : liveDependencies) {
+                    if (!dependencyIds.containsKey(dependency)) {
+                        dependencyIds.put(dependency, dependencyTable.size());
+                        dependencyTable.add(dependency);
+                    }
+                }
+                final DependencyTable dependencies = new DependencyTable(dependencyTable, dependencyIds, liveDependencies);
 
+                final List<IndexEntry> keptRecords = new ArrayList<>();
+                final Map<FileId, AnalysisResult> changedRecords = new LinkedHashMap<>();
+                long liveBytes = 0;
                 for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                    final List<RuleViolation> violations = resultEntry.getValue().getViolations();
-
-                    outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
-                    outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+                    final AnalysisResult result = resultEntry.getValue();
+                    if (mapped != null && mapped.isUnchangedRecord(result)) {
+                        IndexEntry entry = ((MappedAnalysisResult) result).entry;
+                        keptRecords.add(entry);
+                        liveBytes += entry.recordLength;
+                    } else {
+                        changedRecords.put(resultEntry.getKey(), result);
+                    }
+                }
 
-                    outputStream.writeInt(violations.size());
-                    for (final RuleViolation rv : violations) {
-                        CachedRuleViolation.storeToStream(outputStream, rv);
+                if (mapped == null) {
+                    writeNewFile(keptRecords, Collections.emptyMap(), changedRecords, dependencies);
+                } else {
+                    final Map<Integer, ByteBuffer> keptBytes = releaseMapping(mapped, keptRecords, changedRecords);
+                    final long outdatedBytes = mapped.dataLength() - liveBytes;
+                    if (!mapped.hasHeader(rulesetChecksum, auxClassPathChecksum, executionClassPathChecksum)) {
+                        // appending only updates the index pointer of the header
+                        LOG.debug("Rewriting analysis cache, its header changed");
+                        writeNewFile(keptRecords, keptBytes, changedRecords, dependencies);
+                    } else if (outdatedBytes > MAX_OUTDATED_RATIO * mapped.dataLength()) {
+                        LOG.debug("Compacting analysis cache");
+                        writeNewFile(keptRecords, keptBytes, changedRecords, dependencies);
+                    } else {
+                        appendToFile(mapped.length, keptRecords, changedRecords, dependencies);
                     }
                 }
+
+                onPersisted(true);
                 if (cacheFileShouldBeCreated) {
                     LOG.debug("Analysis cache created");
                 } else {
                     LOG.debug("Analysis cache updated");
                 }
             } catch (final IOException e) {
+                onPersisted(false);
                 LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
             }
         }
     }
 
+    /**
+     * Copies the records that are kept out of the mapped file, reads
+     * the changed records that still come from it, then releases the
+     * mapping. Returns the copies by record offset.
+     */
+    private Map<Integer, ByteBuffer> releaseMapping(MappedCache mapped, List<IndexEntry> keptRecords,
+                                                    Map<FileId, AnalysisResult> changedRecords) {
+        final Map<Integer, ByteBuffer> keptBytes = new HashMap<>();
+        for (IndexEntry kept : keptRecords) {
+            keptBytes.put(kept.recordOffset, mapped.copyRecord(kept));
+        }
+        for (AnalysisResult changed : changedRecords.values()) {
+            changed.getViolations();
+            changed.getClasspathDependencies();
+        }
+        mappedCache = null;
+        mapped.release(keptBytes);
+        return keptBytes;
+    }
+
+    /**
+     * Writes a complete cache file next to the cache file, then moves it
+     * in place. Unchanged records are copied from the given buffers.
+     */
+    private void writeNewFile(List<IndexEntry> keptRecords, Map<Integer, ByteBuffer> keptBytes,
+                              Map<FileId, AnalysisResult> changedRecords,
+                              DependencyTable dependencies) throws IOException {
+        final Path target = cacheFile.getAbsoluteFile().toPath();
+        final Path tempFile = Files.createTempFile(target.getParent(), cacheFile.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                final byte[] header = writeHeader();
+                writeFully(channel, ByteBuffer.wrap(header));
+
+                final List<IndexEntry> index = new ArrayList<>(keptRecords.size() + changedRecords.size());
+                for (IndexEntry kept : keptRecords) {
+                    index.add(kept.movedTo((int) channel.position()));
+                    writeFully(channel, keptBytes.get(kept.recordOffset).duplicate());
+                }
+                writeRecords(channel, changedRecords, index, dependencies);
+
+                final int indexOffset = (int) channel.position();
+                writeIndex(channel, index, dependencies);
+                writeIndexPointer(channel, indexOffset, index.size());
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Appends changed records and a new index at the end of the file. The
+     * header is updated last, so that a partially written file still points
+     * to the previous index, which is left untouched.
+     */
+    private void appendToFile(int fileLength, List<IndexEntry> keptRecords, Map<FileId, AnalysisResult> changedRecords,
+                              DependencyTable dependencies) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.position(fileLength);
+
+            final List<IndexEntry> index = new ArrayList<>(keptRecords.size() + changedRecords.size());
+            index.addAll(keptRecords);
+            writeRecords(channel, changedRecords, index, dependencies);
+
+            final int indexOffset = (int) channel.position();
+            writeIndex(channel, index, dependencies);
+            channel.force(false);
+            writeIndexPointer(channel, indexOffset, index.size());
+        }
+    }
+
+    private byte[] writeHeader() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            // index pointer, written at the end
+            outputStream.writeInt(0);
+            outputStream.writeInt(0);
+            outputStream.writeUTF(pmdVersion);
+
+            outputStream.writeLong(rulesetChecksum);
+            outputStream.writeLong(auxClassPathChecksum);
+            outputStream.writeLong(executionClassPathChecksum);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecords(FileChannel channel, Map<FileId, AnalysisResult> records, List<IndexEntry> index,
+                                     DependencyTable dependencies) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (final Map.Entry<FileId, AnalysisResult> resultEntry : records.entrySet()) {
+            final String pathId = resultEntry.getKey().getUriString();
+            final List<RuleViolation> violations = resultEntry.getValue().getViolations();
+
+            bytes.reset();
+            try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+                outputStream.writeUTF(pathId);
+                final Set<String> classpathDependencies = resultEntry.getValue().getClasspathDependencies();
+                if (classpathDependencies == null) {
+                    outputStream.writeInt(-1);
+                } else {
+                    outputStream.writeInt(classpathDependencies.size());
+                    for (String dependency : classpathDependencies) {
+                        outputStream.writeInt(dependencies.ids.get(dependency));
+                    }
+                }
+                CachedRuleViolation.storeToStream(outputStream, violations);
+            }
+
+            final long offset = channel.position();
+            if (offset + bytes.size() > Integer.MAX_VALUE) {
+                throw new IOException("Analysis cache is too large");
+            }
+            index.add(new IndexEntry(hash(pathId), resultEntry.getValue().getFileChecksum(), (int) offset, bytes.size()));
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        }
+    }
+
+    private void writeIndex(FileChannel channel, List<IndexEntry> index, DependencyTable dependencies) throws IOException {
+        index.sort(IndexEntry.BY_HASH);
+        final ByteBuffer buffer = ByteBuffer.allocate(index.size() * INDEX_ENTRY_SIZE);
+        for (IndexEntry entry : index) {
+            buffer.putLong(entry.pathIdHash)
+                  .putLong(entry.fileChecksum)
+                  .putInt(entry.recordOffset)
+                  .putInt(entry.recordLength);
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            outputStream.writeInt(dependencies.names.size());
+            for (String dependency : dependencies.names) {
+                outputStream.writeUTF(dependency);
+                if (!dependencies.live.contains(dependency)) {
+                    outputStream.writeInt(-1);
+                    continue;
+                }
+                final Set<String> next = classpathDependencyGraph.getOrDefault(dependency, Collections.emptySet());
+                outputStream.writeInt(next.size());
+                for (String target : next) {
+                    outputStream.writeInt(dependencies.ids.get(target));
+                }
+                outputStream.writeLong(classpathDependencyChecksums.getOrDefault(dependency, 0L));
+                outputStream.writeLong(classpathDependencyStamps.getOrDefault(dependency, 0L));
+            }
+        }
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static void writeIndexPointer(FileChannel channel, int indexOffset, int indexSize) throws IOException {
+        final ByteBuffer pointer = ByteBuffer.allocate(FIXED_HEADER_SIZE - INDEX_POINTER_POSITION);
+        pointer.putInt(indexOffset).putInt(indexSize);
+        pointer.flip();
+        channel.write(pointer, INDEX_POINTER_POSITION);
+        channel.force(false);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** FNV-1a hash of the path id, stable across runs. */
+    private static long hash(String pathId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < pathId.length(); i++) {
+            hash ^= pathId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     @Override
     protected boolean cacheExists() {
         return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
     }
+
+    /**
+     * Location of the record of a file in the cache file.
+     */
+    private static final class IndexEntry {
+
+        static final Comparator<IndexEntry> BY_HASH = (a, b) -> Long.compare(a.pathIdHash, b.pathIdHash);
+
+        final long pathIdHash;
+        final long fileChecksum;
+        final int recordOffset;
+        final int recordLength;
+
+        IndexEntry(long pathIdHash, long fileChecksum, int recordOffset, int recordLength) {
+            this.pathIdHash = pathIdHash;
+            this.fileChecksum = fileChecksum;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+        }
+
+        IndexEntry movedTo(int newOffset) {
+            return new IndexEntry(pathIdHash, fileChecksum, newOffset, recordLength);
+        }
+    }
+
+    /**
+     * The dependency table to write, with the position of each dependency,
+     * and the ones results still depend on.
+     */
+    private static final class DependencyTable {
+
+        final List<String> names;
+        final Map<String, Integer> ids;
+        final Set<String> live;
+
+        DependencyTable(List<String> names, Map<String, Integer> ids, Set<String> live) {
+            this.names = names;
+            this.ids = ids;
+            this.live = live;
+        }
+    }
+
+    /**
+     * A cache file mapped into memory.
+     */
+    private static final class MappedCache {
+
+        private final MappedByteBuffer buffer;
+        private final int length;
+        private final int indexOffset;
+        private final int indexSize;
+        private final int recordsOffset;
+        private final String pmdVersion;
+        private final long rulesetChecksum;
+        private final long auxClassPathChecksum;
+        private final long executionClassPathChecksum;
+        private final List<String> dependencyNames = new ArrayList<>();
+        /** The dependencies of each dependency, null for those no result depends on. */
+        private int[][] dependencyEdges;
+        private long[] dependencyChecksums;
+        private long[] dependencyStamps;
+        /** Length of the index and the dependency table. */
+        private int indexSectionLength;
+        /** Copies of the kept records, set once the mapping is released. */
+        private volatile Map<Integer, ByteBuffer> releasedRecords;
+
+        private MappedCache(MappedByteBuffer buffer, int indexOffset, int indexSize, DataInputStream header) throws IOException {
+            this.buffer = buffer;
+            this.length = buffer.capacity();
+            this.indexOffset = indexOffset;
+            this.indexSize = indexSize;
+            this.pmdVersion = header.readUTF();
+            this.rulesetChecksum = header.readLong();
+            this.auxClassPathChecksum = header.readLong();
+            this.executionClassPathChecksum = header.readLong();
+            this.recordsOffset = buffer.capacity() - header.available();
+        }
+
+        /** Returns null if the buffer does not contain a cache in the current format. */
+        static MappedCache read(MappedByteBuffer buffer) throws IOException {
+            if (buffer.capacity() < FIXED_HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != FORMAT_VERSION) {
+                return null;
+            }
+            final int indexOffset = buffer.getInt(INDEX_POINTER_POSITION);
+            final int indexSize = buffer.getInt(INDEX_POINTER_POSITION + 4);
+            if (indexOffset < FIXED_HEADER_SIZE || indexSize < 0
+                || indexOffset + (long) indexSize * INDEX_ENTRY_SIZE > buffer.capacity()) {
+                return null;
+            }
+
+            final ByteBuffer header = buffer.duplicate();
+            header.position(FIXED_HEADER_SIZE);
+            header.limit(indexOffset);
+            final ByteBuffer dependencies = buffer.duplicate();
+            dependencies.position(indexOffset + indexSize * INDEX_ENTRY_SIZE);
+            try (DataInputStream inputStream = new DataInputStream(IOUtil.fromByteBuffer(header));
+                 DataInputStream dependencyStream = new DataInputStream(IOUtil.fromByteBuffer(dependencies))) {
+                final MappedCache mapped = new MappedCache(buffer, indexOffset, indexSize, inputStream);
+                mapped.readDependencyTable(dependencyStream);
+                return mapped;
+            } catch (EOFException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private void readDependencyTable(DataInputStream inputStream) throws IOException {
+            final int count = inputStream.readInt();
+            if (count < 0) {
+                throw new EOFException();
+            }
+            dependencyEdges = new int[count][];
+            dependencyChecksums = new long[count];
+            dependencyStamps = new long[count];
+            for (int i = 0; i < count; i++) {
+                dependencyNames.add(inputStream.readUTF());
+                final int countEdges = inputStream.readInt();
+                if (countEdges < 0) {
+                    continue;
+                }
+                dependencyEdges[i] = new int[countEdges];
+                for (int j = 0; j < countEdges; j++) {
+                    dependencyEdges[i][j] = inputStream.readInt();
+                    if (dependencyEdges[i][j] < 0 || dependencyEdges[i][j] >= count) {
+                        throw new EOFException();
+                    }
+                }
+                dependencyChecksums[i] = inputStream.readLong();
+                dependencyStamps[i] = inputStream.readLong();
+            }
+            indexSectionLength = buffer.capacity() - indexOffset - inputStream.available();
+        }
+
+        void loadDependencies(Map<String, Long> checksums, Map<String, Long> stamps, Map<String, Set<String>> graph) {
+            for (int i = 0; i < dependencyNames.size(); i++) {
+                if (dependencyEdges[i] == null) {
+                    continue;
+                }
+                final String dependency = dependencyNames.get(i);
+                checksums.put(dependency, dependencyChecksums[i]);
+                if (dependencyStamps[i] != 0) {
+                    stamps.put(dependency, dependencyStamps[i]);
+                }
+                final Set<String> next = new HashSet<>(dependencyEdges[i].length);
+                for (int target : dependencyEdges[i]) {
+                    next.add(dependencyNames.get(target));
+                }
+                graph.put(dependency, next);
+            }
+        }
+
+        /** Length of everything after the header, except the current index and dependency table. */
+        long dataLength() {
+            return length - recordsOffset - (long) indexSectionLength;
+        }
+
+        boolean hasHeader(long rulesetChecksum, long auxClassPathChecksum, long executionClassPathChecksum) {
+            return this.rulesetChecksum == rulesetChecksum
+                && this.auxClassPathChecksum == auxClassPathChecksum
+                && this.executionClassPathChecksum == executionClassPathChecksum;
+        }
+
+        ByteBuffer copyRecord(IndexEntry entry) {
+            final ByteBuffer record = buffer.duplicate();
+            record.limit(entry.recordOffset + entry.recordLength);
+            record.position(entry.recordOffset);
+            final ByteBuffer copy = ByteBuffer.allocate(entry.recordLength);
+            copy.put(record);
+            copy.flip();
+            return copy;
+        }
+
+        /**
+         * Releases the mapping. The given records are read from their
+         * copies afterwards, the others cannot be read anymore.
+         */
+        void release(Map<Integer, ByteBuffer> keptRecords) {
+            releasedRecords = keptRecords;
+            if (!IOUtil.unmap(buffer)) {
+                LOG.debug("Could not release the mapping of the analysis cache, it is released when collected");
+            }
+        }
+
+        boolean isUnchangedRecord(AnalysisResult result) {
+            return result instanceof MappedAnalysisResult
+                && ((MappedAnalysisResult) result).source == this
+                && !((MappedAnalysisResult) result).isModified();
+        }
+
+        /**
+         * Binary search of the index, only the records whose path id hash
+         * matches are read.
+         */
+        AnalysisResult lookup(FileId fileId, CachedRuleMapper ruleMapper) {
+            final String pathId = fileId.getUriString();
+            final long hash = hash(pathId);
+
+            int low = 0;
+            int high = indexSize;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (hashAt(mid) < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            for (int i = low; i < indexSize && hashAt(i) == hash; i++) {
+                final int entryOffset = indexOffset + i * INDEX_ENTRY_SIZE;
+                final IndexEntry entry = new IndexEntry(hash,
+                                                        buffer.getLong(entryOffset + 8),
+                                                        buffer.getInt(entryOffset + 16),
+                                                        buffer.getInt(entryOffset + 20));
+                try (DataInputStream record = openRecord(entry)) {
+                    if (pathId.equals(record.readUTF())) {
+                        return new MappedAnalysisResult(this, fileId, entry, ruleMapper);
+                    }
+                } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    LOG.warn("Analysis cache is malformed, ignoring entry for {}", pathId);
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        private long hashAt(int i) {
+            return buffer.getLong(indexOffset + i * INDEX_ENTRY_SIZE);
+        }
+
+        DataInputStream openRecord(IndexEntry entry) throws IOException {
+            final Map<Integer, ByteBuffer> released = releasedRecords;
+            final ByteBuffer record;
+            if (released == null) {
+                record = buffer.duplicate();
+                record.limit(entry.recordOffset + entry.recordLength);
+                record.position(entry.recordOffset);
+            } else if (released.containsKey(entry.recordOffset)) {
+                record = released.get(entry.recordOffset).duplicate();
+            } else {
+                throw new IOException("The analysis cache was persisted, this record was not kept");
+            }
+            return new DataInputStream(IOUtil.fromByteBuffer(record));
+        }
+    }
+
+    /**
+     * A result whose violations are decoded from the mapped file the
+     * first time they are requested.
+     */
+    private static final class MappedAnalysisResult extends AnalysisResult {
+
+        private final MappedCache source;
+        private final FileId fileId;
+        private final IndexEntry entry;
+        private final CachedRuleMapper ruleMapper;
+        private List<RuleViolation> violations;
+        private Set<String> classpathDependencies;
+        private boolean dependenciesRead;
+        private boolean violationsCopied;
+        private boolean modified;
+
+        MappedAnalysisResult(MappedCache source, FileId fileId, IndexEntry entry, CachedRuleMapper ruleMapper) {
+            super(entry.fileChecksum, Collections.emptyList());
+            this.source = source;
+            this.fileId = fileId;
+            this.entry = entry;
+            this.ruleMapper = ruleMapper;
+        }
+
+        synchronized boolean isModified() {
+            return modified;
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getViolations() {
+            if (violations == null) {
+                violations = readViolations();
+            }
+            return violations;
+        }
+
+        @Override
+        public synchronized Set<String> getClasspathDependencies() {
+            if (!dependenciesRead) {
+                classpathDependencies = readClasspathDependencies();
+                dependenciesRead = true;
+            }
+            return classpathDependencies;
+        }
+
+        private Set<String> readClasspathDependencies() {
+            try (DataInputStream record = source.openRecord(entry)) {
+                record.readUTF(); // path id
+                final int countDependencies = record.readInt();
+                if (countDependencies < 0) {
+                    return null;
+                }
+                final Set<String> result = new HashSet<>(countDependencies);
+                for (int i = 0; i < countDependencies; i++) {
+                    result.add(source.dependencyNames.get(record.readInt()));
+                }
+                return result;
+            } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                LOG.warn("Analysis cache is malformed, could not read dependencies of {}", fileId.getUriString());
+                modified = true; // don't keep the malformed record
+                return null;
+            }
+        }
+
+        @Override
+        public synchronized void setClasspathDependencies(Set<String> classpathDependencies) {
+            this.classpathDependencies = classpathDependencies;
+            dependenciesRead = true;
+            modified = true;
+        }
+
+        private List<RuleViolation> readViolations() {
+            try (DataInputStream record = source.openRecord(entry)) {
+                record.readUTF(); // path id
+                final int countDependencies = record.readInt();
+                if (countDependencies > 0) {
+                    record.skipBytes(countDependencies * Integer.BYTES);
+                }
+                return CachedRuleViolation.loadFromStream(record, fileId, ruleMapper);
+            } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                LOG.warn("Analysis cache is malformed, could not read violations of {}", fileId.getUriString());
+                modified = true; // don't keep the malformed record
+                return new ArrayList<>();
+            }
+        }
+
+        @Override
+        public synchronized void addViolations(List<RuleViolation> violations) {
+            modifiableViolations().addAll(violations);
+        }
+
+        @Override
+        public synchronized void addViolation(RuleViolation ruleViolation) {
+            modifiableViolations().add(ruleViolation);
+        }
+
+        /** The violations read from the mapped file cannot be modified, copy them. */
+        private List<RuleViolation> modifiableViolations() {
+            if (!violationsCopied) {
+                violations = new ArrayList<>(getViolations());
+                violationsCopied = true;
+            }
+            modified = true;
+            return violations;
+        }
+    }
 }
@@ -39,6 +39,11 @@ public class NoopAnalysisCache implements AnalysisCache {
         // noop
     }
 
+    @Override
+    public void recordClasspathDependencies(TextDocument document, ClasspathDependencyRecorder dependencies) {
+        // noop
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(TextDocument sourceFile) {
         return Collections.emptyList();
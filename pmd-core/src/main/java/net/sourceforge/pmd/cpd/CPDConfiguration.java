@@ -8,6 +8,7 @@ import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
@@ -50,6 +51,12 @@ public class CPDConfiguration extends AbstractConfiguration {
 
     private boolean skipDuplicates;
 
+    private boolean suffixArrayMatching;
+
+    private int threads = 1;
+
+    private @Nullable Path cacheLocation;
+
     private String rendererName = DEFAULT_RENDERER;
 
     private @Nullable CPDReportRenderer cpdReportRenderer;
@@ -160,6 +167,70 @@ public class CPDConfiguration extends AbstractConfiguration {
         this.skipDuplicates = skipDuplicates;
     }
 
+    /**
+     * Returns whether duplicates are found with a suffix array of the
+     * tokens, instead of by comparing tiles with the same hash. See
+     * {@link #setSuffixArrayMatching(boolean)}.
+     */
+    public boolean isSuffixArrayMatching() {
+        return suffixArrayMatching;
+    }
+
+    /**
+     * Sets whether duplicates are found with a suffix array of the tokens,
+     * instead of by comparing tiles with the same hash. This is faster when
+     * many files share the same code. A mark of a longer duplicate is not
+     * repeated in the shorter duplicates that contain it, so the matches
+     * may be grouped slightly differently. Disabled by default.
+     *
+     * @param suffixArrayMatching Whether to use a suffix array
+     */
+    public void setSuffixArrayMatching(boolean suffixArrayMatching) {
+        this.suffixArrayMatching = suffixArrayMatching;
+    }
+
+    /**
+     * Returns the number of threads used to tokenize files. See
+     * {@link #setThreads(int)}.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to tokenize files. Files are
+     * tokenized in parallel, then their tokens are concatenated in the
+     * order of the files, so the result does not depend on the number
+     * of threads. With zero, files are tokenized on the calling thread.
+     * Defaults to 1.
+     *
+     * @param threads The number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the location of the file in which tokens are cached between
+     * runs, or null if there is no cache. See {@link #setCacheLocation(Path)}.
+     */
+    public @Nullable Path getCacheLocation() {
+        return cacheLocation;
+    }
+
+    /**
+     * Sets the location of the file in which the tokens of each file are
+     * cached between runs. Only files whose content changed since the
+     * previous run are tokenized again. The cache is discarded when the
+     * language properties or the version of PMD change. Null by default,
+     * which disables the cache.
+     *
+     * @param cacheLocation The cache file, or null
+     */
+    public void setCacheLocation(@Nullable Path cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
+
     public String getRendererName() {
         return rendererName;
     }
@@ -11,8 +11,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -24,7 +30,6 @@ import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguagePropertyBundle;
 import net.sourceforge.pmd.lang.ast.FileAnalysisException;
-import net.sourceforge.pmd.lang.ast.LexException;
 import net.sourceforge.pmd.lang.document.FileCollector;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.InternalApiBridge;
@@ -75,6 +80,7 @@ public final class CpdAnalysis implements AutoCloseable {
     private final FileCollector files;
     private final PmdReporter reporter;
     private final @Nullable CPDReportRenderer renderer;
+    private final @Nullable CpdCache cache;
     private @NonNull CPDListener listener = new CPDNullListener();
 
 
@@ -93,6 +99,9 @@ public final class CpdAnalysis implements AutoCloseable {
         for (Language language : config.getLanguageRegistry()) {
             setLanguageProperties(language, config);
         }
+
+        // after the language properties are set, as they are part of the cache key
+        this.cache = config.getCacheLocation() != null ? new CpdCache(config.getCacheLocation(), config) : null;
     }
 
     /**
@@ -140,11 +149,42 @@ public final class CpdAnalysis implements AutoCloseable {
         this.listener = cpdListener;
     }
 
-    private int doTokenize(TextDocument document, CpdLexer cpdLexer, Tokens tokens) throws IOException, LexException {
+    /**
+     * Tokenizes a file into its own token buffer. Lexers are created per
+     * thread, since they may not be thread-safe. If the file is unchanged
+     * since the cache was written, its tokens are read from the cache.
+     */
+    private FileTokens doTokenize(TextFile textFile, SourceManager sourceManager, ThreadLocal<Map<Language, CpdLexer>> lexers) {
+        TextDocument document = sourceManager.get(textFile);
         LOGGER.trace("Tokenizing {}", document.getFileId().getAbsolutePath());
-        int lastTokenSize = tokens.size();
-        CpdLexer.tokenize(cpdLexer, document, tokens);
-        return tokens.size() - lastTokenSize - 1; /* EOF */
+        if (cache != null) {
+            Tokens cachedTokens = cache.getTokens(document);
+            if (cachedTokens != null) {
+                return new FileTokens(cachedTokens, null);
+            }
+        }
+        Language language = textFile.getLanguageVersion().getLanguage();
+        CpdLexer cpdLexer = lexers.get().computeIfAbsent(language, this::createCpdLexer);
+        Tokens tokens = new Tokens();
+        try {
+            CpdLexer.tokenize(cpdLexer, document, tokens);
+            if (cache != null) {
+                cache.putTokens(document, tokens);
+            }
+            return new FileTokens(tokens, null);
+        } catch (IOException | FileAnalysisException e) {
+            if (e instanceof FileAnalysisException) { // NOPMD
+                ((FileAnalysisException) e).setFileId(textFile.getFileId());
+            }
+            return new FileTokens(null, e);
+        }
+    }
+
+    private @Nullable CpdLexer createCpdLexer(Language language) {
+        if (language instanceof CpdCapableLanguage) {
+            return ((CpdCapableLanguage) language).createCpdLexer(configuration.getLanguageProperties(language));
+        }
+        return null;
     }
 
     public void performAnalysis() {
@@ -153,43 +193,61 @@ public final class CpdAnalysis implements AutoCloseable {
 
     @SuppressWarnings("PMD.CloseResource")
     public void performAnalysis(Consumer<CPDReport> consumer) {
+        ExecutorService executor = configuration.getThreads() > 0
+                                   ? Executors.newFixedThreadPool(configuration.getThreads(), new CpdThreadFactory())
+                                   : null;
         try (SourceManager sourceManager = new SourceManager(files.getCollectedFiles())) {
-            Map<Language, CpdLexer> tokenizers =
-                sourceManager.getTextFiles().stream()
-                             .map(it -> it.getLanguageVersion().getLanguage())
-                             .distinct()
-                             .filter(it -> it instanceof CpdCapableLanguage)
-                             .collect(Collectors.toMap(lang -> lang, lang -> ((CpdCapableLanguage) lang).createCpdLexer(configuration.getLanguageProperties(lang))));
+            if (cache != null) {
+                cache.load();
+            }
+            ThreadLocal<Map<Language, CpdLexer>> lexers = ThreadLocal.withInitial(HashMap::new);
+
+            List<Supplier<FileTokens>> fileResults = new ArrayList<>();
+            for (TextFile textFile : sourceManager.getTextFiles()) {
+                if (executor != null) {
+                    Future<FileTokens> future = executor.submit(() -> doTokenize(textFile, sourceManager, lexers));
+                    fileResults.add(() -> getResult(future));
+                } else {
+                    fileResults.add(() -> doTokenize(textFile, sourceManager, lexers));
+                }
+            }
 
             Map<FileId, Integer> numberOfTokensPerFile = new HashMap<>();
 
             List<Report.ProcessingError> processingErrors = new ArrayList<>();
             Tokens tokens = new Tokens();
-            for (TextFile textFile : sourceManager.getTextFiles()) {
-                TextDocument textDocument = sourceManager.get(textFile);
-                Tokens.State savedState = tokens.savePoint();
-                try {
-                    int newTokens = doTokenize(textDocument, tokenizers.get(textFile.getLanguageVersion().getLanguage()), tokens);
-                    numberOfTokensPerFile.put(textDocument.getFileId(), newTokens);
+            // files are appended in order, so the result doesn't depend on the number of threads
+            for (int i = 0; i < fileResults.size(); i++) {
+                TextFile textFile = sourceManager.getTextFiles().get(i);
+                FileTokens result = fileResults.get(i).get();
+                fileResults.set(i, null); // NOPMD release the tokens once appended
+                if (result.error == null) {
+                    tokens.append(result.tokens);
+                    numberOfTokensPerFile.put(textFile.getFileId(), result.tokens.size() - 1 /* EOF */);
                     listener.addedFile(1);
-                } catch (IOException | FileAnalysisException e) {
-                    if (e instanceof FileAnalysisException) { // NOPMD
-                        ((FileAnalysisException) e).setFileId(textFile.getFileId());
-                    }
+                } else {
                     String message = configuration.isSkipLexicalErrors() ? "Skipping file" : "Error while tokenizing";
-                    reporter.errorEx(message, e);
-                    processingErrors.add(new Report.ProcessingError(e, textFile.getFileId()));
-                    savedState.restore(tokens);
+                    reporter.errorEx(message, result.error);
+                    processingErrors.add(new Report.ProcessingError(result.error, textFile.getFileId()));
                 }
             }
+            if (cache != null) {
+                cache.persist();
+            }
             if (!processingErrors.isEmpty() && !configuration.isSkipLexicalErrors()) {
                 // will be caught by CPD command
                 throw new IllegalStateException("Errors were detected while lexing source, exiting because --skip-lexical-errors is unset.");
             }
 
             LOGGER.debug("Running match algorithm on {} files...", sourceManager.size());
-            MatchAlgorithm matchAlgorithm = new MatchAlgorithm(tokens, configuration.getMinimumTileSize());
-            List<Match> matches = matchAlgorithm.findMatches(listener, sourceManager);
+            List<Match> matches;
+            if (configuration.isSuffixArrayMatching()) {
+                SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, configuration.getMinimumTileSize());
+                matches = matchAlgorithm.findMatches(listener, sourceManager);
+            } else {
+                MatchAlgorithm matchAlgorithm = new MatchAlgorithm(tokens, configuration.getMinimumTileSize());
+                matches = matchAlgorithm.findMatches(listener, sourceManager);
+            }
             tokens = null; // NOPMD null it out before rendering
             LOGGER.debug("Finished: {} duplicates found", matches.size());
 
@@ -204,10 +262,52 @@ public final class CpdAnalysis implements AutoCloseable {
             consumer.accept(cpdReport);
         } catch (Exception e) {
             reporter.errorEx("Exception while running CPD", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
         // source manager is closed and closes all text files now.
     }
 
+    private static FileTokens getResult(Future<FileTokens> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tokenizing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** The tokens of a file, or the error that prevented tokenizing it. */
+    private static final class FileTokens {
+
+        private final Tokens tokens;
+        private final Exception error;
+
+        FileTokens(Tokens tokens, Exception error) {
+            this.tokens = tokens;
+            this.error = error;
+        }
+    }
+
+    private static final class CpdThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "CpdLexerThread-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 
     @Override
     public void close() throws IOException {
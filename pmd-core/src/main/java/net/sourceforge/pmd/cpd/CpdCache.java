@@ -0,0 +1,232 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguagePropertyBundle;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * Persists the tokens of each file between runs of CPD, so that only
+ * files that changed are tokenized again. Entries are keyed by the path
+ * of the file and the checksum of its content. The whole cache is
+ * invalidated when the PMD version or the properties of a language
+ * change, as they affect the tokens produced by the lexers.
+ *
+ * <p>The match algorithm still runs on the tokens of all files, since
+ * a changed file may duplicate code of an unchanged one.
+ *
+ * <p>Lookups and updates are thread-safe, files may be tokenized in
+ * parallel.
+ */
+final class CpdCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CpdCache.class);
+    private static final int FORMAT_VERSION = 1;
+    /** Number of ints per token: image id, begin line, begin column, end line, end column. */
+    private static final int TOKEN_STRIDE = 5;
+
+    private final Path cacheFile;
+    private final String settings;
+    /** Entries read from the cache file. */
+    private final Map<String, FileEntry> cachedEntries = new ConcurrentHashMap<>();
+    /** Entries of the files of the current run, which will be persisted. */
+    private final Map<String, FileEntry> updatedEntries = new ConcurrentHashMap<>();
+
+    CpdCache(Path cacheFile, CPDConfiguration configuration) {
+        this.cacheFile = cacheFile;
+        this.settings = settingsOf(configuration);
+    }
+
+    /**
+     * Describes the properties of the languages, which are used to
+     * configure the lexers.
+     */
+    private static String settingsOf(CPDConfiguration configuration) {
+        StringBuilder sb = new StringBuilder();
+        for (Language language : configuration.getLanguageRegistry()) {
+            LanguagePropertyBundle props = configuration.getLanguageProperties(language);
+            sb.append(language.getId()).append('{');
+            for (PropertyDescriptor<?> descriptor : props.getPropertyDescriptors()) {
+                sb.append(descriptor.name()).append('=').append(valueOf(props, descriptor)).append(';');
+            }
+            sb.append('}');
+        }
+        return sb.toString();
+    }
+
+    private static <T> String valueOf(LanguagePropertyBundle props, PropertyDescriptor<T> descriptor) {
+        return descriptor.serializer().toString(props.getProperty(descriptor));
+    }
+
+    /**
+     * Reads the cache file, if it exists and was written by the same
+     * version of PMD with the same settings.
+     */
+    void load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            if (Files.isDirectory(cacheFile)) {
+                LOG.error("The configured CPD cache location must be the path to a file, but is a directory.");
+            }
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != FORMAT_VERSION
+                || !PMDVersion.VERSION.equals(in.readUTF())
+                || !settings.equals(readString(in))) {
+                LOG.debug("CPD cache invalidated, PMD version or settings changed.");
+                return;
+            }
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                String pathId = in.readUTF();
+                cachedEntries.put(pathId, FileEntry.read(in));
+            }
+            LOG.debug("CPD cache loaded from {}", cacheFile);
+        } catch (IOException | RuntimeException e) {
+            cachedEntries.clear();
+            LOG.warn("Could not load CPD cache from file {}: {}", cacheFile, e.toString());
+        }
+    }
+
+    /**
+     * Returns the cached tokens of the given document, or null if the
+     * document is not in the cache or changed since it was cached.
+     */
+    @Nullable Tokens getTokens(TextDocument document) {
+        String pathId = document.getFileId().getUriString();
+        FileEntry entry = cachedEntries.get(pathId);
+        if (entry == null || entry.checksum != document.getCheckSum()) {
+            return null;
+        }
+        updatedEntries.put(pathId, entry);
+
+        Tokens tokens = new Tokens();
+        try (TokenFactory factory = Tokens.factoryForFile(document, tokens)) {
+            int[] data = entry.tokens;
+            for (int i = 0; i < data.length; i += TOKEN_STRIDE) {
+                factory.recordToken(entry.images[data[i]], data[i + 1], data[i + 2], data[i + 3], data[i + 4]);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Records the tokens of the given document. This must be called
+     * before the tokens are appended to another {@link Tokens} instance,
+     * which changes their image ids.
+     */
+    void putTokens(TextDocument document, Tokens tokens) {
+        int[] data = new int[(tokens.size() - 1) * TOKEN_STRIDE];
+        int i = 0;
+        for (TokenEntry token : tokens.getTokens()) {
+            if (!token.isEof()) {
+                data[i++] = token.getIdentifier();
+                data[i++] = token.getBeginLine();
+                data[i++] = token.getBeginColumn();
+                data[i++] = token.getEndLine();
+                data[i++] = token.getEndColumn();
+            }
+        }
+        FileEntry entry = new FileEntry(document.getCheckSum(), tokens.imagesById(), data);
+        updatedEntries.put(document.getFileId().getUriString(), entry);
+    }
+
+    /**
+     * Writes the entries of the files of the current run to the cache
+     * file. Entries of files that were not part of this run are dropped.
+     */
+    void persist() {
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(cacheFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(PMDVersion.VERSION);
+                writeString(out, settings);
+                out.writeInt(updatedEntries.size());
+                for (Map.Entry<String, FileEntry> entry : updatedEntries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+            LOG.debug("CPD cache written to {}", cacheFile);
+        } catch (IOException e) {
+            LOG.error("Could not persist CPD cache to file: {}", e.getMessage());
+        }
+    }
+
+    /** Token images may be longer than what {@link DataOutputStream#writeUTF(String)} supports. */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The tokens of a file, without the final EOF token. */
+    private static final class FileEntry {
+
+        private final long checksum;
+        /** Images by id, the element at index zero is unused. */
+        private final String[] images;
+        private final int[] tokens;
+
+        FileEntry(long checksum, String[] images, int[] tokens) {
+            this.checksum = checksum;
+            this.images = images;
+            this.tokens = tokens;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(checksum);
+            out.writeInt(images.length);
+            for (int i = 1; i < images.length; i++) {
+                writeString(out, images[i]);
+            }
+            out.writeInt(tokens.length);
+            for (int value : tokens) {
+                out.writeInt(value);
+            }
+        }
+
+        static FileEntry read(DataInputStream in) throws IOException {
+            long checksum = in.readLong();
+            String[] images = new String[in.readInt()];
+            for (int i = 1; i < images.length; i++) {
+                images[i] = readString(in);
+            }
+            int[] tokens = new int[in.readInt()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = in.readInt();
+            }
+            return new FileEntry(checksum, images, tokens);
+        }
+    }
+}
@@ -4,23 +4,38 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+/**
+ * Finds duplicated sequences of at least {@code minTileSize} tokens.
+ *
+ * <p>Tokens are identified by their index in {@link Tokens#getTokens()}.
+ * The algorithm works on primitive arrays indexed by token: the image id
+ * of each token, the hash of the tile starting at each token, and the
+ * chains of tokens with the same hash. Tiles are hashed with a rolling
+ * hash, in parallel chunks. Tokens whose tile has the same hash are
+ * grouped with an open-addressing table, then each group is handed to
+ * the {@link MatchCollector} to find the maximal matches.
+ */
 class MatchAlgorithm {
 
     private static final int MOD = 37;
+    /** Number of tokens hashed by a single task. */
+    private static final int HASH_CHUNK_SIZE = 1 << 16;
+    private static final int NO_TOKEN = -1;
+
     private int lastMod = 1;
 
     private final Tokens tokens;
     private final List<TokenEntry> code;
     private final int minTileSize;
+    /** Image id of each token, 0 for EOF tokens. */
+    private int[] identifiers;
 
     MatchAlgorithm(Tokens tokens, int minTileSize) {
         this.tokens = tokens;
@@ -32,8 +47,17 @@ class MatchAlgorithm {
     }
 
 
-    public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+    TokenEntry tokenAt(int index) {
+        return code.get(index);
+    }
+
+    /**
+     * Returns true if the tokens at the given indices are not the same
+     * token, or if one of them ends a file.
+     */
+    boolean matchEnded(int index1, int index2) {
+        int id1 = identifiers[index1];
+        return id1 != identifiers[index2] || id1 == 0;
     }
 
     public int getMinimumTileSize() {
@@ -41,26 +65,31 @@ class MatchAlgorithm {
     }
 
     public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
+        identifiers = new int[code.size()];
+        Arrays.parallelSetAll(identifiers, i -> code.get(i).getIdentifier());
+
         MatchCollector matchCollector = new MatchCollector(this);
         {
             cpdListener.phaseUpdate(CPDListener.HASH);
-            Map<TokenEntry, Object> markGroups = hash();
+            TileGroups groups = hash();
 
             cpdListener.phaseUpdate(CPDListener.MATCH);
-            markGroups.values()
-                      .stream()
-                      .filter(it -> it instanceof List)
-                      .forEach(it -> {
-                          @SuppressWarnings("unchecked")
-                          List<TokenEntry> l = (List<TokenEntry>) it;
-                          Collections.reverse(l);
-                          matchCollector.collect(l);
-                      });
-            // put markGroups out of scope
+            groups.forEachGroup(matchCollector::collect);
+            // put groups out of scope
         }
+        identifiers = null;
 
         cpdListener.phaseUpdate(CPDListener.GROUPING);
         List<Match> matches = matchCollector.getMatches();
+        finishMatches(tokens, matches);
+        cpdListener.phaseUpdate(CPDListener.DONE);
+        return matches;
+    }
+
+    /**
+     * Sorts the matches and sets the end token of their marks.
+     */
+    static void finishMatches(Tokens tokens, List<Match> matches) {
         matches.sort(Comparator.naturalOrder());
 
         for (Match match : matches) {
@@ -71,48 +100,137 @@ class MatchAlgorithm {
                 mark.setEndToken(endToken);
             }
         }
-        cpdListener.phaseUpdate(CPDListener.DONE);
-        return matches;
     }
 
-    @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
-        int lastHash = 0;
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (!token.isEof()) {
-                int last = tokenAt(minTileSize, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
-                }
-            } else {
-                lastHash = 0;
-                for (int end = Math.max(0, i - minTileSize + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (token.isEof()) {
-                        break;
+    /**
+     * Computes the hash of the tile starting at each token, and groups
+     * the tokens whose tile has the same hash. Tiles that span an EOF
+     * token are not grouped.
+     */
+    private TileGroups hash() {
+        final int size = identifiers.length;
+        final int[] hashes = new int[size];
+        final int chunks = (size + HASH_CHUNK_SIZE - 1) / HASH_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = chunk * HASH_CHUNK_SIZE;
+            int end = Math.min(size, start + HASH_CHUNK_SIZE);
+            hashChunk(hashes, start, end);
+        });
+
+        TileGroups groups = new TileGroups(size);
+        int nextEof = size;
+        // insert in reverse order, so that each chain is sorted by index
+        for (int i = size - 1; i >= 0; i--) {
+            if (identifiers[i] == 0) {
+                nextEof = i;
+            } else if (nextEof - i >= minTileSize) {
+                code.get(i).setHashCode(hashes[i]);
+                groups.add(i, hashes[i]);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Rolling hash of the tiles starting in [start, end), the hash of the
+     * tile starting at i being {@code sum(identifiers[i + k] * MOD^k)}.
+     * Tokens past the end count as zero.
+     */
+    private void hashChunk(int[] hashes, int start, int end) {
+        int hash = 0;
+        for (int k = minTileSize - 1; k >= 0; k--) {
+            hash = MOD * hash + identifierAt(end + k);
+        }
+        for (int i = end - 1; i >= start; i--) {
+            hash = MOD * hash + identifiers[i] - lastMod * identifierAt(i + minTileSize);
+            hashes[i] = hash;
+        }
+    }
+
+    private int identifierAt(int index) {
+        return index < identifiers.length ? identifiers[index] : 0;
+    }
+
+    /**
+     * Groups of token indices whose tile has the same hash. This is an
+     * open-addressing table from the hash to the first index of its group,
+     * the following indices being chained in a parallel array.
+     */
+    private static final class TileGroups {
+
+        private final int[] keys;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        TileGroups(int tokenCount) {
+            int capacity = Integer.highestOneBit(Math.max(2, tokenCount) * 2 - 1) << 1;
+            this.keys = new int[capacity];
+            this.heads = new int[capacity];
+            this.next = new int[tokenCount];
+            this.mask = capacity - 1;
+            Arrays.fill(heads, NO_TOKEN);
+        }
+
+        /** Indices must be added in decreasing order. */
+        void add(int index, int hash) {
+            int slot = slotOf(hash);
+            next[index] = heads[slot];
+            keys[slot] = hash;
+            heads[slot] = index;
+        }
+
+        private int slotOf(int hash) {
+            int slot = mix(hash) & mask;
+            while (heads[slot] != NO_TOKEN && keys[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Calls the consumer with each group of at least two indices,
+         * sorted by index. Groups are visited in the order of their first
+         * index.
+         */
+        void forEachGroup(GroupConsumer consumer) {
+            int[] group = new int[4];
+            for (int slot : slotsByFirstIndex()) {
+                int count = 0;
+                for (int index = heads[slot]; index != NO_TOKEN; index = next[index]) {
+                    if (count == group.length) {
+                        group = Arrays.copyOf(group, count * 2);
                     }
+                    group[count++] = index;
                 }
+                consumer.accept(group, count);
             }
         }
-        return markGroups;
+
+        private int[] slotsByFirstIndex() {
+            // first index in the high bits, slot in the low bits
+            long[] sortKeys = IntStream.range(0, heads.length)
+                                       .filter(slot -> heads[slot] != NO_TOKEN && next[heads[slot]] != NO_TOKEN)
+                                       .mapToLong(slot -> (long) heads[slot] << 32 | slot)
+                                       .toArray();
+            Arrays.parallelSort(sortKeys);
+            int[] slots = new int[sortKeys.length];
+            for (int i = 0; i < sortKeys.length; i++) {
+                slots[i] = (int) sortKeys[i];
+            }
+            return slots;
+        }
+    }
+
+    @FunctionalInterface
+    interface GroupConsumer {
+
+        /** The group is in the first {@code count} elements of the array. */
+        void accept(int[] group, int count);
     }
 }
@@ -0,0 +1,323 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Finds duplicated sequences of at least {@code minTileSize} tokens
+ * using a suffix array of the token stream. This is an alternative to
+ * {@link MatchAlgorithm}, that doesn't compare candidate pairs of tiles,
+ * so it doesn't degrade when many files share the same code.
+ *
+ * <p>The suffix array is built by prefix doubling, and the LCP array
+ * (length of the longest common prefix of consecutive suffixes) with
+ * Kasai's algorithm. Each EOF token is given a distinct identifier, so
+ * that common prefixes never span several files. The LCP intervals
+ * (ranges of suffixes that share a prefix of some length, and no longer
+ * prefix) are then enumerated bottom-up. Each interval of length at
+ * least {@code minTileSize} is a duplicate that cannot be extended to
+ * the right. It is reported if it cannot be extended to the left either,
+ * with one mark per longer duplicate it contains, so that the marks of
+ * a longer duplicate are not repeated in the shorter ones.
+ *
+ * <p>Like with {@link MatchAlgorithm}, overlapping marks are not
+ * reported. The matches may be grouped slightly differently than with
+ * {@link MatchAlgorithm}, since the latter reports pairs of tiles in a
+ * greedy order.
+ */
+class SuffixArrayMatchAlgorithm {
+
+    private static final int NO_TOKEN = -1;
+
+    private final Tokens tokens;
+    private final List<TokenEntry> code;
+    private final int minTileSize;
+
+    SuffixArrayMatchAlgorithm(Tokens tokens, int minTileSize) {
+        this.tokens = tokens;
+        this.code = tokens.getTokens();
+        this.minTileSize = minTileSize;
+    }
+
+    public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
+        List<Match> matches;
+        {
+            cpdListener.phaseUpdate(CPDListener.HASH);
+            int[] text = textWithDistinctEofs();
+            int[] suffixArray = suffixArray(text);
+            int[] lcp = lcpArray(text, suffixArray);
+
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            matches = collectMatches(text, suffixArray, lcp);
+            // put arrays out of scope
+        }
+
+        cpdListener.phaseUpdate(CPDListener.GROUPING);
+        MatchAlgorithm.finishMatches(tokens, matches);
+        cpdListener.phaseUpdate(CPDListener.DONE);
+        return matches;
+    }
+
+    /**
+     * Returns the image ids of the tokens, where EOF tokens are replaced
+     * by distinct identifiers greater than all image ids.
+     */
+    private int[] textWithDistinctEofs() {
+        int[] text = new int[code.size()];
+        int maxId = 0;
+        for (int i = 0; i < text.length; i++) {
+            text[i] = code.get(i).getIdentifier();
+            maxId = Math.max(maxId, text[i]);
+        }
+        int nextEofId = maxId + 1;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] == 0) {
+                text[i] = nextEofId++;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Sorts the suffixes by prefix doubling: at step k, suffixes are sorted
+     * by their first 2^k tokens, using the ranks of step k - 1 as keys of
+     * a radix sort. Stops once all ranks are distinct, so the number of steps
+     * is the logarithm of the length of the longest duplicate.
+     */
+    static int[] suffixArray(int[] text) {
+        final int n = text.length;
+        int[] sa = new int[n];
+        if (n == 0) {
+            return sa;
+        }
+        int alphabetSize = 0;
+        for (int c : text) {
+            alphabetSize = Math.max(alphabetSize, c + 1);
+        }
+        int[] rank = Arrays.copyOf(text, n);
+        int[] tmp = new int[n];
+        int[] counts = new int[Math.max(alphabetSize, n) + 1];
+
+        // sort by first token
+        for (int i = 0; i < n; i++) {
+            tmp[i] = i;
+        }
+        countingSort(tmp, sa, rank, counts, alphabetSize);
+        int classes = reRank(sa, rank, tmp, 0);
+
+        for (int k = 1; classes < n; k <<= 1) {
+            // order by second key: suffixes shorter than k first, then by rank of i + k
+            int p = 0;
+            for (int i = n - k; i < n; i++) {
+                tmp[p++] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                if (sa[i] >= k) {
+                    tmp[p++] = sa[i] - k;
+                }
+            }
+            // stable sort by first key
+            countingSort(tmp, sa, rank, counts, classes);
+            classes = reRank(sa, rank, tmp, k);
+        }
+        return sa;
+    }
+
+    /** Stable sort of the positions in {@code in} by their key, into {@code out}. */
+    private static void countingSort(int[] in, int[] out, int[] keys, int[] counts, int keyCount) {
+        Arrays.fill(counts, 0, keyCount + 1, 0);
+        for (int pos : in) {
+            counts[keys[pos] + 1]++;
+        }
+        for (int i = 1; i <= keyCount; i++) {
+            counts[i] += counts[i - 1];
+        }
+        for (int pos : in) {
+            out[counts[keys[pos]]++] = pos;
+        }
+    }
+
+    /**
+     * Replaces the ranks by the rank of the pair (rank[i], rank[i + k])
+     * in the suffix array, and returns the number of distinct ranks.
+     * With k = 0, the ranks are the rank of the first token.
+     */
+    private static int reRank(int[] sa, int[] rank, int[] newRank, int k) {
+        final int n = sa.length;
+        newRank[sa[0]] = 0;
+        int classes = 1;
+        for (int i = 1; i < n; i++) {
+            int prev = sa[i - 1];
+            int cur = sa[i];
+            boolean same = rank[prev] == rank[cur]
+                && (k == 0 || secondKey(rank, prev, k) == secondKey(rank, cur, k));
+            if (!same) {
+                classes++;
+            }
+            newRank[cur] = classes - 1;
+        }
+        System.arraycopy(newRank, 0, rank, 0, n);
+        return classes;
+    }
+
+    private static int secondKey(int[] rank, int pos, int k) {
+        return pos + k < rank.length ? rank[pos + k] : -1;
+    }
+
+    /**
+     * Kasai's algorithm. The value at i is the length of the common prefix
+     * of the suffixes at i - 1 and i in the suffix array, zero for i = 0.
+     */
+    static int[] lcpArray(int[] text, int[] sa) {
+        final int n = text.length;
+        int[] inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            inverse[sa[i]] = i;
+        }
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (inverse[i] > 0) {
+                int j = sa[inverse[i] - 1];
+                while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+                    h++;
+                }
+                lcp[inverse[i]] = h;
+                if (h > 0) {
+                    h--;
+                }
+            } else {
+                h = 0;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * Enumerates the LCP intervals bottom-up with a stack, and reports
+     * those that are long enough.
+     */
+    private List<Match> collectMatches(int[] text, int[] sa, int[] lcp) {
+        final int n = sa.length;
+        List<Match> matches = new ArrayList<>();
+        Deque<Interval> stack = new ArrayDeque<>();
+        stack.push(new Interval(0, 0));
+        for (int i = 1; i <= n; i++) {
+            int currentLcp = i < n ? lcp[i] : 0;
+            int leftBound = i - 1;
+            Interval lastPopped = null;
+            while (currentLcp < stack.peek().lcp) {
+                lastPopped = stack.pop();
+                lastPopped.rightBound = i - 1;
+                leftBound = lastPopped.leftBound;
+                reportInterval(lastPopped, text, sa, matches);
+                if (currentLcp <= stack.peek().lcp) {
+                    stack.peek().addChild(lastPopped, minTileSize);
+                    lastPopped = null;
+                }
+            }
+            if (currentLcp > stack.peek().lcp) {
+                Interval interval = new Interval(currentLcp, leftBound);
+                if (lastPopped != null) {
+                    interval.addChild(lastPopped, minTileSize);
+                }
+                stack.push(interval);
+            }
+        }
+        return matches;
+    }
+
+    private void reportInterval(Interval interval, int[] text, int[] sa, List<Match> matches) {
+        if (interval.lcp < minTileSize) {
+            return;
+        }
+        // one mark per child interval, and one per suffix that is not in a child
+        int[] marks = new int[interval.children.size() + interval.rightBound - interval.leftBound + 1];
+        int count = 0;
+        int cursor = interval.leftBound;
+        for (Interval child : interval.children) {
+            while (cursor < child.leftBound) {
+                marks[count++] = sa[cursor++];
+            }
+            marks[count++] = child.firstPosition;
+            cursor = child.rightBound + 1;
+        }
+        while (cursor <= interval.rightBound) {
+            marks[count++] = sa[cursor++];
+        }
+        Arrays.sort(marks, 0, count);
+
+        interval.firstPosition = marks[0];
+        interval.children = null; // not needed anymore
+
+        // drop overlapping marks
+        int kept = 1;
+        for (int i = 1; i < count; i++) {
+            if (marks[i] >= marks[kept - 1] + interval.lcp) {
+                marks[kept++] = marks[i];
+            }
+        }
+        if (kept < 2 || !isLeftMaximal(text, marks, kept)) {
+            return;
+        }
+
+        Match match = new Match(interval.lcp, code.get(marks[0]), code.get(marks[1]));
+        for (int i = 2; i < kept; i++) {
+            match.addMark(code.get(marks[i]));
+        }
+        matches.add(match);
+    }
+
+    /**
+     * Returns true if the marks are not all preceded by the same token,
+     * otherwise a longer duplicate contains them.
+     */
+    private static boolean isLeftMaximal(int[] text, int[] marks, int count) {
+        int first = tokenBefore(text, marks[0]);
+        for (int i = 1; i < count; i++) {
+            if (tokenBefore(text, marks[i]) != first) {
+                return true;
+            }
+        }
+        return first == NO_TOKEN;
+    }
+
+    private static int tokenBefore(int[] text, int position) {
+        return position == 0 ? NO_TOKEN : text[position - 1];
+    }
+
+    /**
+     * A range [leftBound, rightBound] of the suffix array, whose suffixes
+     * share a prefix of length lcp.
+     */
+    private static final class Interval {
+
+        final int lcp;
+        final int leftBound;
+        int rightBound;
+        /** Smallest text position of the marks reported for this interval. */
+        int firstPosition;
+        /** Nested intervals, only recorded for intervals that may be reported. */
+        List<Interval> children = new ArrayList<>(0);
+
+        Interval(int lcp, int leftBound) {
+            this.lcp = lcp;
+            this.leftBound = leftBound;
+        }
+
+        void addChild(Interval child, int minTileSize) {
+            if (lcp >= minTileSize) {
+                children.add(child);
+            }
+        }
+    }
+}
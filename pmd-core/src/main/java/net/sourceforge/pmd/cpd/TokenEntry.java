@@ -84,6 +84,10 @@ public class TokenEntry implements Comparable<TokenEntry> {
         return this.index;
     }
 
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     @Override
     public int hashCode() {
         return hashCode;
@@ -85,8 +85,42 @@ public class Tokens {
         return newToken;
     }
 
-    State savePoint() {
-        return new State(this);
+    /**
+     * Returns the images indexed by their id. The element at index zero,
+     * the id of EOF tokens, is null.
+     */
+    String[] imagesById() {
+        String[] result = new String[curImageId];
+        for (Entry<String, Integer> image : images.entrySet()) {
+            result[image.getValue()] = image.getKey();
+        }
+        return result;
+    }
+
+    /**
+     * Appends the tokens of another instance, typically those of a single
+     * file that was tokenized on another thread. The image ids of the
+     * appended tokens are translated to the ids of this instance, in the
+     * order in which the images first appear, so that the result only
+     * depends on the order in which instances are appended. The other
+     * instance should not be used afterwards, as its token entries are
+     * moved to this instance.
+     */
+    void append(Tokens other) {
+        String[] otherImages = other.imagesById();
+        // zero means not translated yet, no image has id zero
+        int[] translation = new int[other.curImageId];
+        for (TokenEntry entry : other.tokens) {
+            if (!entry.isEof()) {
+                int otherId = entry.getIdentifier();
+                if (translation[otherId] == 0) {
+                    translation[otherId] = getImageId(otherImages[otherId]);
+                }
+                entry.setImageIdentifier(translation[otherId]);
+                entry.setIndex(tokens.size());
+            }
+            add(entry);
+        }
     }
 
     /**
@@ -139,27 +173,4 @@ public class Tokens {
         };
     }
 
-    /**
-     * Helper class to preserve and restore the current state of the token
-     * entries.
-     */
-    static final class State {
-
-        private final int tokenCount;
-        private final int curImageId;
-
-        State(Tokens tokens) {
-            this.tokenCount = tokens.tokens.size();
-            this.curImageId = tokens.curImageId;
-        }
-
-        public void restore(Tokens tokens) {
-            tokens.images.entrySet().removeIf(e -> e.getValue() >= curImageId);
-            tokens.curImageId = this.curImageId;
-
-            final List<TokenEntry> entries = tokens.getTokens();
-            entries.subList(tokenCount, entries.size()).clear();
-        }
-    }
-
 }
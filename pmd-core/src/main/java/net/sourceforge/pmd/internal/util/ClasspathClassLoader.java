@@ -57,6 +57,10 @@ public class ClasspathClassLoader extends URLClassLoader {
 
     private FileSystem fileSystem;
     private Map<String, Set<String>> packagesDirsToModules;
+    // this is lazily initialized on first query of a resource
+    private volatile ClasspathIndex classpathIndex;
+    // guarded by this, the index is not built again once the loader is closed
+    private boolean closed;
 
     static {
         registerAsParallelCapable();
@@ -197,6 +201,15 @@ public class ClasspathClassLoader extends URLClassLoader {
         }
     }
 
+    /**
+     * Returns the java home of the runtime image whose classes are
+     * loaded from the jrt filesystem, or null if the classes of the
+     * runtime are loaded by the parent class loader.
+     */
+    public @Nullable String getJavaHome() {
+        return javaHome;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName()
@@ -249,11 +262,78 @@ public class ClasspathClassLoader extends URLClassLoader {
             }
         }
 
-        // search in the other jars of the aux classpath.
+        // search in the other jars of the aux classpath, using the index
+        // to only open the jars that contain the package of the resource.
+        ClasspathIndex index = getClasspathIndex();
+        if (index == null) {
+            // closed
+            return null;
+        }
+        if (index.canLookup(name)) {
+            InputStream stream = index.getResourceAsStream(name);
+            if (stream != null) {
+                return stream;
+            }
+        }
+        // search in the parent.
         // this will call this.getResource, which will do a child-first search, see below.
         return super.getResourceAsStream(name);
     }
 
+    /**
+     * Returns the index of the classpath, building it on first use.
+     * Returns null if this class loader is closed.
+     */
+    private @Nullable ClasspathIndex getClasspathIndex() {
+        ClasspathIndex index = classpathIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = classpathIndex;
+                if (index == null && !closed) {
+                    index = ClasspathIndex.build(getURLs());
+                    classpathIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public URL findResource(String name) {
+        ClasspathIndex index = getClasspathIndex();
+        if (index == null) {
+            // closed
+            return null;
+        } else if (!index.canLookup(name)) {
+            // the class loader picks the version of the entries of multi-release jars
+            return super.findResource(name);
+        }
+        URL url = index.getResource(name);
+        if (url == null && !index.isComplete()) {
+            return super.findResource(name);
+        }
+        return url;
+    }
+
+    /**
+     * Returns the number of resources that were found in the jars and
+     * directories of the aux classpath by {@link #getResourceAsStream(String)}.
+     */
+    public long getClasspathIndexHits() {
+        ClasspathIndex index = classpathIndex;
+        return index == null ? 0 : index.getHits();
+    }
+
+    /**
+     * Returns the number of resources that were not found in the jars
+     * and directories of the aux classpath by {@link #getResourceAsStream(String)}.
+     * Most of them are answered by the index without opening any jar.
+     */
+    public long getClasspathIndexMisses() {
+        ClasspathIndex index = classpathIndex;
+        return index == null ? 0 : index.getMisses();
+    }
+
     private static InputStream newInputStreamFromJrtFilesystem(Path path) {
         LOG.trace("Found {}", path);
         try {
@@ -349,6 +429,18 @@ public class ClasspathClassLoader extends URLClassLoader {
 
     @Override
     public void close() throws IOException {
+        ClasspathIndex index;
+        synchronized (this) {
+            closed = true;
+            index = classpathIndex;
+            classpathIndex = null;
+        }
+        if (index != null) {
+            LOG.debug("Classpath index answered {} lookups, {} were found and {} were not",
+                      index.getHits() + index.getMisses(),
+                      index.getHits(), index.getMisses());
+            index.close();
+        }
         if (fileSystem != null) {
             fileSystem.close();
             // jrt created an own classloader to load the JrtFileSystemProvider class out of the
@@ -0,0 +1,297 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.internal.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the packages of the entries of a classpath. A resource is only
+ * looked up in the jars that contain its package, so that a resource that
+ * is not on the classpath is found missing without probing every jar.
+ * Directories cannot be indexed, they are probed for every lookup.
+ *
+ * <p>The jars are kept open until the index is closed. Their central
+ * directories are read in parallel when the index is built. Like
+ * {@link ZipFile}, the index only sees the base version of the entries
+ * of multi-release jars, so it does not answer the lookups of resources
+ * that may be in such a jar, see {@link #canLookup(String)}.
+ */
+final class ClasspathIndex implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathIndex.class);
+    private static final String VERSIONS_DIR = "META-INF/versions/";
+    private static final Attributes.Name MULTI_RELEASE = new Attributes.Name("Multi-Release");
+
+    /** Entries of the classpath, in classpath order. */
+    private final List<Entry> entries;
+    /** Jars that contain each package, in classpath order. */
+    private final Map<String, List<Entry>> jarsByPackage;
+    /** Directories of the classpath, in classpath order. */
+    private final List<Entry> directories;
+    private final boolean complete;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ClasspathIndex(List<Entry> entries, boolean complete) {
+        this.entries = entries;
+        this.complete = complete;
+        this.jarsByPackage = new HashMap<>();
+        this.directories = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            entry.position = i;
+            if (entry.jar == null) {
+                directories.add(entry);
+            } else {
+                for (String packageName : entry.packages) {
+                    jarsByPackage.computeIfAbsent(packageName, k -> new ArrayList<>(1)).add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index of the given classpath. Entries that do not exist
+     * are ignored, and so are files that are not zip files, like with a
+     * {@link java.net.URLClassLoader}. Entries that are not local files
+     * are not indexed, see {@link #isComplete()}.
+     */
+    static ClasspathIndex build(URL[] urls) {
+        List<Path> paths = new ArrayList<>();
+        boolean complete = true;
+        for (URL url : urls) {
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    paths.add(Paths.get(url.toURI()));
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    LOG.debug("Not indexing classpath entry {}: {}", url, e.toString());
+                    complete = false;
+                }
+            } else {
+                LOG.debug("Not indexing classpath entry {}, not a local file", url);
+                complete = false;
+            }
+        }
+        long start = System.nanoTime();
+        List<Entry> entries = paths.parallelStream()
+                                   .map(ClasspathIndex::openEntry)
+                                   .filter(Objects::nonNull)
+                                   .collect(Collectors.toList());
+        ClasspathIndex index = new ClasspathIndex(entries, complete);
+        LOG.debug("Indexed {} packages of {} classpath entries in {} ms",
+                  index.jarsByPackage.size(), entries.size(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private static @Nullable Entry openEntry(Path path) {
+        if (Files.isDirectory(path)) {
+            return new Entry(path, null, Collections.emptySet(), false);
+        } else if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        ZipFile jar = null;
+        try {
+            jar = new ZipFile(path.toFile());
+            boolean multiRelease = isMultiRelease(jar);
+            Set<String> packages = new HashSet<>();
+            for (Enumeration<? extends ZipEntry> zipEntries = jar.entries(); zipEntries.hasMoreElements();) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                if (!zipEntry.isDirectory()) {
+                    String name = zipEntry.getName();
+                    if (multiRelease && name.startsWith(VERSIONS_DIR)) {
+                        // versioned entries are found under their base name
+                        int versionEnd = name.indexOf('/', VERSIONS_DIR.length());
+                        name = versionEnd < 0 ? name : name.substring(versionEnd + 1);
+                    }
+                    packages.add(packageOf(name));
+                }
+            }
+            return new Entry(path, jar, packages, multiRelease);
+        } catch (IOException e) {
+            LOG.debug("Ignoring classpath entry {}, cannot read it as a jar: {}", path, e.toString());
+            IOUtil.closeQuietly(jar);
+            return null;
+        }
+    }
+
+    private static boolean isMultiRelease(ZipFile jar) throws IOException {
+        ZipEntry manifestEntry = jar.getEntry(JarFile.MANIFEST_NAME);
+        if (manifestEntry == null) {
+            return false;
+        }
+        try (InputStream in = jar.getInputStream(manifestEntry)) {
+            Manifest manifest = new Manifest(in);
+            return Boolean.parseBoolean(manifest.getMainAttributes().getValue(MULTI_RELEASE));
+        }
+    }
+
+    private static String packageOf(String resourceName) {
+        return resourceName.substring(0, Math.max(resourceName.lastIndexOf('/'), 0));
+    }
+
+    /**
+     * Whether the index can look up the resource with the given name. It
+     * cannot if a multi-release jar contains its package, as the version
+     * of the resource that applies to the running JVM is not indexed. The
+     * resource must then be searched by the class loader.
+     */
+    boolean canLookup(String name) {
+        for (Entry entry : jarsByPackage.getOrDefault(packageOf(name), Collections.emptyList())) {
+            if (entry.multiRelease) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a stream of the first resource of the classpath with the
+     * given name, or null if the classpath does not contain it. The
+     * lookup is counted in the {@linkplain #getHits() hits} or the
+     * {@linkplain #getMisses() misses}.
+     */
+    @Nullable InputStream getResourceAsStream(String name) {
+        for (Entry entry : candidates(name)) {
+            InputStream stream = entry.open(name);
+            if (stream != null) {
+                hits.increment();
+                return stream;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the URL of the first resource of the classpath with the
+     * given name, or null if the classpath does not contain it.
+     */
+    @Nullable URL getResource(String name) {
+        for (Entry entry : candidates(name)) {
+            URL url = entry.find(name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    /** The entries that may contain the resource, in classpath order. */
+    private List<Entry> candidates(String name) {
+        List<Entry> jars = jarsByPackage.getOrDefault(packageOf(name), Collections.emptyList());
+        if (directories.isEmpty()) {
+            return jars;
+        } else if (jars.isEmpty()) {
+            return directories;
+        }
+        List<Entry> candidates = new ArrayList<>(jars.size() + directories.size());
+        candidates.addAll(jars);
+        candidates.addAll(directories);
+        candidates.sort(Comparator.comparingInt(it -> it.position));
+        return candidates;
+    }
+
+    /**
+     * Whether the index covers every entry of the classpath. Entries that
+     * are not local files are not indexed, they must be searched by the
+     * class loader.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /** Number of lookups of a resource that was found. */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /** Number of lookups of a resource that is not on the classpath. */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        Exception exception = IOUtil.closeAll(entries.stream().map(it -> it.jar).filter(Objects::nonNull).collect(Collectors.toList()));
+        if (exception != null) {
+            throw new IOException("Cannot close classpath index", exception);
+        }
+    }
+
+    /** A jar or a directory of the classpath. */
+    private static final class Entry {
+
+        private final Path path;
+        private final @Nullable ZipFile jar;
+        private final Set<String> packages;
+        private final boolean multiRelease;
+        /** Index of the entry in the classpath. */
+        private int position;
+
+        Entry(Path path, @Nullable ZipFile jar, Set<String> packages, boolean multiRelease) {
+            this.path = path;
+            this.jar = jar;
+            this.packages = packages;
+            this.multiRelease = multiRelease;
+        }
+
+        @Nullable InputStream open(String name) {
+            try {
+                if (jar != null) {
+                    ZipEntry zipEntry = jar.getEntry(name);
+                    return zipEntry == null ? null : jar.getInputStream(zipEntry);
+                }
+                Path file = path.resolve(name);
+                return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+            } catch (IOException e) {
+                // like ClassLoader#getResourceAsStream
+                LOG.debug("Cannot read {} in classpath entry {}: {}", name, path, e.toString());
+                return null;
+            }
+        }
+
+        @Nullable URL find(String name) {
+            try {
+                if (jar != null) {
+                    return jar.getEntry(name) == null ? null : new URL("jar:" + path.toUri() + "!/" + name);
+                }
+                Path file = path.resolve(name);
+                return Files.exists(file) ? file.toUri().toURL() : null;
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
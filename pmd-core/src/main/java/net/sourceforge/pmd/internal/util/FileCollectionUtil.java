@@ -75,6 +75,7 @@ public final class FileCollectionUtil {
             collector.setCharset(configuration.getSourceEncoding());
             collector.setRecursive(configuration.collectFilesRecursively());
         }
+        collector.setDirectoryListingCache(configuration.getFileListingCache());
 
 
         collectFiles(collector, configuration.getInputPathList());
@@ -14,8 +14,11 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
@@ -194,6 +197,47 @@ public final class IOUtil {
         }
     }
 
+    /**
+     * Releases the mapping of a memory-mapped buffer now, instead of
+     * when the buffer is garbage collected. This matters on Windows,
+     * where a mapped file cannot be replaced or deleted. There is no
+     * public API for this, so this may fail, in which case the mapping
+     * is released by the garbage collector as usual.
+     *
+     * <p>The buffer, and any buffer that shares its content, must not be
+     * used afterwards: this would crash the JVM.
+     *
+     * @param buffer A memory-mapped buffer
+     *
+     * @return Whether the mapping was released
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // fall through
+        }
+        try {
+            // Java 8
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return true;
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // not supported by this JVM
+        }
+        return false;
+    }
+
 
     // The following methods are taken from Apache Commons IO.
     // The dependency was removed from PMD 6 because it had a security issue,
@@ -369,6 +413,53 @@ public final class IOUtil {
         return new ReaderInputStream(reader);
     }
 
+    /**
+     * Returns an input stream that reads the remaining bytes of the given
+     * buffer, without copying them. Reading advances the position of the
+     * buffer, so callers that share a buffer should pass a {@linkplain ByteBuffer#duplicate() duplicate}.
+     */
+    public static InputStream fromByteBuffer(ByteBuffer buffer) {
+        class ByteBufferInputStream extends InputStream {
+            private final ByteBuffer buffer;
+
+            ByteBufferInputStream(ByteBuffer buffer) {
+                this.buffer = buffer;
+            }
+
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : EOF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return EOF;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) {
+                int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+                buffer.position(buffer.position() + count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        }
+
+        return new ByteBufferInputStream(buffer);
+    }
+
     public static OutputStream fromWriter(Writer writer, String encoding) throws UnsupportedCharsetException {
         class WriterOutputStream extends OutputStream {
             private final Writer writer;
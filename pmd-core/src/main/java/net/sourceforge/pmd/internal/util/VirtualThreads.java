@@ -0,0 +1,64 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.internal.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads (JDK 21+) while PMD is compiled for older
+ * Java versions. The factory method is looked up reflectively once.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findExecutorFactory();
+
+    private VirtualThreads() {
+        // utility class
+    }
+
+    /**
+     * Returns true if the running JVM supports virtual threads. This
+     * is false on JDK 19 and 20 if preview features are not enabled.
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns a new executor that starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException If virtual threads are not {@linkplain #isSupported() supported}
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM, they require Java 21 or later");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) { // NOPMD
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findExecutorFactory() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup()
+                                                .findStatic(Executors.class,
+                                                            "newVirtualThreadPerTaskExecutor",
+                                                            MethodType.methodType(ExecutorService.class));
+            // on JDK 19 and 20, this throws if preview features are disabled
+            ((ExecutorService) factory.invokeExact()).shutdown();
+            return factory;
+        } catch (Throwable ignored) { // NOPMD
+            return null;
+        }
+    }
+}
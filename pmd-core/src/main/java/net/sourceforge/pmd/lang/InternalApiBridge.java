@@ -35,7 +35,21 @@ public final class InternalApiBridge {
                                                                     AnalysisCache analysisCache,
                                                                     PmdReporter messageReporter,
                                                                     LanguageProcessorRegistry lpRegistry) {
-        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, analysisCache, messageReporter, lpRegistry);
+        return createAnalysisTask(rulesets, files, listener, threadCount, false, false, false, analysisCache, messageReporter, lpRegistry);
+    }
+
+    public static LanguageProcessor.AnalysisTask createAnalysisTask(RuleSets rulesets,
+                                                                    List<TextFile> files,
+                                                                    GlobalAnalysisListener listener,
+                                                                    int threadCount,
+                                                                    boolean sizeAwareScheduling,
+                                                                    boolean virtualThreads,
+                                                                    boolean pipelined,
+                                                                    AnalysisCache analysisCache,
+                                                                    PmdReporter messageReporter,
+                                                                    LanguageProcessorRegistry lpRegistry) {
+        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, sizeAwareScheduling,
+                                                  virtualThreads, pipelined, analysisCache, messageReporter, lpRegistry);
     }
 
     public static LanguageProcessor.AnalysisTask taskWithFiles(LanguageProcessor.AnalysisTask originalTask, List<TextFile> newFiles) {
@@ -63,6 +63,9 @@ public interface LanguageProcessor extends AutoCloseable {
         private final List<TextFile> files;
         private final GlobalAnalysisListener listener;
         private final int threadCount;
+        private final boolean sizeAwareScheduling;
+        private final boolean virtualThreads;
+        private final boolean pipelined;
         private final AnalysisCache analysisCache;
         private final PmdReporter messageReporter;
         private final LanguageProcessorRegistry lpRegistry;
@@ -78,6 +81,9 @@ public interface LanguageProcessor extends AutoCloseable {
                             List<TextFile> files,
                             GlobalAnalysisListener listener,
                             int threadCount,
+                            boolean sizeAwareScheduling,
+                            boolean virtualThreads,
+                            boolean pipelined,
                             AnalysisCache analysisCache,
                             PmdReporter messageReporter,
                             LanguageProcessorRegistry lpRegistry) {
@@ -85,6 +91,9 @@ public interface LanguageProcessor extends AutoCloseable {
             this.files = files;
             this.listener = listener;
             this.threadCount = threadCount;
+            this.sizeAwareScheduling = sizeAwareScheduling;
+            this.virtualThreads = virtualThreads;
+            this.pipelined = pipelined;
             this.analysisCache = analysisCache;
             this.messageReporter = messageReporter;
             this.lpRegistry = lpRegistry;
@@ -106,6 +115,34 @@ public interface LanguageProcessor extends AutoCloseable {
             return threadCount;
         }
 
+        /**
+         * Whether files should be processed largest first on a work-stealing
+         * pool. Only relevant if {@link #getThreadCount()} is positive.
+         */
+        public boolean isSizeAwareScheduling() {
+            return sizeAwareScheduling;
+        }
+
+        /**
+         * Whether files should be processed on virtual threads. In that
+         * case {@link #getThreadCount()} limits the number of files that
+         * are parsed and analyzed concurrently. Only relevant if the thread
+         * count is positive.
+         */
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Whether reading, parsing and rule application should be performed
+         * as separate pipeline stages, each on its own {@link #getThreadCount()}
+         * threads. Only relevant if the thread count is positive, and if
+         * {@linkplain #isVirtualThreads() virtual threads} are not used.
+         */
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
         public AnalysisCache getAnalysisCache() {
             return analysisCache;
         }
@@ -129,6 +166,9 @@ public interface LanguageProcessor extends AutoCloseable {
                 newFiles,
                 listener,
                 threadCount,
+                sizeAwareScheduling,
+                virtualThreads,
+                pipelined,
                 analysisCache,
                 messageReporter,
                 lpRegistry
@@ -75,4 +75,17 @@ public interface LanguageVersionHandler {
         return DefaultDesignerBindings.getInstance();
     }
 
+
+    /**
+     * Returns whether rules may be applied to an AST of this language
+     * from several threads at once, see {@link net.sourceforge.pmd.PMDConfiguration#setParallelRuleThreshold(int)}.
+     * This requires that reading the AST, including the data it computes
+     * lazily, is thread-safe, and that the rules of the language do not
+     * store data in the nodes, eg in their {@linkplain net.sourceforge.pmd.lang.ast.Node#getUserMap() user map}.
+     * False by default.
+     */
+    default boolean isAstSafeForConcurrentReads() {
+        return false;
+    }
+
 }
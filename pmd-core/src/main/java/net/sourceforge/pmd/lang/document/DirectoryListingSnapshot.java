@@ -0,0 +1,194 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the listings of the directories walked by a {@link FileCollector}
+ * between runs. The entries of a directory can only change if its
+ * modification time changes, so a directory whose modification time is
+ * the same as in the snapshot is not listed again, and the type of its
+ * entries is not read again. Its subdirectories are still visited, as
+ * their own listing may have changed. Symbolic links are recorded as such,
+ * since their target may change without changing their directory.
+ *
+ * <p>Listings of directories that were modified shortly before they were
+ * listed are not persisted, as a later change may not be visible in the
+ * modification time, depending on the resolution of the file system.
+ *
+ * <p>Lookups and updates are thread-safe, directories are walked in parallel.
+ */
+final class DirectoryListingSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryListingSnapshot.class);
+    private static final int FORMAT_VERSION = 2;
+    /** Coarsest resolution of the modification time of file systems in use (FAT). */
+    private static final long RACY_MODIFICATION_MILLIS = 2000;
+
+    private final Path snapshotFile;
+    /** Listings read from the snapshot file. */
+    private final Map<String, Listing> previousListings = new ConcurrentHashMap<>();
+    /** Listings of the directories walked during this run, which will be persisted. */
+    private final Map<String, Listing> currentListings = new ConcurrentHashMap<>();
+
+    DirectoryListingSnapshot(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Reads the snapshot file, if it exists.
+     */
+    void load() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                LOG.debug("Directory listing snapshot has an unknown format, ignoring it.");
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String directory = in.readUTF();
+                previousListings.put(directory, Listing.read(in));
+            }
+            LOG.debug("Directory listing snapshot loaded from {}", snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            previousListings.clear();
+            LOG.warn("Could not load directory listing snapshot from file {}: {}", snapshotFile, e.toString());
+        }
+    }
+
+    /**
+     * Returns the listing of the directory, if it was not modified since
+     * it was recorded. The listing is kept for the next run.
+     */
+    @Nullable Listing getListing(Path directory, long lastModifiedMillis) {
+        String key = keyOf(directory);
+        Listing listing = previousListings.get(key);
+        if (listing == null || listing.lastModifiedMillis != lastModifiedMillis) {
+            return null;
+        }
+        currentListings.put(key, listing);
+        return listing;
+    }
+
+    /**
+     * Records the listing of the directory.
+     *
+     * @param listedAtMillis Time at which the listing was started
+     */
+    void putListing(Path directory, long listedAtMillis, Listing listing) {
+        if (listing.lastModifiedMillis < listedAtMillis - RACY_MODIFICATION_MILLIS) {
+            currentListings.put(keyOf(directory), listing);
+        }
+    }
+
+    private static String keyOf(Path directory) {
+        return directory.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Writes the listings of the directories walked during this run to
+     * the snapshot file. Listings of directories that were not walked
+     * are dropped.
+     */
+    void persist() {
+        try {
+            Path parent = snapshotFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshotFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(currentListings.size());
+                for (Map.Entry<String, Listing> entry : currentListings.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+            LOG.debug("Directory listing snapshot written to {}", snapshotFile);
+        } catch (IOException e) {
+            LOG.error("Could not persist directory listing snapshot to file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The names of the regular files, of the subdirectories and of the
+     * symbolic links of a directory.
+     */
+    static final class Listing {
+
+        private final long lastModifiedMillis;
+        private final String[] files;
+        private final String[] directories;
+        private final String[] links;
+
+        Listing(long lastModifiedMillis, List<String> files, List<String> directories, List<String> links) {
+            this(lastModifiedMillis, files.toArray(new String[0]), directories.toArray(new String[0]), links.toArray(new String[0]));
+        }
+
+        private Listing(long lastModifiedMillis, String[] files, String[] directories, String[] links) {
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.files = files;
+            this.directories = directories;
+            this.links = links;
+        }
+
+        String[] getFiles() {
+            return files;
+        }
+
+        String[] getDirectories() {
+            return directories;
+        }
+
+        /** Symbolic links, whose target must be read again on each run. */
+        String[] getLinks() {
+            return links;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(lastModifiedMillis);
+            writeNames(out, files);
+            writeNames(out, directories);
+            writeNames(out, links);
+        }
+
+        static Listing read(DataInputStream in) throws IOException {
+            long lastModifiedMillis = in.readLong();
+            return new Listing(lastModifiedMillis, readNames(in), readNames(in), readNames(in));
+        }
+
+        private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+            out.writeInt(names.length);
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        }
+
+        private static String[] readNames(DataInputStream in) throws IOException {
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            return names;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.document;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.document.DirectoryListingSnapshot.Listing;
+
+/**
+ * Lists the regular files of a directory tree. Subdirectories of a
+ * directory on the default file system are listed in parallel, as listing
+ * a directory and reading the type of its entries is mostly spent waiting
+ * for the file system. This uses a pool dedicated to the walk, so that the
+ * blocking calls don't starve the common fork-join pool. Other file systems,
+ * like zip file systems, are walked in the calling thread.
+ *
+ * <p>Symbolic links are followed, like with {@link java.nio.file.FileVisitOption#FOLLOW_LINKS}.
+ * Broken links are ignored and a link to an ancestor directory throws
+ * a {@link FileSystemLoopException}. The target of a link may change
+ * without changing the modification time of the directory of the link,
+ * so the type of the links is read again even if the listing of their
+ * directory is reused.
+ */
+final class DirectoryWalker {
+
+    private final boolean recursive;
+    private final @Nullable DirectoryListingSnapshot snapshot;
+
+    /**
+     * @param recursive Whether to list the files of subdirectories
+     * @param snapshot  Listings of a previous run, may be null
+     */
+    DirectoryWalker(boolean recursive, @Nullable DirectoryListingSnapshot snapshot) {
+        this.recursive = recursive;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the regular files of the directory tree, sorted by path.
+     */
+    List<Path> walk(Path root) throws IOException {
+        boolean defaultFs = root.getFileSystem() == FileSystems.getDefault();
+        DirectoryTask task = new DirectoryTask(root, null, defaultFs);
+        List<Path> files;
+        try {
+            files = defaultFs ? walkInParallel(task) : task.compute();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static List<Path> walkInParallel(DirectoryTask task) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveTask<List<Path>> {
+
+        private final Path dir;
+        private final @Nullable DirectoryTask parent;
+        private final boolean parallel;
+        private Object fileKey;
+
+        DirectoryTask(Path dir, @Nullable DirectoryTask parent, boolean parallel) {
+            this.dir = dir;
+            this.parent = parent;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            try {
+                return walkDirectory();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<Path> walkDirectory() throws IOException {
+            long listedAt = System.currentTimeMillis();
+            BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+            fileKey = attrs.fileKey();
+            checkNoLoop();
+
+            // only the default file system is recorded, the paths of
+            // other file systems cannot be compared across runs
+            DirectoryListingSnapshot snapshot = parallel ? DirectoryWalker.this.snapshot : null;
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            Listing listing = snapshot != null ? snapshot.getListing(dir, lastModified) : null;
+            if (listing == null) {
+                listing = listDirectory(lastModified);
+                if (snapshot != null) {
+                    snapshot.putListing(dir, listedAt, listing);
+                }
+            }
+
+            List<Path> files = new ArrayList<>();
+            List<Path> directories = new ArrayList<>();
+            for (String name : listing.getFiles()) {
+                files.add(dir.resolve(name));
+            }
+            for (String name : listing.getDirectories()) {
+                directories.add(dir.resolve(name));
+            }
+            for (String name : listing.getLinks()) {
+                Path link = dir.resolve(name);
+                BasicFileAttributes target = readTargetAttributes(link);
+                if (target == null) {
+                    continue; // broken link
+                } else if (target.isDirectory()) {
+                    directories.add(link);
+                } else if (target.isRegularFile()) {
+                    files.add(link);
+                }
+            }
+            if (recursive) {
+                List<DirectoryTask> subtasks = new ArrayList<>();
+                for (Path subdir : directories) {
+                    subtasks.add(new DirectoryTask(subdir, this, parallel));
+                }
+                if (parallel) {
+                    invokeAll(subtasks);
+                    for (DirectoryTask subtask : subtasks) {
+                        files.addAll(subtask.join());
+                    }
+                } else {
+                    for (DirectoryTask subtask : subtasks) {
+                        files.addAll(subtask.compute());
+                    }
+                }
+            }
+            return files;
+        }
+
+        private Listing listDirectory(long lastModified) throws IOException {
+            List<String> files = new ArrayList<>();
+            List<String> directories = new ArrayList<>();
+            List<String> links = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (entryAttrs.isSymbolicLink()) {
+                        links.add(entry.getFileName().toString());
+                    } else if (entryAttrs.isDirectory()) {
+                        directories.add(entry.getFileName().toString());
+                    } else if (entryAttrs.isRegularFile()) {
+                        files.add(entry.getFileName().toString());
+                    }
+                }
+            }
+            return new Listing(lastModified, files, directories, links);
+        }
+
+        private @Nullable BasicFileAttributes readTargetAttributes(Path link) {
+            try {
+                return Files.readAttributes(link, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private void checkNoLoop() throws IOException {
+            for (DirectoryTask ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+                boolean same = fileKey != null && ancestor.fileKey != null
+                               ? fileKey.equals(ancestor.fileKey)
+                               : Files.isSameFile(dir, ancestor.dir);
+                if (same) {
+                    throw new FileSystemLoopException(dir.toString());
+                }
+            }
+        }
+    }
+}
@@ -12,17 +12,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.ProviderNotFoundException;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -31,6 +26,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +58,7 @@ public final class FileCollector implements AutoCloseable {
     private boolean closed;
     private boolean recursive = true;
     private Predicate<FileId> fileFilter = file -> true;
+    private DirectoryListingSnapshot listingSnapshot;
 
     // construction
 
@@ -125,6 +122,9 @@ public final class FileCollector implements AutoCloseable {
             return;
         }
         closed = true;
+        if (listingSnapshot != null) {
+            listingSnapshot.persist();
+        }
         Exception exception = IOUtil.closeAll(resourcesToClose);
         if (exception != null) {
             reporter.errorEx("Error while closing resources", exception);
@@ -147,6 +147,10 @@ public final class FileCollector implements AutoCloseable {
             reporter.error("Not a regular file: {0}", file);
             return false;
         }
+        return addRegularFile(file);
+    }
+
+    private boolean addRegularFile(Path file) {
         LanguageVersion languageVersion = discoverLanguage(file.toString());
         return languageVersion != null
             && addFileImpl(TextFile.builderForPath(file, charset, languageVersion)
@@ -277,16 +281,9 @@ public final class FileCollector implements AutoCloseable {
             reporter.error("Not a directory {0}", dir);
             return false;
         }
-        int maxDepth = recurse ? Integer.MAX_VALUE : 1;
-        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (attrs.isRegularFile()) {
-                    FileCollector.this.addFile(file);
-                }
-                return super.visitFile(file, attrs);
-            }
-        });
+        for (Path file : new DirectoryWalker(recurse, listingSnapshot).walk(dir)) {
+            addRegularFile(file);
+        }
         return true;
     }
 
@@ -375,6 +372,23 @@ public final class FileCollector implements AutoCloseable {
         this.recursive = collectFilesRecursively;
     }
 
+    /**
+     * Sets the file in which the listings of the directories added with
+     * {@link #addDirectory(Path)} are kept between runs. Directories that
+     * were not modified since the previous run are not listed again.
+     * The file is updated when the collector is closed.
+     *
+     * @param listingCache A file, or null to list all directories
+     */
+    public void setDirectoryListingCache(@Nullable Path listingCache) {
+        if (listingCache == null) {
+            this.listingSnapshot = null;
+        } else {
+            this.listingSnapshot = new DirectoryListingSnapshot(listingCache);
+            this.listingSnapshot.load();
+        }
+    }
+
     /**
      * Sets the charset to use for subsequent calls to {@link #addFile(Path)}
      * and other overloads using a {@link Path}.
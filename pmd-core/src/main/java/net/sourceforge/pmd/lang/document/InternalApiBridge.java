@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.lang.document;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
 import net.sourceforge.pmd.util.log.PmdReporter;
@@ -30,4 +32,19 @@ public final class InternalApiBridge {
     public static FileCollector newCollector(FileCollector collector, PmdReporter reporter) {
         return collector.newCollector(reporter);
     }
+
+    /**
+     * Returns an open text file that reads the same contents as the given
+     * one, even if it was closed, or null if its contents cannot be read
+     * again (eg it reads from a stream).
+     */
+    public static @Nullable TextFile reopenTextFile(TextFile file) {
+        if (file instanceof NioTextFile) {
+            return ((NioTextFile) file).reopen();
+        } else if (file instanceof StringTextFile) {
+            // closing it does nothing
+            return file;
+        }
+        return null;
+    }
 }
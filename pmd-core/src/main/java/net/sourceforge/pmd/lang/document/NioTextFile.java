@@ -6,15 +6,21 @@ package net.sourceforge.pmd.lang.document;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.internal.util.BaseCloseable;
+import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.util.AssertionUtil;
 
@@ -23,6 +29,21 @@ import net.sourceforge.pmd.util.AssertionUtil;
  */
 class NioTextFile extends BaseCloseable implements TextFile {
 
+    /**
+     * Files at least this large are memory-mapped instead of read into
+     * a heap buffer. Mapping a file costs more than reading a small one.
+     * The mapping is released as soon as the file is decoded, as it
+     * prevents the file from being modified or deleted on Windows.
+     */
+    private static final long MAPPING_THRESHOLD = 1 << 20;
+
+    /**
+     * Cleared if this JVM doesn't let us release a mapping, in which case
+     * files are not mapped anymore, since the mappings would stay until
+     * they are garbage collected.
+     */
+    private static volatile boolean canReleaseMappings = true;
+
     private final Path path;
     private final Charset charset;
     private final LanguageVersion languageVersion;
@@ -45,6 +66,22 @@ class NioTextFile extends BaseCloseable implements TextFile {
         this.fileId = FileId.fromPath(path, parentFsPath);
     }
 
+    private NioTextFile(NioTextFile original) {
+        this.readOnly = original.readOnly;
+        this.path = original.path;
+        this.charset = original.charset;
+        this.languageVersion = original.languageVersion;
+        this.fileId = original.fileId;
+    }
+
+    /**
+     * Returns a new, open text file for the same path, eg to read it again
+     * once this one is closed.
+     */
+    NioTextFile reopen() {
+        return new NioTextFile(this);
+    }
+
     @Override
     public @NonNull LanguageVersion getLanguageVersion() {
         return languageVersion;
@@ -86,7 +123,38 @@ class NioTextFile extends BaseCloseable implements TextFile {
             throw new IOException("Not a regular file: " + path);
         }
 
-        return TextFileContent.fromInputStream(Files.newInputStream(path), charset);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return TextFileContent.fromInputStream(Files.newInputStream(path), charset);
+            }
+            if (size >= MAPPING_THRESHOLD && canReleaseMappings) {
+                MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, size);
+                try {
+                    // the content is a copy of the bytes
+                    return TextFileContent.fromByteBuffer(mapped, charset);
+                } finally {
+                    if (!IOUtil.unmap(mapped)) {
+                        canReleaseMappings = false;
+                    }
+                }
+            }
+            final ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // read fully
+            }
+            bytes.flip();
+            return TextFileContent.fromByteBuffer(bytes, charset);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
     }
 
 
@@ -44,6 +44,11 @@ class StringTextFile implements TextFile {
         return content;
     }
 
+    @Override
+    public long estimateSize() {
+        return content.getNormalizedText().length();
+    }
+
     @Override
     public void close() {
         // nothing to do
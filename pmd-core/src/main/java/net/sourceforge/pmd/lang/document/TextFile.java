@@ -91,6 +91,19 @@ public interface TextFile extends Closeable {
     TextFileContent readContents() throws IOException;
 
 
+    /**
+     * Returns an estimate of the size of this file in bytes, without
+     * reading its contents. This is only a hint, used for instance to
+     * schedule the analysis of large files first. Returns -1 if the
+     * size cannot be determined cheaply.
+     *
+     * @return An estimate of the size of this file, or -1
+     */
+    default long estimateSize() {
+        return -1;
+    }
+
+
     /**
      * Release resources associated with this text file. Is a noop if
      * it is called several times.
@@ -11,6 +11,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -49,6 +50,12 @@ public final class TextFileContent {
 
     private static final int DEFAULT_BUFSIZE = 8192;
 
+    /** Bytes that have the high bit set, which are not ASCII. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long LF_BYTES = LOW_BITS * '\n';
+    private static final long CR_BYTES = LOW_BITS * '\r';
+
     private static final Pattern NEWLINE_PATTERN = Pattern.compile("\r\n?|\n");
     private static final String FALLBACK_LINESEP = System.lineSeparator();
 
@@ -160,6 +167,172 @@ public final class TextFileContent {
         }
     }
 
+    /**
+     * Decodes the given bytes into a TextFileContent. The bytes are read
+     * from the position to the limit of the buffer, which may be a mapped
+     * file. This is the same as {@link #fromInputStream(InputStream, Charset)},
+     * but the bytes of UTF-8, US-ASCII and ISO-8859-1 files are decoded
+     * directly into the normalized text, without a {@link Reader}.
+     *
+     * @param bytes          Bytes of the file
+     * @param sourceEncoding Encoding to use to decode the bytes
+     */
+    static TextFileContent fromByteBuffer(ByteBuffer bytes, Charset sourceEncoding) throws IOException {
+        return fromByteBuffer(bytes, sourceEncoding, FALLBACK_LINESEP);
+    }
+
+    // test only
+    static TextFileContent fromByteBuffer(ByteBuffer bytes, Charset sourceEncoding, String fallbackLineSep) throws IOException {
+        Adler32 checksum = new Adler32();
+        checksum.update(bytes.duplicate());
+
+        TextFileContent content = null;
+        if (StandardCharsets.UTF_8.equals(sourceEncoding)
+            || StandardCharsets.US_ASCII.equals(sourceEncoding)
+            || StandardCharsets.ISO_8859_1.equals(sourceEncoding)) {
+            content = decodeAsciiCompatible(bytes.duplicate().order(ByteOrder.BIG_ENDIAN), sourceEncoding,
+                                            fallbackLineSep, checksum.getValue());
+        }
+        if (content == null) {
+            // other charset, or the bytes are malformed and must be replaced like a Reader does
+            try (Reader reader = new InputStreamReader(IOUtil.fromByteBuffer(bytes.duplicate()), sourceEncoding)) {
+                content = normalizingRead(reader, DEFAULT_BUFSIZE, fallbackLineSep, checksum, false);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Decodes and normalizes the bytes in a single pass. Runs of ASCII
+     * characters that are not line terminators are detected eight bytes
+     * at a time. Returns null if the bytes are not valid in the charset.
+     */
+    private static @Nullable TextFileContent decodeAsciiCompatible(ByteBuffer bytes, Charset charset, String fallbackLineSep, long checksum) {
+        final boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        final boolean latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+        final int end = bytes.limit();
+        // there are never more chars than bytes
+        final char[] chars = new char[bytes.remaining()];
+        int i = bytes.position();
+        int n = 0;
+        if (utf8 && end - i >= 3 && bytes.get(i) == (byte) 0xEF && bytes.get(i + 1) == (byte) 0xBB && bytes.get(i + 2) == (byte) 0xBF) {
+            i += 3; // skip the BOM
+        }
+
+        SourceCodePositioner.Builder positionerBuilder = new SourceCodePositioner.Builder();
+        String detectedLineTerm = null;
+        while (i < end) {
+            while (i + Long.BYTES <= end && isPlainAscii(bytes.getLong(i))) {
+                for (int k = 0; k < Long.BYTES; k++) {
+                    chars[n++] = (char) bytes.get(i++);
+                }
+            }
+            if (i >= end) {
+                break;
+            }
+
+            final int b = bytes.get(i);
+            if (b == '\n' || b == '\r') {
+                final String newLineTerm;
+                if (b == '\n') {
+                    newLineTerm = LF;
+                    i++;
+                } else if (i + 1 < end && bytes.get(i + 1) == '\n') {
+                    newLineTerm = CRLF;
+                    i += 2;
+                } else {
+                    newLineTerm = CR;
+                    i++;
+                }
+                chars[n++] = NORMALIZED_LINE_TERM_CHAR;
+                positionerBuilder.addLineEndAtOffset(n);
+                detectedLineTerm = detectLineTerm(detectedLineTerm, newLineTerm, fallbackLineSep);
+            } else if (b >= 0) {
+                chars[n++] = (char) b;
+                i++;
+            } else if (latin1) {
+                chars[n++] = (char) (b & 0xFF);
+                i++;
+            } else if (utf8) {
+                final int length = utf8SequenceLength(bytes, i, end);
+                if (length < 0) {
+                    return null;
+                }
+                n = decodeUtf8Sequence(bytes, i, length, chars, n);
+                i += length;
+            } else {
+                return null;
+            }
+        }
+
+        if (detectedLineTerm == null) {
+            // no line terminator in text
+            detectedLineTerm = fallbackLineSep;
+        }
+        String text = new String(chars, 0, n);
+        return new TextFileContent(Chars.wrap(text), detectedLineTerm, checksum, positionerBuilder.build(n));
+    }
+
+    /**
+     * Returns true if none of the eight bytes is a line terminator or
+     * a non-ASCII byte.
+     */
+    private static boolean isPlainAscii(long word) {
+        return ((word & HIGH_BITS) | zeroBytes(word ^ LF_BYTES) | zeroBytes(word ^ CR_BYTES)) == 0;
+    }
+
+    /** Returns a non-zero value if one of the bytes of the word is zero. */
+    private static long zeroBytes(long word) {
+        return (word - LOW_BITS) & ~word & HIGH_BITS;
+    }
+
+    /**
+     * Returns the length of the well-formed UTF-8 sequence starting with
+     * the non-ASCII byte at the given index, or -1 if it is malformed.
+     */
+    private static int utf8SequenceLength(ByteBuffer bytes, int i, int end) {
+        final int b = bytes.get(i) & 0xFF;
+        final int length;
+        final int min;
+        if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            min = 0x80;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            min = 0x800;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            min = 0x10000;
+        } else {
+            return -1;
+        }
+        if (i + length > end) {
+            return -1;
+        }
+        int codePoint = b & (0xFF >> (length + 1));
+        for (int k = 1; k < length; k++) {
+            final int cont = bytes.get(i + k) & 0xFF;
+            if ((cont & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = codePoint << 6 | cont & 0x3F;
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+            || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            return -1;
+        }
+        return length;
+    }
+
+    /** Decodes a well-formed UTF-8 sequence, returns the new number of chars. */
+    private static int decodeUtf8Sequence(ByteBuffer bytes, int i, int length, char[] chars, int n) {
+        int codePoint = bytes.get(i) & (0xFF >> (length + 1));
+        for (int k = 1; k < length; k++) {
+            codePoint = codePoint << 6 | bytes.get(i + k) & 0x3F;
+        }
+        return n + Character.toChars(codePoint, chars, n);
+    }
+
     // test only
     static @NonNull TextFileContent normalizeCharSeq(CharSequence text, String fallBackLineSep) {
         long checksum = getCheckSum(text); // the checksum is computed on the original file
@@ -213,6 +386,7 @@ public final class TextFileContent {
         int n = input.read(cbuf);
         if (n > 0 && cbuf[0] == IOUtil.UTF_BOM) {
             nextCharToCopy = 1;
+            bufOffset = -1; // the BOM is not part of the text
         }
 
         while (n != IOUtil.EOF) {
@@ -4,8 +4,22 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.pmd.internal.util.VirtualThreads;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.util.log.PmdReporter;
 
 /**
  * This is internal API!
@@ -16,6 +30,9 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
 
     protected final AnalysisTask task;
 
+    /** Pool on which rules are applied to large files, created lazily. */
+    private ForkJoinPool rulePool;
+
     AbstractPMDProcessor(AnalysisTask task) {
         this.task = task;
     }
@@ -32,16 +49,106 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
     @Override
     public abstract void close();
 
+    /**
+     * Returns a copy of the rulesets of the task. Rule instances are not
+     * thread-safe, so each copy may only be used by one thread at a time.
+     * If rules may be applied in parallel, the copies share a pool with
+     * as many threads as the analysis.
+     */
+    final RuleSets newRuleSetCopy() {
+        RuleSets copy = new RuleSets(task.getRulesets());
+        // use a noop reporter because the copy should only contain rules that
+        // initialized properly
+        copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
+        if (copy.getParallelRuleThreshold() > 0) {
+            copy.setParallelRuleExecutor(getRulePool());
+        }
+        return copy;
+    }
+
+    private synchronized ForkJoinPool getRulePool() {
+        if (rulePool == null) {
+            rulePool = new ForkJoinPool(Math.max(1, task.getThreadCount()),
+                                        new PmdThreadFactory("PmdRuleThread"), null, false);
+        }
+        return rulePool;
+    }
+
+    /**
+     * Shuts down the pool on which rules are applied in parallel, if it
+     * was created. It has no running tasks once all files are processed.
+     */
+    final synchronized void shutdownRulePool() {
+        if (rulePool != null) {
+            rulePool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the files of the task in the order in which they should be
+     * processed. If {@linkplain AnalysisTask#isSizeAwareScheduling() size-aware scheduling}
+     * is enabled, files are sorted by decreasing estimated size. Files whose size is
+     * unknown are processed last, in their original order.
+     */
+    final List<TextFile> filesInProcessingOrder() {
+        List<TextFile> files = task.getFiles();
+        if (!task.isSizeAwareScheduling()) {
+            return files;
+        }
+        Map<TextFile, Long> sizes = new IdentityHashMap<>(files.size());
+        for (TextFile file : files) {
+            sizes.put(file, file.estimateSize());
+        }
+        List<TextFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong((TextFile f) -> sizes.get(f)).reversed());
+        return sorted;
+    }
+
+    /**
+     * Waits for the given futures to complete. The first failure is
+     * reported, and rethrown if it is an {@link Error}.
+     */
+    final void joinAll(List<? extends Future<?>> futures) throws InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
+                    e.getCause().toString(), e.getCause());
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Shuts down the executor and waits until its running tasks are done.
+     */
+    static void shutdownAndAwait(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(10, TimeUnit.HOURS)) {
+            // still waiting
+            Thread.yield();
+        }
+    }
+
     /**
      * Returns a new file processor. The strategy used for threading is
-     * determined by {@link AnalysisTask#getThreadCount()}.
+     * determined by {@link AnalysisTask#getThreadCount()} and {@link AnalysisTask#isVirtualThreads()}.
      * <p>Note: Only {@code 0} threads disables multi-thread processing. See the CLI documentation
      * for parameter {@code --threads}.</p>
+     * <p>If virtual threads are requested but not supported by the JVM, platform threads are used.</p>
      */
     public static AbstractPMDProcessor newFileProcessor(AnalysisTask analysisTask) {
-        return analysisTask.getThreadCount() > 0
-               ? new MultiThreadProcessor(analysisTask)
-               : new MonoThreadProcessor(analysisTask);
+        if (analysisTask.getThreadCount() <= 0) {
+            return new MonoThreadProcessor(analysisTask);
+        } else if (analysisTask.isVirtualThreads() && VirtualThreads.isSupported()) {
+            return new VirtualThreadProcessor(analysisTask);
+        } else if (analysisTask.isPipelined()) {
+            return new PipelinedProcessor(analysisTask);
+        }
+        return new MultiThreadProcessor(analysisTask);
     }
 
 }
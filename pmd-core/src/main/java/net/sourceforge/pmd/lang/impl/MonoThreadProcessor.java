@@ -5,8 +5,10 @@
 package net.sourceforge.pmd.lang.impl;
 
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
 
 /**
  * @author Romain Pelisse &lt;belaran@gmail.com&gt;
@@ -41,8 +43,8 @@ final class MonoThreadProcessor extends AbstractPMDProcessor {
 
 
         @Override
-        protected RuleSets getRulesets() {
-            return ruleSets;
+        protected void analyzeDocument(FileAnalysisListener listener, TextDocument textDocument) {
+            processSource(listener, textDocument, ruleSets);
         }
     }
 }
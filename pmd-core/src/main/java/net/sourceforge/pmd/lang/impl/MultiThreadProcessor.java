@@ -4,83 +4,120 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.FutureTask;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
-import net.sourceforge.pmd.util.log.PmdReporter;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
 
 
 /**
+ * Processes files on a thread pool. By default, files are submitted in
+ * collection order to a fixed thread pool. If {@linkplain AnalysisTask#isSizeAwareScheduling() size-aware
+ * scheduling} is enabled, files are forked largest first by a task running on a
+ * work-stealing {@link ForkJoinPool}, so that the analysis of large files does
+ * not end up dominating the tail of the run. The forked files go to the queue
+ * of that worker, from which the other workers steal them in the same order.
+ *
  * @author Romain Pelisse &lt;belaran@gmail.com&gt;
  */
-final class MultiThreadProcessor extends AbstractPMDProcessor {
+class MultiThreadProcessor extends AbstractPMDProcessor {
     private final ExecutorService executor;
 
     private final List<Future<?>> futureList;
 
+    // The thread-local is not static, but analysis-global
+    // This means we don't have to reset it manually, every analysis is isolated.
+    // The initial value makes a copy of the rulesets
+    private final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(this::newRuleSetCopy);
+
     MultiThreadProcessor(final AnalysisTask task) {
-        super(task);
+        this(task, newPlatformExecutor(task));
+    }
 
-        executor = Executors.newFixedThreadPool(task.getThreadCount(), new PmdThreadFactory());
+    MultiThreadProcessor(final AnalysisTask task, final ExecutorService executor) {
+        super(task);
+        this.executor = executor;
         futureList = new LinkedList<>();
     }
 
+    private static ExecutorService newPlatformExecutor(AnalysisTask task) {
+        PmdThreadFactory threadFactory = new PmdThreadFactory();
+        return task.isSizeAwareScheduling()
+               // asyncMode: workers process their queue in FIFO order, which preserves the size ordering
+               ? new ForkJoinPool(task.getThreadCount(), threadFactory, null, true)
+               : Executors.newFixedThreadPool(task.getThreadCount(), threadFactory);
+    }
+
     @Override
-    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
-        // The thread-local is not static, but analysis-global
-        // This means we don't have to reset it manually, every analysis is isolated.
-        // The initial value makes a copy of the rulesets
-        final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(() -> {
-            RuleSets copy = new RuleSets(task.getRulesets());
-            // use a noop reporter because the copy should only contain rules that
-            // initialized properly
-            copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
-            return copy;
-        });
-
-        for (final TextFile textFile : task.getFiles()) {
-            futureList.add(executor.submit(new PmdRunnable(textFile, task) {
-                @Override
-                protected RuleSets getRulesets() {
-                    return ruleSetCopy.get();
+        List<FutureTask<?>> fileTasks = new ArrayList<>();
+        for (final TextFile textFile : filesInProcessingOrder()) {
+            // Note: we don't use ExecutorService#submit, because a ForkJoinPool
+            // would wrap exceptions in copies when rethrowing them from Future#get.
+            fileTasks.add(new FutureTask<>(newTask(textFile), null));
+        }
+        if (executor instanceof ForkJoinPool) {
+            // Tasks submitted from outside the pool go to shared queues, and
+            // are not stolen. Forking them from a worker puts them in its
+            // queue, which is FIFO in async mode, for the owner and the thieves.
+            FutureTask<?> forkAll = new FutureTask<>(() -> {
+                for (FutureTask<?> fileTask : fileTasks) {
+                    ForkJoinTask.adapt(fileTask).fork();
                 }
-            }));
+            }, null);
+            executor.execute(forkAll);
+            futureList.add(forkAll);
+        } else {
+            fileTasks.forEach(executor::execute);
         }
+        futureList.addAll(fileTasks);
     }
 
-    @Override
-    public void close() {
-        try {
+    /**
+     * Returns the task that analyses the given file. By default, this
+     * uses a copy of the rulesets per thread, and records the time each
+     * thread is busy in the timing report.
+     */
+    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
+    Runnable newTask(TextFile textFile) {
+        PmdRunnable runnable = new PmdRunnable(textFile, task) {
+            @Override
+            protected void analyzeDocument(FileAnalysisListener listener, TextDocument textDocument) {
+                processSource(listener, textDocument, ruleSetCopy.get());
+            }
+        };
+        return () -> {
+            long start = System.nanoTime();
             try {
-                for (Future<?> task : futureList) {
-                    task.get();
-                }
-            } catch (ExecutionException e) {
-                task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
-                        e.getCause().toString(), e.getCause());
-                if (e.getCause() instanceof Error) {
-                    throw (Error) e.getCause();
-                }
+                runnable.run();
+            } finally {
+                TimeTracker.recordThreadActivity(Thread.currentThread().getName(), System.nanoTime() - start);
             }
+        };
+    }
 
-            executor.shutdown();
-            while (!executor.awaitTermination(10, TimeUnit.HOURS)) {
-                // still waiting
-                Thread.yield();
-            }
+    @Override
+    public void close() {
+        try {
+            joinAll(futureList);
+            shutdownAndAwait(executor);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         } finally {
             executor.shutdownNow();
+            shutdownRulePool();
         }
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.internal.SystemProps;
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.ast.FileAnalysisException;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Processes files in a pipeline of three stages, each with its own
+ * thread pool: reading (IO and decoding, and cache lookup), parsing, and
+ * rule application. This way, disk latency overlaps with CPU-bound work.
+ * The number of files that are in flight between the first and the last
+ * stage is bounded, so that memory stays bounded if one stage is slower
+ * than the others: submission of new files blocks until a file exits the
+ * pipeline.
+ *
+ * <p>This performs the same steps as {@link PmdRunnable}, but split
+ * across threads.
+ */
+final class PipelinedProcessor extends AbstractPMDProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipelinedProcessor.class);
+
+    /** Number of files per thread that may be in the pipeline at the same time. */
+    private static final int IN_FLIGHT_FILES_PER_THREAD = 4;
+
+    private final ExecutorService readExecutor;
+    private final ExecutorService parseExecutor;
+    private final ExecutorService ruleExecutor;
+    private final Semaphore inFlightFiles;
+    private final List<CompletableFuture<Void>> futureList = new ArrayList<>();
+
+    // Only used by the threads of the rule stage
+    private final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(this::newRuleSetCopy);
+
+    PipelinedProcessor(AnalysisTask task) {
+        super(task);
+        int threads = task.getThreadCount();
+        readExecutor = Executors.newFixedThreadPool(threads, new PmdThreadFactory("PmdReaderThread"));
+        parseExecutor = Executors.newFixedThreadPool(threads, new PmdThreadFactory("PmdParserThread"));
+        ruleExecutor = Executors.newFixedThreadPool(threads, new PmdThreadFactory("PmdRuleThread"));
+        inFlightFiles = new Semaphore(threads * IN_FLIGHT_FILES_PER_THREAD);
+    }
+
+    @Override
+    public void processFiles() {
+        for (TextFile textFile : filesInProcessingOrder()) {
+            // backpressure: wait for a file to exit the pipeline
+            inFlightFiles.acquireUninterruptibly();
+
+            FileAnalysis analysis = new FileAnalysis(textFile);
+            CompletableFuture<Void> future =
+                CompletableFuture.runAsync(() -> analysis.runStage(analysis::read, true), readExecutor)
+                                 .thenRunAsync(() -> analysis.runStage(analysis::parse, false), parseExecutor)
+                                 .thenRunAsync(() -> analysis.runStage(analysis::applyRules, false), ruleExecutor)
+                                 .whenComplete((ignored, error) -> {
+                                     try {
+                                         analysis.close();
+                                     } finally {
+                                         inFlightFiles.release();
+                                     }
+                                 });
+            futureList.add(future);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            joinAll(futureList);
+            // the stages feed each other, so shut them down in order
+            shutdownAndAwait(readExecutor);
+            shutdownAndAwait(parseExecutor);
+            shutdownAndAwait(ruleExecutor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readExecutor.shutdownNow();
+            parseExecutor.shutdownNow();
+            ruleExecutor.shutdownNow();
+            shutdownRulePool();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * State of the analysis of one file, handed from one stage to the next.
+     * The handoff through the executors makes the state visible to the
+     * thread of the next stage.
+     */
+    private final class FileAnalysis {
+
+        private final TextFile textFile;
+        /** Closed in reverse order of opening. */
+        private final Deque<AutoCloseable> resources = new ArrayDeque<>(3);
+        private FileAnalysisListener completeListener;
+        private TextDocument textDocument;
+        private RootNode rootNode;
+        /** Set when the remaining stages should be skipped. */
+        private boolean done;
+
+        FileAnalysis(TextFile textFile) {
+            this.textFile = textFile;
+        }
+
+        /**
+         * Runs a stage on the current thread. The file is only counted
+         * once in the {@link TimedOperationCategory#FILE_PROCESSING} time,
+         * by the first stage, the other stages record their own operations.
+         */
+        void runStage(Stage stage, boolean isFirstStage) {
+            if (done) {
+                return;
+            }
+            long start = System.nanoTime();
+            TimeTracker.initThread();
+            try (TimedOperation ignored = isFirstStage ? TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING)
+                                                       : null) {
+                stage.run();
+            } catch (FileAnalysisException e) {
+                done = true;
+                throw e; // bubble managed exceptions, they were already reported
+            } catch (Exception e) {
+                done = true;
+                throw FileAnalysisException.wrap(textFile.getFileId(), "An unknown exception occurred", e);
+            } finally {
+                TimeTracker.finishThread();
+                TimeTracker.recordThreadActivity(Thread.currentThread().getName(), System.nanoTime() - start);
+            }
+        }
+
+        @SuppressWarnings("PMD.CloseResource")
+        void read() throws Exception {
+            FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile);
+            resources.push(listener);
+
+            // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
+            if (!task.getRulesets().applies(textFile)) {
+                LOG.trace("Skipping file (lang: {}) because no rule applies: {}", textFile.getLanguageVersion(), textFile.getFileId());
+                done = true;
+                return;
+            }
+
+            AnalysisCache analysisCache = task.getAnalysisCache();
+            textDocument = TextDocument.create(textFile);
+            resources.push(textDocument);
+            FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument);
+            resources.push(cacheListener);
+
+            if (analysisCache.isUpToDate(textDocument)) {
+                LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                // note: no cache listener here
+                for (final RuleViolation rv : analysisCache.getCachedViolations(textDocument)) {
+                    listener.onRuleViolation(rv);
+                }
+                done = true;
+                return;
+            }
+
+            LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+            completeListener = FileAnalysisListener.tee(listOf(listener, cacheListener));
+        }
+
+        void parse() {
+            reportingErrors(() -> rootNode = PmdRunnable.parseDocument(task, textDocument));
+        }
+
+        void applyRules() {
+            reportingErrors(() -> {
+                ruleSetCopy.get().apply(rootNode, completeListener);
+                PmdRunnable.recordClasspathDependencies(task, textDocument, rootNode);
+            });
+            // let the tree be garbage collected while waiting for the close
+            rootNode = null;
+        }
+
+        private void reportingErrors(Runnable action) {
+            try {
+                action.run();
+            } catch (Exception | StackOverflowError | AssertionError e) {
+                if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
+                    throw e;
+                }
+
+                // The listener handles logging if needed,
+                // it may also rethrow the error, as a FileAnalysisException (which we let through)
+                done = true;
+                completeListener.onError(new Report.ProcessingError(e, textFile.getFileId()));
+            }
+        }
+
+        void close() {
+            Exception e = IOUtil.closeAll(resources);
+            if (e != null) {
+                throw FileAnalysisException.wrap(textFile.getFileId(), "An unknown exception occurred", e);
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencyRecorder;
 import net.sourceforge.pmd.internal.SystemProps;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
@@ -45,11 +46,18 @@ abstract class PmdRunnable implements Runnable {
     }
 
     /**
-     * This is only called within the run method (when we are on the actual carrier thread).
-     * That way an implementation that uses a ThreadLocal will see the
-     * correct thread.
+     * Parses the document and applies the rules to it, by calling
+     * {@link #processSource(FileAnalysisListener, TextDocument, RuleSets)}
+     * with rulesets that only the current thread uses. This is the
+     * CPU-bound part of the analysis, whereas reading the file, querying
+     * the cache and reporting violations may block on IO, so implementations
+     * may also limit how many files are analyzed concurrently.
+     *
+     * <p>This is only called within the run method (when we are on the actual
+     * carrier thread). That way an implementation that uses a ThreadLocal
+     * will see the correct thread.
      */
-    protected abstract RuleSets getRulesets();
+    protected abstract void analyzeDocument(FileAnalysisListener listener, TextDocument textDocument);
 
     @Override
     public void run() throws FileAnalysisException {
@@ -58,10 +66,9 @@ abstract class PmdRunnable implements Runnable {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING);
              FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile)) {
 
-            RuleSets ruleSets = getRulesets();
-
-            // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
-            if (ruleSets.applies(textFile)) {
+            // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later.
+            // This only depends on the file patterns of the rulesets, so we don't need the copy used by analyzeDocument
+            if (task.getRulesets().applies(textFile)) {
                 AnalysisCache analysisCache = task.getAnalysisCache();
                 try (TextDocument textDocument = TextDocument.create(textFile);
                      FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument)) {
@@ -77,7 +84,7 @@ abstract class PmdRunnable implements Runnable {
                     } else {
                         LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
                         try {
-                            processSource(completeListener, textDocument, ruleSets);
+                            analyzeDocument(completeListener, textDocument);
                         } catch (Exception | StackOverflowError | AssertionError e) {
                             if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
                                 throw e;
@@ -107,17 +114,40 @@ abstract class PmdRunnable implements Runnable {
         }
     }
 
-    private RootNode parse(Parser parser, ParserTask task) {
+    private static RootNode parse(Parser parser, ParserTask task) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.PARSER)) {
             return parser.parse(task);
         }
     }
 
 
-    private void processSource(FileAnalysisListener listener,
-                               TextDocument textDocument,
-                               RuleSets ruleSets) throws FileAnalysisException {
+    final void processSource(FileAnalysisListener listener,
+                             TextDocument textDocument,
+                             RuleSets ruleSets) throws FileAnalysisException {
+        RootNode rootNode = parseDocument(task, textDocument);
+        ruleSets.apply(rootNode, listener);
+        recordClasspathDependencies(task, textDocument, rootNode);
+    }
+
+    /**
+     * Passes the classpath dependencies recorded by the language module,
+     * if any, to the analysis cache. This must be called after rules have
+     * been applied, as they may resolve more types.
+     */
+    static void recordClasspathDependencies(AnalysisTask task, TextDocument textDocument, RootNode rootNode) {
+        ClasspathDependencyRecorder recorder = rootNode.getUserMap().get(ClasspathDependencyRecorder.KEY);
+        if (recorder != null) {
+            task.getAnalysisCache().recordClasspathDependencies(textDocument, recorder);
+        }
+    }
 
+    /**
+     * Parses the document with the parser of its language.
+     *
+     * @throws SemanticException If a semantic error was reported during parsing,
+     *                           in which case rules should not be applied
+     */
+    static RootNode parseDocument(AnalysisTask task, TextDocument textDocument) {
         SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(task.getMessageReporter());
         @SuppressWarnings("PMD.CloseResource")
         LanguageProcessor processor = task.getLpRegistry().getProcessor(textDocument.getLanguageVersion().getLanguage());
@@ -136,8 +166,7 @@ abstract class PmdRunnable implements Runnable {
             // cause a processing error to be reported and rule analysis to be skipped
             throw semanticError;
         }
-
-        ruleSets.apply(rootNode, listener);
+        return rootNode;
     }
 
 }
@@ -4,16 +4,37 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
-class PmdThreadFactory implements ThreadFactory {
+class PmdThreadFactory implements ThreadFactory, ForkJoinWorkerThreadFactory {
 
     private final AtomicInteger counter = new AtomicInteger();
+    private final String namePrefix;
+
+    PmdThreadFactory() {
+        this("PmdThread");
+    }
+
+    PmdThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix + " ";
+    }
 
     @Override
     public Thread newThread(Runnable r) {
-        return new Thread(r, "PmdThread " + counter.incrementAndGet());
+        return new Thread(r, namePrefix + counter.incrementAndGet());
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        // Subclassing (instead of using the default factory) makes the thread
+        // inherit the context class loader of the creating thread, like in newThread(Runnable).
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+        thread.setName(namePrefix + counter.incrementAndGet());
+        return thread;
     }
 
 }
@@ -0,0 +1,88 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.internal.util.VirtualThreads;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+/**
+ * Processes each file on its own virtual thread. Reading files, querying
+ * the cache and reporting violations may block without tying up a platform
+ * thread, while the CPU-bound part of the analysis (parsing and rule application)
+ * is limited to {@link AnalysisTask#getThreadCount()} concurrent files.
+ *
+ * <p>This requires Java 21 or later, see {@link VirtualThreads#isSupported()}.
+ */
+final class VirtualThreadProcessor extends MultiThreadProcessor {
+
+    private final BlockingQueue<CpuSlot> cpuSlots;
+
+    VirtualThreadProcessor(AnalysisTask task) {
+        super(task, VirtualThreads.newVirtualThreadPerTaskExecutor());
+        int numSlots = task.getThreadCount();
+        // fair, so that files acquire a slot in submission order
+        cpuSlots = new ArrayBlockingQueue<>(numSlots, true);
+        for (int i = 1; i <= numSlots; i++) {
+            cpuSlots.add(new CpuSlot("PmdCpuSlot " + i));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
+    Runnable newTask(TextFile textFile) {
+        return new PmdRunnable(textFile, task) {
+            @Override
+            protected void analyzeDocument(FileAnalysisListener listener, TextDocument textDocument) {
+                // the rulesets are borrowed from the slot
+                CpuSlot slot = acquireSlot();
+                long start = System.nanoTime();
+                try {
+                    processSource(listener, textDocument, slot.getRulesets());
+                } finally {
+                    TimeTracker.recordThreadActivity(slot.name, System.nanoTime() - start);
+                    cpuSlots.add(slot);
+                }
+            }
+        };
+    }
+
+    private CpuSlot acquireSlot() {
+        try {
+            return cpuSlots.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to analyze a file", e);
+        }
+    }
+
+    /**
+     * A permit to run CPU-bound analysis. Since rules are not thread-safe,
+     * each slot owns a copy of the rulesets, which is only used by the
+     * virtual thread holding the slot.
+     */
+    private final class CpuSlot {
+        private final String name;
+        private RuleSets ruleSets;
+
+        CpuSlot(String name) {
+            this.name = name;
+        }
+
+        RuleSets getRulesets() {
+            if (ruleSets == null) {
+                ruleSets = newRuleSetCopy();
+            }
+            return ruleSets;
+        }
+    }
+}
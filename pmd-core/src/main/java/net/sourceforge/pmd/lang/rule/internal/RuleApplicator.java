@@ -6,8 +6,19 @@ package net.sourceforge.pmd.lang.rule.internal;
 
 import static net.sourceforge.pmd.lang.rule.InternalApiBridge.ruleSetApplies;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.exception.ExceptionContext;
 import org.slf4j.Logger;
@@ -24,8 +35,11 @@ import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.InternalApiBridge;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
 import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.reporting.RuleViolation;
 import net.sourceforge.pmd.util.AssertionUtil;
+import net.sourceforge.pmd.util.IteratorUtil;
 import net.sourceforge.pmd.util.StringUtil;
 
 /** Applies a set of rules to a set of ASTs. */
@@ -41,16 +55,22 @@ public class RuleApplicator {
 
     private final TreeIndex idx;
     private LanguageVersion currentLangVer;
+    /** Used in fused mode, reused as long as the rules don't change. */
+    private RuleDispatchTable dispatchTable;
 
     public RuleApplicator(TreeIndex index) {
         this.idx = index;
     }
 
 
-    public void index(RootNode root) {
+    /**
+     * Indexes the given tree, and returns its number of nodes.
+     */
+    public int index(RootNode root) {
         idx.reset();
-        indexTree(root, idx);
+        int nodeCount = indexTree(root, idx);
         currentLangVer = root.getLanguageVersion();
+        return nodeCount;
     }
 
     public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener) {
@@ -62,32 +82,176 @@ public class RuleApplicator {
             if (!ruleSetApplies(rule, currentLangVer)) {
                 continue; // No point in even trying to apply the rule
             }
+            applyRule(rule, rule.getTargetSelector().getVisitedNodes(idx), listener);
+        }
+    }
+
+    private void applyRule(Rule rule, Iterator<? extends Node> targets, FileAnalysisListener listener) {
+        RuleContext ctx = InternalApiBridge.createRuleContext(listener, rule);
+        rule.start(ctx);
+        try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULE, rule.getName())) {
+
+            int nodeCounter = 0;
+            while (targets.hasNext()) {
+                Node node = targets.next();
+                nodeCounter++;
+                applyOnNode(rule, node, ctx, listener);
+            }
             
-            RuleContext ctx = InternalApiBridge.createRuleContext(listener, rule);
-            rule.start(ctx);
-            try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULE, rule.getName())) {
-
-                int nodeCounter = 0;
-                Iterator<? extends Node> targets = rule.getTargetSelector().getVisitedNodes(idx);
-                while (targets.hasNext()) {
-                    Node node = targets.next();
-
-                    try {
-                        nodeCounter++;
-                        rule.apply(node, ctx);
-                    } catch (RuntimeException e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
-                    } catch (StackOverflowError e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
-                    } catch (AssertionError e) {
-                        reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+            rcto.close(nodeCounter);
+        } finally {
+            rule.end(ctx);
+        }
+    }
+
+    /**
+     * Applies the rules to the indexed tree, distributing them over the
+     * given pool. Rule instances are not thread-safe, so all occurrences
+     * of the same instance are applied by the same task. The tree must be
+     * safe to read from several threads, and must not be modified by the
+     * rules.
+     *
+     * <p>The events of each rule are buffered, and forwarded to the listener
+     * on the calling thread once all rules are done, in the order of the
+     * rules. The listener thus sees the same events in the same order as
+     * with {@link #apply(Collection, FileAnalysisListener)}.
+     */
+    public void applyInParallel(List<? extends Rule> rules, FileAnalysisListener listener, ForkJoinPool pool) {
+        List<Rule> applicableRules = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            if (ruleSetApplies(rule, currentLangVer)) {
+                applicableRules.add(rule);
+            }
+        }
+
+        // the index computes its values lazily, so query it before forking
+        List<List<Node>> targets = new ArrayList<>(applicableRules.size());
+        for (Rule rule : applicableRules) {
+            targets.add(IteratorUtil.toList(rule.getTargetSelector().getVisitedNodes(idx)));
+        }
+
+        BufferingListener[] buffers = new BufferingListener[applicableRules.size()];
+        Map<Rule, List<Integer>> occurrences = new IdentityHashMap<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < applicableRules.size(); i++) {
+            buffers[i] = new BufferingListener();
+            List<Integer> indices = occurrences.get(applicableRules.get(i));
+            if (indices == null) {
+                indices = new ArrayList<>();
+                occurrences.put(applicableRules.get(i), indices);
+                List<Integer> taskIndices = indices;
+                tasks.add(() -> {
+                    for (int index : taskIndices) {
+                        applyRule(applicableRules.get(index), targets.get(index).iterator(), buffers[index]);
                     }
+                    return null;
+                });
+            }
+            indices.add(i);
+        }
+
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            awaitRuleTask(future);
+        }
+        for (BufferingListener buffer : buffers) {
+            buffer.replay(listener);
+        }
+    }
+
+    private static void awaitRuleTask(Future<Void> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying rules", e);
+        } catch (ExecutionException e) {
+            // the errors that were not reported to the listener are rethrown
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Applies the rules to the given tree in a single traversal. Each node
+     * is dispatched to all the rules that target it, according to a
+     * {@link RuleDispatchTable}, instead of iterating over the targets of
+     * each rule separately. Each rule still sees its targets in document
+     * order, but the visits of different rules are interleaved, and a node
+     * targeted several times by the same rule is only visited once.
+     *
+     * <p>This does not use the index, so {@link #index(RootNode)} need
+     * not be called before.
+     */
+    public void applyFused(RootNode root, List<? extends Rule> rules, FileAnalysisListener listener) {
+        currentLangVer = root.getLanguageVersion();
+        List<Rule> applicableRules = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            if (ruleSetApplies(rule, currentLangVer)) {
+                applicableRules.add(rule);
+            }
+        }
+        if (dispatchTable == null || !dispatchTable.isFor(applicableRules)) {
+            dispatchTable = new RuleDispatchTable(applicableRules);
+        }
+
+        Rule[] activeRules = dispatchTable.getRules();
+        RuleContext[] contexts = new RuleContext[activeRules.length];
+        int[] nodeCounters = new int[activeRules.length];
+        int started = 0;
+        try {
+            for (; started < activeRules.length; started++) {
+                contexts[started] = InternalApiBridge.createRuleContext(listener, activeRules[started]);
+                activeRules[started].start(contexts[started]);
+            }
+            applyFused(root, contexts, nodeCounters, listener);
+        } finally {
+            for (int i = 0; i < started; i++) {
+                activeRules[i].end(contexts[i]);
+                // the time was tracked per node, this records the call
+                TimeTracker.recordCall(TimedOperationCategory.RULE, activeRules[i].getName(), nodeCounters[i]);
+            }
+        }
+    }
+
+    /**
+     * Visits the tree in document order. This uses an explicit stack, as
+     * deep trees (eg long chains of string concatenations) would overflow
+     * the call stack.
+     */
+    private void applyFused(Node root, RuleContext[] contexts, int[] nodeCounters, FileAnalysisListener listener) {
+        Rule[] activeRules = dispatchTable.getRules();
+        Deque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            for (int i : dispatchTable.rulesFor(node)) {
+                Rule rule = activeRules[i];
+                try (TimedOperation ignored = TimeTracker.resumeOperation(TimedOperationCategory.RULE, rule.getName())) {
+                    nodeCounters[i]++;
+                    applyOnNode(rule, node, contexts[i], listener);
                 }
-                
-                rcto.close(nodeCounter);
-            } finally {
-                rule.end(ctx);
             }
+            // pushed in reverse, so that the first child is visited first
+            for (int c = node.getNumChildren() - 1; c >= 0; c--) {
+                toVisit.push(node.getChild(c));
+            }
+        }
+    }
+
+    private void applyOnNode(Rule rule, Node node, RuleContext ctx, FileAnalysisListener listener) {
+        try {
+            rule.apply(node, ctx);
+        } catch (RuntimeException e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
+        } catch (StackOverflowError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        } catch (AssertionError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
         }
     }
 
@@ -117,11 +281,13 @@ public class RuleApplicator {
     }
 
 
-    private void indexTree(Node top, TreeIndex idx) {
+    private int indexTree(Node top, TreeIndex idx) {
         idx.indexNode(top);
+        int nodeCount = 1;
         for (Node child : top.children()) {
-            indexTree(child, idx);
+            nodeCount += indexTree(child, idx);
         }
+        return nodeCount;
     }
 
     public static RuleApplicator build(Iterable<? extends Rule> rules) {
@@ -132,4 +298,34 @@ public class RuleApplicator {
         return builder.build();
     }
 
+    /**
+     * Records the events of a rule applied on another thread, to forward
+     * them later to the listener of the file.
+     */
+    private static final class BufferingListener implements FileAnalysisListener {
+
+        private final List<Consumer<FileAnalysisListener>> events = new ArrayList<>();
+
+        @Override
+        public void onRuleViolation(RuleViolation violation) {
+            events.add(l -> l.onRuleViolation(violation));
+        }
+
+        @Override
+        public void onSuppressedRuleViolation(SuppressedViolation violation) {
+            events.add(l -> l.onSuppressedRuleViolation(violation));
+        }
+
+        @Override
+        public void onError(ProcessingError error) {
+            events.add(l -> l.onError(error));
+        }
+
+        void replay(FileAnalysisListener listener) {
+            for (Consumer<FileAnalysisListener> event : events) {
+                event.accept(listener);
+            }
+        }
+    }
+
 }
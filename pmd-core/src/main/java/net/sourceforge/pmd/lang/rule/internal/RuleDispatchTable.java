@@ -0,0 +1,71 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.Rule;
+
+/**
+ * Maps each kind of node to the rules that target it, for the fused
+ * dispatch mode of the {@link RuleApplicator}. Whether a rule targets a
+ * node only depends on the class and the XPath name of the node, so the
+ * table is filled lazily the first time each kind of node is encountered,
+ * and can be reused for all files analysed with the same rules.
+ */
+final class RuleDispatchTable {
+
+    private final Rule[] rules;
+    private final Map<Class<?>, Map<String, int[]>> rulesByKind = new HashMap<>();
+
+    RuleDispatchTable(List<? extends Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+    }
+
+    /**
+     * Returns true if this table was built for the given rules, in the
+     * same order.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    boolean isFor(List<? extends Rule> otherRules) {
+        if (otherRules.size() != rules.length) {
+            return false;
+        }
+        for (int i = 0; i < rules.length; i++) {
+            if (otherRules.get(i) != rules[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Rule[] getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the indices of the rules that target the given node, in
+     * increasing order.
+     */
+    int[] rulesFor(Node node) {
+        Map<String, int[]> byName = rulesByKind.computeIfAbsent(node.getClass(), k -> new HashMap<>());
+        return byName.computeIfAbsent(node.getXPathNodeName(), k -> computeRulesFor(node));
+    }
+
+    private int[] computeRulesFor(Node node) {
+        int[] result = new int[rules.length];
+        int count = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].getTargetSelector().isVisited(node)) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -11,11 +11,15 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.InternalApiBridge;
@@ -35,6 +39,12 @@ public class RuleSets {
 
     private RuleApplicator ruleApplicator;
 
+    private boolean fusedRuleDispatch;
+
+    private int parallelRuleThreshold;
+
+    private ForkJoinPool parallelRuleExecutor;
+
     /**
      * Copy constructor. Deep copies RuleSets.
      *
@@ -46,6 +56,9 @@ public class RuleSets {
             rsets.add(new RuleSet(rs));
         }
         this.ruleSets = Collections.unmodifiableList(rsets);
+        this.fusedRuleDispatch = ruleSets.fusedRuleDispatch;
+        this.parallelRuleThreshold = ruleSets.parallelRuleThreshold;
+        this.parallelRuleExecutor = ruleSets.parallelRuleExecutor;
     }
 
     public RuleSets(Collection<? extends RuleSet> ruleSets) {
@@ -77,6 +90,52 @@ public class RuleSets {
         }
     }
 
+    /**
+     * Sets whether rules are applied in a single traversal of each tree,
+     * dispatching each node to all rules that target it, instead of rule
+     * by rule. Each rule still visits its target nodes in document order,
+     * but the visits of different rules are interleaved. Disabled by default.
+     *
+     * @param fusedRuleDispatch Whether to use fused dispatch
+     */
+    public void setFusedRuleDispatch(boolean fusedRuleDispatch) {
+        this.fusedRuleDispatch = fusedRuleDispatch;
+    }
+
+    /**
+     * Sets the number of nodes from which the rules are applied to a tree
+     * in parallel, on the {@linkplain #setParallelRuleExecutor(ForkJoinPool) rule executor}.
+     * Violations are reported in the same order as when the rules are
+     * applied sequentially. This is only done for languages whose AST is
+     * {@linkplain LanguageVersionHandler#isAstSafeForConcurrentReads() safe to read concurrently}.
+     * This takes precedence over {@linkplain #setFusedRuleDispatch(boolean) fused dispatch}
+     * for trees that are large enough. Zero, the default, disables it.
+     *
+     * @param parallelRuleThreshold Minimum number of nodes, or zero
+     */
+    public void setParallelRuleThreshold(int parallelRuleThreshold) {
+        this.parallelRuleThreshold = parallelRuleThreshold;
+    }
+
+    /**
+     * Returns the number of nodes from which the rules are applied in
+     * parallel, or zero if this is disabled.
+     */
+    public int getParallelRuleThreshold() {
+        return parallelRuleThreshold;
+    }
+
+    /**
+     * Sets the pool on which rules are applied in parallel. Copies of
+     * these rulesets share the pool. If null, the default, rules are never
+     * applied in parallel.
+     *
+     * @param parallelRuleExecutor A pool, or null
+     */
+    public void setParallelRuleExecutor(@Nullable ForkJoinPool parallelRuleExecutor) {
+        this.parallelRuleExecutor = parallelRuleExecutor;
+    }
+
     private RuleApplicator prepareApplicator() {
         return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator);
     }
@@ -146,8 +205,26 @@ public class RuleSets {
             this.ruleApplicator = prepareApplicator();
         }
 
+        final boolean mayApplyInParallel = parallelRuleThreshold > 0
+            && parallelRuleExecutor != null
+            && root.getAstInfo().getLanguageProcessor().services().isAstSafeForConcurrentReads();
+        if (fusedRuleDispatch && !mayApplyInParallel) {
+            // the fused traversal doesn't need the index
+            ruleApplicator.applyFused(root, getApplicableRules(root), listener);
+            return;
+        }
+
+        int nodeCount;
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
-            ruleApplicator.index(root);
+            nodeCount = ruleApplicator.index(root);
+        }
+
+        if (mayApplyInParallel && nodeCount >= parallelRuleThreshold) {
+            ruleApplicator.applyInParallel(getApplicableRules(root), listener, parallelRuleExecutor);
+            return;
+        } else if (fusedRuleDispatch) {
+            ruleApplicator.applyFused(root, getApplicableRules(root), listener);
+            return;
         }
 
         for (RuleSet ruleSet : ruleSets) {
@@ -157,6 +234,20 @@ public class RuleSets {
         }
     }
 
+    /**
+     * Returns the rules of the rulesets that apply to the file of the given
+     * tree, in order.
+     */
+    private List<Rule> getApplicableRules(RootNode root) {
+        List<Rule> rules = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, root.getTextDocument().getFileId())) {
+                rules.addAll(ruleSet.getRules());
+            }
+        }
+        return rules;
+    }
+
     /**
      * Returns the first Rule found with the given name.
      *
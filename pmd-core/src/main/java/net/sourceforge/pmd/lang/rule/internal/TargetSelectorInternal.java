@@ -26,6 +26,13 @@ public abstract class TargetSelectorInternal {
     protected abstract Iterator<? extends Node> getVisitedNodes(TreeIndex index);
 
 
+    /**
+     * Returns true if the given node would be returned by {@link #getVisitedNodes(TreeIndex)}.
+     * The result only depends on the class and the XPath name of the node.
+     */
+    protected abstract boolean isVisited(Node node);
+
+
     protected static final class ApplicatorBuilder {
 
         private final Set<String> namesToIndex = new HashSet<>();
@@ -39,8 +39,12 @@ public final class Attribute {
 
     private final @Nullable MethodHandle handle;
     private final @Nullable Method method;
-    /** If true, we won't invoke the method handle again. */
-    private boolean invoked;
+    /**
+     * If true, we won't invoke the method handle again. Attributes are
+     * shared by the rules applied in parallel to a tree, this publishes
+     * the value written before it.
+     */
+    private volatile boolean invoked;
 
     /** May be null after invocation too. */
     private @Nullable Object value;
@@ -14,6 +14,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
@@ -102,6 +103,8 @@ public final class XPathRule extends AbstractRule {
         } catch (PmdXPathException e) {
             throw addExceptionContext(e);
         }
+        // the query may have fallen back to Saxon during the evaluation
+        TimeTracker.recordXPathEvaluation(getName(), query.isCompiled());
 
         for (Node nodeWithViolation : nodesWithViolation) {
             // see Deprecate getImage/@Image #4787 https://github.com/pmd/pmd/issues/4787
@@ -158,6 +161,7 @@ public final class XPathRule extends AbstractRule {
         List<String> visits = getQueryMaybeInitialize().getRuleChainVisits();
 
         logXPathRuleChainUsage(!visits.isEmpty());
+        logXPathCompilation(getQueryMaybeInitialize().isCompiled());
 
         return visits.isEmpty() ? RuleTargetSelector.forRootOnly()
                                 : RuleTargetSelector.forXPathNames(visits);
@@ -172,6 +176,14 @@ public final class XPathRule extends AbstractRule {
     }
 
 
+    private void logXPathCompilation(boolean compiled) {
+        LOG.debug("{} compiled evaluation for XPath rule: {} ({})",
+                compiled ? "Using" : "no",
+                getName(),
+                getRuleSetName());
+    }
+
+
     @Override
     public String dysfunctionReason() {
         if (StringUtils.isBlank(getXPathExpression())) {
@@ -27,7 +27,7 @@ class AstAttributeNode extends BaseNodeInfo implements SiblingCountingNode {
 
 
     private final Attribute attribute;
-    private AtomicSequence value;
+    private volatile AtomicSequence value;
     private final SchemaType schemaType;
     private final int siblingPosition;
 
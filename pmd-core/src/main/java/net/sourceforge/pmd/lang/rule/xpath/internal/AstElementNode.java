@@ -5,13 +5,13 @@
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.lang.ast.Node;
@@ -21,7 +21,7 @@ import net.sourceforge.pmd.lang.rule.xpath.CommentNode;
 import net.sourceforge.pmd.lang.rule.xpath.TextNode;
 import net.sourceforge.pmd.util.CollectionUtil;
 
-import net.sf.saxon.Configuration;
+import net.sf.saxon.om.NamePool;
 import net.sf.saxon.om.NamespaceUri;
 import net.sf.saxon.om.NodeInfo;
 import net.sf.saxon.pattern.NameTest;
@@ -38,34 +38,33 @@ import net.sf.saxon.type.Type;
 /**
  * A wrapper for Saxon around a Node. Note: the {@link RootNode} of a tree
  * corresponds to both a document node and an element node that is its child.
+ *
+ * <p>The wrappers of the children are only created when the children are
+ * first visited. The attributes are shared with the other XPath queries
+ * on the same tree through the {@link AttributeCache}.
  */
 public final class AstElementNode extends BaseNodeInfo implements SiblingCountingNode, AstNodeOwner {
 
     private final Node wrappedNode;
-    /** The index of the node in the tree according to document order */
+    /** Unique identifier of the node in the tree, in order of creation of the wrappers. */
     private final int id;
+    /** Depth of the node in the tree, the root element has depth 0. */
+    private final int depth;
 
-    private final List<AstElementNode> children;
-    private @Nullable Map<String, AstAttributeNode> attributes;
-    private @Nullable Map<String, Attribute> lightAttributes;
+    private volatile @Nullable List<AstElementNode> children;
+    private volatile @Nullable Map<String, AstAttributeNode> attributes;
 
 
     AstElementNode(AstTreeInfo document,
-                   MutableInt idGenerator,
                    BaseNodeInfo parent,
                    Node wrappedNode,
-                   Configuration configuration) {
-        super(determineType(wrappedNode), configuration.getNamePool(), wrappedNode.getXPathNodeName(), parent);
+                   NamePool namePool) {
+        super(determineType(wrappedNode), namePool, wrappedNode.getXPathNodeName(), parent);
 
         this.treeInfo = document;
         this.wrappedNode = wrappedNode;
-        this.id = idGenerator.getAndIncrement();
-
-        this.children = new ArrayList<>(wrappedNode.getNumChildren());
-
-        for (int i = 0; i < wrappedNode.getNumChildren(); i++) {
-            children.add(new AstElementNode(document, idGenerator, this, wrappedNode.getChild(i), configuration));
-        }
+        this.id = document.nextId();
+        this.depth = parent instanceof AstElementNode ? ((AstElementNode) parent).depth + 1 : 0;
     }
 
     private static int determineType(Node node) {
@@ -80,11 +79,9 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     public Map<String, AstAttributeNode> makeAttributes(Node wrappedNode) {
         Map<String, AstAttributeNode> atts = new HashMap<>();
-        Iterator<Attribute> it = wrappedNode.getXPathAttributesIterator();
 
         int attrIdx = 0;
-        while (it.hasNext()) {
-            Attribute next = it.next();
+        for (Attribute next : getTreeInfo().getAttributeCache().getAttributes(wrappedNode).values()) {
             atts.put(next.getName(), new AstAttributeNode(this, next, attrIdx++));
         }
 
@@ -92,29 +89,53 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     }
 
     public Map<String, AstAttributeNode> getAttributes() {
-        if (attributes == null) {
-            attributes = makeAttributes(getUnderlyingNode());
+        Map<String, AstAttributeNode> result = attributes;
+        if (result == null) {
+            synchronized (this) {
+                result = attributes;
+                if (result == null) {
+                    result = makeAttributes(getUnderlyingNode());
+                    attributes = result;
+                }
+            }
         }
-        return attributes;
+        return result;
     }
 
     public Map<String, Attribute> getLightAttributes() {
-        if (lightAttributes == null) {
-            lightAttributes = new HashMap<>();
-            getUnderlyingNode().getXPathAttributesIterator()
-                               .forEachRemaining(it -> lightAttributes.put(it.getName(), it));
-        }
-        return lightAttributes;
+        return getTreeInfo().getAttributeCache().getAttributes(wrappedNode);
     }
 
     @Override
     public boolean hasChildNodes() {
-        return !children.isEmpty();
+        return wrappedNode.getNumChildren() > 0;
     }
 
     @Override
     List<AstElementNode> getChildren() {
-        return children;
+        List<AstElementNode> result = children;
+        if (result == null) {
+            synchronized (this) {
+                result = children;
+                if (result == null) {
+                    result = makeChildren();
+                    children = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<AstElementNode> makeChildren() {
+        int numChildren = wrappedNode.getNumChildren();
+        if (numChildren == 0) {
+            return Collections.emptyList();
+        }
+        List<AstElementNode> result = new ArrayList<>(numChildren);
+        for (int i = 0; i < numChildren; i++) {
+            result.add(new AstElementNode(getTreeInfo(), this, wrappedNode.getChild(i), getNamePool()));
+        }
+        return result;
     }
 
     @Override
@@ -131,19 +152,45 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     public int getSiblingPosition() {
         BaseNodeInfo parent = getParent();
         return !(parent instanceof AstElementNode) ? 0
-                                                   : id - ((AstElementNode) parent).id;
+                                                   : wrappedNode.getIndexInParent();
     }
 
     @Override
     public int compareOrder(NodeInfo other) {
         if (other instanceof AstElementNode) {
-            return Integer.compare(this.id, ((AstElementNode) other).id);
+            return compareDocumentOrder(this, (AstElementNode) other);
         } else if (other instanceof SiblingCountingNode) {
             return Navigator.compareOrder(this, (SiblingCountingNode) other);
         }
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Compares the position of the nodes in the tree. Wrappers are created
+     * lazily, so they are not numbered in document order: this walks up
+     * to the children of the closest common ancestor.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private static int compareDocumentOrder(AstElementNode first, AstElementNode second) {
+        AstElementNode a = first;
+        AstElementNode b = second;
+        while (a.depth > b.depth) {
+            a = (AstElementNode) a.getParent();
+        }
+        while (b.depth > a.depth) {
+            b = (AstElementNode) b.getParent();
+        }
+        if (a == b) {
+            // one is an ancestor of the other, which comes first
+            return Integer.compare(first.depth, second.depth);
+        }
+        while (a.getParent() != b.getParent()) {
+            a = (AstElementNode) a.getParent();
+            b = (AstElementNode) b.getParent();
+        }
+        return Integer.compare(a.wrappedNode.getIndexInParent(), b.wrappedNode.getIndexInParent());
+    }
+
     @Override
     protected AxisIterator iterateAttributes(NodeTest predicate) {
         if (predicate instanceof NameTest) {
@@ -156,7 +203,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     @Override
     protected AxisIterator iterateChildren(NodeTest nodeTest) {
-        return filter(nodeTest, iterateList(children));
+        return filter(nodeTest, iterateList(getChildren()));
     }
 
     @Override // this excludes self
@@ -9,8 +9,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
-import org.apache.commons.lang3.mutable.MutableInt;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
@@ -21,10 +20,15 @@ import net.sf.saxon.om.GenericTreeInfo;
 
 /**
  * A wrapper around the root node of an AST, implementing {@link net.sf.saxon.om.TreeInfo}.
+ * The wrappers of the nodes are created lazily, when the axes of their
+ * parent are visited or when {@link #findWrapperFor(Node)} is called.
  */
 public final class AstTreeInfo extends GenericTreeInfo {
 
     private DeprecatedAttrLogger logger;
+    private final AttributeCache attributeCache;
+    /** 0 is taken by the document node. */
+    private final AtomicInteger idGenerator = new AtomicInteger(1);
     private final Map<Node, AstElementNode> wrapperCache = new LinkedHashMap<Node, AstElementNode>() {
         @Override
         protected boolean removeEldestEntry(Entry eldest) {
@@ -49,18 +53,20 @@ public final class AstTreeInfo extends GenericTreeInfo {
      */
     public AstTreeInfo(RootNode node, Configuration configuration) {
         super(configuration);
-        MutableInt idGenerator = new MutableInt(1); // 0 is taken by the document node
-        setRootNode(new AstDocumentNode(this, idGenerator, node, configuration));
+        this.attributeCache = AttributeCache.forTree(node);
+        setRootNode(new AstDocumentNode(this, node, configuration));
     }
 
     public AstElementNode findWrapperFor(Node node) {
-        AstElementNode element = wrapperCache.get(node);
-        if (element == null) {
-            element = findWrapperImpl(node);
-            wrapperCache.put(node, element);
-            assert element.getUnderlyingNode() == node : "Incorrect wrapper " + element + " for " + node;
+        synchronized (wrapperCache) {
+            AstElementNode element = wrapperCache.get(node);
+            if (element == null) {
+                element = findWrapperImpl(node);
+                wrapperCache.put(node, element);
+                assert element.getUnderlyingNode() == node : "Incorrect wrapper " + element + " for " + node;
+            }
+            return element;
         }
-        return element;
     }
 
     // for the RootNode, this returns the document node
@@ -108,6 +114,19 @@ public final class AstTreeInfo extends GenericTreeInfo {
     }
 
 
+    /**
+     * Returns a new identifier for a wrapper. Identifiers are unique
+     * within this tree, but don't follow document order.
+     */
+    int nextId() {
+        return idGenerator.getAndIncrement();
+    }
+
+    AttributeCache getAttributeCache() {
+        return attributeCache;
+    }
+
+
     public void setAttrCtx(DeprecatedAttrLogger attrCtx) {
         this.logger = attrCtx;
     }
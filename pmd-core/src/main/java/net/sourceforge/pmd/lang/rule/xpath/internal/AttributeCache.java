@@ -0,0 +1,60 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.util.DataMap;
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
+
+/**
+ * Memoizes the XPath attributes of the nodes of a tree. An {@link Attribute}
+ * calls its getter at most once, so sharing the attributes of a node
+ * between all the XPath queries of a file means each attribute value is
+ * computed at most once, whatever the number of XPath rules.
+ *
+ * <p>The cache is stored in the user map of the root node, so it is
+ * discarded with the tree. It may be used by rules applied in parallel.
+ */
+final class AttributeCache {
+
+    private static final SimpleDataKey<AttributeCache> ATTRIBUTE_CACHE_KEY = DataMap.simpleDataKey("xpath.attributes");
+
+    private final Map<Node, Map<String, Attribute>> attributesByNode = new ConcurrentHashMap<>();
+
+    private AttributeCache() {
+        // use forTree
+    }
+
+    /**
+     * Returns the cache of the tree of the given root.
+     */
+    static AttributeCache forTree(RootNode root) {
+        // the user map is not thread-safe
+        synchronized (root) {
+            return root.getUserMap().computeIfAbsent(ATTRIBUTE_CACHE_KEY, AttributeCache::new);
+        }
+    }
+
+    /**
+     * Returns the attributes of the node by name, in the order of
+     * {@link Node#getXPathAttributesIterator()}.
+     */
+    Map<String, Attribute> getAttributes(Node node) {
+        return attributesByNode.computeIfAbsent(node, AttributeCache::collectAttributes);
+    }
+
+    private static Map<String, Attribute> collectAttributes(Node node) {
+        Map<String, Attribute> attributes = new LinkedHashMap<>();
+        node.getXPathAttributesIterator().forEachRemaining(it -> attributes.put(it.getName(), it));
+        return Collections.unmodifiableMap(attributes);
+    }
+}
@@ -0,0 +1,799 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionDefinition;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionDefinition.Type;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionException;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * Evaluates a simple subset of XPath directly on the {@link Node}s,
+ * without wrapping the tree for Saxon. The subset is a union of paths
+ * starting with {@code //Name}, made of steps on the child and descendant
+ * axes. Predicates may combine with {@code and}, {@code or} and {@code not()}:
+ * <ul>
+ * <li>the existence of an attribute, or of a relative path;
+ * <li>comparisons of an attribute with literals or rule properties;
+ * <li>calls to boolean extension functions with string literal arguments,
+ * like {@code pmd-java:typeIs('java.lang.String')}.
+ * </ul>
+ *
+ * <p>Queries that are not in this subset are not compiled. Comparisons
+ * are only evaluated for values of the same type, where they are
+ * unambiguous. Otherwise, evaluation throws a {@link CannotEvaluateException},
+ * and the query must be evaluated by Saxon, which implements the full
+ * semantics (including type errors).
+ */
+final class CompiledXPathQuery {
+
+    private final List<PathExpr> paths;
+
+    private CompiledXPathQuery(List<PathExpr> paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Compiles the given expression, returns null if it is not in the
+     * supported subset.
+     */
+    static @Nullable CompiledXPathQuery compile(String xpath,
+                                                Map<PropertyDescriptor<?>, Object> properties,
+                                                XPathHandler xPathHandler) {
+        try {
+            List<Token> tokens = new Lexer(xpath).tokenize();
+            return new CompiledXPathQuery(new Parser(tokens, properties, xPathHandler).parseQuery());
+        } catch (UnsupportedExpressionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the names of the nodes, on which this query must be evaluated.
+     */
+    Set<String> getRuleChainVisits() {
+        Set<String> names = new LinkedHashSet<>();
+        for (PathExpr path : paths) {
+            names.add(path.steps[0].name);
+        }
+        return names;
+    }
+
+    /**
+     * Evaluates the paths that start with the given node, as Saxon does
+     * with the rule chain.
+     *
+     * @throws CannotEvaluateException If some value cannot be compared
+     */
+    List<Node> evaluate(Node node, DeprecatedAttrLogger attrLogger) {
+        EvaluationContext ctx = new EvaluationContext(attrLogger, AttributeCache.forTree(node.getRoot()));
+        Set<Node> results = new LinkedHashSet<>();
+        for (PathExpr path : paths) {
+            if (path.steps[0].matches(node, ctx)) {
+                collect(node, path.steps, 1, ctx, results);
+            }
+        }
+        List<Node> sortedRes = new ArrayList<>(results);
+        if (sortedRes.size() > 1) {
+            sortedRes.sort(RuleChainAnalyzer.documentOrderComparator());
+        }
+        return sortedRes;
+    }
+
+    private static void collect(Node node, Step[] steps, int index, EvaluationContext ctx, Set<Node> results) {
+        if (index == steps.length) {
+            results.add(node);
+            return;
+        }
+        Step step = steps[index];
+        step.candidates(node).forEach(it -> {
+            if (step.matches(it, ctx)) {
+                collect(it, steps, index + 1, ctx, results);
+            }
+        });
+    }
+
+    private static boolean exists(Node node, Step[] steps, int index, EvaluationContext ctx) {
+        if (index == steps.length) {
+            return true;
+        }
+        Step step = steps[index];
+        return step.candidates(node).any(it -> step.matches(it, ctx) && exists(it, steps, index + 1, ctx));
+    }
+
+    private static final class EvaluationContext {
+
+        private final DeprecatedAttrLogger attrLogger;
+        private final AttributeCache attributeCache;
+
+        EvaluationContext(DeprecatedAttrLogger attrLogger, AttributeCache attributeCache) {
+            this.attrLogger = attrLogger;
+            this.attributeCache = attributeCache;
+        }
+
+        @Nullable Attribute findAttribute(Node node, String name) {
+            return attributeCache.getAttributes(node).get(name);
+        }
+    }
+
+    /**
+     * Thrown when a compiled query cannot evaluate some value. The query
+     * should then be evaluated by Saxon.
+     */
+    static final class CannotEvaluateException extends RuntimeException {
+
+        CannotEvaluateException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class UnsupportedExpressionException extends Exception {
+
+        UnsupportedExpressionException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class PathExpr {
+
+        private final Step[] steps;
+
+        PathExpr(List<Step> steps) {
+            this.steps = steps.toArray(new Step[0]);
+        }
+    }
+
+    private enum Axis { CHILD, DESCENDANT }
+
+    private static final class Step {
+
+        private final Axis axis;
+        /** Null to match any name. */
+        private final @Nullable String name;
+        private final List<Predicate> predicates;
+
+        Step(Axis axis, @Nullable String name, List<Predicate> predicates) {
+            this.axis = axis;
+            this.name = name;
+            this.predicates = predicates;
+        }
+
+        NodeStream<? extends Node> candidates(Node node) {
+            return axis == Axis.CHILD ? node.children() : node.descendants().crossFindBoundaries();
+        }
+
+        boolean matches(Node node, EvaluationContext ctx) {
+            if (name != null && !name.equals(node.getXPathNodeName())) {
+                return false;
+            }
+            for (Predicate predicate : predicates) {
+                if (!predicate.test(node, ctx)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Predicate {
+
+        boolean test(Node node, EvaluationContext ctx);
+    }
+
+    private enum Comparison {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Comparison(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static @Nullable Comparison fromSymbol(String symbol) {
+            for (Comparison comparison : values()) {
+                if (comparison.symbol.equals(symbol)) {
+                    return comparison;
+                }
+            }
+            return null;
+        }
+
+        boolean isEquality() {
+            return this == EQ || this == NE;
+        }
+
+        boolean holds(int cmp) {
+            switch (this) {
+            case EQ: return cmp == 0;
+            case NE: return cmp != 0;
+            case LT: return cmp < 0;
+            case LE: return cmp <= 0;
+            case GT: return cmp > 0;
+            default: return cmp >= 0;
+            }
+        }
+
+        boolean holds(double a, double b) {
+            // primitive operators give the XPath semantics for NaN
+            switch (this) {
+            case EQ: return a == b;
+            case NE: return a != b;
+            case LT: return a < b;
+            case LE: return a <= b;
+            case GT: return a > b;
+            default: return a >= b;
+            }
+        }
+    }
+
+    /**
+     * General comparison of an attribute with a sequence of literals: it
+     * holds if the comparison holds for any pair of values.
+     */
+    private static final class AttributeComparison implements Predicate {
+
+        private final String attributeName;
+        private final Comparison comparison;
+        private final List<Object> literals;
+
+        AttributeComparison(String attributeName, Comparison comparison, List<Object> literals) {
+            this.attributeName = attributeName;
+            this.comparison = comparison;
+            this.literals = literals;
+        }
+
+        @Override
+        public boolean test(Node node, EvaluationContext ctx) {
+            Attribute attribute = ctx.findAttribute(node, attributeName);
+            if (attribute == null) {
+                return false;
+            }
+            ctx.attrLogger.recordUsageOf(attribute);
+            Object value = attribute.getValue();
+            if (value instanceof Collection) {
+                List<Object> values = new ArrayList<>();
+                flattenInto((Collection<?>) value, values);
+                for (Object v : values) {
+                    if (compareWithLiterals(v)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return compareWithLiterals(value);
+        }
+
+        private boolean compareWithLiterals(@Nullable Object value) {
+            Object normalized = normalizeAttributeValue(value);
+            for (Object literal : literals) {
+                if (compare(normalized, literal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean compare(@Nullable Object value, Object literal) {
+            if (value == null) {
+                // a null attribute is a zero-length untyped value, it is cast to the type of the literal
+                if (literal instanceof String && comparison.isEquality()) {
+                    return comparison.holds(((String) literal).isEmpty() ? 0 : 1);
+                }
+            } else if ((value instanceof String && literal instanceof String
+                || value instanceof Boolean && literal instanceof Boolean)
+                && comparison.isEquality()) {
+                return comparison.holds(value.equals(literal) ? 0 : 1);
+            } else if (value instanceof Long && literal instanceof Long) {
+                return comparison.holds(Long.compare((Long) value, (Long) literal));
+            } else if (value instanceof Number && literal instanceof Number) {
+                return comparison.holds(((Number) value).doubleValue(), ((Number) literal).doubleValue());
+            }
+            throw new CannotEvaluateException("Cannot evaluate @" + attributeName + " " + comparison.symbol + " " + literal
+                                                  + " for value " + value);
+        }
+
+        private static void flattenInto(Collection<?> collection, List<Object> values) {
+            for (Object o : collection) {
+                if (o instanceof Collection) {
+                    flattenInto((Collection<?>) o, values);
+                } else {
+                    values.add(o);
+                }
+            }
+        }
+
+        /**
+         * Converts the value like {@link DomainConversion#getAtomicRepresentation(Object)}:
+         * to a String, Boolean, Long or Double. Null stays null.
+         */
+        private @Nullable Object normalizeAttributeValue(@Nullable Object value) {
+            if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Long || value instanceof Double) {
+                return value;
+            } else if (value instanceof Integer) {
+                return ((Integer) value).longValue();
+            } else if (value instanceof Float) {
+                return ((Float) value).doubleValue();
+            } else if (value instanceof Character || value instanceof Pattern || value instanceof Enum) {
+                return String.valueOf(value);
+            }
+            throw new CannotEvaluateException("Cannot evaluate @" + attributeName + " with value of type " + value.getClass());
+        }
+    }
+
+    private static final class FunctionCallPredicate implements Predicate {
+
+        private final XPathFunctionDefinition definition;
+        private final XPathFunctionDefinition.FunctionCall call;
+        private final Object[] arguments;
+
+        FunctionCallPredicate(XPathFunctionDefinition definition, XPathFunctionDefinition.FunctionCall call, Object[] arguments) {
+            this.definition = definition;
+            this.call = call;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public boolean test(Node node, EvaluationContext ctx) {
+            try {
+                return (Boolean) call.call(definition.dependsOnContext() ? node : null, arguments.clone());
+            } catch (XPathFunctionException e) {
+                throw new CannotEvaluateException("Cannot evaluate function " + definition.getQName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private enum TokenKind { NAME, STRING, NUMBER, VARIABLE, SYMBOL, EOF }
+
+    private static final class Token {
+
+        private final TokenKind kind;
+        private final String text;
+
+        Token(TokenKind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        boolean is(TokenKind kind, String text) {
+            return this.kind == kind && this.text.equals(text);
+        }
+
+        boolean isSymbol(String symbol) {
+            return is(TokenKind.SYMBOL, symbol);
+        }
+    }
+
+    private static final class Lexer {
+
+        private static final String[] SYMBOLS = {
+            "//", "/", "::", "!=", "<=", ">=", "=", "<", ">", "[", "]", "(", ")", "@", ",", "|", "*", ".",
+        };
+
+        private final String xpath;
+        private int pos;
+
+        Lexer(String xpath) {
+            this.xpath = xpath;
+        }
+
+        List<Token> tokenize() throws UnsupportedExpressionException {
+            List<Token> tokens = new ArrayList<>();
+            while (true) {
+                while (pos < xpath.length() && Character.isWhitespace(xpath.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == xpath.length()) {
+                    tokens.add(new Token(TokenKind.EOF, ""));
+                    return tokens;
+                }
+                tokens.add(nextToken());
+            }
+        }
+
+        private Token nextToken() throws UnsupportedExpressionException {
+            char c = xpath.charAt(pos);
+            if (c == '\'' || c == '"') {
+                return new Token(TokenKind.STRING, readString(c));
+            } else if (isDigit(c)) {
+                int start = pos;
+                while (pos < xpath.length() && isDigit(xpath.charAt(pos))) {
+                    pos++;
+                }
+                if (pos < xpath.length() && (xpath.charAt(pos) == '.' || xpath.charAt(pos) == 'e' || xpath.charAt(pos) == 'E')) {
+                    throw new UnsupportedExpressionException("Only integer literals are supported");
+                }
+                return new Token(TokenKind.NUMBER, xpath.substring(start, pos));
+            } else if (c == '$') {
+                pos++;
+                return new Token(TokenKind.VARIABLE, readName());
+            } else if (isNameStart(c)) {
+                String name = readName();
+                if (pos + 1 < xpath.length() && xpath.charAt(pos) == ':' && isNameStart(xpath.charAt(pos + 1))) {
+                    pos++;
+                    name = name + ':' + readName();
+                }
+                return new Token(TokenKind.NAME, name);
+            }
+            for (String symbol : SYMBOLS) {
+                if (xpath.startsWith(symbol, pos)) {
+                    pos += symbol.length();
+                    return new Token(TokenKind.SYMBOL, symbol);
+                }
+            }
+            throw new UnsupportedExpressionException("Unexpected character " + c);
+        }
+
+        private String readString(char quote) throws UnsupportedExpressionException {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < xpath.length()) {
+                char c = xpath.charAt(pos++);
+                if (c != quote) {
+                    sb.append(c);
+                } else if (pos < xpath.length() && xpath.charAt(pos) == quote) {
+                    // doubled quote
+                    sb.append(c);
+                    pos++;
+                } else {
+                    return sb.toString();
+                }
+            }
+            throw new UnsupportedExpressionException("Unterminated string literal");
+        }
+
+        private String readName() throws UnsupportedExpressionException {
+            int start = pos;
+            if (pos == xpath.length() || !isNameStart(xpath.charAt(pos))) {
+                throw new UnsupportedExpressionException("Expected a name");
+            }
+            while (pos < xpath.length() && isNamePart(xpath.charAt(pos))) {
+                pos++;
+            }
+            return xpath.substring(start, pos);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isNameStart(char c) {
+            return Character.isLetter(c) || c == '_';
+        }
+
+        private static boolean isNamePart(char c) {
+            return isNameStart(c) || isDigit(c) || c == '-' || c == '.';
+        }
+    }
+
+    private static final class Parser {
+
+        private final List<Token> tokens;
+        private final Map<PropertyDescriptor<?>, Object> properties;
+        private final XPathHandler xPathHandler;
+        private int pos;
+
+        Parser(List<Token> tokens, Map<PropertyDescriptor<?>, Object> properties, XPathHandler xPathHandler) {
+            this.tokens = tokens;
+            this.properties = properties;
+            this.xPathHandler = xPathHandler;
+        }
+
+        List<PathExpr> parseQuery() throws UnsupportedExpressionException {
+            List<PathExpr> paths = new ArrayList<>();
+            do {
+                expect("//");
+                Step first = parseStep(Axis.DESCENDANT);
+                if (first.name == null) {
+                    throw new UnsupportedExpressionException("The first step must have a name");
+                }
+                List<Step> steps = new ArrayList<>();
+                steps.add(first);
+                parseFollowingSteps(steps);
+                paths.add(new PathExpr(steps));
+            } while (consume("|"));
+            if (peek().kind != TokenKind.EOF) {
+                throw new UnsupportedExpressionException("Unexpected token " + peek().text);
+            }
+            return paths;
+        }
+
+        private void parseFollowingSteps(List<Step> steps) throws UnsupportedExpressionException {
+            while (true) {
+                if (consume("//")) {
+                    steps.add(parseStep(Axis.DESCENDANT));
+                } else if (consume("/")) {
+                    steps.add(parseStep(Axis.CHILD));
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private Step parseStep(Axis defaultAxis) throws UnsupportedExpressionException {
+            Axis axis = defaultAxis;
+            if (peek().kind == TokenKind.NAME && peek(1).isSymbol("::")) {
+                if (defaultAxis != Axis.CHILD) {
+                    throw new UnsupportedExpressionException("Axis after //");
+                }
+                axis = parseAxis(next().text);
+                next();
+            }
+            String name;
+            if (consume("*")) {
+                name = null;
+            } else if (peek().kind == TokenKind.NAME && !peek().text.contains(":") && !peek(1).isSymbol("(")) {
+                name = next().text;
+            } else {
+                throw new UnsupportedExpressionException("Expected a name test");
+            }
+            List<Predicate> predicates = new ArrayList<>();
+            while (consume("[")) {
+                predicates.add(parseOr());
+                expect("]");
+            }
+            return new Step(axis, name, predicates);
+        }
+
+        private Axis parseAxis(String name) throws UnsupportedExpressionException {
+            switch (name) {
+            case "child":
+                return Axis.CHILD;
+            case "descendant":
+                return Axis.DESCENDANT;
+            default:
+                throw new UnsupportedExpressionException("Unsupported axis " + name);
+            }
+        }
+
+        private Predicate parseOr() throws UnsupportedExpressionException {
+            Predicate left = parseAnd();
+            while (consumeKeyword("or")) {
+                Predicate l = left;
+                Predicate r = parseAnd();
+                left = (node, ctx) -> l.test(node, ctx) || r.test(node, ctx);
+            }
+            return left;
+        }
+
+        private Predicate parseAnd() throws UnsupportedExpressionException {
+            Predicate left = parseUnary();
+            while (consumeKeyword("and")) {
+                Predicate l = left;
+                Predicate r = parseUnary();
+                left = (node, ctx) -> l.test(node, ctx) && r.test(node, ctx);
+            }
+            return left;
+        }
+
+        private Predicate parseUnary() throws UnsupportedExpressionException {
+            Token token = peek();
+            if (token.isSymbol("(")) {
+                next();
+                Predicate inner = parseOr();
+                expect(")");
+                return inner;
+            } else if (token.isSymbol("@")) {
+                next();
+                return parseAttributeTest(expectName());
+            } else if (token.kind == TokenKind.NAME && peek(1).isSymbol("(")) {
+                return parseFunctionCall();
+            }
+            return parseRelativePath();
+        }
+
+        private Predicate parseAttributeTest(String attributeName) throws UnsupportedExpressionException {
+            Comparison comparison = peek().kind == TokenKind.SYMBOL ? Comparison.fromSymbol(peek().text) : null;
+            if (comparison == null) {
+                return (node, ctx) -> ctx.findAttribute(node, attributeName) != null;
+            }
+            next();
+            return new AttributeComparison(attributeName, comparison, parseLiterals());
+        }
+
+        private List<Object> parseLiterals() throws UnsupportedExpressionException {
+            if (!consume("(")) {
+                return parseLiteral();
+            }
+            List<Object> literals = new ArrayList<>(parseLiteral());
+            while (consume(",")) {
+                literals.addAll(parseLiteral());
+            }
+            expect(")");
+            return literals;
+        }
+
+        private List<Object> parseLiteral() throws UnsupportedExpressionException {
+            Token token = next();
+            switch (token.kind) {
+            case STRING:
+                return Collections.singletonList(token.text);
+            case NUMBER:
+                try {
+                    return Collections.singletonList(Long.parseLong(token.text));
+                } catch (NumberFormatException e) {
+                    throw new UnsupportedExpressionException("Number too large " + token.text);
+                }
+            case VARIABLE:
+                return propertyValue(token.text);
+            case NAME:
+                if (("true".equals(token.text) || "false".equals(token.text)) && consume("(")) {
+                    expect(")");
+                    return Collections.singletonList(Boolean.valueOf(token.text));
+                }
+                break;
+            default:
+                break;
+            }
+            throw new UnsupportedExpressionException("Expected a literal");
+        }
+
+        private List<Object> propertyValue(String name) throws UnsupportedExpressionException {
+            for (Map.Entry<PropertyDescriptor<?>, Object> entry : properties.entrySet()) {
+                if (entry.getKey().name().equals(name) && !"xpath".equals(name)) {
+                    Object value = entry.getValue() != null ? entry.getValue() : entry.getKey().defaultValue();
+                    List<Object> values = new ArrayList<>();
+                    addLiteralValue(value, values);
+                    return values;
+                }
+            }
+            throw new UnsupportedExpressionException("Unknown variable " + name);
+        }
+
+        private void addLiteralValue(@Nullable Object value, List<Object> values) throws UnsupportedExpressionException {
+            if (value instanceof Collection) {
+                for (Object o : (Collection<?>) value) {
+                    addLiteralValue(o, values);
+                }
+            } else if (value instanceof String || value instanceof Boolean || value instanceof Long || value instanceof Double) {
+                values.add(value);
+            } else if (value instanceof Integer) {
+                values.add(((Integer) value).longValue());
+            } else if (value instanceof Float) {
+                values.add(((Float) value).doubleValue());
+            } else if (value instanceof Character || value instanceof Enum) {
+                values.add(String.valueOf(value));
+            } else {
+                throw new UnsupportedExpressionException("Unsupported property value " + value);
+            }
+        }
+
+        private Predicate parseFunctionCall() throws UnsupportedExpressionException {
+            String qname = next().text;
+            if ("not".equals(qname)) {
+                expect("(");
+                Predicate inner = parseOr();
+                expect(")");
+                return (node, ctx) -> !inner.test(node, ctx);
+            }
+            XPathFunctionDefinition definition = findFunction(qname);
+            Type[] argumentTypes = definition.getArgumentTypes();
+            if (definition.getResultType() != Type.SINGLE_BOOLEAN) {
+                throw new UnsupportedExpressionException("Function " + qname + " is not boolean");
+            }
+            expect("(");
+            List<Object> arguments = new ArrayList<>();
+            while (!consume(")")) {
+                if (!arguments.isEmpty()) {
+                    expect(",");
+                }
+                Token token = next();
+                if (token.kind != TokenKind.STRING) {
+                    throw new UnsupportedExpressionException("Only string literal arguments are supported");
+                }
+                arguments.add(token.text);
+            }
+            if (arguments.size() != argumentTypes.length) {
+                throw new UnsupportedExpressionException("Wrong number of arguments for " + qname);
+            }
+            for (Type type : argumentTypes) {
+                if (type != Type.SINGLE_STRING) {
+                    throw new UnsupportedExpressionException("Unsupported argument type " + type);
+                }
+            }
+            Object[] args = arguments.toArray();
+            XPathFunctionDefinition.FunctionCall call = definition.makeCallExpression();
+            try {
+                call.staticInit(args.clone());
+            } catch (XPathFunctionException e) {
+                // let saxon report the error
+                throw new UnsupportedExpressionException(e.getMessage());
+            }
+            return new FunctionCallPredicate(definition, call, args);
+        }
+
+        private XPathFunctionDefinition findFunction(String qname) throws UnsupportedExpressionException {
+            for (XPathFunctionDefinition definition : xPathHandler.getRegisteredExtensionFunctions()) {
+                String name = definition.getQName().getPrefix() + ':' + definition.getQName().getLocalPart();
+                if (name.equals(qname)) {
+                    return definition;
+                }
+            }
+            throw new UnsupportedExpressionException("Unsupported function " + qname);
+        }
+
+        private Predicate parseRelativePath() throws UnsupportedExpressionException {
+            List<Step> steps = new ArrayList<>();
+            if (consume(".")) {
+                if (consume("//")) {
+                    steps.add(parseStep(Axis.DESCENDANT));
+                } else {
+                    expect("/");
+                    steps.add(parseStep(Axis.CHILD));
+                }
+            } else {
+                steps.add(parseStep(Axis.CHILD));
+            }
+            parseFollowingSteps(steps);
+            if (peek().kind == TokenKind.SYMBOL && Comparison.fromSymbol(peek().text) != null) {
+                throw new UnsupportedExpressionException("Comparisons of paths are not supported");
+            }
+            Step[] stepArray = steps.toArray(new Step[0]);
+            return (node, ctx) -> exists(node, stepArray, 0, ctx);
+        }
+
+        private boolean consumeKeyword(String keyword) {
+            if (peek().is(TokenKind.NAME, keyword)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private String expectName() throws UnsupportedExpressionException {
+            Token token = next();
+            if (token.kind != TokenKind.NAME || token.text.contains(":")) {
+                throw new UnsupportedExpressionException("Expected a name");
+            }
+            return token.text;
+        }
+
+        private boolean consume(String symbol) {
+            if (peek().isSymbol(symbol)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String symbol) throws UnsupportedExpressionException {
+            if (!consume(symbol)) {
+                throw new UnsupportedExpressionException("Expected " + symbol);
+            }
+        }
+
+        private Token peek() {
+            return peek(0);
+        }
+
+        private Token peek(int offset) {
+            return tokens.get(Math.min(pos + offset, tokens.size() - 1));
+        }
+
+        private Token next() {
+            Token token = peek();
+            if (token.kind != TokenKind.EOF) {
+                pos++;
+            }
+            return token;
+        }
+    }
+}
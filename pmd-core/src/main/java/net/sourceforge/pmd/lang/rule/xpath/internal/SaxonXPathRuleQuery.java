@@ -6,6 +6,7 @@ package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +83,13 @@ public class SaxonXPathRuleQuery {
 
     private final DeprecatedAttrLogger attrCtx;
 
+    /**
+     * Evaluates the query without Saxon, if it is simple enough. This
+     * is null if the query is not in the supported subset, or if some
+     * value could not be evaluated.
+     */
+    private CompiledXPathQuery compiledQuery;
+
 
     public SaxonXPathRuleQuery(String xpathExpr,
                                XPathVersion version,
@@ -98,6 +106,19 @@ public class SaxonXPathRuleQuery {
         } catch (XPathException e) {
             throw wrapException(e, Phase.INITIALIZATION);
         }
+        compiledQuery = compileIfPossible();
+    }
+
+    private CompiledXPathQuery compileIfPossible() {
+        if (rulechainQueries.isEmpty()) {
+            return null;
+        }
+        CompiledXPathQuery compiled = CompiledXPathQuery.compile(xpathExpr, properties, xPathHandler);
+        // the compiled query must be evaluated on the same nodes as with saxon
+        if (compiled == null || !compiled.getRuleChainVisits().equals(new HashSet<>(rulechainQueries))) {
+            return null;
+        }
+        return compiled;
     }
 
 
@@ -111,7 +132,24 @@ public class SaxonXPathRuleQuery {
     }
 
 
+    /**
+     * Returns true if this query is evaluated directly on the nodes,
+     * without Saxon.
+     */
+    public boolean isCompiled() {
+        return compiledQuery != null;
+    }
+
+
     public List<Node> evaluate(final Node node) {
+        if (compiledQuery != null && nodeNameToXPaths.containsKey(node.getXPathNodeName())) {
+            try {
+                return compiledQuery.evaluate(node, attrCtx);
+            } catch (CompiledXPathQuery.CannotEvaluateException e) {
+                LOG.debug("Falling back to Saxon for XPath {}: {}", xpathExpr, e.getMessage());
+                compiledQuery = null;
+            }
+        }
         final AstTreeInfo documentNode = getDocumentNodeForRootNode(node);
         documentNode.setAttrCtx(attrCtx);
         try {
@@ -178,7 +216,16 @@ public class SaxonXPathRuleQuery {
      */
     private AstTreeInfo getDocumentNodeForRootNode(final Node node) {
         final RootNode root = node.getRoot();
-        return root.getUserMap().computeIfAbsent(SAXON_TREE_CACHE_KEY, () -> new AstTreeInfo(root, configuration));
+        // rules may be applied to the tree in parallel, and the user map is not thread-safe
+        synchronized (root) {
+            AstTreeInfo tree = root.getUserMap().get(SAXON_TREE_CACHE_KEY);
+            if (tree == null) {
+                // the constructor adds the attribute cache to the user map
+                tree = new AstTreeInfo(root, configuration);
+                root.getUserMap().set(SAXON_TREE_CACHE_KEY, tree);
+            }
+            return tree;
+        }
     }
 
 
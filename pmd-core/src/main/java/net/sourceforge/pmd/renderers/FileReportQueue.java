@@ -0,0 +1,72 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.reporting.Report;
+
+/**
+ * Hands the reports of files over to a renderer, which is not thread-safe,
+ * without making the analysis threads wait for each other. A thread that
+ * finishes a file enqueues its report, and renders the pending reports
+ * only if no other thread is rendering. Otherwise, the report is rendered
+ * by the thread that is rendering, before it leaves.
+ *
+ * <p>Reports that found the renderer busy are recorded as contended in the
+ * timing report, see {@link TimeTracker#recordReportMerge(String, long, boolean)}.
+ */
+final class FileReportQueue {
+
+    private final Renderer renderer;
+    private final Queue<Report> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean rendering = new AtomicBoolean();
+
+    FileReportQueue(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Renders the given report, and the reports of other threads that
+     * are pending, unless another thread is already rendering, in which
+     * case that thread will render the report.
+     */
+    void submit(Report report) throws IOException {
+        pending.add(report);
+        long start = System.nanoTime();
+        boolean contended = !renderPending();
+        TimeTracker.recordReportMerge(renderer.getName(), System.nanoTime() - start, contended);
+    }
+
+    /**
+     * Renders the pending reports, unless another thread is already
+     * rendering. Returns false in that case.
+     */
+    boolean renderPending() throws IOException {
+        boolean rendered = false;
+        // check again after releasing, a report may have been enqueued
+        // after the queue was drained but before it was released
+        while (!pending.isEmpty() && rendering.compareAndSet(false, true)) {
+            rendered = true;
+            try {
+                Report report;
+                while ((report = pending.poll()) != null) {
+                    try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+                        renderer.renderFileReport(report);
+                    }
+                }
+            } finally {
+                rendering.set(false);
+            }
+        }
+        return rendered;
+    }
+}
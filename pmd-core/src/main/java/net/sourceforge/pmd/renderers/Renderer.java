@@ -194,6 +194,9 @@ public interface Renderer extends PropertySource {
     //  ie violations are batched by file and forwarded to the renderer
     //  when the file is done. Many renderers could directly handle
     //  violations as they come though.
+    //  The renderer is not thread-safe, the reports of the files are
+    //  handed over to it through a FileReportQueue, so that analysis
+    //  threads don't wait for each other.
     default GlobalAnalysisListener newListener() throws IOException {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
             this.start();
@@ -201,8 +204,7 @@ public interface Renderer extends PropertySource {
 
         return new GlobalAnalysisListener() {
 
-            // guard for the close routine
-            final Object reportMergeLock = new Object();
+            final FileReportQueue fileReports = new FileReportQueue(Renderer.this);
 
             final GlobalReportBuilderListener configErrorReport = new GlobalReportBuilderListener();
 
@@ -247,12 +249,7 @@ public interface Renderer extends PropertySource {
                     @Override
                     public void close() throws Exception {
                         reportBuilder.close();
-                        synchronized (reportMergeLock) {
-                            // TODO renderFileReport should be thread-safe instead
-                            try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
-                                renderer.renderFileReport(reportBuilder.getResult());
-                            }
-                        }
+                        fileReports.submit(reportBuilder.getResult());
                     }
 
                     @Override
@@ -265,6 +262,8 @@ public interface Renderer extends PropertySource {
             @Override
             public void close() throws Exception {
                 configErrorReport.close();
+                // all files are done, render what is left if a rendering failed
+                fileReports.renderPending();
                 Renderer.this.renderFileReport(configErrorReport.getResult());
                 try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
                     end();
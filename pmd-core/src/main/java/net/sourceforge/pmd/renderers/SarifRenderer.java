@@ -10,13 +10,23 @@ import java.util.Iterator;
 
 import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Invocation;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Result;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Tool;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLogBuilder;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.RuleViolation;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
+/**
+ * Renders the report in SARIF format. The results are written as soon
+ * as they are rendered, and the rules they refer to are written after
+ * them, at the end of the run. The memory used thus depends on the number
+ * of distinct rules, not on the number of violations.
+ */
 public class SarifRenderer extends AbstractIncrementingRenderer {
     public static final String NAME = "sarif";
     private static final String DEFAULT_DESCRIPTION = "Static Analysis Results Interchange Format (SARIF)";
@@ -28,6 +38,7 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
             .create();
 
     private SarifLogBuilder sarifLogBuilder;
+    private JsonWriter jsonWriter;
 
     public SarifRenderer() {
         super(NAME, DEFAULT_DESCRIPTION);
@@ -41,20 +52,21 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
     @Override
     public void start() throws IOException {
         sarifLogBuilder = SarifLogBuilder.sarifLogBuilder();
+        writeLogStart();
     }
 
     @Override
     public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
         while (violations.hasNext()) {
             final RuleViolation violation = violations.next();
-            sarifLogBuilder.add(violation);
+            gson.toJson(sarifLogBuilder.resultFor(violation), Result.class, jsonWriter);
         }
     }
 
     @Override
     public void end() throws IOException {
         addErrors();
-        writeLog();
+        writeLogEnd();
     }
 
     private void addErrors() {
@@ -67,10 +79,35 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
         }
     }
 
-    private void writeLog() throws IOException {
-        final SarifLog sarifLog = sarifLogBuilder.build();
-        final String json = gson.toJson(sarifLog);
-        writer.write(json);
+    /**
+     * Writes the log up to the start of the results of the run.
+     */
+    private void writeLogStart() throws IOException {
+        final SarifLog header = SarifLog.builder().build();
+        jsonWriter = gson.newJsonWriter(writer);
+        jsonWriter.beginObject()
+                  .name("$schema").value(header.getSchema())
+                  .name("version").value(header.getVersion())
+                  .name("runs").beginArray()
+                  .beginObject()
+                  .name("results").beginArray();
+    }
+
+    /**
+     * Closes the results, and writes the tool with its rules and the
+     * invocation, which are only known at the end.
+     */
+    private void writeLogEnd() throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.name("tool");
+        gson.toJson(sarifLogBuilder.buildTool(), Tool.class, jsonWriter);
+        jsonWriter.name("invocations").beginArray();
+        gson.toJson(sarifLogBuilder.buildInvocation(), Invocation.class, jsonWriter);
+        jsonWriter.endArray();
+        jsonWriter.endObject() // run
+                  .endArray() // runs
+                  .endObject();
+        jsonWriter.flush();
         writer.println();
     }
 
@@ -7,8 +7,10 @@ package net.sourceforge.pmd.renderers.internal.sarif;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ArtifactLocation;
@@ -33,6 +35,7 @@ import net.sourceforge.pmd.reporting.RuleViolation;
 
 public class SarifLogBuilder {
     private final List<ReportingDescriptor> rules = new ArrayList<>();
+    private final Map<ReportingDescriptor, Integer> ruleIndices = new HashMap<>();
     private final List<Result> results = new ArrayList<>();
     private final List<ToolConfigurationNotification> toolConfigurationNotifications = new ArrayList<>();
     private final List<ToolExecutionNotification> toolExecutionNotifications = new ArrayList<>();
@@ -42,18 +45,26 @@ public class SarifLogBuilder {
     }
 
     public SarifLogBuilder add(RuleViolation violation) {
+        results.add(resultFor(violation));
+        return this;
+    }
+
+    /**
+     * Registers the rule of the violation, and returns the result for the
+     * violation without adding it to the log. This is used to write the
+     * results as they are found, see {@link #buildTool()}.
+     */
+    public Result resultFor(RuleViolation violation) {
         final ReportingDescriptor ruleDescriptor = getReportingDescriptor(violation);
-        int ruleIndex = rules.indexOf(ruleDescriptor);
-        if (ruleIndex == -1) {
+        Integer ruleIndex = ruleIndices.get(ruleDescriptor);
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
             rules.add(ruleDescriptor);
-            ruleIndex = rules.size() - 1;
+            ruleIndices.put(ruleDescriptor, ruleIndex);
         }
 
         final Location location = getRuleViolationLocation(violation);
-        final Result result = resultFrom(ruleDescriptor, ruleIndex, location);
-        results.add(result);
-
-        return this;
+        return resultFrom(ruleDescriptor, ruleIndex, location);
     }
 
     public SarifLogBuilder addRunTimeError(Report.ProcessingError error) {
@@ -107,17 +118,10 @@ public class SarifLogBuilder {
     }
 
     public SarifLog build() {
-        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
-        final Tool tool = Tool.builder().driver(driver).build();
-        final Invocation invocation = Invocation.builder()
-                .toolExecutionNotifications(toolExecutionNotifications)
-                .toolConfigurationNotifications(toolConfigurationNotifications)
-                .executionSuccessful(isExecutionSuccessful())
-                .build();
         final Run run = Run.builder()
-                .tool(tool)
+                .tool(buildTool())
                 .results(results)
-                .invocations(Collections.singletonList(invocation))
+                .invocations(Collections.singletonList(buildInvocation()))
                 .build();
 
         List<Run> runs = Collections.singletonList(run);
@@ -125,6 +129,25 @@ public class SarifLogBuilder {
         return SarifLog.builder().runs(runs).build();
     }
 
+    /**
+     * Returns the tool, with the rules of all the results added so far.
+     */
+    public Tool buildTool() {
+        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
+        return Tool.builder().driver(driver).build();
+    }
+
+    /**
+     * Returns the invocation, with the errors added so far.
+     */
+    public Invocation buildInvocation() {
+        return Invocation.builder()
+                .toolExecutionNotifications(toolExecutionNotifications)
+                .toolConfigurationNotifications(toolConfigurationNotifications)
+                .executionSuccessful(isExecutionSuccessful())
+                .build();
+    }
+
     private boolean isExecutionSuccessful() {
         return toolExecutionNotifications.isEmpty() && toolConfigurationNotifications.isEmpty();
     }
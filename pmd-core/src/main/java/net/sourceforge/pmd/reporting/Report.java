@@ -12,6 +12,8 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -307,15 +309,22 @@ public final class Report {
     /**
      * A {@link GlobalAnalysisListener} that accumulates the events of
      * all files into a {@link Report}.
+     *
+     * <p>Each file is collected into its own report, which is only used
+     * by the thread analysing the file, so that threads don't contend on
+     * a shared report. The reports of the files are merged into the
+     * global report when this listener is closed.
      */
     public static final class GlobalReportBuilderListener extends BaseResultProducingCloseable<Report> implements GlobalAnalysisListener {
 
         private final Report report = new Report();
+        private final Queue<Report> fileReports = new ConcurrentLinkedQueue<>();
 
         @Override
         public FileAnalysisListener startFileAnalysis(TextFile file) {
-            // note that the report is shared, but Report is now thread-safe
-            return new ReportBuilderListener(this.report);
+            Report fileReport = new Report();
+            fileReports.add(fileReport);
+            return new ReportBuilderListener(fileReport);
         }
 
         @Override
@@ -323,6 +332,20 @@ public final class Report {
             report.addConfigError(error);
         }
 
+        @Override
+        protected void closeImpl() {
+            List<RuleViolation> violations = new ArrayList<>();
+            Report fileReport;
+            while ((fileReport = fileReports.poll()) != null) {
+                violations.addAll(fileReport.violations);
+                report.suppressedRuleViolations.addAll(fileReport.suppressedRuleViolations);
+                report.errors.addAll(fileReport.errors);
+            }
+            // sort once, rather than inserting each violation in order
+            violations.sort(RuleViolation.DEFAULT_COMPARATOR);
+            report.violations.addAll(violations);
+        }
+
         @Override
         public Report getResultImpl() {
             return report;
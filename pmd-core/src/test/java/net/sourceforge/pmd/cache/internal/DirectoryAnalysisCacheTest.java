@@ -0,0 +1,148 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class DirectoryAnalysisCacheTest {
+
+    @TempDir
+    private Path tempFolder;
+
+    private final LanguageVersion dummyVersion = PmdCoreTestUtils.dummyVersion();
+    private final RuleSets ruleSets = mock(RuleSets.class);
+    private final ClassLoader classLoader = mock(ClassLoader.class);
+
+    @Test
+    void testResultsAreSharedBetweenCheckouts() throws IOException {
+        final Path cacheDir = tempFolder.resolve("cache");
+        final TextFile firstCheckout = sourceFile("agent1", "Source.java", "dummy text");
+        final TextFile secondCheckout = sourceFile("agent2", "Source.java", "dummy text");
+
+        analyzeWithOneViolation(new DirectoryAnalysisCache(cacheDir, 0), firstCheckout);
+
+        final DirectoryAnalysisCache reloadedCache = new DirectoryAnalysisCache(cacheDir, 0);
+        reloadedCache.checkValidity(ruleSets, classLoader, setOf(secondCheckout));
+        try (TextDocument doc = TextDocument.create(secondCheckout)) {
+            assertTrue(reloadedCache.isUpToDate(doc),
+                       "Cache believes a file with the same contents in another checkout is not up to date");
+            final List<RuleViolation> violations = reloadedCache.getCachedViolations(doc);
+            assertEquals(1, violations.size(), "Cached rule violations count mismatch");
+            assertEquals(secondCheckout.getFileId(), violations.get(0).getFileId());
+        }
+    }
+
+    @Test
+    void testChangedContentsAreNotUpToDate() throws IOException {
+        final Path cacheDir = tempFolder.resolve("cache");
+        final TextFile original = sourceFile("agent1", "Source.java", "dummy text");
+        final TextFile edited = sourceFile("agent2", "Source.java", "other text");
+
+        analyzeWithOneViolation(new DirectoryAnalysisCache(cacheDir, 0), original);
+
+        final DirectoryAnalysisCache reloadedCache = new DirectoryAnalysisCache(cacheDir, 0);
+        reloadedCache.checkValidity(ruleSets, classLoader, setOf(edited));
+        try (TextDocument doc = TextDocument.create(edited)) {
+            assertFalse(reloadedCache.isUpToDate(doc), "Cache believes a changed file is up to date");
+        }
+    }
+
+    @Test
+    void testRulesetChangeChangesKeys() throws IOException {
+        final Path cacheDir = tempFolder.resolve("cache");
+        final TextFile file = sourceFile("agent1", "Source.java", "dummy text");
+
+        analyzeWithOneViolation(new DirectoryAnalysisCache(cacheDir, 0), file);
+
+        final DirectoryAnalysisCache reloadedCache = new DirectoryAnalysisCache(cacheDir, 0);
+        when(ruleSets.getChecksum()).thenReturn(1L);
+        reloadedCache.checkValidity(ruleSets, classLoader, setOf(file));
+        try (TextDocument doc = TextDocument.create(file)) {
+            assertFalse(reloadedCache.isUpToDate(doc), "Cache believes unmodified file is up to date after ruleset changed");
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        final Path cacheDir = tempFolder.resolve("cache");
+        final TextFile first = sourceFile("agent1", "First.java", "first");
+        analyzeWithOneViolation(new DirectoryAnalysisCache(cacheDir, 0), first);
+        final long entrySize = listEntries(cacheDir).get(0).toFile().length();
+
+        // make the first entry older than the next one
+        Files.setLastModifiedTime(listEntries(cacheDir).get(0), FileTime.fromMillis(0));
+
+        final TextFile second = sourceFile("agent1", "Second.java", "second");
+        analyzeWithOneViolation(new DirectoryAnalysisCache(cacheDir, entrySize + entrySize / 2), second);
+
+        assertEquals(1, listEntries(cacheDir).size(), "Least recently used entry should have been evicted");
+
+        final DirectoryAnalysisCache reloadedCache = new DirectoryAnalysisCache(cacheDir, 0);
+        reloadedCache.checkValidity(ruleSets, classLoader, setOf(first, second));
+        try (TextDocument doc = TextDocument.create(second)) {
+            assertTrue(reloadedCache.isUpToDate(doc), "Most recently used entry should have been kept");
+        }
+    }
+
+    private void analyzeWithOneViolation(DirectoryAnalysisCache cache, TextFile file) throws IOException {
+        cache.checkValidity(ruleSets, classLoader, setOf(file));
+        try (TextDocument doc = TextDocument.create(file)) {
+            assertFalse(cache.isUpToDate(doc));
+            final FileAnalysisListener listener = cache.startFileAnalysis(doc);
+
+            final RuleViolation rv = mock(RuleViolation.class);
+            when(rv.getLocation()).thenReturn(FileLocation.range(doc.getFileId(), TextRange2d.range2d(1, 2, 3, 4)));
+            final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+            when(rule.getLanguage()).thenReturn(mock(Language.class));
+            when(rv.getRule()).thenReturn(rule);
+            listener.onRuleViolation(rv);
+        }
+        cache.persist();
+    }
+
+    private TextFile sourceFile(String checkout, String name, String contents) throws IOException {
+        final Path dir = Files.createDirectories(tempFolder.resolve(checkout));
+        final Path file = dir.resolve(name);
+        Files.write(file, listOf(contents));
+        return TextFile.forPath(file, StandardCharsets.UTF_8, dummyVersion);
+    }
+
+    private static List<Path> listEntries(Path cacheDir) throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+}
@@ -25,8 +25,12 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -177,6 +181,120 @@ class FileAnalysisCacheTest {
         assertTrue(cachedViolations.isEmpty(), "There should be no cached rule violations");
     }
 
+    @Test
+    void testUnchangedRecordsAreKeptWhenPersistingAgain() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        final FileAnalysisListener cacheListener = cache.startFileAnalysis(sourceFile);
+        cache.isUpToDate(sourceFile);
+        cacheListener.onRuleViolation(mockViolation());
+        cache.persist();
+
+        // a run with only cache hits keeps the record of the previous run
+        final FileAnalysisCache secondCache = new FileAnalysisCache(newCacheFile);
+        secondCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(secondCache.isUpToDate(sourceFile));
+        secondCache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                   "Cache believes unmodified file is not up to date after persisting it twice");
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size(), "Cached rule violations count mismatch");
+    }
+
+    @Test
+    void testKeptRecordsCanBeReadAfterTheMappingIsReleased() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        final FileAnalysisListener cacheListener = cache.startFileAnalysis(sourceFile);
+        cache.isUpToDate(sourceFile);
+        cacheListener.onRuleViolation(mockViolation());
+        cache.persist();
+
+        final FileAnalysisCache secondCache = new FileAnalysisCache(newCacheFile);
+        secondCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(secondCache.isUpToDate(sourceFile));
+        // the violations are not decoded before the mapping is released
+        secondCache.persist();
+
+        assertEquals(1, secondCache.getCachedViolations(sourceFile).size(), "Cached rule violations count mismatch");
+        // the file is not mapped anymore, so it can be deleted, even on Windows
+        Files.delete(newCacheFile.toPath());
+    }
+
+    @Test
+    void testChangedRecordsAreReplacedWhenPersistingAgain() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        setupCacheWithFiles(newCacheFile, rs, cl);
+
+        // Edit the file, its new record replaces the previous one
+        sourceFileBackend.writeContents(TextFileContent.fromCharSeq("some text"));
+        sourceFile = TextDocument.create(sourceFileBackend);
+
+        final FileAnalysisCache secondCache = new FileAnalysisCache(newCacheFile);
+        secondCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertFalse(secondCache.isUpToDate(sourceFile));
+        secondCache.startFileAnalysis(sourceFile).onRuleViolation(mockViolation());
+        secondCache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                   "Cache believes edited file is not up to date after it was analyzed");
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size(), "Cached rule violations count mismatch");
+    }
+
+    @Test
+    void testStorePersistsRepeatedRulesAndMessages() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        final FileAnalysisListener cacheListener = cache.startFileAnalysis(sourceFile);
+        cache.isUpToDate(sourceFile);
+
+        final RuleViolation first = mockViolation();
+        when(first.getDescription()).thenReturn("same message");
+        final RuleViolation second = mockViolation();
+        when(second.getDescription()).thenReturn("same message");
+        when(second.getAdditionalInfo()).thenReturn(Collections.singletonMap(RuleViolation.VARIABLE_NAME, "foo"));
+        final RuleViolation third = mockViolation();
+        when(third.getDescription()).thenReturn("other message");
+        cacheListener.onRuleViolation(first);
+        cacheListener.onRuleViolation(second);
+        cacheListener.onRuleViolation(third);
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(3, cachedViolations.size(), "Cached rule violations count mismatch");
+        assertEquals("same message", cachedViolations.get(0).getDescription());
+        assertEquals(Collections.emptyMap(), cachedViolations.get(0).getAdditionalInfo());
+        assertEquals("same message", cachedViolations.get(1).getDescription());
+        assertEquals("foo", cachedViolations.get(1).getAdditionalInfo().get(RuleViolation.VARIABLE_NAME));
+        assertEquals("other message", cachedViolations.get(2).getDescription());
+        // strings are shared between violations, and violations are only created once
+        assertSame(cachedViolations.get(0).getDescription(), cachedViolations.get(1).getDescription());
+        assertSame(cachedViolations.get(2), cachedViolations.get(2));
+    }
+
+    private RuleViolation mockViolation() {
+        final RuleViolation rv = mock(RuleViolation.class);
+        when(rv.getLocation()).thenReturn(FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4)));
+        final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+        when(rv.getRule()).thenReturn(rule);
+        return rv;
+    }
+
     @Test
     void testDisplayNameIsRespected() throws Exception {
         // This checks that the display name of the file is respected even if
@@ -345,6 +463,170 @@ class FileAnalysisCacheTest {
                 "Cache believes cache is up to date when a auxclasspath file changed");
     }
 
+    @Test
+    void testAuxClasspathChangeIsPersisted() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final URLClassLoader cl = mock(URLClassLoader.class);
+        when(cl.getURLs()).thenReturn(new URL[] { });
+
+        setupCacheWithFiles(newCacheFile, rs, cl);
+
+        when(cl.getURLs()).thenReturn(new URL[] { createZipFile("new.jar").toURI().toURL(), });
+        final FileAnalysisCache secondCache = new FileAnalysisCache(newCacheFile);
+        secondCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertFalse(secondCache.isUpToDate(sourceFile));
+        secondCache.persist();
+
+        // only cache hits, the same auxclasspath is persisted again
+        final FileAnalysisCache thirdCache = new FileAnalysisCache(newCacheFile);
+        thirdCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(thirdCache.isUpToDate(sourceFile));
+        thirdCache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date after the changed auxclasspath was persisted");
+    }
+
+    @Test
+    void testAuxClasspathChangeKeepsResultsWithUnchangedDependencies() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final URL jar = createJar("lib.jar", "foo.Bar", "v1").toURI().toURL();
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { jar }, null)) {
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), new TestDependencyRecorder("foo.Bar"));
+        }
+
+        // the added jar does not contain the class the file depends on
+        final URL otherJar = createJar("other.jar", "foo.Unrelated", "v1").toURI().toURL();
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { jar, otherJar }, null)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertTrue(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is not up to date after an unrelated jar was added");
+        }
+    }
+
+    @Test
+    void testAuxClasspathJarEntryChangeInvalidatesResults() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { createJar("lib-1.0.jar", "foo.Bar", "v1").toURI().toURL() }, null)) {
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), new TestDependencyRecorder("foo.Bar"));
+        }
+
+        // a new version of the jar changes the class
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { createJar("lib-1.1.jar", "foo.Bar", "v2").toURI().toURL() }, null)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is up to date after one of its dependencies changed");
+        }
+    }
+
+    @Test
+    void testAuxClasspathDirectoryKeepsResultsWithUnchangedDependencies() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final Path classes = Files.createDirectory(tempFolder.resolve("classes"));
+        writeClassFile(classes, "foo.Bar", "v1");
+        writeClassFile(classes, "foo.Unrelated", "v1");
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { classes.toUri().toURL() }, null)) {
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), new TestDependencyRecorder("foo.Bar"));
+
+            // a class of the directory changes, that the file does not depend on
+            writeClassFile(classes, "foo.Unrelated", "v2");
+
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertTrue(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is not up to date after an unrelated class changed");
+        }
+    }
+
+    @Test
+    void testAuxClasspathDirectoryInvalidatesResultsWithChangedDependencies() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final Path classes = Files.createDirectory(tempFolder.resolve("classes"));
+        writeClassFile(classes, "foo.Bar", "v1");
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { classes.toUri().toURL() }, null)) {
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), new TestDependencyRecorder("foo.Bar"));
+
+            // the class is recompiled in the directory
+            writeClassFile(classes, "foo.Bar", "v2");
+
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is up to date after one of its dependencies changed");
+        }
+    }
+
+    @Test
+    void testAuxClasspathDirectoryInvalidatesResultsWithChangedTransitiveDependencies() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final Path classes = Files.createDirectory(tempFolder.resolve("classes"));
+        writeClassFile(classes, "foo.Bar", "v1");
+        writeClassFile(classes, "foo.Baz", "v1");
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { classes.toUri().toURL() }, null)) {
+            // eg Bar extends Baz
+            final TestDependencyRecorder recorder = new TestDependencyRecorder("foo.Bar");
+            recorder.edges.put("foo.Bar", setOf("foo.Baz"));
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), recorder);
+
+            writeClassFile(classes, "foo.Baz", "v2");
+
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is up to date after an indirect dependency changed");
+        }
+    }
+
+    @Test
+    void testAuxClasspathDirectoryInvalidatesResultsWhenMissingClassIsAdded() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final Path classes = Files.createDirectory(tempFolder.resolve("classes"));
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] { classes.toUri().toURL() }, null)) {
+            setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend), new TestDependencyRecorder("foo.Missing"));
+
+            writeClassFile(classes, "foo.Missing", "v1");
+
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(sourceFile),
+                    "Cache believes unmodified file is up to date after a class it did not find was added");
+        }
+    }
+
+    @Test
+    void testSourceFileDependencyChangeInvalidatesResults() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final Path otherFile = tempFolder.resolve("Other.java");
+        Files.write(otherFile, listOf("class Other {}"));
+        final TextFile otherFileBackend = TextFile.forPath(otherFile, Charset.defaultCharset(), dummyVersion);
+
+        // the file resolved a class declared by the other file
+        final String dependency = ClasspathDependencyRecorder.fileDependency(otherFileBackend.getFileId());
+        setupCacheWithDependencies(rs, cl, setOf(sourceFileBackend, otherFileBackend), new TestDependencyRecorder(dependency));
+
+        final FileAnalysisCache unchangedCache = new FileAnalysisCache(newCacheFile);
+        unchangedCache.checkValidity(rs, cl, setOf(sourceFileBackend, otherFileBackend));
+        assertTrue(unchangedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date when the files it depends on are unchanged");
+
+        Files.write(otherFile, listOf("class Other { int field; }"));
+        Files.setLastModifiedTime(otherFile, FileTime.fromMillis(Files.getLastModifiedTime(otherFile).toMillis() + 2000));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend, otherFileBackend));
+        assertFalse(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is up to date after a file it depends on changed");
+    }
+
     @Test
     void testClasspathNonExistingEntryIsIgnored() throws Exception {
         restoreSystemProperties(() -> {
@@ -484,6 +766,26 @@ class FileAnalysisCacheTest {
                 "Cache believes a known, changed file is up to date");
     }
 
+    @Test
+    void testCacheCanBeReusedByTheNextAnalysis() throws IOException {
+        final RuleSets rs = mock(RuleSets.class);
+        final ClassLoader cl = mock(ClassLoader.class);
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertFalse(cache.isUpToDate(sourceFile), "Cache believes a new file is up to date");
+        cache.persist();
+
+        cache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(cache.isUpToDate(sourceFile), "Cache doesn't know the file analyzed by the previous analysis");
+        cache.persist();
+
+        // the cache is still valid after being persisted twice
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile), "Cache believes unmodified file is not up to date");
+    }
+
     private void setupCacheWithFiles(final File cacheFile,
                                      final RuleSets ruleSets,
                                      final ClassLoader classLoader) throws IOException {
@@ -495,6 +797,60 @@ class FileAnalysisCacheTest {
         cache.persist();
     }
 
+    private void setupCacheWithDependencies(final RuleSets ruleSets,
+                                            final ClassLoader classLoader,
+                                            final Set<TextFile> files,
+                                            final ClasspathDependencyRecorder recorder) throws IOException {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(ruleSets, classLoader, files);
+
+        cache.isUpToDate(sourceFile);
+        cache.recordClasspathDependencies(sourceFile, recorder);
+        cache.persist();
+    }
+
+    private File createJar(String fileName, String binaryName, String content) throws IOException {
+        final File jar = tempFolder.resolve(fileName).toFile();
+        try (ZipOutputStream zipOS = new ZipOutputStream(Files.newOutputStream(jar.toPath()))) {
+            zipOS.putNextEntry(new ZipEntry(binaryName.replace('.', '/') + ".class"));
+            zipOS.write(content.getBytes(StandardCharsets.UTF_8));
+            zipOS.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void writeClassFile(Path directory, String binaryName, String content) throws IOException {
+        final Path classFile = directory.resolve(binaryName.replace('.', '/') + ".class");
+        final boolean exists = Files.exists(classFile);
+        final long lastModified = exists ? Files.getLastModifiedTime(classFile).toMillis() : 0;
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, content.getBytes(StandardCharsets.UTF_8));
+        if (exists) {
+            // the content is only read again if the size or modification time changed
+            Files.setLastModifiedTime(classFile, FileTime.fromMillis(lastModified + 2000));
+        }
+    }
+
+    private static final class TestDependencyRecorder implements ClasspathDependencyRecorder {
+
+        private final Set<String> dependencies;
+        private final Map<String, Set<String>> edges = new HashMap<>();
+
+        TestDependencyRecorder(String dependency) {
+            this.dependencies = setOf(dependency);
+        }
+
+        @Override
+        public Set<String> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public Set<String> getDependencies(String dependency) {
+            return edges.getOrDefault(dependency, Collections.emptySet());
+        }
+    }
+
     private File createZipFile(String fileName) throws IOException {
         return createZipFile(fileName, 1);
     }
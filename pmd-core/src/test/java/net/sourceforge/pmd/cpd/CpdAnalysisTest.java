@@ -23,6 +23,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -200,6 +201,40 @@ class CpdAnalysisTest {
         }
     }
 
+    @Test
+    void testSameMatchesWithSeveralThreads() throws Exception {
+        Path dup1 = Paths.get("./" + BASE_TEST_RESOURCE_PATH, "dup1.txt");
+        Path dup2 = Paths.get("./" + BASE_TEST_RESOURCE_PATH, "dup2.txt");
+
+        List<String> sequential = new ArrayList<>();
+        config.setThreads(0);
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            assertTrue(cpd.files().addFile(dup1));
+            assertTrue(cpd.files().addFile(dup2));
+            cpd.performAnalysis(report -> report.getMatches().forEach(m -> sequential.add(describe(m))));
+        }
+        assertFalse(sequential.isEmpty());
+
+        List<String> parallel = new ArrayList<>();
+        config.setThreads(4);
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            assertTrue(cpd.files().addFile(dup1));
+            assertTrue(cpd.files().addFile(dup2));
+            cpd.performAnalysis(report -> report.getMatches().forEach(m -> parallel.add(describe(m))));
+        }
+        assertEquals(sequential, parallel);
+    }
+
+    private static String describe(Match match) {
+        StringBuilder sb = new StringBuilder().append(match.getTokenCount());
+        for (Mark mark : match) {
+            sb.append(' ').append(mark.getLocation().getFileId().getFileName())
+              .append(':').append(mark.getLocation().getStartLine())
+              .append('-').append(mark.getLocation().getEndLine());
+        }
+        return sb.toString();
+    }
+
     @Test
     void testNoSkipLexicalErrors() throws IOException {
         PmdReporter reporter = mock(PmdReporter.class);
@@ -0,0 +1,128 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+class CpdCacheTest {
+
+    private static final FileId FILE_ID = FileId.fromPathLikeString("Foo.dummy");
+
+    @TempDir
+    private Path tempDir;
+
+    private final CPDConfiguration config = new CPDConfiguration();
+    private Path cacheFile;
+
+    @BeforeEach
+    void setup() {
+        config.setOnlyRecognizeLanguage(DummyLanguageModule.getInstance());
+        cacheFile = tempDir.resolve("cpd.cache");
+    }
+
+    @Test
+    void testUnchangedFileIsReadFromCache() throws IOException {
+        TextDocument document = document("public class Foo { int i = 5; String s = \"hello\"; }");
+        Tokens tokens = tokenize(document);
+        List<String> expected = describe(tokens);
+
+        CpdCache cache = new CpdCache(cacheFile, config);
+        cache.load();
+        assertNull(cache.getTokens(document));
+        cache.putTokens(document, tokens);
+        cache.persist();
+
+        CpdCache reloaded = new CpdCache(cacheFile, config);
+        reloaded.load();
+        Tokens cachedTokens = reloaded.getTokens(document);
+        assertNotNull(cachedTokens);
+        assertEquals(expected, describe(cachedTokens));
+    }
+
+    @Test
+    void testChangedFileIsNotReadFromCache() throws IOException {
+        TextDocument document = document("public class Foo { int i = 5; }");
+        CpdCache cache = new CpdCache(cacheFile, config);
+        cache.putTokens(document, tokenize(document));
+        cache.persist();
+
+        CpdCache reloaded = new CpdCache(cacheFile, config);
+        reloaded.load();
+        assertNull(reloaded.getTokens(document("public class Foo { int i = 6; }")));
+    }
+
+    @Test
+    void testCacheIsDiscardedWhenLanguagePropertiesChange() throws IOException {
+        TextDocument document = document("public class Foo { int i = 5; }");
+        CpdCache cache = new CpdCache(cacheFile, config);
+        cache.putTokens(document, tokenize(document));
+        cache.persist();
+
+        config.getLanguageProperties(DummyLanguageModule.getInstance())
+              .setProperty(CpdLanguageProperties.CPD_ANONYMIZE_LITERALS, true);
+        CpdCache reloaded = new CpdCache(cacheFile, config);
+        reloaded.load();
+        assertNull(reloaded.getTokens(document));
+    }
+
+    @Test
+    void testSameMatchesWithCache() throws IOException {
+        config.setMinimumTileSize(10);
+        config.setCacheLocation(cacheFile);
+        Path dup1 = Paths.get("src/test/resources/net/sourceforge/pmd/cpd/files/dup1.txt");
+        Path dup2 = Paths.get("src/test/resources/net/sourceforge/pmd/cpd/files/dup2.txt");
+
+        List<Integer> firstRun = new ArrayList<>();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            cpd.files().addFile(dup1);
+            cpd.files().addFile(dup2);
+            cpd.performAnalysis(report -> report.getMatches().forEach(m -> firstRun.add(m.getTokenCount())));
+        }
+
+        List<Integer> secondRun = new ArrayList<>();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            cpd.files().addFile(dup1);
+            cpd.files().addFile(dup2);
+            cpd.performAnalysis(report -> report.getMatches().forEach(m -> secondRun.add(m.getTokenCount())));
+        }
+        assertEquals(firstRun, secondRun);
+    }
+
+    private static TextDocument document(String code) {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        return TextDocument.readOnlyString(code, FILE_ID, dummy.getDefaultVersion());
+    }
+
+    private Tokens tokenize(TextDocument document) throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(config.getLanguageProperties(dummy));
+        return CpdLexer.tokenize(cpdLexer, document);
+    }
+
+    private static List<String> describe(Tokens tokens) {
+        List<String> result = new ArrayList<>();
+        for (TokenEntry token : tokens.getTokens()) {
+            result.add(token.getImage(tokens) + "@" + token.getBeginLine() + ":" + token.getBeginColumn()
+                           + "-" + token.getEndLine() + ":" + token.getEndColumn());
+        }
+        return result;
+    }
+}
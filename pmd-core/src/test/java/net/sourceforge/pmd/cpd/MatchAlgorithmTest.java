@@ -110,4 +110,31 @@ class MatchAlgorithmTest {
         assertEquals(6, mark3.getLocation().getStartLine());
         assertEquals(fileName, mark3.getLocation().getFileId());
     }
+
+    @Test
+    void testMatchesInDifferentFiles() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        FileId fooName = FileId.fromPathLikeString("Foo.dummy");
+        FileId barName = FileId.fromPathLikeString("Bar.dummy");
+        TextFile foo = TextFile.forCharSeq(getSampleCode(), fooName, dummy.getDefaultVersion());
+        TextFile bar = TextFile.forCharSeq(LINE_3, barName, dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(foo, bar));
+        Tokens tokens = new Tokens();
+        CpdLexer.tokenize(cpdLexer, sourceManager.get(foo), tokens);
+        CpdLexer.tokenize(cpdLexer, sourceManager.get(bar), tokens);
+
+        MatchAlgorithm matchAlgorithm = new MatchAlgorithm(tokens, 5);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+        assertEquals(3, match.getMarkCount());
+
+        Iterator<Mark> marks = match.iterator();
+        assertEquals(fooName, marks.next().getLocation().getFileId());
+        assertEquals(fooName, marks.next().getLocation().getFileId());
+        Mark mark3 = marks.next();
+        assertEquals(barName, mark3.getLocation().getFileId());
+        assertEquals(1, mark3.getLocation().getStartLine());
+    }
 }
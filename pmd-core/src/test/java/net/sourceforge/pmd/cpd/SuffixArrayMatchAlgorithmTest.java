@@ -0,0 +1,127 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+class SuffixArrayMatchAlgorithmTest {
+
+    private static final String LINE_1 = "public class Foo { ";
+    private static final String LINE_2 = " public void bar() {";
+    private static final String LINE_3 = "  System.out.println(\"hello\");";
+    private static final String LINE_4 = "  System.out.println(\"hello\");";
+    private static final String LINE_5 = "  int i = 5";
+    private static final String LINE_6 = "  System.out.print(\"hello\");";
+    private static final String LINE_7 = " }";
+    private static final String LINE_8 = "}";
+
+    private static String getSampleCode() {
+        return LINE_1 + "\n" + LINE_2 + "\n" + LINE_3 + "\n" + LINE_4 + "\n" + LINE_5 + "\n" + LINE_6
+                + "\n" + LINE_7 + "\n" + LINE_8;
+    }
+
+    private static String getMultipleRepetitionsCode() {
+        return "var x = [\n"
+                + "  1, 1, 1, 1, 1, 1, 1, 1,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  2, 2, 2, 2, 2, 2, 2, 2,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  3, 3, 3, 3, 3, 3, 3, 3,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  4, 4, 4, 4, 4, 4, 4, 4\n"
+                + "];";
+    }
+
+    @Test
+    void testSuffixArray() {
+        // b a n a n a $, where $ sorts after the letters
+        int[] text = {2, 1, 3, 1, 3, 1, 4};
+        int[] suffixArray = SuffixArrayMatchAlgorithm.suffixArray(text);
+        assertArrayEquals(new int[] {1, 3, 5, 0, 2, 4, 6}, suffixArray);
+        assertArrayEquals(new int[] {0, 3, 1, 0, 0, 2, 0}, SuffixArrayMatchAlgorithm.lcpArray(text, suffixArray));
+    }
+
+    @Test
+    void testSimple() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        FileId fileName = FileId.fromPathLikeString("Foo.dummy");
+        TextFile textFile = TextFile.forCharSeq(getSampleCode(), fileName, dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(textFile));
+        Tokens tokens = new Tokens();
+        TextDocument sourceCode = sourceManager.get(textFile);
+        CpdLexer.tokenize(cpdLexer, sourceCode, tokens);
+
+        SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, 5);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+
+        Iterator<Mark> marks = match.iterator();
+        Mark mark1 = marks.next();
+        Mark mark2 = marks.next();
+        assertFalse(marks.hasNext());
+
+        assertEquals(3, mark1.getLocation().getStartLine());
+        assertEquals(LINE_3 + "\n", sourceManager.getSlice(mark1).toString());
+        assertEquals(4, mark2.getLocation().getStartLine());
+        assertEquals(LINE_4 + "\n", sourceManager.getSlice(mark2).toString());
+    }
+
+    @Test
+    void testMultipleMatches() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        FileId fileName = FileId.fromPathLikeString("Foo.dummy");
+        TextFile textFile = TextFile.forCharSeq(getMultipleRepetitionsCode(), fileName, dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(textFile));
+        Tokens tokens = new Tokens();
+        TextDocument sourceCode = sourceManager.get(textFile);
+        CpdLexer.tokenize(cpdLexer, sourceCode, tokens);
+
+        SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, 15);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+        assertEquals(3, match.getMarkCount());
+
+        Iterator<Mark> marks = match.iterator();
+        assertEquals(2, marks.next().getLocation().getStartLine());
+        assertEquals(4, marks.next().getLocation().getStartLine());
+        assertEquals(6, marks.next().getLocation().getStartLine());
+    }
+
+    @Test
+    void testDuplicatesDoNotSpanFiles() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        TextFile foo = TextFile.forCharSeq(LINE_3, FileId.fromPathLikeString("Foo.dummy"), dummy.getDefaultVersion());
+        TextFile bar = TextFile.forCharSeq(LINE_3, FileId.fromPathLikeString("Bar.dummy"), dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(foo, bar));
+        Tokens tokens = new Tokens();
+        CpdLexer.tokenize(cpdLexer, sourceManager.get(foo), tokens);
+        CpdLexer.tokenize(cpdLexer, sourceManager.get(bar), tokens);
+
+        SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, 5);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        // the EOF token is not part of the duplicate
+        assertEquals(tokens.size() / 2 - 1, matches.get(0).getTokenCount());
+    }
+}
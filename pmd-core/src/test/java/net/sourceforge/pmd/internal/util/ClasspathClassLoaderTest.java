@@ -15,6 +15,7 @@ import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -99,6 +100,74 @@ class ClasspathClassLoaderTest {
         }
     }
 
+    @Test
+    void loadFromIndexedClasspathInOrder() throws IOException {
+        Path jarPath = prepareCustomJar();
+        Path dir = tempDir.resolve("classes");
+        Files.createDirectories(dir.resolve("net/sourceforge/pmd"));
+        Files.write(dir.resolve(CUSTOM_JAR_RESOURCE), "Dir\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("net/sourceforge/pmd/Sample3.txt"), "Dir\n".getBytes(StandardCharsets.UTF_8));
+        String classpath = dir + File.pathSeparator + jarPath;
+
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(classpath, null)) {
+            // the directory comes first
+            try (InputStream in = loader.getResourceAsStream(CUSTOM_JAR_RESOURCE)) {
+                assertEquals("Dir\n", IOUtil.readToString(in, StandardCharsets.UTF_8));
+            }
+            try (InputStream in = loader.getResourceAsStream(CUSTOM_JAR_RESOURCE2)) {
+                assertEquals(CUSTOM_JAR_RESOURCE_CONTENT, IOUtil.readToString(in, StandardCharsets.UTF_8));
+            }
+            assertNotNull(loader.getResource("net/sourceforge/pmd/Sample3.txt"));
+            assertNull(loader.getResourceAsStream("net/sourceforge/pmd/DoesNotExist.txt"));
+            assertNull(loader.getResourceAsStream("org/example/DoesNotExist.class"));
+
+            assertEquals(2, loader.getClasspathIndexHits());
+            assertEquals(2, loader.getClasspathIndexMisses());
+        }
+    }
+
+    @Test
+    void resourcesAreNotFoundAfterClose() throws IOException {
+        Path jarPath = prepareCustomJar();
+
+        ClasspathClassLoader loader = new ClasspathClassLoader(jarPath.toString(), null);
+        try (InputStream in = loader.getResourceAsStream(CUSTOM_JAR_RESOURCE)) {
+            assertNotNull(in);
+        }
+        loader.close();
+
+        // the index is not built again
+        assertNull(loader.getResourceAsStream(CUSTOM_JAR_RESOURCE2));
+        assertNull(loader.findResource(CUSTOM_JAR_RESOURCE2));
+        assertEquals(0, loader.getClasspathIndexHits());
+    }
+
+    @Test
+    void loadVersionedEntryFromMultiReleaseJar() throws IOException {
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."), "Java 9+ required");
+
+        Path jarPath = tempDir.resolve("multi-release.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\r\nMulti-Release: true\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry(CUSTOM_JAR_RESOURCE));
+            out.write("Base\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("META-INF/versions/9/" + CUSTOM_JAR_RESOURCE));
+            out.write("Versioned\n".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("META-INF/versions/9/" + CUSTOM_JAR_RESOURCE2));
+            out.write("Versioned only\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (ClasspathClassLoader loader = new ClasspathClassLoader(jarPath.toString(), null)) {
+            try (InputStream in = loader.getResourceAsStream(CUSTOM_JAR_RESOURCE)) {
+                assertEquals("Versioned\n", IOUtil.readToString(in, StandardCharsets.UTF_8));
+            }
+            try (InputStream in = loader.getResourceAsStream(CUSTOM_JAR_RESOURCE2)) {
+                assertEquals("Versioned only\n", IOUtil.readToString(in, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     /**
      * @see <a href="https://github.com/pmd/pmd/issues/4899">[java] Parsing failed in ParseLock#doParse() java.io.IOException: Stream closed #4899</a>
      */
@@ -107,6 +107,11 @@ public class DummyLanguageModule extends SimpleLanguageModuleBase implements Cpd
         public ViolationDecorator getViolationDecorator() {
             return (node, data) -> data.put(RuleViolation.PACKAGE_NAME, "foo");
         }
+
+        @Override
+        public boolean isAstSafeForConcurrentReads() {
+            return true;
+        }
     }
 
     /**
@@ -18,9 +18,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.api.io.TempDir;
 
 import net.sourceforge.pmd.PMDConfiguration;
@@ -101,6 +105,80 @@ class FileCollectorTest {
         assertCollected(collector, listOf(FileId.fromPath(foo), FileId.fromPath(bar)));
     }
 
+    @Test
+    void testAddDirectoryNotRecursive() throws IOException {
+        Path root = tempFolder;
+        Path foo = newFile(root, "src/foo.dummy");
+        newFile(root, "src/x/bar.dummy");
+
+        FileCollector collector = newCollector();
+
+        collector.addDirectory(root.resolve("src"), false);
+
+        assertCollected(collector, listOf(FileId.fromPath(foo)));
+    }
+
+    @Test
+    void testAddDirectoryWithListingCache() throws IOException {
+        Path src = tempFolder.resolve("src");
+        Path foo = newFile(src, "foo.dummy");
+        Path bar = newFile(src, "x/bar.dummy");
+        Path listingCache = tempFolder.resolve("cache/listings.bin");
+        FileTime unmodified = FileTime.from(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+        Files.setLastModifiedTime(src, unmodified);
+        Files.setLastModifiedTime(src.resolve("x"), unmodified);
+
+        try (FileCollector collector = newCollector()) {
+            collector.setDirectoryListingCache(listingCache);
+            collector.addDirectory(src);
+            assertCollected(collector, listOf(FileId.fromPath(foo), FileId.fromPath(bar)));
+        }
+        assertTrue(Files.isRegularFile(listingCache));
+
+        // the listing of an unmodified directory is reused
+        Path baz = newFile(src, "baz.dummy");
+        Files.setLastModifiedTime(src, unmodified);
+        try (FileCollector collector = newCollector()) {
+            collector.setDirectoryListingCache(listingCache);
+            collector.addDirectory(src);
+            assertCollected(collector, listOf(FileId.fromPath(foo), FileId.fromPath(bar)));
+        }
+
+        // a modified directory is listed again
+        Files.setLastModifiedTime(src, FileTime.fromMillis(unmodified.toMillis() + 1000));
+        try (FileCollector collector = newCollector()) {
+            collector.setDirectoryListingCache(listingCache);
+            collector.addDirectory(src);
+            assertCollected(collector, listOf(FileId.fromPath(baz), FileId.fromPath(foo), FileId.fromPath(bar)));
+        }
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX) // Symlinks are not well supported under Windows
+    void testListingCacheRechecksSymlinks() throws IOException {
+        Path src = tempFolder.resolve("src");
+        Path foo = newFile(src, "foo.dummy");
+        Path link = Files.createSymbolicLink(src.resolve("link.dummy"), tempFolder.resolve("target.dummy"));
+        Path listingCache = tempFolder.resolve("cache/listings.bin");
+        FileTime unmodified = FileTime.from(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+        Files.setLastModifiedTime(src, unmodified);
+
+        // the link is broken
+        try (FileCollector collector = newCollector()) {
+            collector.setDirectoryListingCache(listingCache);
+            collector.addDirectory(src);
+            assertCollected(collector, listOf(FileId.fromPath(foo)));
+        }
+
+        // creating the target doesn't modify the directory of the link
+        newFile(tempFolder, "target.dummy");
+        try (FileCollector collector = newCollector()) {
+            collector.setDirectoryListingCache(listingCache);
+            collector.addDirectory(src);
+            assertCollected(collector, listOf(FileId.fromPath(foo), FileId.fromPath(link)));
+        }
+    }
+
     @Test
     void testGetApplicableFiles() {
         FileCollector collector = newCollector();
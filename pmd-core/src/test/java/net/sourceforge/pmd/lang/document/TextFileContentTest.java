@@ -11,6 +11,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -132,6 +133,36 @@ class TextFileContentTest {
         assertEquals("\r", content.getLineTerminator());
     }
 
+    @ParameterizedTest
+    @EnumSource
+    void testLineOffsetsAfterBom(TextContentOrigin origin) throws IOException {
+        TextFileContent content = origin.normalize("\ufeffab\ncd");
+        assertEquals(Chars.wrap("ab\ncd"), content.getNormalizedText());
+        assertEquals(TextPos2d.pos2d(2, 1), content.getPositioner().lineColFromOffset(3, true));
+    }
+
+    @Test
+    void testByteBufferMatchesInputStream() throws IOException {
+        String text = "caf\u00e9\r\n\u4e2d\ud83d\ude00 plain ascii text\r\nend";
+        for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16}) {
+            byte[] bytes = text.getBytes(charset);
+            TextFileContent expected = TextFileContent.fromInputStream(new ByteArrayInputStream(bytes), charset, LINESEP_SENTINEL);
+            TextFileContent actual = TextFileContent.fromByteBuffer(ByteBuffer.wrap(bytes), charset, LINESEP_SENTINEL);
+            assertEquals(expected.getNormalizedText(), actual.getNormalizedText());
+            assertEquals(expected.getLineTerminator(), actual.getLineTerminator());
+            assertEquals(expected.getCheckSum(), actual.getCheckSum());
+        }
+    }
+
+    @Test
+    void testByteBufferReplacesMalformedUtf8() throws IOException {
+        byte[] bytes = {'a', (byte) 0xC3, 'b', '\n', (byte) 0xED, (byte) 0xA0, (byte) 0x80};
+        TextFileContent expected = TextFileContent.fromInputStream(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, LINESEP_SENTINEL);
+        TextFileContent actual = TextFileContent.fromByteBuffer(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, LINESEP_SENTINEL);
+        assertEquals(expected.getNormalizedText(), actual.getNormalizedText());
+        assertEquals("\n", actual.getLineTerminator());
+    }
+
     enum TextContentOrigin {
         INPUT_STREAM {
             @Override
@@ -145,6 +176,13 @@ class TextFileContentTest {
                 return content;
             }
         },
+        BYTE_BUFFER {
+            @Override
+            TextFileContent normalize(String text) throws IOException {
+                Charset charset = StandardCharsets.UTF_8;
+                return TextFileContent.fromByteBuffer(ByteBuffer.wrap(text.getBytes(charset)), charset, LINESEP_SENTINEL);
+            }
+        },
         READER {
             @Override
             TextFileContent normalize(String input) throws IOException {
@@ -113,6 +113,23 @@ class TextFilesTest {
         }
     }
 
+    @Test
+    void testLargeNioFileCanBeReplacedAfterReading() throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 2 << 20) {
+            content.append("some content\n");
+        }
+        Path file = makeTmpFile(StandardCharsets.UTF_8, content.toString());
+        try (TextFile tf = TextFile.forPath(file, StandardCharsets.UTF_8, dummyVersion())) {
+            assertEquals(Chars.wrap(content), tf.readContents().getNormalizedText());
+
+            // the file is not mapped anymore
+            tf.writeContents(TextFileContent.fromCharSeq("new content"));
+            assertEquals(Chars.wrap("new content"), tf.readContents().getNormalizedText());
+            Files.delete(file);
+        }
+    }
+
     @Test
     void testNioFileBuilder() throws IOException {
         Path file = makeTmpFile(StandardCharsets.UTF_8, "some content");
@@ -40,6 +40,18 @@ abstract class AbstractPMDProcessorTest {
 
     protected abstract Class<? extends AbstractPMDProcessor> getExpectedImplementation();
 
+    protected boolean isSizeAwareScheduling() {
+        return false;
+    }
+
+    protected boolean isVirtualThreads() {
+        return false;
+    }
+
+    protected boolean isPipelined() {
+        return false;
+    }
+
     @Test
     void shouldUseCorrectProcessorImpl() {
         try (AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(getThreads()))) {
@@ -48,7 +60,7 @@ abstract class AbstractPMDProcessorTest {
     }
 
     private LanguageProcessor.AnalysisTask createTask(int threads) {
-        return InternalApiBridge.createAnalysisTask(null, null, null, threads, null, null, null);
+        return InternalApiBridge.createAnalysisTask(null, null, null, threads, isSizeAwareScheduling(), isVirtualThreads(), isPipelined(), null, null, null);
     }
 
     @Test
@@ -67,6 +79,9 @@ abstract class AbstractPMDProcessorTest {
     protected PmdAnalysis createPmdAnalysis() {
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setThreads(getThreads());
+        configuration.setSizeAwareScheduling(isSizeAwareScheduling());
+        configuration.setVirtualThreads(isVirtualThreads());
+        configuration.setPipelinedAnalysis(isPipelined());
         configuration.setIgnoreIncrementalAnalysis(true);
         reporter = Mockito.spy(configuration.getReporter());
         configuration.setReporter(reporter);
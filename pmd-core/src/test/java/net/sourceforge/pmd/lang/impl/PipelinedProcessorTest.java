@@ -0,0 +1,18 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+class PipelinedProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected boolean isPipelined() {
+        return true;
+    }
+
+    @Override
+    protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
+        return PipelinedProcessor.class;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimingReport;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.RuleContext;
+
+class SizeAwareMultiThreadProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected boolean isSizeAwareScheduling() {
+        return true;
+    }
+
+    @Test
+    void threadUtilizationIsReported() {
+        TimeTracker.startGlobalTracking();
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsException()));
+            pmd.performAnalysis();
+        }
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        Map<String, ?> threads = report.getThreadUtilization();
+        assertTrue(threads.keySet().stream().allMatch(name -> name.startsWith("PmdThread ")), "thread names " + threads.keySet());
+        // two files, each processed by one of the two threads
+        assertTrue(threads.size() >= 1 && threads.size() <= 2, "thread count " + threads.size());
+        assertTrue(report.getAverageThreadUtilization() >= 0 && report.getAverageThreadUtilization() <= 1);
+    }
+
+    @Test
+    void largestFilesStartFirstAndAreStolen() {
+        SlowRule.STARTED_SIZES.clear();
+        SlowRule.THREADS.clear();
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            pmd.files().addFile(TextFile.forCharSeq(StringUtils.repeat('x', 10), FileId.fromPathLikeString("size10.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq(StringUtils.repeat('x', 1000), FileId.fromPathLikeString("size1000.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq(StringUtils.repeat('x', 100), FileId.fromPathLikeString("size100.dummy"), lv));
+            pmd.addRuleSet(RuleSet.forSingleRule(new SlowRule()));
+            pmd.performAnalysis();
+        }
+
+        List<Integer> sizes = new ArrayList<>(SlowRule.STARTED_SIZES);
+        assertEquals(5, sizes.size());
+        // with two threads, the file started at index i may only race with
+        // the one started at index i + 1, and must be larger than the others
+        for (int i = 0; i + 2 < sizes.size(); i++) {
+            assertTrue(sizes.get(i) >= sizes.get(i + 2), "start order by size " + sizes);
+        }
+        assertEquals(1000, Math.max(sizes.get(0), sizes.get(1)), "start order by size " + sizes);
+        // all files were forked by the same worker, the other one must have stolen some
+        assertEquals(2, SlowRule.THREADS.size(), "threads " + SlowRule.THREADS);
+    }
+
+    public static class SlowRule extends AbstractRule {
+        // static, as each thread uses a copy of the rule
+        static final List<Integer> STARTED_SIZES = Collections.synchronizedList(new ArrayList<>());
+        static final Set<String> THREADS = ConcurrentHashMap.newKeySet();
+
+        public SlowRule() {
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            STARTED_SIZES.add(target.getTextDocument().getLength());
+            THREADS.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
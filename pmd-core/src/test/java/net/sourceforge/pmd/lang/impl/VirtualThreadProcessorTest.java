@@ -0,0 +1,29 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+
+import net.sourceforge.pmd.internal.util.VirtualThreads;
+
+class VirtualThreadProcessorTest extends MultiThreadProcessorTest {
+
+    @BeforeEach
+    void requireVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads require Java 21+");
+    }
+
+    @Override
+    protected boolean isVirtualThreads() {
+        return true;
+    }
+
+    @Override
+    protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
+        return VirtualThreadProcessor.class;
+    }
+}
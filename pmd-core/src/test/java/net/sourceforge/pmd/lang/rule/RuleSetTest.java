@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -42,6 +43,7 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
@@ -49,6 +51,7 @@ import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.RuleSet.RuleSetBuilder;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
 import net.sourceforge.pmd.reporting.RuleContext;
@@ -450,6 +453,34 @@ class RuleSetTest {
         assertEquals(1, report.getViolations().size(), "Violations");
     }
 
+    @Test
+    void testFusedDispatchWithMultipleRuleSets() throws Exception {
+        Rule rule = new FooRule();
+        rule.setName("FooRule1");
+        rule.setLanguage(dummyLanguage());
+
+        RuleSet ruleSet1 = createRuleSetBuilder("RuleSet1")
+            .withFileExclusions(Pattern.compile(".*/package/.*"))
+            .addRule(rule)
+            .build();
+        RuleSet ruleSet2 = createRuleSetBuilder("RuleSet2").addRule(rule).build();
+
+        RuleSets ruleSets = new RuleSets(listOf(ruleSet1, ruleSet2));
+        ruleSets.setFusedRuleDispatch(true);
+
+        Report report = Report.buildReport(ctx -> ruleSets.apply(makeCompilationUnits(), ctx));
+        assertEquals(2, report.getViolations().size(), "Violations");
+
+        // the dispatch table is rebuilt when the applicable rules change
+        report = Report.buildReport(ctx -> ruleSets.apply(makeCompilationUnits("C:\\package\\RandomClass.java"), ctx));
+        assertEquals(1, report.getViolations().size(), "Violations");
+
+        // copies keep the dispatch mode
+        RuleSets copy = new RuleSets(ruleSets);
+        report = Report.buildReport(ctx -> copy.apply(makeCompilationUnits(), ctx));
+        assertEquals(2, report.getViolations().size(), "Violations");
+    }
+
     @Test
     void copyConstructorDeepCopies() {
         Rule rule = new FooRule();
@@ -577,4 +608,134 @@ class RuleSetTest {
 
         assertThat(report.getViolations(), hasSize(1));
     }
+
+    @Test
+    void ruleExceptionShouldNotStopProcessingFileWithFusedDispatch() throws Exception {
+        RuleSet ruleset = createRuleSetBuilder("ruleExceptionShouldBeReported").addRule(new MockRule() {
+            @Override
+            public void apply(Node target, RuleContext ctx) {
+                throw new IllegalStateException("Test exception while applying rule");
+            }
+        }).addRule(new MockRule() {
+
+            @Override
+            protected @NonNull RuleTargetSelector buildTargetSelector() {
+                return RuleTargetSelector.forXPathNames(setOf("dummyRootNode"));
+            }
+
+            @Override
+            public void apply(Node target, RuleContext ctx) {
+                ctx.addViolationWithMessage(target, "Test violation of the second rule in the ruleset");
+            }
+        }).build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        ruleSets.setFusedRuleDispatch(true);
+        Report report = Report.buildReport(ctx -> ruleSets.apply(makeCompilationUnits(), ctx));
+
+        List<ProcessingError> errors = report.getProcessingErrors();
+        assertThat(errors, hasSize(1));
+        ProcessingError error = errors.get(0);
+        assertThat(error.getMsg(), containsString("java.lang.IllegalStateException: Test exception while applying rule\n"));
+        assertThat(error.getMsg(), containsString("Rule applied on node=dummyRootNode[@Image=Foo]"));
+
+        assertThat(report.getViolations(), hasSize(1));
+    }
+
+    @Test
+    void testFusedDispatchOnDeepTree() throws Exception {
+        DummyRootNode root = (DummyRootNode) makeCompilationUnits();
+        // deep enough to overflow the call stack if the tree were visited recursively
+        int depth = 100_000;
+        DummyNode parent = root;
+        List<DummyNode> chain = new ArrayList<>(depth);
+        for (int i = 0; i < depth; i++) {
+            DummyNode child = new DummyNode();
+            parent.addChild(child, parent.getNumChildren());
+            chain.add(child);
+            parent = child;
+        }
+
+        List<Node> visited = new ArrayList<>();
+        RuleSet ruleset = createRuleSetBuilder("deep").addRule(new MockRule() {
+            @Override
+            protected @NonNull RuleTargetSelector buildTargetSelector() {
+                return RuleTargetSelector.forXPathNames(setOf("dummyNode"));
+            }
+
+            @Override
+            public void apply(Node target, RuleContext ctx) {
+                visited.add(target);
+            }
+        }).build();
+
+        RuleSets ruleSets = new RuleSets(ruleset);
+        ruleSets.setFusedRuleDispatch(true);
+        Report report = Report.buildReport(ctx -> ruleSets.apply(root, ctx));
+
+        assertThat(report.getProcessingErrors(), hasSize(0));
+        assertEquals(chain, visited);
+    }
+
+    @Test
+    void testParallelRuleApplicationKeepsViolationOrder() throws Exception {
+        RuleSetBuilder builder = createRuleSetBuilder("parallel");
+        for (int i = 0; i < 10; i++) {
+            String message = "violation " + i;
+            Rule rule = new MockRule() {
+                @Override
+                public void apply(Node target, RuleContext ctx) {
+                    ctx.addViolationWithMessage(target, message);
+                }
+            };
+            rule.setName("Rule" + i);
+            builder.addRule(rule);
+        }
+        builder.addRule(new MockRule() {
+            @Override
+            public void apply(Node target, RuleContext ctx) {
+                throw new IllegalStateException("Test exception while applying rule");
+            }
+        });
+        RuleSet ruleset = builder.build();
+
+        List<String> expected = new ArrayList<>();
+        RuleSets sequential = new RuleSets(ruleset);
+        sequential.apply(makeCompilationUnits(), new RecordingListener(expected));
+
+        List<String> actual = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RuleSets parallel = new RuleSets(ruleset);
+            parallel.setParallelRuleThreshold(1);
+            parallel.setParallelRuleExecutor(pool);
+            parallel.apply(makeCompilationUnits(), new RecordingListener(actual));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(expected, actual);
+        assertThat(actual.stream().filter(it -> it.startsWith("violation")).count(), equalTo(10L));
+        assertThat(actual.stream().filter(it -> it.startsWith("error")).count(), equalTo(1L));
+    }
+
+    /** Records the events in the order in which they are received. */
+    private static final class RecordingListener implements FileAnalysisListener {
+
+        private final List<String> events;
+
+        RecordingListener(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onRuleViolation(RuleViolation violation) {
+            events.add("violation: " + violation.getDescription());
+        }
+
+        @Override
+        public void onError(ProcessingError error) {
+            events.add("error: " + error.getError().getMessage());
+        }
+    }
 }
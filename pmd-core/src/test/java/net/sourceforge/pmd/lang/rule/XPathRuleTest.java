@@ -10,11 +10,16 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.Collections;
+
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.DummyNodeWithDeprecatedAttribute;
@@ -133,6 +138,19 @@ class XPathRuleTest {
         assertThat(report.getViolations(), hasSize(1));
     }
 
+    @Test
+    void testEvaluationPathIsInTimingReport() {
+        TimeTracker.startGlobalTracking();
+        try {
+            // not in the compiled subset, there are no rule chain visits
+            executeRule(makeXPath("//*[pmd:startLine(.)=1]"), newRoot("src/Foo.cls"));
+        } finally {
+            TimingReport timingReport = TimeTracker.stopGlobalTracking();
+            assertEquals(Collections.singleton("name (Saxon)"),
+                         timingReport.getLabeledMeasurements(TimedOperationCategory.XPATH_EVALUATION).keySet());
+        }
+    }
+
     Report executeRule(Rule rule, DummyNode node) {
         return getReportForRuleApply(rule, node);
     }
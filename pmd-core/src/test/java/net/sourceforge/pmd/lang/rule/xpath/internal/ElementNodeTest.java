@@ -64,6 +64,42 @@ class ElementNodeTest {
 
     }
 
+    @Test
+    void testCompareOrderOfNestedNodes() {
+        DummyRootNode root = helper.parse("(a(b(c))(d))");
+
+        DummyNode a = root.getChild(0);
+        DummyNode b = a.getChild(0);
+        DummyNode c = b.getChild(0);
+        DummyNode d = a.getChild(1);
+
+        AstTreeInfo treeInfo = new AstTreeInfo(root, Configuration.newConfiguration());
+        // wrappers are created lazily, not in document order
+        AstElementNode elementD = treeInfo.findWrapperFor(d);
+        AstElementNode elementC = treeInfo.findWrapperFor(c);
+        AstElementNode elementA = treeInfo.findWrapperFor(a);
+
+        assertTrue(elementA.compareOrder(elementC) < 0);
+        assertTrue(elementC.compareOrder(elementA) > 0);
+        assertTrue(elementC.compareOrder(elementD) < 0);
+        assertTrue(elementD.compareOrder(elementC) > 0);
+        assertEquals(0, elementC.compareOrder(elementC));
+    }
+
+    @Test
+    void testAttributesAreSharedBetweenTrees() {
+        DummyRootNode root = helper.parse("(a)");
+        DummyNode a = root.getChild(0);
+
+        AstTreeInfo treeInfo1 = new AstTreeInfo(root, Configuration.newConfiguration());
+        AstTreeInfo treeInfo2 = new AstTreeInfo(root, Configuration.newConfiguration());
+
+        assertSame(treeInfo1.findWrapperFor(a).getLightAttributes().get("Image"),
+                   treeInfo2.findWrapperFor(a).getLightAttributes().get("Image"));
+        assertSame(treeInfo1.findWrapperFor(a).getAttributes().get("Image").getUnderlyingNode(),
+                   treeInfo2.findWrapperFor(a).getLightAttributes().get("Image"));
+    }
+
     @Test
     void verifyTextNodeType() {
         DummyRootNode root = helper.parse("(foo)(#text)");
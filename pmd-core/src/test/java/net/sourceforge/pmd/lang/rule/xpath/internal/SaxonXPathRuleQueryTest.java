@@ -11,9 +11,11 @@ import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -389,6 +391,52 @@ class SaxonXPathRuleQueryTest {
         assertTrue(ruleChainVisits.contains("ForStatement"));
     }
 
+    @Test
+    void compiledQueries() {
+        DummyRootNode tree = helper.parse("(a(b)(c(b)))");
+
+        assertCompiledQuery(2, "//dummyNode[@Image = 'b']", tree);
+        assertCompiledQuery(3, "//dummyNode[@Image = ('b', 'c')]", tree);
+        assertCompiledQuery(2, "//dummyNode[@Image != 'b' and dummyNode]", tree);
+        assertCompiledQuery(3, "//dummyNode[not(@Image = 'b')]/dummyNode", tree);
+        assertCompiledQuery(2, "//dummyRootNode//dummyNode[@Image = 'b']", tree);
+        assertCompiledQuery(4, "//dummyNode[@BeginLine >= 1]", tree);
+        assertCompiledQuery(1, "//dummyNode[pmd-dummy:imageIs('c')] | //dummyRootNode[@Image = 'x']", tree);
+    }
+
+    @Test
+    void compiledQueryWithProperty() {
+        RootNode dummy = new DummyNodeWithListAndEnum();
+
+        PropertyDescriptor<List<String>> prop = PropertyFactory.stringListProperty("prop")
+                                                               .defaultValues("FOO", "BAR")
+                                                               .desc("description").build();
+
+        SaxonXPathRuleQuery query = createQuery("//dummyRootNode[@Enum = $prop]", prop);
+        assertTrue(query.isCompiled());
+        assertEquals(1, query.evaluate(dummy).size());
+    }
+
+    @Test
+    void queriesOutsideOfCompiledSubset() {
+        assertFalse(createQuery("//dummyNode[1]").isCompiled());
+        assertFalse(createQuery("//dummyNode[string-length(@Image) > 1]").isCompiled());
+        assertFalse(createQuery("//dummyNode[pmd-dummy:imageIs(@Image)]").isCompiled());
+        // not using the rule chain
+        assertFalse(createQuery("//dummyNode[//ClassOrInterfaceType]").isCompiled());
+    }
+
+    @Test
+    void compiledQueryFallsBackToSaxon() {
+        DummyRootNode tree = helper.parse("(a(b))");
+        SaxonXPathRuleQuery query = createQuery("//dummyNode[@Image = 1]");
+        assertTrue(query.isCompiled());
+
+        // comparing a string with a number is a type error, reported by saxon
+        assertThrows(PmdXPathException.class, () -> query.evaluate(tree.getChild(0)));
+        assertFalse(query.isCompiled());
+    }
+
     private static void assertExpression(String expected, Expression actual) {
         assertEquals(normalizeExprDump(expected),
                      normalizeExprDump(actual.toString()));
@@ -408,6 +456,16 @@ class SaxonXPathRuleQueryTest {
         return result;
     }
 
+    private static void assertCompiledQuery(int resultSize, String xpath, Node root) {
+        SaxonXPathRuleQuery query = createQuery(xpath);
+        assertTrue(query.isCompiled(), "Query should be compiled");
+        List<Node> result = new ArrayList<>();
+        root.descendantsOrSelf()
+            .filter(it -> query.getRuleChainVisits().contains(it.getXPathNodeName()))
+            .forEach(it -> result.addAll(query.evaluate(it)));
+        assertEquals(resultSize, result.size(), "Wrong number of matched nodes");
+    }
+
     private static SaxonXPathRuleQuery createQuery(String xpath, PropertyDescriptor<?>... descriptors) {
         Map<PropertyDescriptor<?>, Object> props = new HashMap<>();
         if (descriptors != null) {
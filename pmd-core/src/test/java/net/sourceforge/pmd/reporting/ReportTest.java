@@ -9,8 +9,12 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.function.Consumer;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -25,6 +29,7 @@ import net.sourceforge.pmd.lang.rule.MockRule;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.XMLRenderer;
+import net.sourceforge.pmd.reporting.Report.GlobalReportBuilderListener;
 
 class ReportTest {
 
@@ -102,6 +107,35 @@ class ReportTest {
         assertEquals(2, union.getViolations().size());
     }
 
+    @Test
+    void testGlobalReportMergesFileReportsInOrder() throws Exception {
+        Rule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        LanguageVersion dummyVersion = DummyLanguageModule.getInstance().getDefaultVersion();
+        TextFile fileA = TextFile.forCharSeq("dummyText", FileId.fromPathLikeString("a"), dummyVersion);
+        TextFile fileB = TextFile.forCharSeq("dummyText", FileId.fromPathLikeString("b"), dummyVersion);
+
+        Report report;
+        try (GlobalReportBuilderListener listener = new GlobalReportBuilderListener()) {
+            // both files are open at the same time, as if analysed by two threads
+            FileAnalysisListener listenerB = listener.startFileAnalysis(fileB);
+            FileAnalysisListener listenerA = listener.startFileAnalysis(fileA);
+            listenerB.onRuleViolation(violation(rule, getNode(3, 1, "b")));
+            listenerA.onRuleViolation(violation(rule, getNode(2, 1, "a")));
+            listenerB.onRuleViolation(violation(rule, getNode(1, 1, "b")));
+            listenerA.onRuleViolation(violation(rule, getNode(1, 1, "a")));
+            listenerA.close();
+            listenerB.close();
+            listener.close();
+            report = listener.getResult();
+        }
+
+        List<String> locations = new ArrayList<>();
+        for (RuleViolation violation : report.getViolations()) {
+            locations.add(violation.getFileId().getOriginalPath() + ":" + violation.getBeginLine());
+        }
+        assertEquals(listOf("a:1", "a:2", "b:1", "b:3"), locations);
+    }
+
     public static @NonNull RuleViolation violation(Rule rule, FileLocation loc2) {
         return violation(rule, loc2, rule.getMessage());
     }
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -17,10 +18,15 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.ASTAnnotation;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTImportDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTMemberValue;
 import net.sourceforge.pmd.lang.java.ast.ASTMemberValuePair;
+import net.sourceforge.pmd.lang.java.ast.ASTTypeDeclaration;
 import net.sourceforge.pmd.lang.java.ast.Annotatable;
+import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.lang.java.rule.errorprone.ImplicitSwitchFallThroughRule;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.types.TypeTestUtil;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.Report;
@@ -49,6 +55,10 @@ import net.sourceforge.pmd.reporting.ViolationSuppressor;
  */
 final class AnnotationSuppressionUtil {
 
+    private static final String SUPPRESS_WARNINGS = "SuppressWarnings";
+    private static final String SUPPRESS_WARNINGS_FQCN = "java.lang.SuppressWarnings";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     private static final Set<String> UNUSED_RULES
         = new HashSet<>(Arrays.asList("UnusedPrivateField", "UnusedLocalVariable", "UnusedPrivateMethod",
                                       "UnusedFormalParameter", "UnusedAssignment", "SingularField"));
@@ -120,7 +130,7 @@ final class AnnotationSuppressionUtil {
 
     // @formatter:on
     private static boolean annotationSuppresses(ASTAnnotation annotation, Rule rule) {
-        if (TypeTestUtil.isA(SuppressWarnings.class, annotation)) {
+        if (isSuppressWarnings(annotation)) {
             for (ASTMemberValue value : annotation.getFlatValue(ASTMemberValuePair.VALUE_ATTR)) {
                 Object constVal = value.getConstValue();
                 if (constVal instanceof String) {
@@ -141,4 +151,42 @@ final class AnnotationSuppressionUtil {
 
         return false;
     }
+
+    private static boolean isSuppressWarnings(ASTAnnotation annotation) {
+        if (InternalApiBridge.getProcessor(annotation).isProcessed(SemanticRequirement.SYMBOL_TABLE)) {
+            return TypeTestUtil.isA(SuppressWarnings.class, annotation);
+        }
+        // names were not resolved, as no rule requires it
+        return isJavaLangSuppressWarnings(annotation);
+    }
+
+    /**
+     * Resolves the name of the annotation without the symbol table, like
+     * the compiler does. A simple name refers to a type declared in the file,
+     * or else to a single-type import, or else to a type of the same package,
+     * before java.lang. Types of on-demand imports cannot shadow java.lang,
+     * the name would be ambiguous.
+     */
+    private static boolean isJavaLangSuppressWarnings(ASTAnnotation annotation) {
+        String name = WHITESPACE.matcher(annotation.getTypeNode().getText()).replaceAll("");
+        if (SUPPRESS_WARNINGS_FQCN.equals(name)) {
+            return true;
+        } else if (!SUPPRESS_WARNINGS.equals(name)) {
+            return false;
+        }
+
+        ASTCompilationUnit acu = annotation.getRoot();
+        if (acu.descendants(ASTTypeDeclaration.class).crossFindBoundaries()
+               .any(it -> SUPPRESS_WARNINGS.equals(it.getSimpleName()))) {
+            return false;
+        }
+        for (ASTImportDeclaration importDecl : acu.children(ASTImportDeclaration.class)) {
+            if (!importDecl.isImportOnDemand() && SUPPRESS_WARNINGS.equals(importDecl.getImportedSimpleName())) {
+                return SUPPRESS_WARNINGS_FQCN.equals(importDecl.getImportedName());
+            }
+        }
+        String packagePrefix = acu.getPackageName().isEmpty() ? "" : acu.getPackageName() + ".";
+        JClassSymbol inPackage = acu.getTypeSystem().getClassSymbol(packagePrefix + SUPPRESS_WARNINGS);
+        return inPackage == null || inPackage.isUnresolved();
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.cache.internal.ClasspathDependencyRecorder;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.symbols.AnnotableSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JConstructorSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JFieldSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JModuleSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JTypeParameterOwnerSymbol;
+import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
+import net.sourceforge.pmd.lang.java.symbols.SymbolicValue.SymAnnot;
+import net.sourceforge.pmd.lang.java.types.JArrayType;
+import net.sourceforge.pmd.lang.java.types.JClassType;
+import net.sourceforge.pmd.lang.java.types.JIntersectionType;
+import net.sourceforge.pmd.lang.java.types.JTypeMirror;
+import net.sourceforge.pmd.lang.java.types.JTypeVar;
+import net.sourceforge.pmd.lang.java.types.JWildcardType;
+import net.sourceforge.pmd.lang.java.types.Substitution;
+
+/**
+ * Resolves the classes of a file from the auxclasspath, then from the
+ * other files of the analysis, and records them for the analysis cache.
+ * Classes are also resolved lazily by rules, so the dependencies are
+ * only requested once all rules have been applied.
+ *
+ * <p>The type system is shared by all files, so the classes it reaches
+ * from the resolved ones, eg the types of their members, are not looked
+ * up through this resolver. Instead, the dependencies of a class are
+ * all the classes it references: its supertypes, enclosing and nested
+ * classes, annotations and the types in the signatures of its members.
+ * This over-approximates what type resolution may use. A class of another
+ * file of the analysis is recorded as a dependency on that file, which
+ * depends on the classes all its declarations reference.
+ *
+ * <p>Classes of the Java runtime are not recorded, the file depends on
+ * {@link ClasspathDependencyRecorder#RUNTIME_CLASSES} instead.
+ */
+final class DependencyRecordingSymbolResolver implements SymbolResolver, ClasspathDependencyRecorder {
+
+    private final SymbolResolver classpathResolver;
+    private final @Nullable SymbolResolver sourceResolver;
+    private final FileId fileId;
+    private final Set<String> dependencies = ConcurrentHashMap.newKeySet();
+    /** The class symbol or compilation unit of the dependencies whose own dependencies can be requested. */
+    private final Map<String, Object> resolvedDependencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param classpathResolver Resolves the classes of the auxclasspath
+     * @param sourceResolver    Resolves the classes of the analyzed files that are not on the auxclasspath, if any
+     * @param fileId            The file that is analyzed
+     */
+    DependencyRecordingSymbolResolver(SymbolResolver classpathResolver, @Nullable SymbolResolver sourceResolver, FileId fileId) {
+        this.classpathResolver = classpathResolver;
+        this.sourceResolver = sourceResolver;
+        this.fileId = fileId;
+        dependencies.add(RUNTIME_CLASSES);
+    }
+
+    @Override
+    public @Nullable JClassSymbol resolveClassFromBinaryName(@NonNull String binaryName) {
+        JClassSymbol symbol = classpathResolver.resolveClassFromBinaryName(binaryName);
+        if (symbol == null && !isRuntimeClass(binaryName)) {
+            // may be added to the auxclasspath
+            dependencies.add(binaryName);
+            if (sourceResolver != null) {
+                symbol = sourceResolver.resolveClassFromBinaryName(binaryName);
+                if (symbol == null) {
+                    // may be declared by a file added to the analysis
+                    dependencies.add(ANALYZED_FILES);
+                }
+            }
+        }
+        if (symbol != null) {
+            addDependency(symbol, dependencies);
+        }
+        return symbol;
+    }
+
+    @Override
+    public @Nullable JModuleSymbol resolveModule(@NonNull String moduleName) {
+        return classpathResolver.resolveModule(moduleName);
+    }
+
+    @Override
+    public void logStats() {
+        classpathResolver.logStats();
+        if (sourceResolver != null) {
+            sourceResolver.logStats();
+        }
+    }
+
+    @Override
+    public Set<String> getDependencies() {
+        return new HashSet<>(dependencies);
+    }
+
+    @Override
+    public Set<String> getDependencies(String dependency) {
+        Object resolved = resolvedDependencies.get(dependency);
+        Set<JClassSymbol> referenced = new HashSet<>();
+        if (resolved instanceof JClassSymbol) {
+            collectReferencedClasses((JClassSymbol) resolved, referenced);
+        } else if (resolved instanceof ASTCompilationUnit) {
+            Deque<JClassSymbol> declared = new ArrayDeque<>();
+            ((ASTCompilationUnit) resolved).getTypeDeclarations().forEach(decl -> declared.add(decl.getSymbol()));
+            while (!declared.isEmpty()) {
+                JClassSymbol symbol = declared.pop();
+                collectReferencedClasses(symbol, referenced);
+                declared.addAll(symbol.getDeclaredClasses());
+            }
+        } else {
+            return Collections.emptySet();
+        }
+
+        Set<String> result = new HashSet<>();
+        for (JClassSymbol symbol : referenced) {
+            addDependency(symbol, result);
+        }
+        result.remove(dependency);
+        return result;
+    }
+
+    /**
+     * Adds the dependency on a class to the given set. A class of another
+     * file of the analysis is a dependency on that file, and on its binary
+     * name, which could be added to the auxclasspath.
+     */
+    private void addDependency(JClassSymbol symbol, Set<String> result) {
+        String binaryName = symbol.getBinaryName();
+        if (symbol.isUnresolved()) {
+            if (!isRuntimeClass(binaryName)) {
+                result.add(binaryName);
+                if (sourceResolver != null) {
+                    result.add(ANALYZED_FILES);
+                }
+            }
+            return;
+        }
+        JavaNode node = symbol.tryGetNode();
+        if (node != null) {
+            FileId file = node.getTextDocument().getFileId();
+            if (!file.equals(fileId)) {
+                String dependency = ClasspathDependencyRecorder.fileDependency(file);
+                resolvedDependencies.putIfAbsent(dependency, node.getRoot());
+                result.add(dependency);
+                result.add(binaryName);
+            }
+        } else if (!isRuntimeClass(binaryName)) {
+            resolvedDependencies.putIfAbsent(binaryName, symbol);
+            result.add(binaryName);
+        }
+    }
+
+    private static boolean isRuntimeClass(String binaryName) {
+        // can't be on the auxclasspath
+        return binaryName.startsWith("java.");
+    }
+
+    /**
+     * Collects the classes referenced by the declaration of a class,
+     * except the bodies of its methods.
+     */
+    private static void collectReferencedClasses(JClassSymbol symbol, Set<JClassSymbol> result) {
+        collectClasses(symbol.getSuperclassType(Substitution.EMPTY), result);
+        for (JClassType superItf : symbol.getSuperInterfaceTypes(Substitution.EMPTY)) {
+            collectClasses(superItf, result);
+        }
+        JClassSymbol enclosing = symbol.getEnclosingClass();
+        if (enclosing != null) {
+            result.add(enclosing);
+        }
+        result.addAll(symbol.getDeclaredClasses());
+        collectTypeParameterBounds(symbol, result);
+        collectAnnotations(symbol, result);
+
+        for (JFieldSymbol field : symbol.getDeclaredFields()) {
+            collectClasses(field.getTypeMirror(Substitution.EMPTY), result);
+            collectAnnotations(field, result);
+        }
+        for (JMethodSymbol method : symbol.getDeclaredMethods()) {
+            collectClasses(method.getReturnType(Substitution.EMPTY), result);
+            collectExecutableSignature(method, result);
+        }
+        for (JConstructorSymbol ctor : symbol.getConstructors()) {
+            collectExecutableSignature(ctor, result);
+        }
+    }
+
+    private static void collectExecutableSignature(JExecutableSymbol executable, Set<JClassSymbol> result) {
+        for (JTypeMirror formal : executable.getFormalParameterTypes(Substitution.EMPTY)) {
+            collectClasses(formal, result);
+        }
+        for (JTypeMirror thrown : executable.getThrownExceptionTypes(Substitution.EMPTY)) {
+            collectClasses(thrown, result);
+        }
+        collectTypeParameterBounds(executable, result);
+        collectAnnotations(executable, result);
+    }
+
+    private static void collectTypeParameterBounds(JTypeParameterOwnerSymbol owner, Set<JClassSymbol> result) {
+        for (JTypeVar typeParameter : owner.getTypeParameters()) {
+            collectClasses(typeParameter.getUpperBound(), result);
+        }
+    }
+
+    private static void collectAnnotations(AnnotableSymbol symbol, Set<JClassSymbol> result) {
+        for (SymAnnot annotation : symbol.getDeclaredAnnotations()) {
+            result.add(annotation.getAnnotationSymbol());
+        }
+    }
+
+    /**
+     * Collects the classes of a type. Type variables are skipped, their
+     * bounds are collected where they are declared.
+     */
+    private static void collectClasses(@Nullable JTypeMirror type, Set<JClassSymbol> result) {
+        if (type instanceof JClassType) {
+            JClassType classType = (JClassType) type;
+            result.add(classType.getSymbol());
+            for (JTypeMirror typeArg : classType.getTypeArgs()) {
+                collectClasses(typeArg, result);
+            }
+            collectClasses(classType.getEnclosingType(), result);
+        } else if (type instanceof JArrayType) {
+            collectClasses(((JArrayType) type).getComponentType(), result);
+        } else if (type instanceof JWildcardType) {
+            collectClasses(((JWildcardType) type).getBound(), result);
+        } else if (type instanceof JIntersectionType) {
+            for (JTypeMirror component : ((JIntersectionType) type).getComponents()) {
+                collectClasses(component, result);
+            }
+        }
+    }
+}
@@ -6,15 +6,21 @@ package net.sourceforge.pmd.lang.java.internal;
 
 import static net.sourceforge.pmd.lang.java.symbols.table.internal.JavaSemanticErrors.CANNOT_RESOLVE_SYMBOL;
 
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.cache.internal.ClasspathDependencyRecorder;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JTypeDeclSymbol;
 import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
@@ -45,14 +51,22 @@ public final class JavaAstProcessor {
 
     private final UnresolvedClassStore unresolvedTypes;
     private final ASTCompilationUnit acu;
+    private Set<SemanticRequirement> requirements = SemanticRequirements.ALL;
 
 
     private JavaAstProcessor(JavaLanguageProcessor globalProc,
                              SemanticErrorReporter logger,
                              TypeInferenceLogger typeInfLogger,
-                             ASTCompilationUnit acu) {
-
-        this.symResolver = globalProc.getTypeSystem().bootstrapResolver();
+                             ASTCompilationUnit acu,
+                             @Nullable SymbolResolver sourceResolver) {
+
+        // the classes of the analyzed source tree are only used if they're not on the auxclasspath
+        DependencyRecordingSymbolResolver recordingResolver =
+            new DependencyRecordingSymbolResolver(globalProc.getTypeSystem().bootstrapResolver(),
+                                                  sourceResolver,
+                                                  acu.getTextDocument().getFileId());
+        acu.getUserMap().set(ClasspathDependencyRecorder.KEY, recordingResolver);
+        this.symResolver = recordingResolver;
         this.globalProc = globalProc;
         this.logger = logger;
         this.typeInferenceLogger = typeInfLogger;
@@ -116,9 +130,28 @@ public final class JavaAstProcessor {
     }
 
     /**
-     * Performs semantic analysis on the given source file.
+     * Returns whether the passes that compute the given information were
+     * run on this file. They may have been skipped if no rule requires them.
+     */
+    public boolean isProcessed(SemanticRequirement requirement) {
+        return requirements.contains(requirement);
+    }
+
+    /**
+     * Performs semantic analysis on the given source file. Only the
+     * passes required by the rules of the analysis are run.
      */
     public void process() {
+        process(globalProc.getSemanticRequirements(), symbols -> { });
+    }
+
+    /**
+     * Runs the passes. The symbols declared in the file are given to
+     * the callback as soon as they are created, before the passes that
+     * resolve the signatures of the declarations.
+     */
+    private void process(Set<SemanticRequirement> requirements, Consumer<SymbolResolver> publishSymbols) {
+        this.requirements = requirements;
 
         SymbolResolver knownSyms = TimeTracker.bench("Symbol resolution", () -> SymbolResolutionPass.traverse(this, acu));
 
@@ -129,14 +162,25 @@ public final class JavaAstProcessor {
         // as scopes depend on type resolution in some cases.
         InternalApiBridge.initTypeResolver(acu, this, typeInferenceLogger);
 
-        TimeTracker.bench("Symbol table resolution", () -> SymbolTableResolver.traverse(this, acu));
-        TimeTracker.bench("AST disambiguation", () -> InternalApiBridge.disambigWithCtx(NodeStream.of(acu), ReferenceCtx.root(this, acu)));
+        publishSymbols.accept(knownSyms);
+
+        runPass(SemanticRequirement.SYMBOL_TABLE, "Symbol table resolution", () -> SymbolTableResolver.traverse(this, acu));
+        runPass(SemanticRequirement.SYMBOL_TABLE, "AST disambiguation", () -> InternalApiBridge.disambigWithCtx(NodeStream.of(acu), ReferenceCtx.root(this, acu)));
         if (globalProc.getProperties().getProperty(JavaLanguageProperties.INTERNAL_DO_STRICT_TYPERES)) {
-            TimeTracker.bench("Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
+            runPass(SemanticRequirement.TYPES, "Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
         }
         TimeTracker.bench("Comment assignment", () -> InternalApiBridge.assignComments(acu));
-        TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
-        TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
+        runPass(SemanticRequirement.USAGES, "Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
+        runPass(SemanticRequirement.TYPES, "Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
+    }
+
+    private void runPass(SemanticRequirement requirement, String label, Runnable pass) {
+        if (isProcessed(requirement)) {
+            TimeTracker.bench(label, pass);
+        } else {
+            // counted, so that the timing report shows which passes were skipped
+            TimeTracker.bench(label + " (skipped)", () -> { });
+        }
     }
 
     public TypeSystem getTypeSystem() {
@@ -160,9 +204,36 @@ public final class JavaAstProcessor {
             globalProcessor,
             semanticErrorReporter,
             typeInfLogger,
-            ast
+            ast,
+            globalProcessor.newSourceSymbolResolver()
         );
 
         astProc.process();
     }
+
+    /**
+     * Processes a file of the analyzed source tree that declares classes
+     * used by another file, see {@link SourceSymbolIndex}. Only the passes
+     * that resolve the signatures of its declarations are run.
+     *
+     * <p>The resolver for the classes declared in the file is published
+     * before these passes run, so that the files it depends on can
+     * resolve its classes in turn if they reference them.
+     *
+     * @param publishSymbols Receives a symbol resolver for the classes declared in the file
+     */
+    static void processDeclarations(JavaLanguageProcessor globalProcessor,
+                                    ASTCompilationUnit ast,
+                                    SymbolResolver sourceResolver,
+                                    Consumer<SymbolResolver> publishSymbols) {
+        JavaAstProcessor astProc = new JavaAstProcessor(
+            globalProcessor,
+            SemanticErrorReporter.noop(),
+            TypeInferenceLogger.noop(),
+            ast,
+            sourceResolver
+        );
+
+        astProc.process(EnumSet.of(SemanticRequirement.SYMBOL_TABLE), publishSymbols);
+    }
 }
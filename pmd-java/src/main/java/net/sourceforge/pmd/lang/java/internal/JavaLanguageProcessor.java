@@ -4,24 +4,34 @@
 
 package net.sourceforge.pmd.lang.java.internal;
 
+import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.Parser;
 import net.sourceforge.pmd.lang.impl.BatchLanguageProcessor;
 import net.sourceforge.pmd.lang.java.ast.JavaParser;
 import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties.InferenceLoggingVerbosity;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.BaseContextNodeTestFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetCommentOnFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetModifiersFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MatchesSignatureFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MetricFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.NodeIsFunction;
+import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.ClassStubDatabase;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.SimpleLogger;
@@ -44,6 +54,11 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     private final JavaParser parser;
     private final JavaParser parserWithoutProcessing;
     private TypeSystem typeSystem;
+    private @Nullable ClassStubDatabase stubDatabase;
+    /** Requirements of the rules of the running analysis, all of them if none is running. */
+    private volatile Set<SemanticRequirement> semanticRequirements = SemanticRequirements.ALL;
+    /** Classes declared in the files of the running analysis, if enabled. */
+    private volatile @Nullable SourceSymbolIndex sourceSymbols;
 
     public JavaLanguageProcessor(JavaLanguageProperties properties, TypeSystem typeSystem) {
         super(properties);
@@ -55,10 +70,25 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     }
 
     public JavaLanguageProcessor(JavaLanguageProperties properties) {
-        this(properties, TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this(properties, openStubDatabase(properties));
         LOG.debug("Using analysis classloader: {}", properties.getAnalysisClassLoader());
     }
 
+    private JavaLanguageProcessor(JavaLanguageProperties properties, @Nullable ClassStubDatabase stubDatabase) {
+        this(properties, stubDatabase != null
+                         ? TypeSystem.usingClasspath(stubDatabase)
+                         : TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this.stubDatabase = stubDatabase;
+    }
+
+    private static @Nullable ClassStubDatabase openStubDatabase(JavaLanguageProperties properties) {
+        String stubDatabase = properties.getProperty(JavaLanguageProperties.INTERNAL_STUB_DATABASE);
+        if (StringUtils.isBlank(stubDatabase)) {
+            return null;
+        }
+        return ClassStubDatabase.open(Paths.get(stubDatabase), properties.getAnalysisClassLoader());
+    }
+
     @Override
     public @NonNull LanguageVersionHandler services() {
         return this;
@@ -77,6 +107,49 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
         return typeSystem;
     }
 
+    /**
+     * Only the semantic passes required by the rules of the analysis are
+     * run on the files it parses. If {@link JavaLanguageProperties#INTERNAL_SOURCE_SYMBOL_INDEX}
+     * is set, the classes declared in the files of the analysis are indexed
+     * beforehand. The analysis cache then tracks the files each file
+     * resolved classes from.
+     */
+    @Override
+    public @NonNull AutoCloseable launchAnalysis(@NonNull AnalysisTask task) {
+        Set<SemanticRequirement> requirements = SemanticRequirements.of(task.getRulesets(), getLanguage());
+        if (requirements.size() < SemanticRequirements.ALL.size()) {
+            LOG.debug("Semantic analysis passes for {} are skipped, as no rule requires them",
+                      EnumSet.complementOf(EnumSet.copyOf(requirements)));
+        }
+        semanticRequirements = requirements;
+        if (requirements.contains(SemanticRequirement.SYMBOL_TABLE)
+            && getProperties().getProperty(JavaLanguageProperties.INTERNAL_SOURCE_SYMBOL_INDEX)) {
+            sourceSymbols = TimeTracker.bench("Source symbol index", () -> SourceSymbolIndex.build(this, task));
+        }
+        AutoCloseable analysis = super.launchAnalysis(task);
+        return () -> {
+            try {
+                analysis.close();
+            } finally {
+                semanticRequirements = SemanticRequirements.ALL;
+                sourceSymbols = null;
+            }
+        };
+    }
+
+    Set<SemanticRequirement> getSemanticRequirements() {
+        return semanticRequirements;
+    }
+
+    /**
+     * Returns a resolver for the classes declared in the files of the
+     * running analysis, or null if they are not indexed.
+     */
+    @Nullable SymbolResolver newSourceSymbolResolver() {
+        SourceSymbolIndex index = sourceSymbols;
+        return index == null ? null : index.newResolver();
+    }
+
     TypeInferenceLogger newTypeInfLogger() {
         InferenceLoggingVerbosity verbosity = getProperties().getProperty(JavaLanguageProperties.INTERNAL_INFERENCE_LOGGING_VERBOSITY);
         if (verbosity == InferenceLoggingVerbosity.VERBOSE) {
@@ -133,6 +206,9 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     @Override
     public void close() throws Exception {
         this.typeSystem.logStats();
+        if (stubDatabase != null) {
+            stubDatabase.close();
+        }
         super.close();
     }
 }
@@ -35,11 +35,34 @@ public class JavaLanguageProperties extends JvmLanguagePropertyBundle {
                        .defaultValue(true)
                        .build();
 
+    /**
+     * @since 7.7.0
+     */
+    static final PropertyDescriptor<String> INTERNAL_STUB_DATABASE =
+        PropertyFactory.stringProperty("xStubDatabase")
+                       .desc("File in which the class files of the auxclasspath and of the JDK are kept between runs, "
+                             + "without their code. Empty to read class files from the auxclasspath on every run.")
+                       .defaultValue("")
+                       .build();
+
+    /**
+     * @since 7.7.0
+     */
+    static final PropertyDescriptor<Boolean> INTERNAL_SOURCE_SYMBOL_INDEX =
+        PropertyFactory.booleanProperty("xSourceSymbolIndex")
+                       .desc("Whether to resolve the classes declared in the analyzed files that are not on the auxclasspath "
+                             + "from their source. These files are parsed again when their classes are used, "
+                             + "and the results of the analysis cache are not reused.")
+                       .defaultValue(false)
+                       .build();
+
 
     public JavaLanguageProperties() {
         super(JavaLanguageModule.getInstance());
         definePropertyDescriptor(INTERNAL_INFERENCE_LOGGING_VERBOSITY);
         definePropertyDescriptor(INTERNAL_DO_STRICT_TYPERES);
+        definePropertyDescriptor(INTERNAL_STUB_DATABASE);
+        definePropertyDescriptor(INTERNAL_SOURCE_SYMBOL_INDEX);
         definePropertyDescriptor(CpdLanguageProperties.CPD_IGNORE_METADATA);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_IDENTIFIERS);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_LITERALS);
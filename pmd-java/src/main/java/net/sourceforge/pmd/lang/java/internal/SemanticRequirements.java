@@ -0,0 +1,120 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
+
+/**
+ * Computes the {@linkplain SemanticRequirement semantic requirements}
+ * of the rules of an analysis.
+ *
+ * <p>Rules written in Java declare their requirements. The requirements of
+ * XPath rules are inferred from their expression, conservatively: an
+ * expression that uses a function of the {@code pmd-java} namespace, or an
+ * attribute that is not known to be syntactic, requires everything. An
+ * expression that only uses syntactic attributes still depends on the
+ * disambiguation of names, if it tests for a node that disambiguation
+ * creates, or for any node.
+ */
+final class SemanticRequirements {
+
+    static final Set<SemanticRequirement> ALL = Collections.unmodifiableSet(EnumSet.allOf(SemanticRequirement.class));
+
+    /** Attributes that only depend on the syntax of the code. */
+    private static final Set<String> SYNTACTIC_ATTRIBUTES = new HashSet<>(Arrays.asList(
+        "Abstract", "AccessType", "Anonymous", "Arity", "Base", "BeginColumn", "BeginLine", "BinaryName",
+        "CanonicalName", "Default", "DoubleLiteral", "Else", "Empty", "EndColumn", "EndLine", "Final",
+        "FloatLiteral", "Image", "ImportedName", "IntLiteral", "Interface", "Kind", "LiteralText", "Local",
+        "LongLiteral", "MethodName", "Name", "Nested", "Operator", "PackageName", "PackagePrivate", "Private",
+        "Protected", "Public", "RegularClass", "Shorthand", "SimpleName", "Size", "Static", "TextBlock", "True",
+        "TypeInferred", "ValueAsInt", "ValueAsLong", "Varargs", "Visibility", "Void"
+    ));
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'[^']*'|\"[^\"]*\"");
+    private static final Pattern ATTRIBUTE = Pattern.compile("@([\\w-]+|\\*)");
+    /** Node tests that may match nodes created or replaced by the disambiguation of names. */
+    private static final Pattern DISAMBIGUATED_NODE_TEST = Pattern.compile(
+        "\\b(AmbiguousName|FieldAccess|VariableAccess|TypeExpression|ClassType)\\b|\\*|node\\(\\)|name\\(");
+
+    private SemanticRequirements() {
+        // utility class
+    }
+
+    /**
+     * Returns the requirements of the rules for the given language,
+     * including the implied requirements.
+     */
+    static Set<SemanticRequirement> of(RuleSets ruleSets, Language language) {
+        Set<SemanticRequirement> requirements = EnumSet.noneOf(SemanticRequirement.class);
+        for (Rule rule : ruleSets.getAllRules()) {
+            if (language.equals(rule.getLanguage())) {
+                requirements.addAll(of(rule));
+                if (requirements.size() == ALL.size()) {
+                    break;
+                }
+            }
+        }
+        return withImplied(requirements);
+    }
+
+    /**
+     * Returns the requirements of a rule, without the implied requirements.
+     */
+    static Set<SemanticRequirement> of(Rule rule) {
+        while (rule instanceof RuleReference) {
+            rule = ((RuleReference) rule).getRule();
+        }
+        if (rule instanceof AbstractJavaRule) {
+            return ((AbstractJavaRule) rule).getSemanticRequirements();
+        } else if (rule instanceof XPathRule) {
+            return ofXPath(((XPathRule) rule).getXPathExpression());
+        }
+        return ALL;
+    }
+
+    /**
+     * Returns the requirements of an XPath expression, without the
+     * implied requirements.
+     */
+    static Set<SemanticRequirement> ofXPath(String xpath) {
+        String expr = STRING_LITERAL.matcher(xpath).replaceAll("''");
+        if (expr.contains("pmd-java:") || expr.contains("attribute::")) {
+            return ALL;
+        }
+        Matcher attributes = ATTRIBUTE.matcher(expr);
+        while (attributes.find()) {
+            if (!SYNTACTIC_ATTRIBUTES.contains(attributes.group(1))) {
+                return ALL;
+            }
+        }
+        if (DISAMBIGUATED_NODE_TEST.matcher(expr).find()) {
+            return EnumSet.of(SemanticRequirement.SYMBOL_TABLE);
+        }
+        return EnumSet.noneOf(SemanticRequirement.class);
+    }
+
+    private static Set<SemanticRequirement> withImplied(Set<SemanticRequirement> requirements) {
+        Set<SemanticRequirement> result = EnumSet.noneOf(SemanticRequirement.class);
+        for (SemanticRequirement requirement : requirements) {
+            result.add(requirement);
+            result.addAll(requirement.getImpliedRequirements());
+        }
+        return result;
+    }
+}
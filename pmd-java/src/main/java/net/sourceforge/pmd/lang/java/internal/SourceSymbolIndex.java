@@ -0,0 +1,366 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static net.sourceforge.pmd.lang.document.InternalApiBridge.reopenTextFile;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.TokenManager;
+import net.sourceforge.pmd.lang.ast.FileAnalysisException;
+import net.sourceforge.pmd.lang.ast.Parser.ParserTask;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.ast.impl.javacc.CharStream;
+import net.sourceforge.pmd.lang.ast.impl.javacc.JavaccToken;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
+import net.sourceforge.pmd.lang.java.ast.JavaTokenKinds;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JModuleSymbol;
+import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
+
+/**
+ * Index of the classes declared in the Java files of an analysis. This
+ * lets a file resolve the classes of the analyzed source tree that are
+ * not on the auxclasspath, eg because the project was not compiled.
+ *
+ * <p>The index is built before the analysis starts, by scanning the
+ * tokens of every file for class declarations, without parsing them.
+ * Only the declared names are kept. When a class of the index is resolved
+ * for the first time, its file is read again and parsed, and the passes that resolve the signatures of its declarations
+ * are run. Its symbols are then backed by that AST, like the symbols of
+ * the analyzed file. They are available as soon as they are created,
+ * before these passes run, so files that reference each other resolve
+ * each other's classes.
+ *
+ * <p>These ASTs are not thread-safe. They are cached per thread, or per
+ * analyzed file if the analysis is pipelined or uses virtual threads, as
+ * the AST of a file may then be used by several threads. The number of
+ * ASTs cached by all resolvers of the index is bounded, the oldest ones
+ * are dropped first.
+ */
+final class SourceSymbolIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SourceSymbolIndex.class);
+
+    /** Number of parsed files the resolvers of an index keep in total. */
+    private static final int MAX_PARSED_FILES = 1024;
+    /** Value of the brace stack for braces that do not open a class body. */
+    private static final String NOT_A_CLASS_BODY = "";
+
+    private static final SymbolResolver UNPARSEABLE = new SymbolResolver() {
+        @Override
+        public @Nullable JClassSymbol resolveClassFromBinaryName(@NonNull String binaryName) {
+            return null;
+        }
+
+        @Override
+        public @Nullable JModuleSymbol resolveModule(@NonNull String moduleName) {
+            return null;
+        }
+
+        @Override
+        public void logStats() {
+            // nothing to log
+        }
+    };
+
+    private final JavaLanguageProcessor processor;
+    private final LanguageProcessorRegistry lpRegistry;
+    private final Map<String, SourceFile> filesByBinaryName;
+    private final @Nullable Map<Thread, SourceResolver> resolversByThread;
+    /** Parsed files cached by the resolvers, oldest first. */
+    private final Queue<ParsedFile> parsedFiles = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger parsedFileCount = new AtomicInteger();
+
+    private SourceSymbolIndex(JavaLanguageProcessor processor,
+                              LanguageProcessorRegistry lpRegistry,
+                              Map<String, SourceFile> filesByBinaryName,
+                              boolean cachePerThread) {
+        this.processor = processor;
+        this.lpRegistry = lpRegistry;
+        this.filesByBinaryName = filesByBinaryName;
+        this.resolversByThread = cachePerThread ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * Indexes the classes declared in the Java files of the analysis.
+     * Files are scanned in parallel.
+     */
+    static SourceSymbolIndex build(JavaLanguageProcessor processor, AnalysisTask task) {
+        Map<String, SourceFile> index = new ConcurrentHashMap<>();
+        task.getFiles().parallelStream()
+            .filter(file -> processor.getLanguage().equals(file.getLanguageVersion().getLanguage()))
+            .forEach(file -> indexFile(file, index));
+        LOG.debug("Indexed {} classes declared in the analyzed files", index.size());
+
+        boolean cachePerThread = task.getThreadCount() <= 0 || !task.isPipelined() && !task.isVirtualThreads();
+        return new SourceSymbolIndex(processor, task.getLpRegistry(), index, cachePerThread);
+    }
+
+    private static void indexFile(TextFile file, Map<String, SourceFile> index) {
+        SourceFile source = new SourceFile(file);
+        try (TextDocument doc = source.read()) {
+            for (String binaryName : scanDeclarations(doc)) {
+                index.putIfAbsent(binaryName, source);
+            }
+        } catch (IOException | FileAnalysisException e) {
+            LOG.debug("Cannot index the classes declared in {}", file.getFileId().getOriginalPath(), e);
+        }
+    }
+
+    /**
+     * Returns a resolver for the classes of the index. The resolver may
+     * only be used by the analysis of a single file.
+     */
+    SymbolResolver newResolver() {
+        if (resolversByThread != null) {
+            return resolversByThread.computeIfAbsent(Thread.currentThread(), t -> new SourceResolver());
+        }
+        return new SourceResolver();
+    }
+
+    /**
+     * Returns the binary names of the classes declared in a file, except
+     * local and anonymous classes. The tokens of the file are scanned, it
+     * is not parsed.
+     */
+    static List<String> scanDeclarations(TextDocument doc) {
+        TokenManager<JavaccToken> tokens = JavaTokenKinds.newTokenManager(CharStream.create(doc, InternalApiBridge.javaTokenDoc()));
+        List<String> declared = new ArrayList<>();
+        // binary name of the class whose body each enclosing brace opens
+        Deque<String> braces = new ArrayDeque<>();
+        StringBuilder packageName = new StringBuilder();
+        boolean inPackageDecl = false;
+        int parens = 0;
+
+        boolean expectName = false;
+        boolean expectRecordName = false;
+        boolean expectRecordHeader = false;
+        // binary name of the class whose header is being scanned
+        String header = null;
+        int headerParens = 0;
+
+        int prevKind = JavaTokenKinds.EOF;
+        for (JavaccToken token = tokens.getNextToken(); token.kind != JavaTokenKinds.EOF; token = tokens.getNextToken()) {
+            final int kind = token.kind;
+            final boolean inClassScope = braces.isEmpty() || !NOT_A_CLASS_BODY.equals(braces.peek());
+
+            if (expectRecordHeader) {
+                // a record name is followed by its components or type parameters
+                expectRecordHeader = false;
+                if (kind != JavaTokenKinds.LPAREN && kind != JavaTokenKinds.LT) {
+                    header = null;
+                }
+            }
+
+            if (inPackageDecl) {
+                if (kind == JavaTokenKinds.SEMICOLON) {
+                    inPackageDecl = false;
+                } else {
+                    packageName.append(token.getImage());
+                }
+            } else if (expectName && kind == JavaTokenKinds.IDENTIFIER) {
+                String enclosing = braces.isEmpty()
+                                   ? packageName.length() == 0 ? "" : packageName + "."
+                                   : braces.peek() + "$";
+                header = enclosing + token.getImage();
+                headerParens = parens;
+                expectRecordHeader = expectRecordName;
+                expectName = false;
+            } else {
+                expectName = false;
+                switch (kind) {
+                case JavaTokenKinds.PACKAGE:
+                    inPackageDecl = braces.isEmpty();
+                    break;
+                case JavaTokenKinds.CLASS:
+                    // not a class literal
+                    expectName = inClassScope && prevKind != JavaTokenKinds.DOT;
+                    expectRecordName = false;
+                    break;
+                case JavaTokenKinds.INTERFACE:
+                    expectName = inClassScope;
+                    expectRecordName = false;
+                    break;
+                case JavaTokenKinds.IDENTIFIER:
+                    // enum and record are contextual keywords
+                    expectRecordName = "record".equals(token.getImage());
+                    expectName = inClassScope && (expectRecordName || "enum".equals(token.getImage()));
+                    break;
+                case JavaTokenKinds.LPAREN:
+                    parens++;
+                    break;
+                case JavaTokenKinds.RPAREN:
+                    parens--;
+                    break;
+                case JavaTokenKinds.SEMICOLON:
+                    if (parens == headerParens) {
+                        header = null;
+                    }
+                    break;
+                case JavaTokenKinds.LBRACE:
+                    if (header != null && parens == headerParens) {
+                        declared.add(header);
+                        braces.push(header);
+                        header = null;
+                    } else {
+                        braces.push(NOT_A_CLASS_BODY);
+                    }
+                    break;
+                case JavaTokenKinds.RBRACE:
+                    if (!braces.isEmpty()) {
+                        braces.pop();
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            prevKind = kind;
+        }
+        return declared;
+    }
+
+    /**
+     * Caches the symbols of a parsed file in a resolver, and drops the
+     * oldest parsed file of the index if there are too many.
+     */
+    private void cacheParsedFile(SourceResolver resolver, SourceFile file, SymbolResolver symbols) {
+        if (resolver.parsed.put(file, symbols) != null) {
+            return;
+        }
+        parsedFiles.add(new ParsedFile(resolver, file));
+        if (parsedFileCount.incrementAndGet() > MAX_PARSED_FILES) {
+            ParsedFile oldest = parsedFiles.poll();
+            if (oldest != null) {
+                parsedFileCount.decrementAndGet();
+                oldest.resolver.parsed.remove(oldest.file);
+            }
+        }
+    }
+
+    /** An indexed file. Its text is not kept, it is read again when it is parsed. */
+    private static final class SourceFile {
+
+        private final TextFile file;
+
+        SourceFile(TextFile file) {
+            this.file = file;
+        }
+
+        /** Reads the file, which may have been closed once it was analyzed. */
+        TextDocument read() throws IOException {
+            TextFile copy = reopenTextFile(file);
+            if (copy == null) {
+                throw new IOException("Cannot read the file again");
+            }
+            return TextDocument.create(copy);
+        }
+
+        FileId getFileId() {
+            return file.getFileId();
+        }
+    }
+
+    /** A parsed file cached by a resolver. */
+    private static final class ParsedFile {
+
+        private final SourceResolver resolver;
+        private final SourceFile file;
+
+        ParsedFile(SourceResolver resolver, SourceFile file) {
+            this.resolver = resolver;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Resolves the classes of the index, parsing their file on first use.
+     * Not thread-safe.
+     */
+    private final class SourceResolver implements SymbolResolver {
+
+        /** Also accessed by other threads, that drop the oldest parsed files. */
+        private final Map<SourceFile, SymbolResolver> parsed = new ConcurrentHashMap<>();
+        private final Set<SourceFile> inProgress = new HashSet<>();
+
+        @Override
+        public @Nullable JClassSymbol resolveClassFromBinaryName(@NonNull String binaryName) {
+            SourceFile file = filesByBinaryName.get(binaryName);
+            if (file == null) {
+                return null;
+            }
+            SymbolResolver symbols = parsed.get(file);
+            if (symbols == null) {
+                if (inProgress.contains(file)) {
+                    // the file is being parsed, its symbols are not created yet
+                    return null;
+                }
+                symbols = TimeTracker.bench("Source symbol resolution", () -> parse(file));
+            }
+            return symbols.resolveClassFromBinaryName(binaryName);
+        }
+
+        /**
+         * Parses a file and resolves its declarations. Its symbols are
+         * published as soon as they are created, so that the files its
+         * declarations depend on may use them, eg if they reference each
+         * other.
+         */
+        private SymbolResolver parse(SourceFile file) {
+            inProgress.add(file);
+            SymbolResolver[] published = {null};
+            try (TextDocument doc = file.read()) {
+                ParserTask task = new ParserTask(doc, SemanticErrorReporter.noop(), lpRegistry);
+                ASTCompilationUnit root = processor.getParserWithoutProcessing().parse(task);
+                JavaAstProcessor.processDeclarations(processor, root, this, symbols -> {
+                    published[0] = symbols;
+                    cacheParsedFile(this, file, symbols);
+                });
+            } catch (IOException | FileAnalysisException e) {
+                LOG.debug("Cannot parse {} to resolve the classes it declares", file.getFileId().getOriginalPath(), e);
+            } finally {
+                inProgress.remove(file);
+            }
+            SymbolResolver symbols = published[0] == null ? UNPARSEABLE : published[0];
+            // may have been dropped by the files parsed in the meantime
+            cacheParsedFile(this, file, symbols);
+            return symbols;
+        }
+
+        @Override
+        public @Nullable JModuleSymbol resolveModule(@NonNull String moduleName) {
+            return null;
+        }
+
+        @Override
+        public void logStats() {
+            LOG.trace("Keeps {} parsed files of the analyzed source tree", parsed.size());
+        }
+    }
+}
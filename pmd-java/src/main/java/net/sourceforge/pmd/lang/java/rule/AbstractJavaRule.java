@@ -4,6 +4,10 @@
 
 package net.sourceforge.pmd.lang.java.rule;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+import net.sourceforge.pmd.annotation.Experimental;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.JavaVisitor;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
@@ -30,4 +34,19 @@ public abstract class AbstractJavaRule extends AbstractRule implements JavaVisit
         target.acceptVisitor(this, ctx);
     }
 
+    /**
+     * Returns the semantic information about the AST that this rule uses.
+     * The passes of the parser that compute information that no rule of
+     * the analysis requires are skipped. By default, a rule requires all
+     * of it. Rules that only look at the syntax of the code should override
+     * this method to return a smaller set, possibly empty. Requirements
+     * implied by the returned ones need not be included.
+     *
+     * @since 7.7.0
+     */
+    @Experimental
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return EnumSet.allOf(SemanticRequirement.class);
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.rule;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.java.ast.ASTAmbiguousName;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableId;
+import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.ast.TypeNode;
+
+/**
+ * Semantic information about the AST that a rule uses. During an
+ * analysis, the Java parser only runs the passes that compute the
+ * information required by at least one rule, see {@link AbstractJavaRule#getSemanticRequirements()}.
+ *
+ * <p>Without any requirement, the AST is the syntactic tree, with
+ * comments assigned to nodes and symbols assigned to declarations. Names
+ * are not disambiguated: a name like {@code a.b} is an {@link ASTAmbiguousName},
+ * and neither symbol tables nor types are available.
+ *
+ * @since 7.7.0
+ */
+@Experimental
+public enum SemanticRequirement {
+
+    /**
+     * Symbol tables ({@link JavaNode#getSymbolTable()}), and the
+     * disambiguation of names with them, which replaces {@link ASTAmbiguousName}
+     * nodes with field accesses, variable accesses or type expressions.
+     */
+    SYMBOL_TABLE,
+
+    /**
+     * Types of expressions and of other {@link TypeNode}s, and the
+     * resolution of overridden methods ({@link ASTMethodDeclaration#isOverridden()}).
+     */
+    TYPES(SYMBOL_TABLE),
+
+    /**
+     * Usages of variables ({@link ASTVariableId#getLocalUsages()}).
+     */
+    USAGES(SYMBOL_TABLE);
+
+    private final Set<SemanticRequirement> implied;
+
+    SemanticRequirement(SemanticRequirement... implied) {
+        Set<SemanticRequirement> closure = EnumSet.noneOf(SemanticRequirement.class);
+        for (SemanticRequirement requirement : implied) {
+            closure.add(requirement);
+            closure.addAll(requirement.implied);
+        }
+        this.implied = Collections.unmodifiableSet(closure);
+    }
+
+    /**
+     * Returns the requirements that this requirement depends on, excluding
+     * itself. For instance, types can only be computed if names are
+     * resolved with the {@linkplain #SYMBOL_TABLE symbol table}.
+     */
+    public Set<SemanticRequirement> getImpliedRequirements() {
+        return implied;
+    }
+}
@@ -4,10 +4,14 @@
 
 package net.sourceforge.pmd.lang.java.rule.codestyle;
 
+import java.util.Collections;
+import java.util.Set;
+
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTReturnStatement;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 
 public class OnlyOneReturnRule extends AbstractJavaRulechainRule {
 
@@ -29,4 +33,9 @@ public class OnlyOneReturnRule extends AbstractJavaRulechainRule {
         }
         return null;
     }
+
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
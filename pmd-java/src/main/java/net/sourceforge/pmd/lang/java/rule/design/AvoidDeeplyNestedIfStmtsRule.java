@@ -6,9 +6,13 @@ package net.sourceforge.pmd.lang.java.rule.design;
 
 import static net.sourceforge.pmd.properties.NumericConstraints.positive;
 
+import java.util.Collections;
+import java.util.Set;
+
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.ASTIfStatement;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
 
@@ -46,4 +50,9 @@ public class AvoidDeeplyNestedIfStmtsRule extends AbstractJavaRule {
         depth--;
         return data;
     }
+
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
@@ -6,6 +6,8 @@ package net.sourceforge.pmd.lang.java.rule.documentation;
 
 import static net.sourceforge.pmd.properties.PropertyFactory.regexProperty;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.lang.ast.Node;
@@ -13,6 +15,7 @@ import net.sourceforge.pmd.lang.document.Chars;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.JavaComment;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.RuleContext;
 
@@ -63,4 +66,8 @@ public class CommentContentRule extends AbstractJavaRulechainRule {
         }
     }
 
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
@@ -6,10 +6,14 @@ package net.sourceforge.pmd.lang.java.rule.documentation;
 
 import static net.sourceforge.pmd.properties.NumericConstraints.positive;
 
+import java.util.Collections;
+import java.util.Set;
+
 import net.sourceforge.pmd.lang.document.Chars;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.JavaComment;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
 import net.sourceforge.pmd.reporting.RuleContext;
@@ -95,4 +99,8 @@ public class CommentSizeRule extends AbstractJavaRulechainRule {
         }
     }
 
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
@@ -6,8 +6,12 @@ package net.sourceforge.pmd.lang.java.rule.errorprone;
 
 import static net.sourceforge.pmd.properties.PropertyFactory.booleanProperty;
 
+import java.util.Collections;
+import java.util.Set;
+
 import net.sourceforge.pmd.lang.java.ast.ASTNumericLiteral;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 
@@ -38,4 +42,9 @@ public class AvoidUsingOctalValuesRule extends AbstractJavaRulechainRule {
         long value = node.getConstValue().longValue();
         return 0 <= value && value <= 7;
     }
+
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
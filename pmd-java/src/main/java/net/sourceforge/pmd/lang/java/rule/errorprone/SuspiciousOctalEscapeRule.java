@@ -4,8 +4,12 @@
 
 package net.sourceforge.pmd.lang.java.rule.errorprone;
 
+import java.util.Collections;
+import java.util.Set;
+
 import net.sourceforge.pmd.lang.java.ast.ASTStringLiteral;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 
 public class SuspiciousOctalEscapeRule extends AbstractJavaRulechainRule {
 
@@ -89,4 +93,9 @@ public class SuspiciousOctalEscapeRule extends AbstractJavaRulechainRule {
     private boolean isDecimal(char c) {
         return c >= '0' && c <= '9';
     }
+
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
@@ -6,11 +6,14 @@ package net.sourceforge.pmd.lang.java.rule.errorprone;
 
 import static java.util.Arrays.asList;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.pmd.lang.java.ast.ASTExpression;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodCall;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
 
 public class UnnecessaryCaseChangeRule extends AbstractJavaRulechainRule {
 
@@ -44,4 +47,9 @@ public class UnnecessaryCaseChangeRule extends AbstractJavaRulechainRule {
         }
         return false;
     }
+
+    @Override
+    public Set<SemanticRequirement> getSemanticRequirements() {
+        return Collections.emptySet();
+    }
 }
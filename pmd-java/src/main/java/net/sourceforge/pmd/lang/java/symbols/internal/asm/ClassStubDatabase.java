@@ -0,0 +1,428 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.internal.util.IOUtil;
+
+/**
+ * A {@link Classpath} that keeps the class files found on another classpath
+ * in a file, to reuse them in the next runs. Class files are stored without
+ * their code and debug information, which {@link ClassStub} does not read,
+ * so that they are much smaller and faster to parse. The file is memory
+ * mapped, so that a warm run only reads the classes it needs, without
+ * opening any jar or the runtime image of the JDK.
+ *
+ * <p>The database is only valid for the classpath it was built with. Its
+ * fingerprint includes the path, size and modification time of each jar
+ * and of the runtime image. If it changes, the database is rebuilt from
+ * scratch. Classes found in directories are not stored, as directories
+ * may change without notice, and for the same reason, missing classes are
+ * only remembered if the classpath contains no directory.
+ *
+ * <p>Classes are added as they are requested, the database is written
+ * when it is {@linkplain #close() closed}, if new classes were found.
+ */
+public final class ClassStubDatabase implements Classpath, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassStubDatabase.class);
+    private static final int FORMAT_VERSION = 1;
+    private static final String CLASS_SUFFIX = ".class";
+    /** Length recorded for a resource that is not on the classpath. */
+    private static final int MISSING = -1;
+    private static final byte[] MISSING_CLASS = new byte[0];
+
+    private final Path databaseFile;
+    private final String fingerprint;
+    private final Classpath classpath;
+    private final Predicate<String> isStable;
+
+    /** Offset and length of the stored class files in {@link #storedData}, packed in a long. */
+    private final Map<String, Long> storedIndex = new HashMap<>();
+    private ByteBuffer storedData;
+    /** Mapping of the database file, which {@link #storedData} is a slice of. */
+    private MappedByteBuffer storedMapping;
+    /** Class files found on the classpath during this run. */
+    private final Map<String, byte[]> newEntries = new ConcurrentHashMap<>();
+
+    /**
+     * @param databaseFile File in which the class files are kept
+     * @param fingerprint  Identity of the classpath, the stored class files are discarded if it changes
+     * @param classpath    Classpath from which missing class files are read
+     * @param isStable     Whether the presence or absence of the resource on the classpath may be stored
+     */
+    ClassStubDatabase(Path databaseFile, String fingerprint, Classpath classpath, Predicate<String> isStable) {
+        this.databaseFile = databaseFile;
+        this.fingerprint = fingerprint;
+        this.classpath = classpath;
+        this.isStable = isStable;
+        load();
+    }
+
+    /**
+     * Opens the database for the classpath of the given class loader.
+     * Returns null if the classpath of the class loader cannot be
+     * determined, in which case class files must be read from the
+     * class loader directly.
+     *
+     * @param databaseFile File in which the class files are kept
+     * @param classLoader  Class loader of the analysis
+     */
+    public static @Nullable ClassStubDatabase open(Path databaseFile, ClassLoader classLoader) {
+        StringBuilder fingerprint = new StringBuilder();
+        boolean hasDirectories;
+        try {
+            hasDirectories = appendFingerprint(fingerprint, classLoader);
+        } catch (IOException | URISyntaxException e) {
+            LOG.warn("Cannot determine the classpath of {}, not using the class stub database: {}", classLoader, e.toString());
+            return null;
+        }
+        if (fingerprint.length() == 0) {
+            LOG.debug("Unknown classpath of {}, not using the class stub database", classLoader);
+            return null;
+        }
+        // a class file found in a directory may change, a class
+        // file found in a jar or in the runtime image may not
+        Predicate<String> isStable = hasDirectories
+            ? resourcePath -> {
+                URL url = classLoader.getResource(resourcePath);
+                return url != null && !"file".equals(url.getProtocol());
+            }
+            : resourcePath -> true;
+        return new ClassStubDatabase(databaseFile, fingerprint.toString(), Classpath.forClassLoader(classLoader), isStable);
+    }
+
+    /**
+     * Appends the entries of the classpath of the class loader and its
+     * parents to the fingerprint. Returns true if the classpath contains
+     * directories. Appends nothing if a class loader is unknown.
+     */
+    private static boolean appendFingerprint(StringBuilder fingerprint, ClassLoader classLoader) throws IOException, URISyntaxException {
+        boolean hasDirectories = false;
+        appendEntry(fingerprint, Paths.get(System.getProperty("java.home")).resolve("lib/modules"));
+        fingerprint.append(System.getProperty("java.version")).append('\n');
+
+        ClassLoader systemLoader = ClassLoader.getSystemClassLoader();
+        for (ClassLoader loader = classLoader; loader != null && loader != systemLoader.getParent(); loader = loader.getParent()) {
+            if (loader instanceof ClasspathClassLoader && ((ClasspathClassLoader) loader).getJavaHome() != null) {
+                appendEntry(fingerprint, Paths.get(((ClasspathClassLoader) loader).getJavaHome()).resolve("lib/modules"));
+            }
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    if (!"file".equals(url.getProtocol())) {
+                        fingerprint.setLength(0);
+                        return false;
+                    }
+                    hasDirectories |= appendEntry(fingerprint, Paths.get(url.toURI()));
+                }
+            } else if (loader == systemLoader) { // NOPMD CompareObjectsWithEquals
+                for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                    hasDirectories |= appendEntry(fingerprint, Paths.get(entry).toAbsolutePath());
+                }
+            } else {
+                fingerprint.setLength(0);
+                return false;
+            }
+        }
+        return hasDirectories;
+    }
+
+    private static boolean appendEntry(StringBuilder fingerprint, Path entry) throws IOException {
+        fingerprint.append(entry);
+        boolean isDirectory = false;
+        if (Files.exists(entry)) {
+            BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+            isDirectory = attrs.isDirectory();
+            if (!isDirectory) {
+                fingerprint.append('|').append(attrs.size()).append('|').append(attrs.lastModifiedTime().toMillis());
+            }
+        }
+        fingerprint.append('\n');
+        return isDirectory;
+    }
+
+    @Override
+    public @Nullable InputStream findResource(String resourcePath) {
+        if (!resourcePath.endsWith(CLASS_SUFFIX)) {
+            return classpath.findResource(resourcePath);
+        }
+        Long stored = storedIndex.get(resourcePath);
+        if (stored != null) {
+            return storedResource(stored);
+        }
+        byte[] found = newEntries.get(resourcePath);
+        if (found == null) {
+            found = readFromClasspath(resourcePath);
+            if (found == null) {
+                return null;
+            }
+        }
+        return found == MISSING_CLASS ? null : new ByteArrayInputStream(found); // NOPMD CompareObjectsWithEquals
+    }
+
+    private @Nullable InputStream storedResource(long stored) {
+        int offset = (int) (stored >>> 32);
+        int length = (int) stored;
+        if (length == MISSING) {
+            return null;
+        }
+        ByteBuffer data = storedData.duplicate();
+        data.position(offset).limit(offset + length);
+        return new ByteBufferInputStream(data.slice());
+    }
+
+    /**
+     * Reads the class file from the classpath, and records it if it
+     * can be stored. Returns null if the class file is missing or
+     * cannot be read, but its absence cannot be stored.
+     */
+    private byte @Nullable [] readFromClasspath(String resourcePath) {
+        InputStream stream = classpath.findResource(resourcePath);
+        if (stream == null) {
+            if (isStable.test(resourcePath)) {
+                newEntries.put(resourcePath, MISSING_CLASS);
+                return MISSING_CLASS;
+            }
+            return null;
+        }
+        byte[] classFile;
+        try (InputStream in = stream) {
+            classFile = IOUtil.toByteArray(in);
+        } catch (IOException e) {
+            LOG.debug("Cannot read class file {}: {}", resourcePath, e.toString());
+            return null;
+        }
+        try {
+            classFile = stripClassFile(classFile);
+        } catch (RuntimeException e) {
+            // leave it to the class stub to report the invalid class file
+            return classFile;
+        }
+        if (isStable.test(resourcePath)) {
+            newEntries.put(resourcePath, classFile);
+        }
+        return classFile;
+    }
+
+    /**
+     * Removes the code and debug information of the class file, which
+     * are skipped anyway when the class file is parsed.
+     */
+    private static byte[] stripClassFile(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(databaseFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(databaseFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            storedMapping = buffer;
+            if (buffer.getInt() != FORMAT_VERSION) {
+                LOG.debug("Class stub database has an unknown format, rebuilding it.");
+                releaseStoredData();
+                return;
+            }
+            if (!fingerprint.equals(readString(buffer))) {
+                LOG.debug("Classpath changed since the class stub database was built, rebuilding it.");
+                releaseStoredData();
+                return;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String resourcePath = readString(buffer);
+                storedIndex.put(resourcePath, buffer.getLong());
+            }
+            storedData = buffer.slice();
+            LOG.debug("Loaded {} class files from the class stub database {}", count, databaseFile);
+        } catch (IOException | RuntimeException e) {
+            releaseStoredData();
+            storedIndex.clear();
+            LOG.warn("Could not load the class stub database from file {}: {}", databaseFile, e.toString());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes the database, if new class files were found. The database
+     * is written to a temporary file first, as the current one may be
+     * in use by another analysis. The temporary file has a unique name,
+     * so that concurrent analyses don't write to the same file. The
+     * mapping of the current database is released before it is replaced,
+     * as a mapped file cannot be replaced on Windows.
+     */
+    @Override
+    public void close() {
+        if (newEntries.isEmpty()) {
+            releaseStoredData();
+            return;
+        }
+        Path tempFile = null;
+        try {
+            Path parent = databaseFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            tempFile = Files.createTempFile(parent, databaseFile.getFileName().toString(), ".tmp");
+            writeDatabase(tempFile);
+            releaseStoredData();
+            moveReplacing(tempFile, databaseFile);
+            LOG.debug("Class stub database written to {}", databaseFile);
+        } catch (IOException e) {
+            LOG.error("Could not persist the class stub database to file: {}", e.getMessage());
+            releaseStoredData();
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // the file is left over
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping of the database file. The stored class files
+     * cannot be read afterwards.
+     */
+    private void releaseStoredData() {
+        if (storedMapping == null) {
+            return;
+        }
+        storedIndex.clear();
+        storedData = null;
+        if (!IOUtil.unmap(storedMapping)) {
+            LOG.debug("Could not release the mapping of the class stub database, it is released when collected");
+        }
+        storedMapping = null;
+    }
+
+    private void writeDatabase(Path file) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>(newEntries);
+        for (Map.Entry<String, Long> stored : storedIndex.entrySet()) {
+            entries.computeIfAbsent(stored.getKey(), k -> {
+                try (InputStream in = storedResource(stored.getValue())) {
+                    return in == null ? MISSING_CLASS : IOUtil.toByteArray(in);
+                } catch (IOException e) {
+                    return MISSING_CLASS;
+                }
+            });
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, fingerprint);
+            out.writeInt(entries.size());
+            long offset = 0;
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                byte[] classFile = entry.getValue();
+                if (classFile == MISSING_CLASS) { // NOPMD CompareObjectsWithEquals
+                    out.writeLong(MISSING & 0xFFFFFFFFL);
+                } else {
+                    out.writeLong(offset << 32 | classFile.length);
+                    offset += classFile.length;
+                }
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Class stub database is too large");
+            }
+            for (byte[] classFile : entries.values()) {
+                out.write(classFile);
+            }
+        }
+    }
+
+    private static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ClassStubDatabase[" + databaseFile + ", delegate: " + classpath + "]";
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final @NonNull ByteBuffer buffer;
+
+        ByteBufferInputStream(@NonNull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.java.rule.SemanticRequirement;
+
+class SemanticRequirementsTest {
+
+    @Test
+    void testSyntacticXPath() {
+        assertTrue(SemanticRequirements.ofXPath("//MethodDeclaration[@Name = 'foo'][@Arity > 2]").isEmpty());
+    }
+
+    @Test
+    void testAttributeInStringLiteralIsIgnored() {
+        assertTrue(SemanticRequirements.ofXPath("//StringLiteral[@Image = '\"@TypeMirror\"']").isEmpty());
+    }
+
+    @Test
+    void testXPathWithJavaFunction() {
+        assertEquals(SemanticRequirements.ALL,
+                     SemanticRequirements.ofXPath("//LocalVariableDeclaration[pmd-java:typeIs('java.lang.String')]"));
+    }
+
+    @Test
+    void testXPathWithUnknownAttribute() {
+        assertEquals(SemanticRequirements.ALL,
+                     SemanticRequirements.ofXPath("//MethodCall[@MethodName = 'foo'][@CompileTimeConstant]"));
+    }
+
+    @Test
+    void testXPathWithDisambiguatedNode() {
+        assertEquals(EnumSet.of(SemanticRequirement.SYMBOL_TABLE),
+                     SemanticRequirements.ofXPath("//FieldAccess[@Name = 'length']"));
+        assertEquals(EnumSet.of(SemanticRequirement.SYMBOL_TABLE),
+                     SemanticRequirements.ofXPath("//IfStatement/*"));
+    }
+
+    @Test
+    void testImpliedRequirements() {
+        assertEquals(EnumSet.of(SemanticRequirement.SYMBOL_TABLE),
+                     SemanticRequirement.TYPES.getImpliedRequirements());
+        assertEquals(EnumSet.of(SemanticRequirement.SYMBOL_TABLE),
+                     SemanticRequirement.USAGES.getImpliedRequirements());
+        assertTrue(SemanticRequirement.SYMBOL_TABLE.getImpliedRequirements().isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.errorprone.UnnecessaryCaseChangeRule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Checks that a syntactic rule finds the same violations, and that they
+ * are suppressed in the same way, when the semantic passes are skipped.
+ */
+class SkippedSemanticPassesTest {
+
+    private static final String SOURCE =
+        "package p;\n"
+            + "class Foo {\n"
+            + "    boolean reported(String a, String b) { return a.toUpperCase().equals(b); }\n"
+            + "    @SuppressWarnings(\"PMD.UnnecessaryCaseChange\")\n"
+            + "    boolean suppressedByName(String a, String b) { return a.equals(b.toLowerCase()); }\n"
+            + "    @java.lang.SuppressWarnings(\"PMD\")\n"
+            + "    boolean suppressedQualified(String a, String b) { return a.toLowerCase().equalsIgnoreCase(b); }\n"
+            + "    @SuppressWarnings(\"unchecked\")\n"
+            + "    boolean otherWarning(String a, String b) { return a.equals(b.toUpperCase()); }\n"
+            + "}\n";
+
+    private static final String SOURCE_WITH_OTHER_ANNOTATION =
+        "package p;\n"
+            + "import q.SuppressWarnings;\n"
+            + "class Bar {\n"
+            + "    @SuppressWarnings(\"PMD\")\n"
+            + "    boolean notSuppressed(String a, String b) { return a.toUpperCase().equals(b); }\n"
+            + "}\n";
+
+    @Test
+    void testSyntacticRuleHasSameResultsWithoutSemanticPasses() {
+        assertTrue(new UnnecessaryCaseChangeRule().getSemanticRequirements().isEmpty());
+
+        Report syntacticOnly = analyze(caseChangeRule());
+        Report full = analyze(caseChangeRule(), javaRule(new RequiresEverythingRule()));
+
+        assertEquals(describe(full.getViolations()), describe(syntacticOnly.getViolations()));
+        assertEquals(describe(suppressed(full)), describe(suppressed(syntacticOnly)));
+        assertEquals(Arrays.asList("Bar.java:5", "Foo.java:3", "Foo.java:9"), describe(syntacticOnly.getViolations()));
+        assertEquals(Arrays.asList("Foo.java:5", "Foo.java:7"), describe(suppressed(syntacticOnly)));
+    }
+
+    private static List<RuleViolation> suppressed(Report report) {
+        return report.getSuppressedViolations().stream().map(SuppressedViolation::getRuleViolation).collect(Collectors.toList());
+    }
+
+    private static Report analyze(Rule... rules) {
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(0);
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            for (Rule rule : rules) {
+                pmd.addRuleSet(RuleSet.forSingleRule(rule));
+            }
+            pmd.files().addSourceFile(FileId.fromPathLikeString("Foo.java"), SOURCE);
+            pmd.files().addSourceFile(FileId.fromPathLikeString("Bar.java"), SOURCE_WITH_OTHER_ANNOTATION);
+            return pmd.performAnalysisAndCollectReport();
+        }
+    }
+
+    private static List<String> describe(List<RuleViolation> violations) {
+        return violations.stream()
+                         .filter(it -> "UnnecessaryCaseChange".equals(it.getRule().getName()))
+                         .map(it -> it.getFileId().getFileName() + ":" + it.getBeginLine())
+                         .sorted()
+                         .collect(Collectors.toList());
+    }
+
+    private static Rule caseChangeRule() {
+        Rule rule = javaRule(new UnnecessaryCaseChangeRule());
+        rule.setName("UnnecessaryCaseChange");
+        return rule;
+    }
+
+    private static Rule javaRule(Rule rule) {
+        rule.setLanguage(JavaLanguageModule.getInstance());
+        rule.setMessage("violation");
+        return rule;
+    }
+
+    /** Requires all passes, with the default requirements. */
+    public static class RequiresEverythingRule extends AbstractJavaRule {
+
+        public RequiresEverythingRule() {
+            setName("RequiresEverything");
+        }
+    }
+}
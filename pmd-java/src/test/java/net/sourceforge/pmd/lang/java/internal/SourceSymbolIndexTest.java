@@ -0,0 +1,214 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTClassType;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JFieldSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JTypeDeclSymbol;
+import net.sourceforge.pmd.lang.java.types.Substitution;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class SourceSymbolIndexTest {
+
+    @Test
+    void testNestedClasses() {
+        List<String> declared = scan(
+            "package a.b;\n"
+                + "import java.util.List;\n"
+                + "public class A<T extends List<?>> extends B implements @Ann({1}) C {\n"
+                + "  record R<X>(int a) implements I { record Inner() {} }\n"
+                + "  enum E { X { class InConstant {} }, Y(1); E() {} E(int a) {} class InE {} }\n"
+                + "  @interface Ann { int[] v() default {1}; interface Deep {} }\n"
+                + "  static class S extends Thread { }\n"
+                + "}\n"
+                + "interface I {}\n");
+
+        assertEquals(Arrays.asList("a.b.A", "a.b.A$R", "a.b.A$R$Inner", "a.b.A$E", "a.b.A$E$InE",
+                                   "a.b.A$Ann", "a.b.A$Ann$Deep", "a.b.A$S", "a.b.I"),
+                     declared);
+    }
+
+    @Test
+    void testLocalAndAnonymousClassesAreSkipped() {
+        List<String> declared = scan(
+            "class A {\n"
+                + "  Class<?> c = A.class;\n"
+                + "  Object o = new Object() { class InAnon {} };\n"
+                + "  static { class InInit {} }\n"
+                + "  void f() { class Local {} Runnable r = () -> { class InLambda {} }; }\n"
+                + "}\n");
+
+        assertEquals(Arrays.asList("A"), declared);
+    }
+
+    @Test
+    void testDeclarationsInCommentsAndStringsAreSkipped() {
+        List<String> declared = scan(
+            "package p;\n"
+                + "/** class InComment {} */\n"
+                + "@SuppressWarnings(\"class InString {\")\n"
+                + "class A { record r; }\n");
+
+        assertEquals(Arrays.asList("p.A"), declared);
+    }
+
+    @Test
+    void testCrossFileTypeIsResolved() {
+        String foo = "package p;\n"
+            + "class Foo { Bar bar; }\n";
+        String bar = "package p;\n"
+            + "class Bar extends java.util.ArrayList<String> { }\n";
+
+        assertEquals(Collections.emptyList(), unresolved(analyze(true, "Foo.java", foo, "Bar.java", bar)));
+        // without the index, Bar is not on the auxclasspath
+        assertEquals(Collections.singletonList("Foo.java: Bar"), unresolved(analyze(false, "Foo.java", foo, "Bar.java", bar)));
+    }
+
+    @Test
+    void testClassOfAnalyzedFileIsResolved(@TempDir Path tempDir) throws IOException {
+        // Bar.java is analyzed, and closed, before Foo.java resolves it
+        Path bar = Files.write(tempDir.resolve("Bar.java"), "package p;\nclass Bar { }\n".getBytes(StandardCharsets.UTF_8));
+        Path foo = Files.write(tempDir.resolve("Foo.java"), "package p;\nclass Foo { Bar bar; }\n".getBytes(StandardCharsets.UTF_8));
+
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(0);
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.getLanguageProperties(JavaLanguageModule.getInstance())
+               .setProperty(JavaLanguageProperties.INTERNAL_SOURCE_SYMBOL_INDEX, true);
+            Rule rule = new ReportUnresolvedClassesRule();
+            rule.setLanguage(JavaLanguageModule.getInstance());
+            pmd.addRuleSet(RuleSet.forSingleRule(rule));
+            pmd.files().addFile(bar);
+            pmd.files().addFile(foo);
+            assertEquals(Collections.emptyList(), unresolved(pmd.performAnalysisAndCollectReport()));
+        }
+    }
+
+    @Test
+    void testMutualReferencesAreResolved() {
+        // each file resolves the other one, which references it in turn
+        Report report = analyze(true,
+                                "A.java", "package p;\nclass A extends B { }\n",
+                                "B.java", "package p;\nclass B { A a; }\n");
+
+        assertEquals(Collections.emptyList(), unresolved(report));
+        assertEquals(Collections.emptyList(), report.getProcessingErrors());
+    }
+
+    @Test
+    void testUnparseableDependencyDoesNotBreakAnalyzedFile() {
+        Report report = analyze(true,
+                                "Foo.java", "package p;\nclass Foo { Broken broken; Bar bar; }\n",
+                                "Broken.java", "package p;\nclass Broken { void f( }\n",
+                                "Bar.java", "package p;\nclass Bar { }\n");
+
+        assertEquals(Collections.singletonList("Foo.java: Broken"), unresolved(report));
+        assertEquals(Collections.singletonList("Broken.java"),
+                     report.getProcessingErrors().stream()
+                           .map(ProcessingError::getFileId)
+                           .map(FileId::getFileName)
+                           .collect(Collectors.toList()));
+    }
+
+    private static Report analyze(boolean useIndex, String... namesAndSources) {
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(0);
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.getLanguageProperties(JavaLanguageModule.getInstance())
+               .setProperty(JavaLanguageProperties.INTERNAL_SOURCE_SYMBOL_INDEX, useIndex);
+            Rule rule = new ReportUnresolvedClassesRule();
+            rule.setLanguage(JavaLanguageModule.getInstance());
+            pmd.addRuleSet(RuleSet.forSingleRule(rule));
+            for (int i = 0; i < namesAndSources.length; i += 2) {
+                pmd.files().addSourceFile(FileId.fromPathLikeString(namesAndSources[i]), namesAndSources[i + 1]);
+            }
+            return pmd.performAnalysisAndCollectReport();
+        }
+    }
+
+    private static List<String> unresolved(Report report) {
+        return report.getViolations().stream()
+                     .map(RuleViolation::getDescription)
+                     .distinct()
+                     .sorted()
+                     .collect(Collectors.toList());
+    }
+
+    private static List<String> scan(String source) {
+        return SourceSymbolIndex.scanDeclarations(
+            TextDocument.readOnlyString(source, JavaLanguageModule.getInstance().getDefaultVersion()));
+    }
+
+    /**
+     * Reports the classes that are not resolved among those referenced
+     * by a file, and their supertypes and field types, transitively.
+     */
+    public static class ReportUnresolvedClassesRule extends AbstractJavaRule {
+
+        public ReportUnresolvedClassesRule() {
+            setName("ReportUnresolvedClasses");
+            setMessage("unresolved");
+        }
+
+        @Override
+        public Object visit(ASTClassType node, Object data) {
+            Deque<JClassSymbol> toVisit = new ArrayDeque<>();
+            addIfClass(toVisit, node.getTypeMirror().getSymbol());
+            Set<JClassSymbol> visited = new HashSet<>();
+            while (!toVisit.isEmpty()) {
+                JClassSymbol symbol = toVisit.pop();
+                if (!visited.add(symbol)) {
+                    continue;
+                }
+                if (symbol.isUnresolved()) {
+                    asCtx(data).addViolationWithMessage(node, node.getAstInfo().getTextDocument().getFileId().getFileName()
+                        + ": " + symbol.getSimpleName());
+                    continue;
+                }
+                addIfClass(toVisit, symbol.getSuperclass());
+                toVisit.addAll(symbol.getSuperInterfaces());
+                for (JFieldSymbol field : symbol.getDeclaredFields()) {
+                    addIfClass(toVisit, field.getTypeMirror(Substitution.EMPTY).getSymbol());
+                }
+            }
+            return super.visit(node, data);
+        }
+
+        private static void addIfClass(Deque<JClassSymbol> toVisit, JTypeDeclSymbol symbol) {
+            if (symbol instanceof JClassSymbol) {
+                toVisit.add((JClassSymbol) symbol);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.java.JavaParsingHelper;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+class ClassStubDatabaseTest {
+
+    private static final Classpath EMPTY_CLASSPATH = resourcePath -> null;
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testClassesAreReadFromDatabase() {
+        Path databaseFile = tempDir.resolve("stubs.db");
+        Classpath classpath = Classpath.forClassLoader(JavaParsingHelper.class.getClassLoader());
+
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", classpath, path -> true)) {
+            TypeSystem ts = TypeSystem.usingClasspath(database);
+            assertFalse(ts.getClassSymbol("java.lang.Deprecated").getAnnotationAttributeNames().isEmpty());
+            assertNull(ts.getClassSymbol("java.lang.DoesNotExist"));
+        }
+        assertTrue(Files.isRegularFile(databaseFile));
+
+        // the classpath is not used anymore
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", EMPTY_CLASSPATH, path -> true)) {
+            TypeSystem ts = TypeSystem.usingClasspath(database);
+            JClassSymbol deprecated = ts.getClassSymbol("java.lang.Deprecated");
+            assertNotNull(deprecated);
+            assertTrue(deprecated.isAnnotation());
+            assertFalse(deprecated.getAnnotationAttributeNames().isEmpty());
+            assertNull(database.findResource("java/lang/DoesNotExist.class"));
+        }
+    }
+
+    @Test
+    void testDatabaseIsDiscardedIfClasspathChanged() {
+        Path databaseFile = tempDir.resolve("stubs.db");
+        Classpath classpath = Classpath.forClassLoader(JavaParsingHelper.class.getClassLoader());
+
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", classpath, path -> true)) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+        }
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "changed", EMPTY_CLASSPATH, path -> true)) {
+            assertNull(database.findResource("java/lang/String.class"));
+        }
+    }
+
+    @Test
+    void testUnstableClassesAreNotStored() {
+        Path databaseFile = tempDir.resolve("stubs.db");
+        Classpath classpath = Classpath.forClassLoader(JavaParsingHelper.class.getClassLoader());
+
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", classpath,
+                                                                path -> !path.startsWith("java/util/"))) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+            assertNotNull(database.findResource("java/util/List.class"));
+        }
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", EMPTY_CLASSPATH, path -> true)) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+            assertNull(database.findResource("java/util/List.class"));
+        }
+    }
+
+    @Test
+    void testLoadedDatabaseIsReplacedWithNewClasses() {
+        Path databaseFile = tempDir.resolve("stubs.db");
+        Classpath classpath = Classpath.forClassLoader(JavaParsingHelper.class.getClassLoader());
+
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", classpath, path -> true)) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+        }
+        // the database is mapped while it is replaced
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", classpath, path -> true)) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+            assertNotNull(database.findResource("java/util/List.class"));
+        }
+        try (ClassStubDatabase database = new ClassStubDatabase(databaseFile, "test", EMPTY_CLASSPATH, path -> true)) {
+            assertNotNull(database.findResource("java/lang/String.class"));
+            assertNotNull(database.findResource("java/util/List.class"));
+        }
+    }
+}
@@ -21,4 +21,14 @@ public class PLSQLHandler extends AbstractPmdLanguageVersionHandler {
         return new PLSQLParser();
     }
 
+    /**
+     * The AST is not modified once parsed: the symbol table is built by
+     * the parser, and nodes compute nothing lazily. The rules of this
+     * language don't store data in the nodes.
+     */
+    @Override
+    public boolean isAstSafeForConcurrentReads() {
+        return true;
+    }
+
 }
@@ -0,0 +1,64 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.plsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.reporting.Report;
+
+/**
+ * Tests that the rules may be applied in parallel to a PL/SQL file.
+ */
+class PLSQLParallelRulesTest {
+
+    private static final String[] CATEGORIES = {
+        "bestpractices", "codestyle", "design", "documentation", "errorprone", "performance", "security",
+    };
+
+    @Test
+    void testAstIsSafeForConcurrentReads() {
+        assertTrue(new PLSQLHandler().isAstSafeForConcurrentReads());
+    }
+
+    @Test
+    void testParallelRulesReportTheSameViolations() throws Exception {
+        List<String> sequential = analyze(0);
+        List<String> parallel = analyze(1);
+
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    private static List<String> analyze(int parallelRuleThreshold) throws Exception {
+        Path sources = Paths.get(PLSQLParallelRulesTest.class.getResource("ast/CreateTable.pls").toURI()).getParent();
+
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(4);
+        config.setParallelRuleThreshold(parallelRuleThreshold);
+        for (String category : CATEGORIES) {
+            config.addRuleSet("category/plsql/" + category + ".xml");
+        }
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.files().addDirectory(sources);
+            Report report = pmd.performAnalysisAndCollectReport();
+            assertEquals(0, pmd.getReporter().numErrors());
+            return report.getViolations().stream()
+                         .map(v -> v.getFileId().getFileName() + ":" + v.getBeginLine() + ":" + v.getBeginColumn()
+                             + " " + v.getRule().getName() + ": " + v.getDescription())
+                         .collect(Collectors.toList());
+        }
+    }
+}